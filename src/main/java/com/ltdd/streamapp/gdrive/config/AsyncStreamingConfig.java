@@ -0,0 +1,49 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/config/AsyncStreamingConfig.java
+package com.ltdd.streamapp.gdrive.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Cấu hình async cho endpoint streaming: body của StreamingResponseBody được ghi trên một virtual thread
+ * riêng thay vì giữ worker thread của Tomcat trong suốt thời gian tải video.
+ * Khi client đọc chậm, virtual thread chỉ park chờ socket sẵn sàng ghi, nên không tốn platform thread.
+ * Upload lên storage trong lúc probe file vừa nhận cũng chạy trên virtual thread ({@code mediaUploadExecutor}).
+ */
+@Configuration
+public class AsyncStreamingConfig implements WebMvcConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncStreamingConfig.class);
+
+    // Thời gian tối đa cho một stream (một response), quá hạn thì Spring hủy async request
+    @Value("${app.stream.async-timeout-ms:1800000}")
+    private long streamTimeoutMs;
+
+    @Bean("mediaStreamExecutor")
+    public AsyncTaskExecutor mediaStreamExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("media-stream-");
+        executor.setVirtualThreads(true);
+        logger.info("Media streaming executor initialized with virtual threads, per-stream timeout: {} ms", streamTimeoutMs);
+        return executor;
+    }
+
+    @Bean("mediaUploadExecutor")
+    public AsyncTaskExecutor mediaUploadExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("media-upload-");
+        executor.setVirtualThreads(true);
+        return executor;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mediaStreamExecutor());
+        configurer.setDefaultTimeout(streamTimeoutMs);
+    }
+}
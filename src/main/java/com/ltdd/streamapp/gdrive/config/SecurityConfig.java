@@ -75,6 +75,8 @@ public class SecurityConfig {
             	    .requestMatchers("/h2-console/**").permitAll()
             	    .requestMatchers("/api/media/public/**").permitAll() // Cho phép lấy danh sách public
             	    .requestMatchers(HttpMethod.GET, "/api/media/stream/**").permitAll() // << CHO PHÉP STREAMING
+            	    .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/prometheus").permitAll() // Cho Prometheus scrape
+            	    .requestMatchers("/actuator/**").hasRole("ADMIN")
             	    .anyRequest().authenticated()
             	)
             .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
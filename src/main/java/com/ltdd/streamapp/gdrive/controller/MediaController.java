@@ -1,11 +1,36 @@
 // File: src/main/java/com/ltdd/streamapp/gdrive/controller/MediaController.java
 package com.ltdd.streamapp.gdrive.controller;
 
-import com.google.api.services.drive.Drive; // << THÊM IMPORT NÀY
+import com.ltdd.streamapp.gdrive.model.HlsSegment;
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import com.ltdd.streamapp.gdrive.payload.BandwidthLimits;
+import com.ltdd.streamapp.gdrive.payload.IngestJobResponse;
 import com.ltdd.streamapp.gdrive.payload.MediaResponse;
 import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
 import com.ltdd.streamapp.gdrive.payload.MessageResponse;
+import com.ltdd.streamapp.gdrive.payload.SegmentCacheStatsResponse;
+import com.ltdd.streamapp.gdrive.payload.StreamBufferPoolStatsResponse;
+import com.ltdd.streamapp.gdrive.payload.TranscodeJobResponse;
+import com.ltdd.streamapp.gdrive.service.BandwidthShaperService;
+import com.ltdd.streamapp.gdrive.service.HlsPackagingService;
+import com.ltdd.streamapp.gdrive.service.IngestService;
+import com.ltdd.streamapp.gdrive.service.MediaMetadataCacheService;
 import com.ltdd.streamapp.gdrive.service.MediaService;
+import com.ltdd.streamapp.gdrive.service.MediaStreamService;
+import com.ltdd.streamapp.gdrive.service.SeekIndexService;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.TranscodingService;
+import com.ltdd.streamapp.gdrive.service.TrickplayService;
+import com.ltdd.streamapp.gdrive.service.WaveformService;
+import com.ltdd.streamapp.gdrive.util.HttpByteRanges;
+import com.ltdd.streamapp.gdrive.util.HttpByteRanges.ByteRange;
+import com.ltdd.streamapp.gdrive.util.KeyframeIndex;
+import com.ltdd.streamapp.gdrive.exception.UpstreamBusyException;
+import com.ltdd.streamapp.gdrive.util.StreamBufferPool;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import com.ltdd.streamapp.gdrive.util.StreamUrlSigner;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -16,38 +41,95 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody; // Dùng cho streaming hiệu quả
 
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
 
-@CrossOrigin(origins = "*", maxAge = 3600)
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = {MediaController.SEEK_TIME_HEADER, MediaController.RENDITION_HEADER, HttpHeaders.LOCATION, "Preference-Applied"})
 @RestController
 @RequestMapping("/api/media")
 public class MediaController {
 
     private static final Logger logger = LoggerFactory.getLogger(MediaController.class);
+    // Thời điểm (giây) của keyframe mà response ?t= bắt đầu, player dùng để đặt lại đồng hồ phát
+    static final String SEEK_TIME_HEADER = "X-Seek-Time";
+    // Tên rendition audio thực sự được phục vụ (không có header = bản gốc)
+    static final String RENDITION_HEADER = "X-Rendition";
+    private static final String SAVE_DATA_HEADER = "Save-Data";
+    // Upload lớn có thể xử lý lâu; client mở lại stream hoặc chuyển sang poll nếu hết thời gian
+    private static final long INGEST_EVENTS_TIMEOUT_MS = 30L * 60 * 1000;
     private final MediaService mediaService;
-    private final Drive googleDriveService; // Inject Drive service
+    private final MediaStreamService mediaStreamService;
+    private final SegmentCacheService segmentCacheService;
+    private final MediaMetadataCacheService mediaMetadataCacheService;
+    private final StreamBufferPool streamBufferPool;
+    private final BandwidthShaperService bandwidthShaperService;
+    private final StreamingMetrics streamingMetrics;
+    private final HlsPackagingService hlsPackagingService;
+    private final TranscodingService transcodingService;
+    private final SeekIndexService seekIndexService;
+    private final TrickplayService trickplayService;
+    private final WaveformService waveformService;
+    private final IngestService ingestService;
+    private final StreamUrlSigner streamUrlSigner;
 
-    public MediaController(MediaService mediaService, Drive googleDriveService) {
+    public MediaController(MediaService mediaService,
+                           MediaStreamService mediaStreamService, SegmentCacheService segmentCacheService,
+                           MediaMetadataCacheService mediaMetadataCacheService, StreamBufferPool streamBufferPool,
+                           BandwidthShaperService bandwidthShaperService, StreamingMetrics streamingMetrics,
+                           HlsPackagingService hlsPackagingService, TranscodingService transcodingService,
+                           SeekIndexService seekIndexService, TrickplayService trickplayService,
+                           WaveformService waveformService, IngestService ingestService, StreamUrlSigner streamUrlSigner) {
         this.mediaService = mediaService;
-        this.googleDriveService = googleDriveService; // Khởi tạo
+        this.mediaStreamService = mediaStreamService;
+        this.segmentCacheService = segmentCacheService;
+        this.mediaMetadataCacheService = mediaMetadataCacheService;
+        this.streamBufferPool = streamBufferPool;
+        this.bandwidthShaperService = bandwidthShaperService;
+        this.streamingMetrics = streamingMetrics;
+        this.hlsPackagingService = hlsPackagingService;
+        this.transcodingService = transcodingService;
+        this.seekIndexService = seekIndexService;
+        this.trickplayService = trickplayService;
+        this.waveformService = waveformService;
+        this.ingestService = ingestService;
+        this.streamUrlSigner = streamUrlSigner;
     }
 
+    /**
+     * Upload một file. Mặc định chờ xử lý xong và trả về 201 với media. Với header {@code Prefer: respond-async} (RFC 7240),
+     * server chỉ nhận byte rồi trả 202 với một ingest job; upload lên storage, probe và lưu chạy ở background,
+     * client poll {@code Location} hoặc nghe {@code Location/events}.
+     */
     @PostMapping("/upload")
-    public ResponseEntity<MediaResponse> uploadMedia(
+    public ResponseEntity<?> uploadMedia(
             @RequestPart("file") MultipartFile file,
             @Valid @RequestPart("data") MediaUploadRequest mediaUploadRequest,
+            @RequestHeader(value = "Prefer", required = false) String prefer,
             @AuthenticationPrincipal UserDetails currentUser) {
 
         if (file.isEmpty()) {
@@ -56,10 +138,61 @@ public class MediaController {
         if (currentUser == null) {
             throw new RuntimeException("Error: User not authenticated for media upload.");
         }
+        if (prefer != null && prefer.toLowerCase(Locale.ROOT).contains("respond-async")) {
+            IngestJobResponse job = ingestService.submit(currentUser.getUsername(), file, mediaUploadRequest);
+            return ResponseEntity.accepted()
+                    .location(URI.create(job.getStatusUrl()))
+                    .header("Preference-Applied", "respond-async")
+                    .body(job);
+        }
         MediaResponse uploadedMediaResponse = mediaService.uploadMedia(currentUser.getUsername(), file, mediaUploadRequest);
         return ResponseEntity.status(HttpStatus.CREATED).body(uploadedMediaResponse);
     }
 
+    @GetMapping("/ingest-jobs/{jobId}")
+    public ResponseEntity<IngestJobResponse> getIngestJob(@PathVariable String jobId,
+                                                          @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .body(ingestService.getJob(currentUser.getUsername(), jobId));
+    }
+
+    /**
+     * Server-Sent Events: một event {@code status} với trạng thái hiện tại, rồi một event sau mỗi lần đổi trạng thái
+     * cho đến DONE hoặc FAILED thì đóng stream.
+     */
+    @GetMapping(value = "/ingest-jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamIngestJob(@PathVariable String jobId,
+                                      @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            throw new RuntimeException("Error: User not authenticated.");
+        }
+        String username = currentUser.getUsername();
+        SseEmitter emitter = new SseEmitter(INGEST_EVENTS_TIMEOUT_MS);
+        // Đăng ký trước rồi mới gửi trạng thái hiện tại, để không lỡ lần đổi trạng thái xảy ra ở giữa
+        Runnable unsubscribe = ingestService.subscribe(username, jobId, job -> sendIngestEvent(emitter, job));
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(error -> unsubscribe.run());
+        sendIngestEvent(emitter, ingestService.getJob(username, jobId));
+        return emitter;
+    }
+
+    private void sendIngestEvent(SseEmitter emitter, IngestJobResponse job) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(job, MediaType.APPLICATION_JSON));
+            if ("DONE".equals(job.getStatus()) || "FAILED".equals(job.getStatus())) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client đã đóng kết nối hoặc emitter đã complete
+            emitter.completeWithError(e);
+        }
+    }
+
     @GetMapping
     public ResponseEntity<List<MediaResponse>> getUserMedia(@AuthenticationPrincipal UserDetails currentUser) {
         if (currentUser == null) {
@@ -99,139 +232,515 @@ public class MediaController {
     }
 
     // --- ENDPOINT MỚI CHO STREAMING ---
-    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d*)-(\\d*)");
-    private static final int DEFAULT_BUFFER_SIZE = 20480; // 20KB, có thể điều chỉnh
     private static final long DEFAULT_CHUNK_SIZE = 1024 * 1024 * 2; // 2MB, chunk size mặc định nếu client không yêu cầu endRange
 
 
+    /**
+     * Header và status được xử lý ngay trên request thread; phần body được trả về dạng StreamingResponseBody
+     * để việc copy byte chạy trên executor riêng (xem AsyncStreamingConfig), không giữ thread của Tomcat.
+     * Trả về null khi đã gửi response lỗi/416/redirect (không có body để stream).
+     * Tham số {@code ?t=<giây>} (khi không có header Range) trả 206 từ keyframe gần nhất trước thời điểm đó,
+     * thời điểm thực của keyframe nằm trong header X-Seek-Time.
+     * Với music, {@code ?rendition=} (original | low | auto | tên rendition) hoặc {@code Save-Data: on} chọn bản audio nén,
+     * tên bản được phục vụ nằm trong header X-Rendition; {@code ?media=} cho biết rendition của Media nào khi nhiều Media dùng chung file.
+     * Quyền xem: file public, chủ sở hữu (JWT), hoặc URL có chữ ký {@code expires}/{@code sig} lấy từ MediaResponse.url.
+     */
     @GetMapping("/stream/{fileIdOnDrive}")
-    public void streamMediaFile(@PathVariable String fileIdOnDrive,
-                                HttpServletRequest request,
-                                HttpServletResponse response) throws IOException {
-        logger.info("Stream request for file ID: {} with Range header: {}", fileIdOnDrive, request.getHeader(HttpHeaders.RANGE));
+    public StreamingResponseBody streamMediaFile(@PathVariable("fileIdOnDrive") String requestedFileId,
+                                                 @RequestParam(value = "t", required = false) Double seekSeconds,
+                                                 @RequestParam(value = "rendition", required = false) String requestedRendition,
+                                                 @RequestParam(value = "media", required = false) Long mediaId,
+                                                 @RequestParam(value = "expires", required = false) Long expires,
+                                                 @RequestParam(value = "sig", required = false) String signature,
+                                                 @AuthenticationPrincipal UserDetails currentUser,
+                                                 HttpServletRequest request,
+                                                 HttpServletResponse response) throws IOException {
+        final long requestStartNanos = System.nanoTime(); // Mốc tính TTFB
+        logger.info("Stream request for file ID: {} with Range header: {}", requestedFileId, request.getHeader(HttpHeaders.RANGE));
+
+        // --- Quyền xem, giống nhau cho proxy và redirect; chữ ký được kiểm tra trước vì không cần DB ---
+        boolean publicFile = false;
+        boolean allowed = streamUrlSigner.verify(requestedFileId, expires, signature);
+        if (!allowed) {
+            publicFile = mediaService.canAccessStoredFile(requestedFileId, null);
+            allowed = publicFile || (currentUser != null && mediaService.canAccessStoredFile(requestedFileId, currentUser.getUsername()));
+        }
+        if (!allowed) {
+            logger.warn("Denied stream of file ID {}: not public, not owned by the current user and no valid signature.", requestedFileId);
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "You do not have access to this media.");
+            return null;
+        }
+
+        // --- Music: chọn rendition audio nén theo ?rendition= hoặc Save-Data ---
+        // Không dùng ECT/Downlink: chúng đổi giữa các request Range của cùng một lần phát, mà mọi range phải lấy từ cùng một file
+        boolean saveData = "on".equalsIgnoreCase(request.getHeader(SAVE_DATA_HEADER));
+        MediaRendition rendition = transcodingService.selectAudioRendition(requestedFileId, mediaId, requestedRendition, saveData,
+                request.getHeader(HttpHeaders.ACCEPT));
+        final String fileIdOnDrive = rendition != null ? rendition.getStorageIdentifier() : requestedFileId;
+        if (requestedRendition == null) {
+            response.addHeader(HttpHeaders.VARY, SAVE_DATA_HEADER);
+        }
+        if (rendition != null) {
+            response.setHeader(RENDITION_HEADER, rendition.getName());
+            logger.info("Serving audio rendition '{}' ({}) instead of original {}.", rendition.getName(), fileIdOnDrive, requestedFileId);
+        }
+
+        // --- Redirect delivery: client tải byte thẳng từ storage ---
+        // Link Drive không có chữ ký và không hết hạn, ai có link đều tải được mãi: chỉ redirect file public, file riêng tư luôn proxy
+        String directUrl = publicFile ? mediaService.resolveDirectStreamUrl(fileIdOnDrive) : null;
+        if (directUrl != null) {
+            // Không cho cache 302: media có thể chuyển sang riêng tư
+            response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+            response.sendRedirect(directUrl); // 302
+            streamingMetrics.recordRedirect();
+            logger.info("Redirected stream request for file ID {} to storage.", fileIdOnDrive);
+            return null;
+        }
         com.google.api.services.drive.model.File driveFileMetadata;
         try {
-            driveFileMetadata = googleDriveService.files().get(fileIdOnDrive)
-                    .setFields("id, name, mimeType, size") // Chỉ cần size và mimeType ở đây
-                    .execute();
+            // Metadata được cache theo TTL, nên chỉ request đầu tiên của một file phải gọi Drive
+            driveFileMetadata = mediaMetadataCacheService.getFileMetadata(fileIdOnDrive);
         } catch (IOException e) {
             logger.error("DRIVE API ERROR - Fetching metadata for file ID {}: {}", fileIdOnDrive, e.getMessage(), e);
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "File metadata not found on Google Drive.");
-            return;
+            return null;
         }
 
         if (driveFileMetadata == null || driveFileMetadata.getSize() == null) {
             logger.error("DRIVE METADATA ERROR - File metadata or size is null for file ID: {}", fileIdOnDrive);
             response.sendError(HttpServletResponse.SC_NOT_FOUND, "File not found or size unknown.");
-            return;
+            return null;
         }
 
         long fileSize = driveFileMetadata.getSize();
         String fileName = driveFileMetadata.getName();
         String mimeType = determineMimeType(driveFileMetadata.getMimeType(), fileName); // Hàm helper để xác định mimeType
 
-        response.setContentType(mimeType);
-        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes"); // Rất quan trọng
+        // --- Conditional request: If-None-Match / If-Modified-Since -> 304, If-Range -> bỏ qua Range nếu file đã đổi ---
+        String eTag = buildETag(driveFileMetadata);
+        long lastModified = driveFileMetadata.getModifiedTime() != null ? driveFileMetadata.getModifiedTime().getValue() : -1;
+        // Segment cache dùng cùng validator: file bị thay trên Drive không bao giờ được phục vụ từ segment cũ
+        final String fileVersion = eTag != null ? eTag.substring(1, eTag.length() - 1) : "m" + lastModified + "-" + fileSize;
+        // checkNotModified cũng tự set header ETag và Last-Modified cho response
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            logger.info("Media {} not modified for client (ETag: {}), sending {}.", fileIdOnDrive, eTag, response.getStatus());
+            return null;
+        }
 
-        long startRange = 0;
-        long endRange = fileSize - 1; // Mặc định stream toàn bộ file
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes"); // Rất quan trọng
 
         String rangeHeader = request.getHeader(HttpHeaders.RANGE);
-        if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
-            Matcher matcher = RANGE_PATTERN.matcher(rangeHeader);
-            if (matcher.find()) {
-                try {
-                    String startGroup = matcher.group(1);
-                    if (startGroup != null && !startGroup.isEmpty()) {
-                        startRange = Long.parseLong(startGroup);
-                    }
-                    // endGroup có thể rỗng, nghĩa là stream đến cuối
-                    String endGroup = matcher.group(2);
-                    if (endGroup != null && !endGroup.isEmpty()) {
-                        endRange = Long.parseLong(endGroup);
-                    }
-                    // Đảm bảo endRange không vượt quá kích thước file
-                    endRange = Math.min(endRange, fileSize - 1);
-
-                } catch (NumberFormatException e) {
-                    logger.warn("Invalid Range header format: '{}'. Defaulting to full stream.", rangeHeader);
-                    startRange = 0;
-                    endRange = fileSize - 1;
-                }
+        if (rangeHeader != null && !isIfRangeSatisfied(request.getHeader(HttpHeaders.IF_RANGE), eTag, lastModified)) {
+            // Bản client đang giữ đã cũ: gửi lại toàn bộ file (200) thay vì ghép range vào nội dung khác
+            logger.info("If-Range validator does not match current version of {}, ignoring Range header.", fileIdOnDrive);
+            rangeHeader = null;
+        }
+        if (seekSeconds != null && rangeHeader == null) {
+            // ?t=<giây>: tra keyframe index, trả luôn từ keyframe gần nhất phía trước thay vì để player dò offset
+            KeyframeIndex.Entry keyframe = seekIndexService.resolve(fileIdOnDrive, seekSeconds);
+            if (keyframe != null && keyframe.byteOffset() < fileSize) {
+                rangeHeader = "bytes=" + keyframe.byteOffset() + "-";
+                response.setHeader(SEEK_TIME_HEADER, String.format(Locale.US, "%.3f", keyframe.timeSeconds()));
+                logger.info("Seek to t={}s of {} resolved to keyframe at {}s, byte {}.", seekSeconds, fileIdOnDrive,
+                        keyframe.timeSeconds(), keyframe.byteOffset());
+            } else {
+                logger.debug("No keyframe index for {}, ignoring t={}.", fileIdOnDrive, seekSeconds);
             }
         }
 
-        // Validate range một lần nữa sau khi đã parse và điều chỉnh
-        if (startRange < 0 || startRange >= fileSize || endRange < startRange /*|| endRange >= fileSize đã được Math.min xử lý*/) {
-            logger.warn("Processed Range Not Satisfiable: Start={}, End={}, FileSize={}. Sending 416.", startRange, endRange, fileSize);
+        // null = không có Range hoặc Range sai cú pháp -> trả toàn bộ file (RFC 7233 cho phép bỏ qua)
+        List<ByteRange> ranges = HttpByteRanges.parse(rangeHeader, fileSize);
+        if (ranges == null && rangeHeader != null) {
+            logger.warn("Invalid Range header format: '{}'. Defaulting to full stream.", rangeHeader);
+        }
+        if (ranges != null && ranges.isEmpty()) {
+            logger.warn("Range Not Satisfiable: '{}', FileSize={}. Sending 416.", rangeHeader, fileSize);
             response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
             response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize);
-            return;
+            streamingMetrics.recordRangeNotSatisfiable(mimeType);
+            return null;
         }
 
-        long contentLengthToServe = (endRange - startRange) + 1;
-        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLengthToServe));
+        final String clientKey = resolveClientKey(request);
+        final StreamCancellation cancellation = registerDisconnectCancellation(request);
+        if (ranges == null || ranges.size() == 1) {
+            ByteRange range = ranges == null ? new ByteRange(0, fileSize - 1) : ranges.get(0);
+            response.setContentType(mimeType);
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(range.length()));
+            if (ranges != null) {
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206
+                response.setHeader(HttpHeaders.CONTENT_RANGE, range.toContentRange(fileSize));
+                logger.info("Streaming PARTIAL content for '{}' (ID: {}), Range: bytes={}-{}, Serving: {} bytes",
+                        fileName, fileIdOnDrive, range.start(), range.end(), range.length());
+            } else {
+                response.setStatus(HttpServletResponse.SC_OK); // 200
+                logger.info("Streaming FULL content for '{}' (ID: {}), Serving: {} bytes",
+                        fileName, fileIdOnDrive, range.length());
+            }
+            return outputStream -> streamRanges(fileIdOnDrive, fileVersion, clientKey, fileSize, List.of(range), null, null, outputStream, response, cancellation, mimeType, requestStartNanos);
+        }
 
-        if (rangeHeader != null && rangeHeader.startsWith("bytes=")) {
-            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206
-            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + startRange + "-" + endRange + "/" + fileSize);
-            logger.info("Streaming PARTIAL content for '{}' (ID: {}), Range: bytes={}-{}, Serving: {} bytes",
-                    fileName, fileIdOnDrive, startRange, endRange, contentLengthToServe);
-        } else {
-            response.setStatus(HttpServletResponse.SC_OK); // 200
-            logger.info("Streaming FULL content for '{}' (ID: {}), Serving: {} bytes",
-                    fileName, fileIdOnDrive, contentLengthToServe);
+        // Nhiều range: gộp các range chồng/sát nhau, nếu vẫn còn nhiều thì trả multipart/byteranges
+        List<ByteRange> coalesced = HttpByteRanges.coalesce(ranges);
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT); // 206
+        if (coalesced.size() == 1) {
+            ByteRange range = coalesced.get(0);
+            response.setContentType(mimeType);
+            response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(range.length()));
+            response.setHeader(HttpHeaders.CONTENT_RANGE, range.toContentRange(fileSize));
+            logger.info("Streaming PARTIAL content for '{}' (ID: {}), {} ranges coalesced into bytes={}-{}",
+                    fileName, fileIdOnDrive, ranges.size(), range.start(), range.end());
+            return outputStream -> streamRanges(fileIdOnDrive, fileVersion, clientKey, fileSize, coalesced, null, null, outputStream, response, cancellation, mimeType, requestStartNanos);
         }
 
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<>(coalesced.size());
+        long contentLength = 0;
+        for (ByteRange range : coalesced) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + mimeType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(fileSize) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range.length();
+        }
+        byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
 
-        InputStream driveInputStream = null;
-        OutputStream responseOutputStream = null;
-        try {
-            // Quan trọng: Google Drive API không hỗ trợ tải một phần (byte range) trực tiếp
-            // qua executeMediaAsInputStream() theo cách chuẩn HTTP Range header.
-            // Chúng ta phải lấy toàn bộ stream và tự skip đến vị trí mong muốn.
-            driveInputStream = googleDriveService.files().get(fileIdOnDrive).executeMediaAsInputStream();
-            responseOutputStream = response.getOutputStream();
-
-            if (startRange > 0) {
-                long actuallySkipped = driveInputStream.skip(startRange);
-                if (actuallySkipped < startRange) {
-                    logger.error("STREAM SKIP ERROR for file {}: Could not skip to the desired start range. Requested skip: {}, Actually skipped: {}. Client may receive incorrect data.",
-                            fileIdOnDrive, startRange, actuallySkipped);
-                    // Không thể sendError ở đây vì header có thể đã được gửi.
-                    // Client có thể sẽ gặp lỗi khi nhận dữ liệu không mong muốn.
-                    return; // Nên thoát sớm
-                }
-                logger.debug("Successfully skipped {} bytes to reach startRange {} for file {}", actuallySkipped, startRange, fileIdOnDrive);
-            }
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength));
+        logger.info("Streaming MULTIPART content for '{}' (ID: {}), {} ranges requested, {} parts, Serving: {} bytes",
+                fileName, fileIdOnDrive, ranges.size(), coalesced.size(), contentLength);
+        return outputStream -> streamRanges(fileIdOnDrive, fileVersion, clientKey, fileSize, coalesced, partHeaders, closingBoundary, outputStream, response, cancellation, mimeType, requestStartNanos);
+    }
 
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-            int bytesRead;
-            long totalBytesTransferred = 0;
-
-            while (totalBytesTransferred < contentLengthToServe && (bytesRead = driveInputStream.read(buffer, 0, (int) Math.min(buffer.length, contentLengthToServe - totalBytesTransferred))) != -1) {
-                try {
-                    responseOutputStream.write(buffer, 0, bytesRead);
-                    totalBytesTransferred += bytesRead;
-                } catch (IOException e) {
-                    logger.warn("IOException writing to response output stream for file {}: {} (Client might have closed connection). Transferred: {} bytes.",
-                            fileIdOnDrive, e.getMessage(), totalBytesTransferred);
-                    break;
+    /**
+     * Ghi lần lượt các range ra response. Với multipart/byteranges, mỗi range được đặt sau header part tương ứng
+     * và body kết thúc bằng closing boundary; với response một range thì partHeaders/closingBoundary là null.
+     */
+    private void streamRanges(String fileIdOnDrive, String fileVersion, String clientKey, long fileSize, List<ByteRange> ranges,
+                              List<byte[]> partHeaders, byte[] closingBoundary, OutputStream outputStream,
+                              HttpServletResponse response, StreamCancellation cancellation,
+                              String mimeType, long requestStartNanos) {
+        long totalBytesTransferred = 0;
+        boolean completed = false;
+        StreamingMetrics.StreamRecorder recorder = streamingMetrics.startStream(mimeType, requestStartNanos, outputStream);
+        // Client ngắt kết nối -> interrupt thread này để thoát ngay khỏi các lần chờ (slot upstream, segment, băng thông)
+        Thread streamingThread = Thread.currentThread();
+        try (StreamCancellation.Registration ignored = cancellation.onCancel(streamingThread::interrupt)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                if (partHeaders != null) {
+                    recorder.write(partHeaders.get(i));
                 }
+                ByteRange range = ranges.get(i);
+                // Byte được lấy từ segment cache trên disk; segment nào chưa có sẽ được tải từ Google Drive
+                totalBytesTransferred += mediaStreamService.transferRange(fileIdOnDrive, fileVersion, clientKey, fileSize, range.start(), range.end(), recorder, cancellation);
             }
-            responseOutputStream.flush();
+            if (closingBoundary != null) {
+                recorder.write(closingBoundary);
+            }
+            recorder.flush();
+            completed = true;
             logger.info("Finished streaming. Total bytes transferred: {} for file ID: {}", totalBytesTransferred, fileIdOnDrive);
-
+        } catch (UpstreamBusyException e) {
+            if (response.isCommitted()) {
+                logger.warn("Upstream busy after response for file ID {} was committed ({} bytes sent): {}",
+                        fileIdOnDrive, totalBytesTransferred, e.getMessage());
+                return;
+            }
+            // Chưa gửi byte nào: đổi response thành 503 để client thử lại sau thay vì treo chờ
+            logger.warn("Rejecting stream of file ID {}: {}", fileIdOnDrive, e.getMessage());
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentLength(0);
         } catch (IOException e) {
-            logger.error("IOException during streaming content for file ID {}: {}", fileIdOnDrive, e.getMessage(), e);
+            logger.warn("IOException during streaming content for file ID {}: {} (Client might have closed connection or Drive read failed). Transferred: {} bytes.",
+                    fileIdOnDrive, e.getMessage(), totalBytesTransferred);
             // Nếu lỗi xảy ra sau khi header đã được gửi, chúng ta không thể thay đổi status code nữa.
             // Client sẽ nhận được một stream không hoàn chỉnh.
         } finally {
-            if (driveInputStream != null) {
-                try { driveInputStream.close(); } catch (IOException e) { logger.error("Error closing Drive InputStream for {}: {}", fileIdOnDrive, e.getMessage(), e); }
-            }
-            // OutputStream của response sẽ được servlet container tự đóng, nhưng flush là tốt.
+            recorder.finish(!completed);
+        }
+    }
+
+    /**
+     * Master playlist HLS: liệt kê rendition gốc và các bậc đã encode xong, kèm bitrate đo trên segment,
+     * để player tự chuyển bitrate theo băng thông.
+     */
+    @GetMapping("/stream/hls/{mediaId}/master.m3u8")
+    public ResponseEntity<String> getHlsMasterPlaylist(@PathVariable Long mediaId,
+                                                       @RequestParam(value = "expires", required = false) Long expires,
+                                                       @RequestParam(value = "sig", required = false) String signature,
+                                                       @AuthenticationPrincipal UserDetails currentUser) {
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        // Upload trùng nội dung dùng chung output của Media gốc; URI con vẫn theo mediaId của URL (quyền và chữ ký theo media này)
+        String playlist = hlsPackagingService.buildMasterPlaylist(mediaService.resolveOutputsId(mediaId), signedMediaQuery(mediaId, expires, signature));
+        if (playlist == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"))
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache") // Thêm rendition mới khi encode xong
+                .body(playlist);
+    }
+
+    /**
+     * Media playlist HLS của một rendition, dựng từ bảng hls_segments. Không cache vì playlist chỉ tồn tại
+     * sau khi đóng gói xong và quyền truy cập phải được kiểm tra lại.
+     */
+    @GetMapping(value = "/stream/hls/{mediaId}/{rendition}/playlist.m3u8")
+    public ResponseEntity<String> getHlsPlaylist(@PathVariable Long mediaId,
+                                                 @PathVariable String rendition,
+                                                 @RequestParam(value = "expires", required = false) Long expires,
+                                                 @RequestParam(value = "sig", required = false) String signature,
+                                                 @AuthenticationPrincipal UserDetails currentUser) {
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        String playlist = hlsPackagingService.buildMediaPlaylist(mediaService.resolveOutputsId(mediaId), rendition, signedMediaQuery(mediaId, expires, signature));
+        if (playlist == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/vnd.apple.mpegurl"))
+                .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+                .body(playlist);
+    }
+
+    /**
+     * Một segment .ts. Segment không bao giờ thay đổi sau khi upload (đóng gói lại sẽ tạo file mới),
+     * nên được cache vĩnh viễn phía client và đi qua segment cache trên disk như các stream khác.
+     */
+    @GetMapping("/stream/hls/{mediaId}/{rendition}/{sequenceNumber}.ts")
+    public StreamingResponseBody getHlsSegment(@PathVariable Long mediaId,
+                                               @PathVariable String rendition,
+                                               @PathVariable int sequenceNumber,
+                                               @RequestParam(value = "expires", required = false) Long expires,
+                                               @RequestParam(value = "sig", required = false) String signature,
+                                               @AuthenticationPrincipal UserDetails currentUser,
+                                               HttpServletRequest request,
+                                               HttpServletResponse response) throws IOException {
+        final long requestStartNanos = System.nanoTime();
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "You do not have access to this media.");
+            return null;
+        }
+        HlsSegment segment = hlsPackagingService.getSegment(mediaService.resolveOutputsId(mediaId), rendition, sequenceNumber);
+        if (segment == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "HLS segment not found.");
+            return null;
+        }
+        logger.debug("Streaming HLS segment {} of media {} ({}), {} bytes", sequenceNumber, mediaId, rendition, segment.getSizeBytes());
+        return streamImmutableFile(segment.getStorageIdentifier(), segment.getSizeBytes(), "video/mp2t", request, response, requestStartNanos);
+    }
+
+    /**
+     * WebVTT thumbnail track để xem trước khi tua: mỗi cue trỏ tới một ô trong sprite sheet ({@code 0.jpg#xywh=...}).
+     */
+    @GetMapping("/stream/trickplay/{mediaId}/thumbnails.vtt")
+    public ResponseEntity<String> getTrickplayTrack(@PathVariable Long mediaId,
+                                                    @RequestParam(value = "expires", required = false) Long expires,
+                                                    @RequestParam(value = "sig", required = false) String signature,
+                                                    @AuthenticationPrincipal UserDetails currentUser) {
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        String track = trickplayService.buildWebVtt(mediaService.resolveOutputsId(mediaId), signedMediaQuery(mediaId, expires, signature));
+        if (track == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "vtt", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CACHE_CONTROL, "private, max-age=3600")
+                .body(track);
+    }
+
+    /**
+     * Một sprite sheet JPEG. Giống segment HLS: không đổi sau khi tạo, cache vĩnh viễn phía client.
+     */
+    @GetMapping("/stream/trickplay/{mediaId}/{sheetIndex}.jpg")
+    public StreamingResponseBody getTrickplaySheet(@PathVariable Long mediaId,
+                                                   @PathVariable int sheetIndex,
+                                                   @RequestParam(value = "expires", required = false) Long expires,
+                                                   @RequestParam(value = "sig", required = false) String signature,
+                                                   @AuthenticationPrincipal UserDetails currentUser,
+                                                   HttpServletRequest request,
+                                                   HttpServletResponse response) throws IOException {
+        final long requestStartNanos = System.nanoTime();
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN, "You do not have access to this media.");
+            return null;
+        }
+        TrickplaySheet sheet = trickplayService.getSheet(mediaService.resolveOutputsId(mediaId), sheetIndex);
+        if (sheet == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Trickplay sheet not found.");
+            return null;
+        }
+        return streamImmutableFile(sheet.getStorageIdentifier(), sheet.getSizeBytes(), MediaType.IMAGE_JPEG_VALUE, request, response, requestStartNanos);
+    }
+
+    /**
+     * Peak waveform (min/max mỗi bucket, định dạng xem {@link com.ltdd.streamapp.gdrive.util.WaveformPeaks}) của một item MUSIC.
+     * Mặc định trả về mọi độ phân giải; {@code ?level=} chỉ lấy một level (0 = chi tiết nhất) để giảm còn vài KB.
+     */
+    @GetMapping("/stream/waveform/{mediaId}")
+    public ResponseEntity<byte[]> getWaveform(@PathVariable Long mediaId,
+                                              @RequestParam(value = "level", required = false) Integer level,
+                                              @RequestParam(value = "expires", required = false) Long expires,
+                                              @RequestParam(value = "sig", required = false) String signature,
+                                              @AuthenticationPrincipal UserDetails currentUser,
+                                              WebRequest webRequest) {
+        if (!mediaService.canAccessMedia(mediaId, currentUser != null ? currentUser.getUsername() : null, expires, signature)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
+        byte[] peaks = waveformService.getWaveform(mediaService.resolveOutputsId(mediaId), level);
+        if (peaks == null) {
+            return ResponseEntity.notFound().build();
+        }
+        // Peak chỉ đổi nếu được tính lại: ETag theo nội dung, client revalidate sau một ngày
+        CRC32 crc = new CRC32();
+        crc.update(peaks);
+        String eTag = "\"wf-" + mediaId + "-" + (level != null ? level : "all") + "-" + Long.toHexString(crc.getValue()) + "\"";
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CACHE_CONTROL, "private, max-age=86400")
+                .body(peaks);
+    }
+
+    /**
+     * Phục vụ trọn một file không bao giờ thay đổi sau khi lưu (segment HLS, sprite sheet): ETag là storage ID,
+     * cache vĩnh viễn, byte đi qua segment cache/bandwidth shaping/metrics như stream thường.
+     */
+    private StreamingResponseBody streamImmutableFile(String storageId, long size, String mimeType,
+                                                      HttpServletRequest request, HttpServletResponse response,
+                                                      long requestStartNanos) {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=31536000, immutable");
+        if (new ServletWebRequest(request, response).checkNotModified("\"" + storageId + "\"")) {
+            return null;
+        }
+        response.setContentType(mimeType);
+        response.setHeader(HttpHeaders.CONTENT_LENGTH, String.valueOf(size));
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        final String clientKey = resolveClientKey(request);
+        final StreamCancellation cancellation = registerDisconnectCancellation(request);
+        return outputStream -> streamRanges(storageId, SegmentCacheService.IMMUTABLE_VERSION, clientKey, size, List.of(new ByteRange(0, size - 1)), null, null,
+                outputStream, response, cancellation, mimeType, requestStartNanos);
+    }
+
+    @GetMapping("/{id}/transcode-jobs")
+    public ResponseEntity<List<TranscodeJobResponse>> getTranscodeJobs(@PathVariable Long id,
+                                                                       @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null || !mediaService.canAccessMedia(id, currentUser.getUsername())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(transcodingService.getJobs(mediaService.resolveOutputsId(id)));
+    }
+
+    @GetMapping("/stream-cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<SegmentCacheStatsResponse> getStreamCacheStats() {
+        return ResponseEntity.ok(segmentCacheService.getStats());
+    }
+
+    @GetMapping("/stream-cache/buffers")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamBufferPoolStatsResponse> getStreamBufferStats() {
+        return ResponseEntity.ok(streamBufferPool.getStats());
+    }
+
+    @GetMapping("/stream-bandwidth")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BandwidthLimits> getStreamBandwidthLimits() {
+        return ResponseEntity.ok(bandwidthShaperService.getLimits());
+    }
+
+    // Đổi giới hạn lúc runtime, áp dụng ngay cho cả các stream đang chạy
+    @PutMapping("/stream-bandwidth")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<BandwidthLimits> updateStreamBandwidthLimits(@Valid @RequestBody BandwidthLimits bandwidthLimits) {
+        bandwidthShaperService.updateLimits(bandwidthLimits);
+        return ResponseEntity.ok(bandwidthShaperService.getLimits());
+    }
+
+    /**
+     * Chữ ký media của request, để chuyển sang các URI tương đối trong playlist/track: player chỉ có query của URL cha.
+     * Chỉ chữ ký hợp lệ mới được chép vào (không đưa chuỗi tùy ý của client vào playlist); null nếu request không dùng chữ ký.
+     */
+    private String signedMediaQuery(Long mediaId, Long expires, String signature) {
+        if (!streamUrlSigner.verify(StreamUrlSigner.mediaResource(mediaId), expires, signature)) {
+            return null;
+        }
+        return "expires=" + expires + "&sig=" + signature;
+    }
+
+    /**
+     * Servlet container báo lỗi (thường là client đã đóng kết nối) hoặc timeout cho async request
+     * -> hủy stream ngay, kể cả khi thread đang bị chặn ở việc đọc từ Drive chứ không phải ở việc ghi.
+     */
+    private StreamCancellation registerDisconnectCancellation(HttpServletRequest request) {
+        StreamCancellation cancellation = new StreamCancellation();
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(StreamCancellation.class.getName(),
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> Object handleTimeout(NativeWebRequest webRequest, Callable<T> task) {
+                        cancellation.cancel();
+                        return RESULT_NONE;
+                    }
+
+                    @Override
+                    public <T> Object handleError(NativeWebRequest webRequest, Callable<T> task, Throwable t) {
+                        cancellation.cancel();
+                        return RESULT_NONE;
+                    }
+                });
+        return cancellation;
+    }
+
+    // Strong ETag: md5 của nội dung nếu Drive có (file nhị phân luôn có), ngược lại dùng version của file
+    private String buildETag(com.google.api.services.drive.model.File driveFileMetadata) {
+        if (driveFileMetadata.getMd5Checksum() != null) {
+            return "\"" + driveFileMetadata.getMd5Checksum() + "\"";
+        }
+        if (driveFileMetadata.getVersion() != null) {
+            return "\"v" + driveFileMetadata.getVersion() + "-" + driveFileMetadata.getSize() + "\"";
+        }
+        return null;
+    }
+
+    /**
+     * RFC 7233 §3.2: Range chỉ được áp dụng nếu validator trong If-Range khớp với phiên bản hiện tại.
+     * If-Range có thể là một ETag (so sánh strong) hoặc một HTTP-date (phải bằng đúng Last-Modified).
+     */
+    private boolean isIfRangeSatisfied(String ifRange, String eTag, long lastModified) {
+        if (ifRange == null || ifRange.isBlank()) {
+            return true;
+        }
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return eTag != null && !ifRange.startsWith("W/") && ifRange.equals(eTag);
+        }
+        if (lastModified < 0) {
+            return false;
+        }
+        try {
+            long ifRangeDate = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return ifRangeDate / 1000 == lastModified / 1000; // HTTP-date chỉ có độ chính xác đến giây
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    // Khóa nhận diện client cho read-ahead: cùng IP + User-Agent được coi là cùng một player
+    private String resolveClientKey(HttpServletRequest request) {
+        String userAgent = request.getHeader(HttpHeaders.USER_AGENT);
+        return request.getRemoteAddr() + "#" + (userAgent != null ? Integer.toHexString(userAgent.hashCode()) : "-");
     }
 
     // Hàm helper để xác định mimeType (có thể để trong một lớp Util)
@@ -0,0 +1,121 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/controller/MediaUploadController.java
+package com.ltdd.streamapp.gdrive.controller;
+
+import com.ltdd.streamapp.gdrive.payload.UploadSessionRequest;
+import com.ltdd.streamapp.gdrive.payload.UploadSessionResponse;
+import com.ltdd.streamapp.gdrive.service.ResumableUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Upload resumable theo kiểu tus, cho file lớn từ mạng chập chờn:
+ * <ol>
+ *     <li>{@code POST /api/media/uploads} (JSON: thông tin media + filename + size) → 201, {@code Location} là URL của session.</li>
+ *     <li>{@code PATCH {Location}} với header {@code Upload-Offset} và byte của chunk làm body → 204, {@code Upload-Offset} mới.</li>
+ *     <li>Mất kết nối: {@code HEAD {Location}} trả {@code Upload-Offset}, client chỉ gửi tiếp phần còn thiếu.</li>
+ *     <li>{@code POST {Location}/complete} → 201 với media đã tạo.</li>
+ * </ol>
+ */
+@CrossOrigin(origins = "*", maxAge = 3600, exposedHeaders = {HttpHeaders.LOCATION, MediaUploadController.UPLOAD_OFFSET_HEADER,
+        MediaUploadController.UPLOAD_LENGTH_HEADER})
+@RestController
+@RequestMapping("/api/media/uploads")
+public class MediaUploadController {
+
+    static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+    static final String UPLOAD_LENGTH_HEADER = "Upload-Length";
+
+    private final ResumableUploadService resumableUploadService;
+
+    public MediaUploadController(ResumableUploadService resumableUploadService) {
+        this.resumableUploadService = resumableUploadService;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadSessionResponse> createSession(@RequestBody UploadSessionRequest request,
+                                                               @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            throw new RuntimeException("Error: User not authenticated for media upload.");
+        }
+        UploadSessionResponse session = resumableUploadService.createSession(currentUser.getUsername(), request);
+        return ResponseEntity.created(URI.create(session.getUploadUrl()))
+                .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                .header(UPLOAD_LENGTH_HEADER, String.valueOf(session.getLength()))
+                .body(session);
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionResponse> getSession(@PathVariable String sessionId,
+                                                            @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        UploadSessionResponse session = resumableUploadService.getSession(currentUser.getUsername(), sessionId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                .header(UPLOAD_LENGTH_HEADER, String.valueOf(session.getLength()))
+                .body(session);
+    }
+
+    // Offset hiện tại mà không cần body, để resume nhanh sau khi mất kết nối
+    @RequestMapping(value = "/{sessionId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> getOffset(@PathVariable String sessionId,
+                                          @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        UploadSessionResponse session = resumableUploadService.getSession(currentUser.getUsername(), sessionId);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                .header(UPLOAD_LENGTH_HEADER, String.valueOf(session.getLength()))
+                .build();
+    }
+
+    @PatchMapping("/{sessionId}")
+    public ResponseEntity<Void> appendChunk(@PathVariable String sessionId,
+                                            @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+                                            @AuthenticationPrincipal UserDetails currentUser,
+                                            HttpServletRequest request) throws IOException {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        // Đọc thẳng từ request body: chunk không bao giờ nằm trọn trong heap
+        try (InputStream body = request.getInputStream()) {
+            long newOffset = resumableUploadService.appendChunk(currentUser.getUsername(), sessionId, offset, body);
+            return ResponseEntity.noContent()
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(newOffset))
+                    .build();
+        }
+    }
+
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<UploadSessionResponse> complete(@PathVariable String sessionId,
+                                                          @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(resumableUploadService.complete(currentUser.getUsername(), sessionId));
+    }
+
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> cancel(@PathVariable String sessionId,
+                                       @AuthenticationPrincipal UserDetails currentUser) {
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        resumableUploadService.cancel(currentUser.getUsername(), sessionId);
+        return ResponseEntity.noContent().build();
+    }
+}
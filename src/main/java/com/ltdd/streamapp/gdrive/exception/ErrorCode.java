@@ -9,13 +9,15 @@ public enum ErrorCode {
     EMAIL_ALREADY_EXISTS(400, "Email is already in use"),
     USERNAME_ALREADY_EXISTS(400, "Username is already taken"),
     UPLOAD_FAILED(500, "File upload failed"),
+    UPLOAD_OFFSET_CONFLICT(409, "Upload offset does not match the bytes received so far"),
     DELETE_FAILED(500, "File deletion failed"),
     PROFILE_UPDATE_FAILED(500, "Profile update failed"),
     UNAUTHORIZED(401, "Unauthorized - Authentication token was missing or invalid"),
     FORBIDDEN(403, "Forbidden - You don't have permission to access this resource"),
     BAD_REQUEST(400, "Bad Request - The request was invalid or cannot be otherwise served"),
     VALIDATION_ERROR(400, "Validation Error - One or more fields are invalid"),
-    INTERNAL_SERVER_ERROR(500, "Internal Server Error - An unexpected error occurred");
+    INTERNAL_SERVER_ERROR(500, "Internal Server Error - An unexpected error occurred"),
+    SERVICE_UNAVAILABLE(503, "Service Unavailable - Too many concurrent streams, retry later");
 
     private final int status;
     private final String message; // Đổi defaultMessage thành message
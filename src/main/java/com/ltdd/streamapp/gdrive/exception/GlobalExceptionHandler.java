@@ -29,6 +29,36 @@ public class GlobalExceptionHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(error, null, ErrorCode.INTERNAL_SERVER_ERROR.getStatus());
     }
 
+    // Upstream (Google Drive) đang quá tải trên node này: 503 kèm Retry-After
+    @ExceptionHandler(UpstreamBusyException.class)
+    public ResponseEntity<ErrorResponse> handleUpstreamBusy(UpstreamBusyException ex, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                ErrorCode.SERVICE_UNAVAILABLE.getStatus(),
+                ErrorCode.SERVICE_UNAVAILABLE.getMessage(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return new ResponseEntity<>(error, headers, ErrorCode.SERVICE_UNAVAILABLE.getStatus());
+    }
+
+    // Upload resumable: trả offset hiện tại để client gửi tiếp đúng chỗ thay vì gửi lại từ đầu
+    @ExceptionHandler(UploadOffsetConflictException.class)
+    public ResponseEntity<ErrorResponse> handleUploadOffsetConflict(UploadOffsetConflictException ex, WebRequest request) {
+        ErrorResponse error = new ErrorResponse(
+                LocalDateTime.now(),
+                ErrorCode.UPLOAD_OFFSET_CONFLICT.getStatus(),
+                ErrorCode.UPLOAD_OFFSET_CONFLICT.getMessage(),
+                ex.getMessage(),
+                request.getDescription(false)
+        );
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Upload-Offset", String.valueOf(ex.getCurrentOffset()));
+        return new ResponseEntity<>(error, headers, ErrorCode.UPLOAD_OFFSET_CONFLICT.getStatus());
+    }
+
     // Handle runtime exceptions using the BAD_REQUEST enum
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<ErrorResponse> handleRuntimeExceptions(RuntimeException ex, WebRequest request) {
@@ -0,0 +1,16 @@
+package com.ltdd.streamapp.gdrive.exception;
+
+// Ném ra khi Upload-Offset của client không khớp với số byte server đã nhận (chunk bị lặp, mất, hoặc đang có PATCH khác)
+public class UploadOffsetConflictException extends RuntimeException {
+
+    private final long currentOffset;
+
+    public UploadOffsetConflictException(String message, long currentOffset) {
+        super(message);
+        this.currentOffset = currentOffset;
+    }
+
+    public long getCurrentOffset() {
+        return currentOffset;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ltdd.streamapp.gdrive.exception;
+
+// Ném ra khi node đã dùng hết slot tải từ storage (Google Drive) và hàng chờ cũng đã đầy
+public class UpstreamBusyException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public UpstreamBusyException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
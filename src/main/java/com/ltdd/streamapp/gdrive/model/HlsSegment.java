@@ -0,0 +1,39 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một segment HLS (.ts) đã được lưu trên storage; playlist được dựng lại từ các bản ghi này
+@Entity
+@Table(name = "hls_segments",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"media_id", "rendition", "sequence_number"}),
+        indexes = @Index(columnList = "media_id, rendition"))
+@Data
+@NoArgsConstructor
+public class HlsSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "media_id", nullable = false)
+    private Long mediaId;
+
+    // Tên rendition, ví dụ "source"
+    @Column(nullable = false, length = 32)
+    private String rendition;
+
+    @Column(name = "sequence_number", nullable = false)
+    private int sequenceNumber;
+
+    @Column(name = "duration_seconds", nullable = false)
+    private double durationSeconds;
+
+    // Google Drive File ID của segment
+    @Column(nullable = false, name = "storage_identifier")
+    private String storageIdentifier;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+}
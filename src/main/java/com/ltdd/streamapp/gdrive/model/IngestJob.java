@@ -0,0 +1,75 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Xử lý nền một upload (Prefer: respond-async): byte đã nằm trong file spool, worker upload lên storage, probe và tạo Media
+@Entity
+@Table(name = "ingest_jobs", indexes = @Index(columnList = "status, updated_at"))
+@Data
+@NoArgsConstructor
+public class IngestJob {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "owner_username", nullable = false)
+    private String ownerUsername;
+
+    @Column(name = "original_filename", nullable = false)
+    private String originalFilename;
+
+    // Thông tin media, giống MediaUploadRequest
+    @Column(nullable = false)
+    private String title;
+
+    @Column(length = 1000)
+    private String description;
+
+    @Column(nullable = false)
+    private String type;
+
+    @Column(nullable = false)
+    private boolean isPublic;
+
+    private String artist;
+    private String album;
+
+    @Column(name = "spool_path", nullable = false, length = 1024)
+    private String spoolPath;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
+    // QUEUED, PROCESSING, DONE, FAILED
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    @Column(name = "media_id")
+    private Long mediaId;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void touch() {
+        updatedAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = updatedAt;
+        }
+    }
+}
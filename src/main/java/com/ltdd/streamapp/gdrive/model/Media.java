@@ -38,10 +38,41 @@ public class Media {
     @Column(nullable = false)
     private boolean isPublic;
 
-    private String duration;
+    // SHA-256 (hex) của file người dùng upload (trước remux), tính trong lúc spool upload
+    @Column(name = "content_sha256", length = 64)
+    private String contentSha256;
+
+    // Kết quả probe header lúc upload (null = không xác định được); MediaResponse.duration được format từ durationMillis
+    @Column(name = "duration_millis")
+    private Long durationMillis;
+
+    @Column(name = "video_codec", length = 32)
+    private String videoCodec;
+
+    @Column(name = "audio_codec", length = 32)
+    private String audioCodec;
+
+    private Integer width;
+    private Integer height;
+
+    @Column(name = "bitrate_kbps")
+    private Long bitrateKbps;
+
     private String artist;
     private String album;
 
+    // Trạng thái đóng gói HLS: null (không áp dụng), PENDING, PROCESSING, READY, FAILED
+    @Column(name = "hls_status", length = 20)
+    private String hlsStatus;
+
+    // Trạng thái tạo sprite sheet xem trước khi tua: null (không áp dụng), PENDING, PROCESSING, READY, FAILED
+    @Column(name = "trickplay_status", length = 20)
+    private String trickplayStatus;
+
+    // Upload trùng nội dung với một Media trước đó: dùng chung HLS, rendition, trickplay và waveform lưu theo ID của Media đó
+    @Column(name = "output_media_id")
+    private Long outputMediaId;
+
     @Column(columnDefinition = "BIGINT DEFAULT 0")
     private long viewCount = 0;
 
@@ -54,4 +85,11 @@ public class Media {
            this.uploadDate = LocalDateTime.now();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * ID mà HLS, rendition, trickplay và waveform của media này được lưu theo: của Media gốc nếu là bản upload trùng nội dung.
+     */
+    public Long getOutputsId() {
+        return outputMediaId != null ? outputMediaId : id;
+    }
+}
@@ -0,0 +1,45 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Index nội dung đã lưu trên storage: cùng SHA-256 (và cùng loại media) thì các Media dùng chung một file,
+// referenceCount = số Media đang trỏ tới storageIdentifier; file chỉ bị xóa khi reference cuối cùng bị xóa
+@Entity
+@Table(name = "media_contents",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"content_sha256", "media_type"}))
+@Data
+@NoArgsConstructor
+public class MediaContent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 (hex) của file người dùng upload, trước remux (giống Media.contentSha256)
+    @Column(name = "content_sha256", nullable = false, length = 64)
+    private String contentSha256;
+
+    // "VIDEO" hoặc "MUSIC": video được remux faststart trước khi lưu, nên cùng byte nhưng khác loại là hai file khác nhau
+    @Column(name = "media_type", nullable = false, length = 20)
+    private String mediaType;
+
+    @Column(name = "storage_identifier", nullable = false)
+    private String storageIdentifier;
+
+    @Column(name = "reference_count", nullable = false)
+    private int referenceCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
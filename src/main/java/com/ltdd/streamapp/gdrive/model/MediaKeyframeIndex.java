@@ -0,0 +1,26 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Keyframe index (thời điểm -> byte offset) của một file đã lưu, xem util.KeyframeIndex.
+// Bảng riêng theo storage identifier để danh sách Media không phải tải blob, và endpoint stream tra được trực tiếp theo file ID
+@Entity
+@Table(name = "media_keyframe_index")
+@Data
+@NoArgsConstructor
+public class MediaKeyframeIndex {
+
+    // Google Drive File ID của file video
+    @Id
+    @Column(name = "storage_identifier")
+    private String storageIdentifier;
+
+    @Column(name = "keyframe_count", nullable = false)
+    private int keyframeCount;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+}
@@ -0,0 +1,45 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một rendition đã encode xong của media. Video: một bậc trong thang bitrate, segment nằm trong hls_segments cùng tên rendition.
+// Music: một file audio nén (Opus/AAC) riêng trên storage, phát qua endpoint stream như file gốc
+@Entity
+@Table(name = "media_renditions",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"media_id", "name"}))
+@Data
+@NoArgsConstructor
+public class MediaRendition {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "media_id", nullable = false)
+    private Long mediaId;
+
+    // Ví dụ "720p"
+    @Column(nullable = false, length = 32)
+    private String name;
+
+    private int width;
+    private int height;
+
+    @Column(name = "video_bitrate_kbps")
+    private int videoBitrateKbps;
+
+    @Column(name = "audio_bitrate_kbps")
+    private int audioBitrateKbps;
+
+    // Google Drive File ID của file rendition, null với rendition HLS (byte nằm trong các segment)
+    @Column(name = "storage_identifier")
+    private String storageIdentifier;
+
+    @Column(name = "mime_type", length = 64)
+    private String mimeType;
+
+    @Column(name = "size_bytes")
+    private long sizeBytes;
+}
@@ -0,0 +1,24 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Peak waveform nhiều độ phân giải của một item MUSIC, định dạng xem util.WaveformPeaks (vài KB đến vài chục KB)
+@Entity
+@Table(name = "media_waveforms")
+@Data
+@NoArgsConstructor
+public class MediaWaveform {
+
+    @Id
+    @Column(name = "media_id")
+    private Long mediaId;
+
+    @Column(name = "sample_rate", nullable = false)
+    private int sampleRate;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+}
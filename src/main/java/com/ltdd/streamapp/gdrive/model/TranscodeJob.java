@@ -0,0 +1,93 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Job encode một rendition của video; hàng đợi nằm trong DB nên job không mất khi restart server
+@Entity
+@Table(name = "transcode_jobs",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"media_id", "rendition"}),
+        indexes = @Index(columnList = "status, priority"))
+@Data
+@NoArgsConstructor
+public class TranscodeJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "media_id", nullable = false)
+    private Long mediaId;
+
+    // VIDEO (bậc HLS của thang bitrate, mặc định khi null) hoặc AUDIO (file audio nén cho MUSIC)
+    @Column(length = 16)
+    private String kind;
+
+    // Tên rendition, ví dụ "360p", "opus-64k"
+    @Column(nullable = false, length = 32)
+    private String rendition;
+
+    // 0 với job AUDIO
+    @Column(name = "target_height", nullable = false)
+    private int targetHeight;
+
+    @Column(name = "video_bitrate_kbps", nullable = false)
+    private int videoBitrateKbps;
+
+    // Chỉ dùng cho job AUDIO: "opus" hoặc "aac"
+    @Column(name = "audio_codec", length = 16)
+    private String audioCodec;
+
+    @Column(name = "audio_bitrate_kbps")
+    private int audioBitrateKbps;
+
+    // Số lớn hơn được chạy trước
+    @Column(nullable = false)
+    private int priority;
+
+    // QUEUED, RUNNING, DONE, FAILED
+    @Column(nullable = false, length = 20)
+    private String status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "max_attempts", nullable = false)
+    private int maxAttempts;
+
+    @Column(name = "progress_percent", nullable = false)
+    private int progressPercent;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    // Job bị lỗi chỉ được thử lại sau thời điểm này (backoff)
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        if (this.createdAt == null) {
+            this.createdAt = now;
+        }
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = now;
+        }
+        this.updatedAt = now;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,50 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một sprite sheet (ảnh JPEG ghép nhiều thumbnail thành lưới) dùng để xem trước khi tua video.
+// File WebVTT được dựng lại từ các bản ghi này, nên mỗi bản ghi mang đủ thông số lưới của nó
+@Entity
+@Table(name = "trickplay_sheets",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"media_id", "sheet_index"}))
+@Data
+@NoArgsConstructor
+public class TrickplaySheet {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "media_id", nullable = false)
+    private Long mediaId;
+
+    @Column(name = "sheet_index", nullable = false)
+    private int sheetIndex;
+
+    // Google Drive File ID của ảnh
+    @Column(nullable = false, name = "storage_identifier")
+    private String storageIdentifier;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    // Khoảng thời gian giữa hai thumbnail liên tiếp
+    @Column(name = "interval_seconds", nullable = false)
+    private int intervalSeconds;
+
+    @Column(name = "tile_width", nullable = false)
+    private int tileWidth;
+
+    @Column(name = "tile_height", nullable = false)
+    private int tileHeight;
+
+    // Số cột của lưới; thumbnail thứ i nằm ở hàng i / columns, cột i % columns
+    @Column(nullable = false)
+    private int columns;
+
+    // Số thumbnail thực có trong sheet (sheet cuối có thể không đầy)
+    @Column(name = "thumbnail_count", nullable = false)
+    private int thumbnailCount;
+}
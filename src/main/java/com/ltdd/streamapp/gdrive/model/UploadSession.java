@@ -0,0 +1,86 @@
+package com.ltdd.streamapp.gdrive.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Upload resumable (kiểu tus) đang diễn ra; lưu trong DB cùng file spool trên disk nên không mất khi restart node
+@Entity
+@Table(name = "upload_sessions", indexes = @Index(columnList = "status, updated_at"))
+@Data
+@NoArgsConstructor
+public class UploadSession {
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "owner_username", nullable = false)
+    private String ownerUsername;
+
+    @Column(name = "original_filename", nullable = false)
+    private String originalFilename;
+
+    // Thông tin media, giống MediaUploadRequest
+    @Column(nullable = false)
+    private String title;
+
+    @Column(length = 1000)
+    private String description;
+
+    @Column(nullable = false)
+    private String type;
+
+    @Column(nullable = false)
+    private boolean isPublic;
+
+    private String artist;
+    private String album;
+
+    @Column(name = "total_bytes", nullable = false)
+    private long totalBytes;
+
+    // Số byte đã ghi bền vững vào file spool, cũng là Upload-Offset trả cho client
+    @Column(name = "received_bytes", nullable = false)
+    private long receivedBytes;
+
+    // Số byte storage (Drive) đã xác nhận trong resumable session của nó
+    @Column(name = "stored_bytes", nullable = false)
+    private long storedBytes;
+
+    // Session URI của Drive, null nếu không mở được (khi đó file được upload một lần lúc hoàn tất)
+    @Column(name = "storage_session_uri", length = 2048)
+    private String storageSessionUri;
+
+    // File ID trên storage khi Drive đã nhận đủ byte
+    @Column(name = "storage_identifier")
+    private String storageIdentifier;
+
+    @Column(name = "spool_path", nullable = false, length = 1024)
+    private String spoolPath;
+
+    // ACTIVE, COMPLETED
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    // Media được tạo khi hoàn tất, để gọi lại /complete trả về cùng kết quả
+    @Column(name = "media_id")
+    private Long mediaId;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void touch() {
+        updatedAt = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = updatedAt;
+        }
+    }
+}
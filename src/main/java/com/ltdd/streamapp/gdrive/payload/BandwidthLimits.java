@@ -0,0 +1,19 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Giới hạn băng thông cho streaming, đơn vị byte/giây; 0 = không giới hạn
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BandwidthLimits {
+    @PositiveOrZero
+    private long perClientBytesPerSecond; // Tổng của mọi range song song từ cùng một client
+    @PositiveOrZero
+    private long perFileBytesPerSecond;   // Tổng của mọi stream đang đọc cùng một file
+    @PositiveOrZero
+    private long globalBytesPerSecond;    // Chia đều (fair-share) cho các stream đang hoạt động trên node
+}
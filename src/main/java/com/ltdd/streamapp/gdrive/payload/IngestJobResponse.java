@@ -0,0 +1,20 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestJobResponse {
+    private String id;
+    private String status;       // QUEUED, PROCESSING, DONE, FAILED
+    private String statusUrl;    // Poll URL; thêm /events để nhận cập nhật qua Server-Sent Events
+    private long sizeBytes;
+    private Long mediaId;        // Có khi DONE
+    private MediaResponse media; // Có khi DONE
+    private String error;        // Có khi FAILED
+    private String createdAt;
+    private String updatedAt;
+}
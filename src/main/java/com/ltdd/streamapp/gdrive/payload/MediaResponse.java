@@ -4,6 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor; // Thêm NoArgsConstructor
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor // Thêm NoArgsConstructor để linh hoạt hơn khi tạo object
 @AllArgsConstructor
@@ -21,13 +23,24 @@ public class MediaResponse {
 
     // --- CÁC TRƯỜNG MỚI CẦN THÊM ĐỂ KHỚP VỚI CLIENT ANDROID ---
     private String thumbnailUrl; // URL thumbnail (ví dụ: link Google Drive đã xử lý cho thumbnail)
-    private String duration;     // Định dạng "HH:MM:SS" hoặc "MM:SS"
+    private String duration;     // Định dạng "HH:MM:SS" hoặc "MM:SS", format từ durationMillis
+    private Long durationMillis; // null nếu không probe được
+    private String videoCodec;   // Ví dụ "h264", "hevc"; null với MUSIC
+    private String audioCodec;   // Ví dụ "aac", "mp3", "opus"
+    private Integer width;
+    private Integer height;
+    private Long bitrateKbps;    // Bitrate trung bình của file gốc
     private String artist;       // Tên nghệ sĩ (cho music)
     private String album;        // Tên album (cho music)
     private String channelName;  // Tên kênh/người đăng (cho video)
     private String channelAvatarUrl; // URL avatar của kênh/người đăng
     private long viewCount;      // Số lượt xem
     private String uploadDate;   // Ngày đăng, định dạng String (ví dụ: "3 days ago", "Jul 20, 2024")
+    private String hlsUrl;       // Playlist HLS (.m3u8), null nếu video chưa được đóng gói xong
+    private String hlsMasterUrl; // Master playlist liệt kê mọi rendition để player tự chọn bitrate
+    private List<MediaVariantResponse> variants; // Các rendition đã sẵn sàng, thấp nhất trước
+    private String trickplayUrl; // WebVTT thumbnail track (sprite sheet) để xem trước khi tua, null nếu chưa có
+    private String waveformUrl;  // Peak waveform nhị phân của item MUSIC, null nếu chưa tính xong
 
     // Constructor bạn cung cấp ban đầu chỉ có 6 tham số,
     // với các trường mới này, @AllArgsConstructor sẽ tạo constructor đầy đủ.
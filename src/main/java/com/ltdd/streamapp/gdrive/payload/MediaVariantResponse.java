@@ -0,0 +1,19 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một rendition có thể phát: bậc HLS của video, hoặc file audio nén của music
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaVariantResponse {
+    private String name;             // "source", "360p", "720p"...
+    private Integer width;           // null với rendition "source" (giữ nguyên kích thước gốc)
+    private Integer height;
+    private Integer videoBitrateKbps;
+    private Integer audioBitrateKbps; // Chỉ với rendition audio
+    private String mimeType;          // Chỉ với rendition audio, ví dụ "audio/ogg"
+    private String playlistUrl;       // Video: media playlist HLS; music: URL stream của rendition
+}
@@ -0,0 +1,21 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SegmentCacheStatsResponse {
+    private long hits;
+    private long misses;
+    private double hitRatio;      // hits / (hits + misses), 0 nếu chưa có request nào
+    private long coalescedMisses; // Miss được phục vụ bằng lần tải đang chạy của request khác (không gọi thêm Drive)
+    private long prefetchedSegments; // Segment được read-ahead tải trước khi client yêu cầu
+    private long evictions;
+    private long segmentCount;    // Số segment đang nằm trên disk
+    private long sizeBytes;       // Tổng dung lượng các segment đang cache
+    private long maxSizeBytes;    // Ngân sách dung lượng tối đa (app.stream.cache.max-size-bytes)
+    private long segmentSizeBytes;
+}
@@ -0,0 +1,18 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamBufferPoolStatsResponse {
+    private int bufferSizeBytes;
+    private long acquisitions;        // Tổng số lần các copy loop xin buffer
+    private long allocations;         // Số buffer thực sự được cấp phát mới
+    private long reuses;              // acquisitions - allocations
+    private long bytesAllocationSaved; // reuses * bufferSizeBytes: lượng heap không phải cấp phát nhờ pool
+    private int freeBuffers;          // Số buffer đang rảnh trong pool
+    private int maxPooledBuffers;
+}
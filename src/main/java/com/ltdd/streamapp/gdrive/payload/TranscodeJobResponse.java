@@ -0,0 +1,19 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TranscodeJobResponse {
+    private String rendition;
+    private String status;       // QUEUED, RUNNING, DONE, FAILED
+    private int priority;
+    private int attempts;
+    private int maxAttempts;
+    private int progressPercent;
+    private String lastError;
+    private String updatedAt;
+}
@@ -0,0 +1,12 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+// Tạo upload resumable: thông tin media như upload thường, cộng tên và kích thước file
+@Data
+@EqualsAndHashCode(callSuper = true)
+public class UploadSessionRequest extends MediaUploadRequest {
+    private String filename;
+    private long size; // Tổng số byte sẽ gửi
+}
@@ -0,0 +1,17 @@
+package com.ltdd.streamapp.gdrive.payload;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSessionResponse {
+    private String id;
+    private String uploadUrl;    // PATCH các chunk vào đây
+    private long offset;         // Số byte server đã nhận, chunk tiếp theo bắt đầu từ đây
+    private long length;         // Tổng kích thước file
+    private String status;       // ACTIVE, COMPLETED
+    private MediaResponse media; // Media đã tạo, chỉ có khi COMPLETED
+}
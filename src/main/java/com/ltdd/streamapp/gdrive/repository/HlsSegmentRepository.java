@@ -0,0 +1,17 @@
+// com.ltdd.streamapp.gdrive.repository.HlsSegmentRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.HlsSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface HlsSegmentRepository extends JpaRepository<HlsSegment, Long> {
+    List<HlsSegment> findAllByMediaIdAndRenditionOrderBySequenceNumberAsc(Long mediaId, String rendition);
+    Optional<HlsSegment> findByMediaIdAndRenditionAndSequenceNumber(Long mediaId, String rendition, int sequenceNumber);
+    List<HlsSegment> findAllByMediaId(Long mediaId);
+    void deleteAllByMediaId(Long mediaId);
+}
@@ -0,0 +1,31 @@
+// com.ltdd.streamapp.gdrive.repository.IngestJobRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.IngestJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IngestJobRepository extends JpaRepository<IngestJob, String> {
+
+    Optional<IngestJob> findByIdAndOwnerUsername(String id, String ownerUsername);
+
+    List<IngestJob> findAllByStatusInOrderByCreatedAtAsc(Collection<String> statuses);
+
+    List<IngestJob> findAllByStatusInAndUpdatedAtBefore(Collection<String> statuses, LocalDateTime cutoff);
+
+    // Ghi trong chính transaction lưu Media: job có mediaId thì Media đó chắc chắn đã được commit
+    @Modifying
+    @Transactional
+    @Query("UPDATE IngestJob j SET j.mediaId = :mediaId, j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id")
+    int updateMediaId(@Param("id") String id, @Param("mediaId") Long mediaId);
+}
@@ -0,0 +1,19 @@
+// com.ltdd.streamapp.gdrive.repository.MediaContentRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.MediaContent;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface MediaContentRepository extends JpaRepository<MediaContent, Long> {
+    Optional<MediaContent> findByContentSha256AndMediaType(String contentSha256, String mediaType);
+
+    // Khóa dòng trong transaction hiện tại: tăng/giảm referenceCount không bị mất khi upload và xóa chạy song song
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<MediaContent> findWithLockByContentSha256AndMediaType(String contentSha256, String mediaType);
+}
@@ -0,0 +1,10 @@
+// com.ltdd.streamapp.gdrive.repository.MediaKeyframeIndexRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.MediaKeyframeIndex;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MediaKeyframeIndexRepository extends JpaRepository<MediaKeyframeIndex, String> {
+}
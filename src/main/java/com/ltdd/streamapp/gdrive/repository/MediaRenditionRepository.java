@@ -0,0 +1,14 @@
+// com.ltdd.streamapp.gdrive.repository.MediaRenditionRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MediaRenditionRepository extends JpaRepository<MediaRendition, Long> {
+    List<MediaRendition> findAllByMediaIdOrderByHeightAsc(Long mediaId);
+    void deleteAllByMediaId(Long mediaId);
+}
@@ -3,7 +3,11 @@ package com.ltdd.streamapp.gdrive.repository;
 
 import com.ltdd.streamapp.gdrive.model.Media; // Sửa import
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository; // Thêm @Repository nếu chưa có
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -15,6 +19,35 @@ public interface MediaRepository extends JpaRepository<Media, Long> {
     List<Media> findByIsPublicTrue();
     List<Media> findByIsPublicTrueAndTypeIgnoreCase(String type);
 
-    // (Tùy chọn) Nếu bạn muốn tìm theo storageIdentifier (Google Drive File ID)
-    // Optional<Media> findByStorageIdentifier(String storageIdentifier);
+    // Tìm theo storageIdentifier (Google Drive File ID), dùng để kiểm tra quyền khi stream
+    List<Media> findAllByStorageIdentifier(String storageIdentifier);
+    // Nhiều Media có thể dùng chung một file sau khi dedup: luôn chọn cùng một bản (cũ nhất)
+    Optional<Media> findFirstByStorageIdentifierAndTypeOrderByIdAsc(String storageIdentifier, String type);
+    // Kết quả probe đã lưu của cùng một nội dung (cache probe theo SHA-256)
+    Optional<Media> findFirstByContentSha256AndDurationMillisIsNotNull(String contentSha256);
+
+    // Các Media dùng chung output dẫn xuất lưu theo cùng một ID (Media gốc và các bản upload trùng nội dung)
+    Optional<Media> findFirstByIdOrOutputMediaIdOrderByIdAsc(Long id, Long outputMediaId);
+    boolean existsByIdOrOutputMediaId(Long id, Long outputMediaId);
+    long countByIdOrOutputMediaId(Long id, Long outputMediaId);
+
+    @Query("SELECT COALESCE(m.outputMediaId, m.id) FROM Media m WHERE m.id = :id")
+    Optional<Long> findOutputsIdById(@Param("id") Long id);
+
+    // Chỉ cập nhật một cột, để job chạy nền không ghi đè các thay đổi khác của bản ghi (viewCount, ...).
+    // Trạng thái được ghi lên mọi Media dùng chung output với id
+    @Modifying
+    @Transactional
+    @Query("UPDATE Media m SET m.hlsStatus = :status WHERE m.id = :id OR m.outputMediaId = :id")
+    int updateHlsStatus(@Param("id") Long id, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Media m SET m.trickplayStatus = :status WHERE m.id = :id OR m.outputMediaId = :id")
+    int updateTrickplayStatus(@Param("id") Long id, @Param("status") String status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Media m SET m.hlsStatus = :hlsStatus, m.trickplayStatus = :trickplayStatus WHERE m.id = :id")
+    int updateOutputStatuses(@Param("id") Long id, @Param("hlsStatus") String hlsStatus, @Param("trickplayStatus") String trickplayStatus);
 }
\ No newline at end of file
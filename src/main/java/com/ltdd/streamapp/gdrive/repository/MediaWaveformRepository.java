@@ -0,0 +1,10 @@
+// com.ltdd.streamapp.gdrive.repository.MediaWaveformRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.MediaWaveform;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MediaWaveformRepository extends JpaRepository<MediaWaveform, Long> {
+}
@@ -0,0 +1,45 @@
+// com.ltdd.streamapp.gdrive.repository.TranscodeJobRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.TranscodeJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface TranscodeJobRepository extends JpaRepository<TranscodeJob, Long> {
+
+    // Các job đến lượt chạy, ưu tiên cao trước, cùng ưu tiên thì job cũ trước
+    List<TranscodeJob> findByStatusAndNextAttemptAtLessThanEqualOrderByPriorityDescIdAsc(String status, LocalDateTime now, Pageable pageable);
+
+    List<TranscodeJob> findAllByMediaIdOrderByPriorityDesc(Long mediaId);
+
+    // Media còn job chờ hoặc đang chạy (kể cả job chờ retry)
+    boolean existsByMediaIdAndStatusIn(Long mediaId, Collection<String> statuses);
+
+    // Nhận job một cách nguyên tử: chỉ một worker đổi được trạng thái from -> to
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = :to, j.updatedAt = CURRENT_TIMESTAMP WHERE j.id = :id AND j.status = :from")
+    int transitionStatus(@Param("id") Long id, @Param("from") String from, @Param("to") String to);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.status = :to, j.updatedAt = CURRENT_TIMESTAMP WHERE j.status = :from")
+    int transitionAll(@Param("from") String from, @Param("to") String to);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE TranscodeJob j SET j.progressPercent = :progress WHERE j.id = :id")
+    int updateProgress(@Param("id") Long id, @Param("progress") int progress);
+
+    void deleteAllByMediaId(Long mediaId);
+}
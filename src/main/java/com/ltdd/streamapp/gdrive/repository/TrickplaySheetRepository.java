@@ -0,0 +1,16 @@
+// com.ltdd.streamapp.gdrive.repository.TrickplaySheetRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TrickplaySheetRepository extends JpaRepository<TrickplaySheet, Long> {
+    List<TrickplaySheet> findAllByMediaIdOrderBySheetIndexAsc(Long mediaId);
+    Optional<TrickplaySheet> findByMediaIdAndSheetIndex(Long mediaId, int sheetIndex);
+    void deleteAllByMediaId(Long mediaId);
+}
@@ -0,0 +1,36 @@
+// com.ltdd.streamapp.gdrive.repository.UploadSessionRepository.java
+package com.ltdd.streamapp.gdrive.repository;
+
+import com.ltdd.streamapp.gdrive.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+
+    Optional<UploadSession> findByIdAndOwnerUsername(String id, String ownerUsername);
+
+    List<UploadSession> findAllByUpdatedAtBefore(LocalDateTime cutoff);
+
+    // PATCH (receivedBytes) và worker đẩy lên storage (storedBytes) cập nhật cùng một session song song:
+    // mỗi bên chỉ ghi cột của mình để không ghi đè tiến độ của bên kia
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.receivedBytes = :receivedBytes, s.updatedAt = CURRENT_TIMESTAMP WHERE s.id = :id")
+    int updateReceivedBytes(@Param("id") String id, @Param("receivedBytes") long receivedBytes);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.storedBytes = :storedBytes, s.storageIdentifier = :storageIdentifier, "
+            + "s.updatedAt = CURRENT_TIMESTAMP WHERE s.id = :id")
+    int updateStorageProgress(@Param("id") String id, @Param("storedBytes") long storedBytes,
+                              @Param("storageIdentifier") String storageIdentifier);
+}
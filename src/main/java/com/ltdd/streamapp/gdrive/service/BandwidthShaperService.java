@@ -0,0 +1,30 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/BandwidthShaperService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.payload.BandwidthLimits;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token-bucket shaping for the streaming copy loop: per-client and per-file limits, plus a global
+ * budget shared fairly between all active streams. Limits can be changed while streams are running.
+ */
+public interface BandwidthShaperService {
+
+    /** One active stream. Must be closed when the transfer ends so the fair share is recomputed. */
+    interface ShapedStream extends AutoCloseable {
+        /**
+         * Blocks until the stream is allowed to send {@code bytes} more bytes.
+         */
+        void acquire(int bytes) throws InterruptedIOException;
+
+        @Override
+        void close();
+    }
+
+    ShapedStream openStream(String clientKey, String fileIdentifier);
+
+    BandwidthLimits getLimits();
+
+    void updateLimits(BandwidthLimits limits);
+}
@@ -0,0 +1,59 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/HlsPackagingService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.model.HlsSegment;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Background HLS packaging of uploaded videos: the file is split into small immutable segments with ffmpeg,
+ * every segment is stored through {@link StorageService}, and playlists are served from the segment records.
+ */
+public interface HlsPackagingService {
+
+    /** Rendition produced by packaging the uploaded file as-is. */
+    String SOURCE_RENDITION = "source";
+
+    /**
+     * Queues packaging of a video once the current transaction commits.
+     * @param mediaId The saved media record.
+     * @param source The local copy to package. The job takes its own reference, so the caller releases its reference
+     *               as soon as every job has been scheduled.
+     */
+    void schedulePackaging(Long mediaId, WorkCopy source);
+
+    /**
+     * Uploads every segment listed in an ffmpeg VOD playlist and records them under {@code rendition}.
+     * If anything fails, the segments uploaded so far are deleted again.
+     * @param playlist A playlist written by ffmpeg; its segment files must sit in the same directory.
+     * @return The number of stored segments.
+     * @throws IOException if the playlist is empty, an upload fails or the media was deleted in the meantime.
+     */
+    int storeRendition(Long mediaId, String rendition, Path playlist) throws IOException;
+
+    /**
+     * @param uriQuery Query string (without {@code ?}) appended to every variant URI, e.g. the URL signature of a
+     *                 private media, or {@code null}.
+     * @return The HLS master playlist listing every packaged rendition with its measured bandwidth,
+     *         or {@code null} if nothing has been packaged (yet).
+     */
+    String buildMasterPlaylist(Long mediaId, String uriQuery);
+
+    /**
+     * @param uriQuery Query string (without {@code ?}) appended to every segment URI, or {@code null}.
+     * @return The HLS media playlist of a rendition, or {@code null} if the media has not been packaged (yet).
+     */
+    String buildMediaPlaylist(Long mediaId, String rendition, String uriQuery);
+
+    /**
+     * @return The stored segment, or {@code null} if it does not exist.
+     */
+    HlsSegment getSegment(Long mediaId, String rendition, int sequenceNumber);
+
+    /**
+     * Deletes every stored segment of a media (when the media itself is deleted).
+     */
+    void deletePackaging(Long mediaId);
+}
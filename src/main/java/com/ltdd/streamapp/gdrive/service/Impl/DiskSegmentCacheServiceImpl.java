@@ -0,0 +1,486 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/DiskSegmentCacheServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.payload.SegmentCacheStatsResponse;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.util.StreamBufferPool;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
+import com.ltdd.streamapp.gdrive.util.UpstreamBulkhead;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Service
+public class DiskSegmentCacheServiceImpl implements SegmentCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskSegmentCacheServiceImpl.class);
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final StorageService storageService;
+    private final StreamBufferPool streamBufferPool;
+    private final UpstreamBulkhead upstreamBulkhead;
+    private final StreamingMetrics streamingMetrics;
+    private final Path cacheDir;
+    private final long segmentSize;
+    private final long maxSizeBytes;
+
+    // Key "fileId/version.segmentIndex" -> độ dài segment. accessOrder = true nên phần tử đầu tiên luôn là LRU.
+    private final LinkedHashMap<String, Long> segmentIndex = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentSizeBytes = 0; // Được bảo vệ bởi lock của segmentIndex
+    // Key -> số request đang giữa lúc tìm/tải segment và lúc mở được file: không evict (bảo vệ bởi lock của segmentIndex)
+    private final Map<String, Integer> pinnedSegments = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong coalescedMisses = new AtomicLong();
+    private final AtomicLong prefetchedSegments = new AtomicLong();
+
+    // Các segment đang được tải từ storage, để các request đồng thời dùng chung một lần tải
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> inFlightFills = new ConcurrentHashMap<>();
+    // Key của các lần tải đang chạy lúc file bị evictFile: tải xong thì bỏ kết quả thay vì đăng ký lại (bảo vệ bởi lock của segmentIndex)
+    private final Set<String> discardedFills = new HashSet<>();
+
+    public DiskSegmentCacheServiceImpl(@Qualifier("googleDriveStorageService") StorageService storageService,
+                                       StreamBufferPool streamBufferPool,
+                                       UpstreamBulkhead upstreamBulkhead,
+                                       StreamingMetrics streamingMetrics,
+                                       @Value("${app.stream.cache.dir:${java.io.tmpdir}/streamapp-segment-cache}") String cacheDir,
+                                       @Value("${app.stream.cache.segment-size-bytes:1048576}") long segmentSize,
+                                       @Value("${app.stream.cache.max-size-bytes:2147483648}") long maxSizeBytes) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("app.stream.cache.segment-size-bytes must be positive: " + segmentSize);
+        }
+        this.storageService = storageService;
+        this.streamBufferPool = streamBufferPool;
+        this.upstreamBulkhead = upstreamBulkhead;
+        this.streamingMetrics = streamingMetrics;
+        this.cacheDir = Paths.get(cacheDir).toAbsolutePath();
+        this.segmentSize = segmentSize;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Rebuilds the in-memory index from segments left on disk by a previous run,
+     * oldest first so that the LRU order roughly survives a restart.
+     */
+    @PostConstruct
+    void loadExistingSegments() throws IOException {
+        Files.createDirectories(cacheDir);
+        List<Path> segmentFiles;
+        try (Stream<Path> files = Files.walk(cacheDir, 2)) {
+            segmentFiles = new ArrayList<>(files
+                    .filter(p -> Files.isRegularFile(p))
+                    .toList());
+        }
+        segmentFiles.sort(Comparator.comparingLong(this::lastModifiedOrZero));
+        int restored = 0;
+        for (Path file : segmentFiles) {
+            String name = file.getFileName().toString();
+            String baseName = name.endsWith(SEGMENT_SUFFIX) ? name.substring(0, name.length() - SEGMENT_SUFFIX.length()) : null;
+            if (baseName == null || baseName.indexOf('.') < 0 || file.getParent().equals(cacheDir)) {
+                // File tạm (.part) của lần chạy trước bị gián đoạn, hoặc segment cũ chưa có version trong tên
+                Files.deleteIfExists(file);
+                continue;
+            }
+            String key = file.getParent().getFileName() + "/" + baseName;
+            registerSegment(key, Files.size(file));
+            restored++;
+        }
+        logger.info("Segment cache initialized at '{}' (segment size: {} bytes, budget: {} bytes). Restored {} segments, {} bytes.",
+                cacheDir, segmentSize, maxSizeBytes, restored, currentSizeBytes);
+    }
+
+    @Override
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    @Override
+    public FileChannel openSegment(String fileIdentifier, String fileVersion, long segmentIndexNo, long fileSize,
+                                   StreamCancellation cancellation) throws IOException {
+        String key = segmentKey(fileIdentifier, fileVersion, segmentIndexNo);
+        Path segmentPath = segmentPath(key);
+        // Ghim đến khi mở xong: nếu không, segment vừa tải có thể bị lần ghi khác evict trước khi kịp mở
+        // (đã mở thì eviction chỉ xóa tên file, channel vẫn đọc được đến khi đóng)
+        pin(key);
+        try {
+            return openPinnedSegment(key, fileIdentifier, segmentIndexNo, fileSize, segmentPath, cancellation);
+        } finally {
+            unpin(key);
+        }
+    }
+
+    private FileChannel openPinnedSegment(String key, String fileIdentifier, long segmentIndexNo, long fileSize, Path segmentPath,
+                                          StreamCancellation cancellation) throws IOException {
+        boolean cached;
+        synchronized (segmentIndex) {
+            cached = segmentIndex.get(key) != null; // get() cũng cập nhật thứ tự LRU
+        }
+        if (cached) {
+            try {
+                FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ);
+                hits.incrementAndGet();
+                return channel;
+            } catch (NoSuchFileException e) {
+                logger.warn("Cached segment {} disappeared from disk, refetching from storage.", key);
+                unregisterSegment(key);
+            }
+        }
+
+        misses.incrementAndGet();
+        fillSegmentOnce(key, fileIdentifier, segmentIndexNo, fileSize, segmentPath, cancellation, false);
+        return FileChannel.open(segmentPath, StandardOpenOption.READ);
+    }
+
+    private void pin(String key) {
+        synchronized (segmentIndex) {
+            pinnedSegments.merge(key, 1, Integer::sum);
+        }
+    }
+
+    private void unpin(String key) {
+        List<String> evicted;
+        synchronized (segmentIndex) {
+            pinnedSegments.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+            // Segment được ghim có thể đã làm cache vượt ngân sách tạm thời
+            evicted = evictOverBudget(null);
+        }
+        deleteEvicted(evicted);
+    }
+
+    @Override
+    public boolean prefetchSegment(String fileIdentifier, String fileVersion, long segmentIndexNo, long fileSize) throws IOException {
+        String key = segmentKey(fileIdentifier, fileVersion, segmentIndexNo);
+        synchronized (segmentIndex) {
+            if (segmentIndex.containsKey(key)) { // containsKey() không làm thay đổi thứ tự LRU
+                return false;
+            }
+        }
+        boolean fetched = fillSegmentOnce(key, fileIdentifier, segmentIndexNo, fileSize, segmentPath(key), StreamCancellation.NONE, true);
+        if (fetched) {
+            prefetchedSegments.incrementAndGet();
+        }
+        return fetched;
+    }
+
+    /**
+     * Single-flight: khi nhiều request cùng miss một segment, chỉ request đầu tiên tải từ storage,
+     * các request còn lại chờ lần tải đó hoàn tất rồi đọc segment từ disk.
+     * Nếu lần tải chung bị hủy (client của nó ngắt kết nối) hoặc là read-ahead bị bỏ qua vì hết slot,
+     * request đang chờ sẽ tự tải lại thay vì lỗi theo.
+     * @param readAhead {@code true} cho read-ahead: không chờ lần tải khác và không xếp hàng chờ slot upstream.
+     * @return {@code true} nếu chính lời gọi này đã tải segment từ storage.
+     */
+    private boolean fillSegmentOnce(String key, String fileIdentifier, long segmentIndexNo, long fileSize, Path segmentPath,
+                                    StreamCancellation cancellation, boolean readAhead) throws IOException {
+        while (true) {
+            CompletableFuture<Void> fill = new CompletableFuture<>();
+            CompletableFuture<Void> inFlight = inFlightFills.putIfAbsent(key, fill);
+            if (inFlight != null) {
+                if (readAhead) {
+                    return false; // Đã có request khác đang tải segment này
+                }
+                coalescedMisses.incrementAndGet();
+                awaitFill(inFlight, key);
+                synchronized (segmentIndex) {
+                    if (segmentIndex.containsKey(key)) {
+                        return false;
+                    }
+                }
+                continue;
+            }
+
+            try {
+                boolean filledMeanwhile;
+                synchronized (segmentIndex) {
+                    // Một lần tải khác có thể vừa xong giữa lúc kiểm tra cache và lúc đăng ký in-flight
+                    filledMeanwhile = segmentIndex.containsKey(key);
+                }
+                boolean fetched = !filledMeanwhile && fillSegment(key, fileIdentifier, segmentIndexNo, fileSize, segmentPath, cancellation, readAhead);
+                fill.complete(null);
+                return fetched;
+            } catch (IOException | RuntimeException e) {
+                if (cancellation.isCancelled()) {
+                    fill.cancel(false); // Không phải lỗi của storage: để request đang chờ tự tải lại
+                } else {
+                    fill.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                synchronized (segmentIndex) {
+                    discardedFills.remove(key); // Lần tải lỗi cũng không được để lại dấu cho lần tải sau
+                }
+                inFlightFills.remove(key, fill);
+            }
+        }
+    }
+
+    private void awaitFill(CompletableFuture<Void> inFlight, String key) throws IOException {
+        try {
+            inFlight.get();
+        } catch (CancellationException e) {
+            // Lần tải chung bị hủy theo client của nó; người gọi sẽ thử lại
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for segment " + key + " to be fetched.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioException) {
+                throw new IOException("Shared fetch of segment " + key + " failed: " + ioException.getMessage(), ioException);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException; // Ví dụ UpstreamBusyException: giữ nguyên để trả 503
+            }
+            throw new IOException("Shared fetch of segment " + key + " failed.", cause);
+        }
+    }
+
+    /**
+     * @return {@code false} nếu là read-ahead và không còn slot upstream trống (bỏ qua, không tải).
+     */
+    private boolean fillSegment(String key, String fileIdentifier, long segmentIndexNo, long fileSize, Path segmentPath,
+                                StreamCancellation cancellation, boolean readAhead) throws IOException {
+        long segmentStart = segmentIndexNo * segmentSize;
+        long segmentLength = Math.min(segmentSize, fileSize - segmentStart);
+        if (segmentStart < 0 || segmentLength <= 0) {
+            throw new IOException("Segment " + segmentIndexNo + " is outside of file " + fileIdentifier + " (size " + fileSize + ")");
+        }
+
+        UpstreamBulkhead.Permit permit = readAhead ? upstreamBulkhead.tryAcquire() : upstreamBulkhead.acquire();
+        if (permit == null) {
+            logger.debug("Skipping read-ahead of segment {} of file {}: no free upstream slot.", segmentIndexNo, fileIdentifier);
+            return false;
+        }
+        try (permit) {
+            downloadSegment(fileIdentifier, segmentIndexNo, segmentStart, segmentLength, segmentPath, cancellation);
+        }
+        logger.debug("Filled segment {} of file {} ({} bytes at offset {}).", segmentIndexNo, fileIdentifier, segmentLength, segmentStart);
+        registerFilledSegment(key, segmentLength, segmentPath);
+        return true;
+    }
+
+    private void downloadSegment(String fileIdentifier, long segmentIndexNo, long segmentStart, long segmentLength, Path segmentPath,
+                                 StreamCancellation cancellation) throws IOException {
+        if (cancellation.isCancelled()) {
+            throw new InterruptedIOException("Stream cancelled before segment " + segmentIndexNo + " of " + fileIdentifier + " was fetched.");
+        }
+        Files.createDirectories(segmentPath.getParent());
+        Path tempFile = Files.createTempFile(segmentPath.getParent(), segmentIndexNo + "-", ".part");
+        byte[] buffer = streamBufferPool.acquire();
+        try {
+            try (InputStream in = openStorageRange(fileIdentifier, segmentStart, segmentStart + segmentLength - 1);
+                 // Client ngắt kết nối: đóng luôn kết nối tới Drive thay vì đợi nó trả hết dữ liệu hoặc timeout
+                 StreamCancellation.Registration ignored = cancellation.onCancel(() -> closeQuietly(in));
+                 OutputStream out = Files.newOutputStream(tempFile)) {
+                long remaining = segmentLength;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        throw new IOException("Storage stream for " + fileIdentifier + " ended " + remaining
+                                + " bytes before the end of segment " + segmentIndexNo);
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            Files.move(tempFile, segmentPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            streamBufferPool.release(buffer);
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // Chỉ đo đến lúc Drive trả header (độ trễ của lời gọi), thời gian đọc body phụ thuộc kích thước segment
+    private InputStream openStorageRange(String fileIdentifier, long start, long end) throws IOException {
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            InputStream in = storageService.downloadMediaRange(fileIdentifier, start, end);
+            success = true;
+            return in;
+        } finally {
+            streamingMetrics.recordDriveRequest("media", success, startNanos);
+        }
+    }
+
+    private void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            logger.debug("Error while aborting storage download: {}", e.getMessage());
+        }
+    }
+
+    private void registerSegment(String key, long length) {
+        List<String> evicted;
+        synchronized (segmentIndex) {
+            Long previous = segmentIndex.put(key, length);
+            currentSizeBytes += length - (previous != null ? previous : 0);
+            evicted = evictOverBudget(key); // Không bao giờ evict segment vừa ghi xong
+        }
+        deleteEvicted(evicted);
+    }
+
+    // Như registerSegment, trừ khi file đã bị evictFile trong lúc tải: khi đó xóa segment vừa tải và báo lỗi
+    private void registerFilledSegment(String key, long length, Path segmentPath) throws IOException {
+        List<String> evicted;
+        synchronized (segmentIndex) {
+            if (discardedFills.remove(key)) {
+                evicted = null;
+            } else {
+                Long previous = segmentIndex.put(key, length);
+                currentSizeBytes += length - (previous != null ? previous : 0);
+                evicted = evictOverBudget(key);
+            }
+        }
+        if (evicted == null) {
+            deleteQuietly(segmentPath);
+            throw new IOException("Segment " + key + " was evicted while it was being fetched from storage.");
+        }
+        deleteEvicted(evicted);
+    }
+
+    // Gọi khi đang giữ lock của segmentIndex. Bỏ qua segment đang được ghim và {@code keep}, evict theo thứ tự LRU.
+    private List<String> evictOverBudget(String keep) {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = segmentIndex.entrySet().iterator();
+        while (currentSizeBytes > maxSizeBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if (eldest.getKey().equals(keep) || pinnedSegments.containsKey(eldest.getKey())) {
+                continue;
+            }
+            currentSizeBytes -= eldest.getValue();
+            evicted.add(eldest.getKey());
+            it.remove();
+        }
+        return evicted;
+    }
+
+    private void deleteEvicted(List<String> evicted) {
+        for (String evictedKey : evicted) {
+            evictions.incrementAndGet();
+            deleteQuietly(cacheDir.resolve(evictedKey + SEGMENT_SUFFIX));
+        }
+    }
+
+    private void unregisterSegment(String key) {
+        synchronized (segmentIndex) {
+            Long length = segmentIndex.remove(key);
+            if (length != null) {
+                currentSizeBytes -= length;
+            }
+        }
+    }
+
+    @Override
+    public void evictFile(String fileIdentifier) {
+        String prefix = sanitizeFileId(fileIdentifier) + "/";
+        int removed = 0;
+        synchronized (segmentIndex) {
+            Iterator<Map.Entry<String, Long>> it = segmentIndex.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    currentSizeBytes -= entry.getValue();
+                    it.remove();
+                    removed++;
+                }
+            }
+            // Lần tải đang chạy sẽ xong sau khi file đã bị xóa: đánh dấu để kết quả của nó không vào lại cache
+            for (String inFlightKey : inFlightFills.keySet()) {
+                if (inFlightKey.startsWith(prefix)) {
+                    discardedFills.add(inFlightKey);
+                }
+            }
+        }
+        Path fileDir = cacheDir.resolve(sanitizeFileId(fileIdentifier));
+        if (Files.isDirectory(fileDir)) {
+            try (Stream<Path> files = Files.list(fileDir)) {
+                files.forEach(this::deleteQuietly);
+            } catch (IOException e) {
+                logger.warn("Could not list cached segments of file {}: {}", fileIdentifier, e.getMessage());
+            }
+            deleteQuietly(fileDir);
+        }
+        logger.info("Evicted {} cached segments of file {}.", removed, fileIdentifier);
+    }
+
+    @Override
+    public SegmentCacheStatsResponse getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        long segmentCount;
+        long sizeBytes;
+        synchronized (segmentIndex) {
+            segmentCount = segmentIndex.size();
+            sizeBytes = currentSizeBytes;
+        }
+        return new SegmentCacheStatsResponse(hitCount, missCount, total == 0 ? 0.0 : (double) hitCount / total,
+                coalescedMisses.get(), prefetchedSegments.get(), evictions.get(), segmentCount, sizeBytes, maxSizeBytes, segmentSize);
+    }
+
+    // Version nằm trong tên file: file bị thay trên storage có version mới nên không bao giờ đọc nhầm segment cũ
+    private String segmentKey(String fileIdentifier, String fileVersion, long segmentIndexNo) {
+        return sanitizeFileId(fileIdentifier) + "/" + sanitizeFileId(fileVersion) + "." + segmentIndexNo;
+    }
+
+    private Path segmentPath(String key) {
+        return cacheDir.resolve(key + SEGMENT_SUFFIX);
+    }
+
+    // Drive File ID chỉ gồm [A-Za-z0-9_-], nhưng vẫn lọc để không thể thoát ra ngoài cacheDir
+    private String sanitizeFileId(String fileIdentifier) {
+        return fileIdentifier.replaceAll("[^a-zA-Z0-9_\\-]", "_");
+    }
+
+    private long lastModifiedOrZero(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // Trên Windows file đang được đọc không xóa được; lần khởi động sau nó sẽ được index lại và evict theo ngân sách
+            logger.warn("Could not delete cached segment file {}: {}", path, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/DriveMetadataCacheServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.File;
+import com.ltdd.streamapp.gdrive.service.MediaMetadataCacheService;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Service
+public class DriveMetadataCacheServiceImpl implements MediaMetadataCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DriveMetadataCacheServiceImpl.class);
+    // md5Checksum/version/modifiedTime dùng làm validator (ETag, Last-Modified) cho conditional request
+    private static final String STREAM_METADATA_FIELDS = "id, name, mimeType, size, md5Checksum, version, modifiedTime";
+
+    private final Drive driveService;
+    private final StreamingMetrics streamingMetrics;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    // accessOrder = true + removeEldestEntry => LRU có giới hạn số phần tử
+    private final Map<String, CachedMetadata> cache;
+
+    // metadata == null nghĩa là Drive đã trả về 404 (negative entry)
+    private record CachedMetadata(File metadata, long expiresAtMillis) {
+    }
+
+    public DriveMetadataCacheServiceImpl(Drive driveService,
+                                         StreamingMetrics streamingMetrics,
+                                         @Value("${app.stream.metadata-cache.ttl-seconds:300}") long ttlSeconds,
+                                         @Value("${app.stream.metadata-cache.negative-ttl-seconds:30}") long negativeTtlSeconds,
+                                         @Value("${app.stream.metadata-cache.max-entries:10000}") int maxEntries) {
+        this.driveService = driveService;
+        this.streamingMetrics = streamingMetrics;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.negativeTtlMillis = negativeTtlSeconds * 1000;
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedMetadata> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public File getFileMetadata(String fileId) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            CachedMetadata cached = cache.get(fileId);
+            if (cached != null) {
+                if (cached.expiresAtMillis() > now) {
+                    return cached.metadata();
+                }
+                cache.remove(fileId);
+            }
+        }
+
+        File metadata;
+        long driveCallStart = System.nanoTime();
+        try {
+            metadata = driveService.files().get(fileId)
+                    .setFields(STREAM_METADATA_FIELDS)
+                    .execute();
+            streamingMetrics.recordDriveRequest("metadata", true, driveCallStart);
+        } catch (GoogleJsonResponseException e) {
+            // 404 vẫn là một câu trả lời hợp lệ của Drive, chỉ các lỗi khác mới tính là error
+            streamingMetrics.recordDriveRequest("metadata", e.getStatusCode() == 404, driveCallStart);
+            if (e.getStatusCode() != 404) {
+                throw e;
+            }
+            logger.info("Drive file {} not found, caching negative result for {} ms.", fileId, negativeTtlMillis);
+            metadata = null;
+        }
+
+        synchronized (cache) {
+            cache.put(fileId, new CachedMetadata(metadata, now + (metadata != null ? ttlMillis : negativeTtlMillis)));
+        }
+        return metadata;
+    }
+
+    @Override
+    public void invalidate(String fileId) {
+        synchronized (cache) {
+            cache.remove(fileId);
+        }
+        logger.debug("Invalidated cached Drive metadata for file {}", fileId);
+    }
+}
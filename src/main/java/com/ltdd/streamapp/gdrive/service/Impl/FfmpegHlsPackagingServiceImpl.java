@@ -0,0 +1,326 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/FfmpegHlsPackagingServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.HlsSegment;
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import com.ltdd.streamapp.gdrive.repository.HlsSegmentRepository;
+import com.ltdd.streamapp.gdrive.repository.MediaRenditionRepository;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.service.HlsPackagingService;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.util.FfmpegRunner;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class FfmpegHlsPackagingServiceImpl implements HlsPackagingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegHlsPackagingServiceImpl.class);
+
+    static final String STATUS_PENDING = "PENDING";
+    static final String STATUS_PROCESSING = "PROCESSING";
+    static final String STATUS_READY = "READY";
+    static final String STATUS_FAILED = "FAILED";
+
+    private final MediaRepository mediaRepository;
+    private final HlsSegmentRepository hlsSegmentRepository;
+    private final MediaRenditionRepository mediaRenditionRepository;
+    private final StorageService storageService;
+    private final SegmentCacheService segmentCacheService;
+    private final boolean enabled;
+    private final int segmentSeconds;
+    private final long timeoutSeconds;
+    private final Path workDir;
+    private final ThreadPoolExecutor packagingExecutor;
+
+    /** Một segment trong playlist do ffmpeg sinh ra. */
+    record PlaylistEntry(double durationSeconds, String fileName) {
+    }
+
+    public FfmpegHlsPackagingServiceImpl(MediaRepository mediaRepository,
+                                         HlsSegmentRepository hlsSegmentRepository,
+                                         MediaRenditionRepository mediaRenditionRepository,
+                                         @Qualifier("googleDriveStorageService") StorageService storageService,
+                                         SegmentCacheService segmentCacheService,
+                                         @Value("${app.hls.enabled:true}") boolean enabled,
+                                         @Value("${app.hls.segment-seconds:6}") int segmentSeconds,
+                                         @Value("${app.hls.timeout-seconds:1800}") long timeoutSeconds,
+                                         @Value("${app.hls.work-dir:${java.io.tmpdir}/streamapp-hls}") String workDir,
+                                         @Value("${app.hls.workers:1}") int workers,
+                                         @Value("${app.hls.queue-capacity:16}") int queueCapacity) {
+        this.mediaRepository = mediaRepository;
+        this.hlsSegmentRepository = hlsSegmentRepository;
+        this.mediaRenditionRepository = mediaRenditionRepository;
+        this.storageService = storageService;
+        this.segmentCacheService = segmentCacheService;
+        this.enabled = enabled;
+        this.segmentSeconds = segmentSeconds;
+        this.timeoutSeconds = timeoutSeconds;
+        this.workDir = Paths.get(workDir).toAbsolutePath();
+        AtomicInteger threadCount = new AtomicInteger();
+        // Đóng gói tốn CPU và băng thông upload: ít worker, hàng đợi có giới hạn
+        this.packagingExecutor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "hls-packager-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.packagingExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        packagingExecutor.shutdownNow();
+    }
+
+    @Override
+    public void schedulePackaging(Long mediaId, WorkCopy source) {
+        if (!enabled) {
+            return;
+        }
+        mediaRepository.updateHlsStatus(mediaId, STATUS_PENDING);
+        source.retain();
+        // Chỉ chạy khi bản ghi Media đã thực sự được commit
+        WorkCopy.afterCommit(() -> {
+            try {
+                packagingExecutor.execute(() -> runPackaging(mediaId, source));
+            } catch (RejectedExecutionException e) {
+                logger.warn("HLS packaging queue is full, media {} will only be available as progressive download.", mediaId);
+                mediaRepository.updateHlsStatus(mediaId, STATUS_FAILED);
+                source.release();
+            }
+        }, source::release);
+    }
+
+    private void runPackaging(Long mediaId, WorkCopy source) {
+        long startNanos = System.nanoTime();
+        Path jobDir = null;
+        try {
+            mediaRepository.updateHlsStatus(mediaId, STATUS_PROCESSING);
+            Files.createDirectories(workDir);
+            jobDir = Files.createTempDirectory(workDir, "media-" + mediaId + "-");
+            Path playlist = jobDir.resolve("index.m3u8");
+            segmentWithFfmpeg(source.file(), jobDir, playlist);
+            int segmentCount = storeRendition(mediaId, SOURCE_RENDITION, playlist);
+            mediaRepository.updateHlsStatus(mediaId, STATUS_READY);
+            logger.info("HLS packaging of media {} finished in {} ms: {} segments.", mediaId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), segmentCount);
+        } catch (Exception e) {
+            logger.error("HLS packaging of media {} failed: {}", mediaId, e.getMessage(), e);
+            mediaRepository.updateHlsStatus(mediaId, STATUS_FAILED);
+        } finally {
+            source.release();
+            if (jobDir != null) {
+                WorkCopy.deleteRecursively(jobDir);
+            }
+        }
+    }
+
+    @Override
+    public int storeRendition(Long mediaId, String rendition, Path playlist) throws IOException {
+        List<PlaylistEntry> entries = parsePlaylist(Files.readAllLines(playlist, StandardCharsets.UTF_8));
+        if (entries.isEmpty()) {
+            throw new IOException("ffmpeg produced an empty HLS playlist");
+        }
+        Path segmentDir = playlist.toAbsolutePath().getParent();
+        List<String> uploadedIds = new ArrayList<>();
+        try {
+            List<HlsSegment> segments = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                PlaylistEntry entry = entries.get(i);
+                Path segmentFile = segmentDir.resolve(entry.fileName());
+                String storageId = storageService.uploadMediaFile(segmentFile, "VIDEO",
+                        "hls-" + mediaId + "-" + rendition + "-" + i + ".ts");
+                uploadedIds.add(storageId);
+
+                HlsSegment segment = new HlsSegment();
+                segment.setMediaId(mediaId);
+                segment.setRendition(rendition);
+                segment.setSequenceNumber(i);
+                segment.setDurationSeconds(entry.durationSeconds());
+                segment.setStorageIdentifier(storageId);
+                segment.setSizeBytes(Files.size(segmentFile));
+                segments.add(segment);
+            }
+
+            // Bản upload trùng nội dung dùng chung segment: chỉ bỏ khi mọi Media dùng chúng đã bị xóa
+            if (!mediaRepository.existsByIdOrOutputMediaId(mediaId, mediaId)) {
+                throw new IOException("media was deleted while it was being packaged");
+            }
+            hlsSegmentRepository.saveAll(segments);
+            return segments.size();
+        } catch (IOException | RuntimeException e) {
+            for (String storageId : uploadedIds) {
+                storageService.deleteMediaFile(storageId);
+            }
+            throw e;
+        }
+    }
+
+    private void segmentWithFfmpeg(Path input, Path jobDir, Path playlist) throws IOException {
+        List<String> hlsOutput = List.of(
+                "-f", "hls",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_filename", jobDir.resolve("seg_%05d.ts").toString(),
+                "-y", playlist.toString());
+        List<String> copyArgs = new ArrayList<>(List.of(
+                "-i", input.toString(),
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-c", "copy")); // Chỉ cắt theo keyframe, không encode lại
+        copyArgs.addAll(hlsOutput);
+        try {
+            FfmpegRunner.run(copyArgs, timeoutSeconds);
+        } catch (IOException e) {
+            // Codec không đặt được vào MPEG-TS (VP9, ...): encode lại sang H.264/AAC
+            logger.warn("Stream-copy HLS packaging failed ({}), re-encoding to H.264/AAC.", e.getMessage());
+            List<String> encodeArgs = new ArrayList<>(List.of(
+                    "-i", input.toString(),
+                    "-map", "0:v:0", "-map", "0:a:0?",
+                    "-c:v", "libx264", "-preset", "veryfast",
+                    "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                    "-c:a", "aac"));
+            encodeArgs.addAll(hlsOutput);
+            FfmpegRunner.run(encodeArgs, timeoutSeconds);
+        }
+    }
+
+    /**
+     * Đọc các cặp {@code #EXTINF:<duration>,} + URI từ playlist VOD do ffmpeg sinh ra.
+     */
+    static List<PlaylistEntry> parsePlaylist(List<String> lines) {
+        List<PlaylistEntry> entries = new ArrayList<>();
+        Double pendingDuration = null;
+        for (String rawLine : lines) {
+            String line = rawLine.trim();
+            if (line.startsWith("#EXTINF:")) {
+                String value = line.substring("#EXTINF:".length());
+                int comma = value.indexOf(',');
+                pendingDuration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+            } else if (!line.isEmpty() && !line.startsWith("#") && pendingDuration != null) {
+                entries.add(new PlaylistEntry(pendingDuration, Paths.get(line).getFileName().toString()));
+                pendingDuration = null;
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String buildMediaPlaylist(Long mediaId, String rendition, String uriQuery) {
+        List<HlsSegment> segments = hlsSegmentRepository.findAllByMediaIdAndRenditionOrderBySequenceNumberAsc(mediaId, rendition);
+        if (segments.isEmpty()) {
+            return null;
+        }
+        double maxDuration = segments.stream().mapToDouble(HlsSegment::getDurationSeconds).max().orElse(segmentSeconds);
+        StringBuilder playlist = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n")
+                .append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(maxDuration)).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+                .append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        for (HlsSegment segment : segments) {
+            playlist.append(String.format(Locale.US, "#EXTINF:%.3f,", segment.getDurationSeconds())).append('\n')
+                    .append(segment.getSequenceNumber()).append(".ts").append(uriQuery != null ? "?" + uriQuery : "")
+                    .append('\n'); // URI tương đối so với playlist
+        }
+        return playlist.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String buildMasterPlaylist(Long mediaId, String uriQuery) {
+        List<HlsSegment> allSegments = hlsSegmentRepository.findAllByMediaId(mediaId);
+        if (allSegments.isEmpty()) {
+            return null;
+        }
+        Map<String, MediaRendition> renditions = mediaRenditionRepository.findAllByMediaIdOrderByHeightAsc(mediaId).stream()
+                .collect(Collectors.toMap(MediaRendition::getName, Function.identity()));
+
+        // BANDWIDTH (bắt buộc) là bitrate đỉnh của một segment, AVERAGE-BANDWIDTH là bitrate trung bình, đo trên chính các segment
+        List<VariantStats> variants = allSegments.stream()
+                .collect(Collectors.groupingBy(HlsSegment::getRendition, TreeMap::new, Collectors.toList()))
+                .entrySet().stream()
+                .map(group -> VariantStats.of(group.getKey(), group.getValue()))
+                .sorted(Comparator.comparingLong(VariantStats::averageBitsPerSecond))
+                .toList();
+
+        StringBuilder playlist = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:3\n");
+        for (VariantStats variant : variants) {
+            playlist.append("#EXT-X-STREAM-INF:BANDWIDTH=").append(variant.peakBitsPerSecond())
+                    .append(",AVERAGE-BANDWIDTH=").append(variant.averageBitsPerSecond());
+            MediaRendition rendition = renditions.get(variant.rendition());
+            if (rendition != null && rendition.getWidth() > 0 && rendition.getHeight() > 0) {
+                playlist.append(",RESOLUTION=").append(rendition.getWidth()).append('x').append(rendition.getHeight());
+            }
+            playlist.append('\n').append(variant.rendition()).append("/playlist.m3u8")
+                    .append(uriQuery != null ? "?" + uriQuery : "").append('\n'); // URI tương đối so với master
+        }
+        return playlist.toString();
+    }
+
+    private record VariantStats(String rendition, long peakBitsPerSecond, long averageBitsPerSecond) {
+        static VariantStats of(String rendition, List<HlsSegment> segments) {
+            double peak = 0;
+            double totalSeconds = 0;
+            long totalBytes = 0;
+            for (HlsSegment segment : segments) {
+                if (segment.getDurationSeconds() > 0) {
+                    peak = Math.max(peak, segment.getSizeBytes() * 8 / segment.getDurationSeconds());
+                }
+                totalSeconds += segment.getDurationSeconds();
+                totalBytes += segment.getSizeBytes();
+            }
+            long average = totalSeconds > 0 ? (long) Math.ceil(totalBytes * 8 / totalSeconds) : 0;
+            return new VariantStats(rendition, Math.max((long) Math.ceil(peak), average), average);
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public HlsSegment getSegment(Long mediaId, String rendition, int sequenceNumber) {
+        return hlsSegmentRepository.findByMediaIdAndRenditionAndSequenceNumber(mediaId, rendition, sequenceNumber).orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public void deletePackaging(Long mediaId) {
+        List<HlsSegment> segments = hlsSegmentRepository.findAllByMediaId(mediaId);
+        for (HlsSegment segment : segments) {
+            storageService.deleteMediaFile(segment.getStorageIdentifier());
+            segmentCacheService.evictFile(segment.getStorageIdentifier());
+        }
+        hlsSegmentRepository.deleteAllByMediaId(mediaId);
+        if (!segments.isEmpty()) {
+            logger.info("Deleted {} HLS segments of media {}.", segments.size(), mediaId);
+        }
+    }
+}
@@ -0,0 +1,715 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/FfmpegTranscodingServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.Media;
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import com.ltdd.streamapp.gdrive.model.TranscodeJob;
+import com.ltdd.streamapp.gdrive.payload.TranscodeJobResponse;
+import com.ltdd.streamapp.gdrive.repository.MediaRenditionRepository;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.repository.TranscodeJobRepository;
+import com.ltdd.streamapp.gdrive.service.HlsPackagingService;
+import com.ltdd.streamapp.gdrive.service.MediaMetadataCacheService;
+import com.ltdd.streamapp.gdrive.service.MediaProbeService;
+import com.ltdd.streamapp.gdrive.service.MediaProbeService.ProbeResult;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.service.TranscodingService;
+import com.ltdd.streamapp.gdrive.service.WaveformService;
+import com.ltdd.streamapp.gdrive.util.FfmpegRunner;
+import com.ltdd.streamapp.gdrive.util.UpstreamBulkhead;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+@Service
+public class FfmpegTranscodingServiceImpl implements TranscodingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegTranscodingServiceImpl.class);
+
+    static final String STATUS_QUEUED = "QUEUED";
+    static final String STATUS_RUNNING = "RUNNING";
+    static final String STATUS_DONE = "DONE";
+    static final String STATUS_FAILED = "FAILED";
+
+    static final String KIND_VIDEO = "VIDEO";
+    static final String KIND_AUDIO = "AUDIO";
+    static final String KIND_WAVEFORM = "WAVEFORM";
+
+    static final String WAVEFORM_RENDITION = "waveform";
+
+    // Encode audio chỉ mất vài giây: chạy trước mọi bậc video (ưu tiên 1..n)
+    private static final int AUDIO_PRIORITY_BASE = 100;
+    // Peak waveform cần ngay ở lần xem đầu và chỉ decode, không encode: chạy trước cả audio
+    private static final int WAVEFORM_PRIORITY = 200;
+
+    /** Một bậc của thang bitrate: chiều cao và bitrate video đích. */
+    record Rung(int height, int videoBitrateKbps) {
+        String name() {
+            return height + "p";
+        }
+    }
+
+    /** Một rendition audio cho MUSIC: codec ("opus" hoặc "aac") và bitrate đích. */
+    record AudioRung(String codec, int kbps) {
+        String name() {
+            return codec + "-" + kbps + "k";
+        }
+
+        String mimeType() {
+            return codec.equals("opus") ? "audio/ogg" : "audio/mp4";
+        }
+
+        String extension() {
+            return codec.equals("opus") ? ".ogg" : ".m4a";
+        }
+    }
+
+    private final TranscodeJobRepository transcodeJobRepository;
+    private final MediaRenditionRepository mediaRenditionRepository;
+    private final MediaRepository mediaRepository;
+    private final HlsPackagingService hlsPackagingService;
+    private final WaveformService waveformService;
+    private final StorageService storageService;
+    private final MediaMetadataCacheService mediaMetadataCacheService;
+    private final MediaProbeService mediaProbeService;
+    private final SegmentCacheService segmentCacheService;
+    private final UpstreamBulkhead upstreamBulkhead;
+    private final boolean enabled;
+    private final boolean waveformEnabled;
+    private final List<Rung> ladder;
+    private final List<AudioRung> audioLadder;
+    private final int segmentSeconds;
+    private final int maxAttempts;
+    private final long retryBaseDelaySeconds;
+    private final long pollIntervalMs;
+    private final long timeoutSeconds;
+    private final Path workDir;
+    private final int workers;
+
+    // Mỗi permit là một worker rảnh; dispatcher chỉ nhận job khi còn permit nên hàng đợi thật nằm trong DB
+    private final Semaphore freeWorkers;
+    private final ThreadPoolExecutor workerPool;
+    private final ScheduledExecutorService dispatcher;
+
+    // Bản sao cục bộ của bản gốc theo media (bản upload, hoặc bản tải từ storage một lần), dùng chung cho mọi job của media đó
+    // thay vì mỗi job tải lại; trả khi media hết job chờ/đang chạy
+    private final Map<Long, WorkCopy> localSources = new ConcurrentHashMap<>();
+    // Mỗi media chỉ một worker tải bản gốc, các worker khác chờ rồi dùng chung
+    private final Map<Long, Object> sourceLocks = new ConcurrentHashMap<>();
+
+    public FfmpegTranscodingServiceImpl(TranscodeJobRepository transcodeJobRepository,
+                                        MediaRenditionRepository mediaRenditionRepository,
+                                        MediaRepository mediaRepository,
+                                        HlsPackagingService hlsPackagingService,
+                                        WaveformService waveformService,
+                                        @Qualifier("googleDriveStorageService") StorageService storageService,
+                                        MediaMetadataCacheService mediaMetadataCacheService,
+                                        MediaProbeService mediaProbeService,
+                                        SegmentCacheService segmentCacheService,
+                                        UpstreamBulkhead upstreamBulkhead,
+                                        @Value("${app.transcode.enabled:true}") boolean enabled,
+                                        @Value("${app.waveform.enabled:true}") boolean waveformEnabled,
+                                        @Value("${app.transcode.ladder:360:800,720:2800,1080:5000}") String ladder,
+                                        @Value("${app.transcode.audio-ladder:opus:64,aac:96}") String audioLadder,
+                                        @Value("${app.hls.segment-seconds:6}") int segmentSeconds,
+                                        @Value("${app.transcode.workers:0}") int workers,
+                                        @Value("${app.transcode.max-attempts:3}") int maxAttempts,
+                                        @Value("${app.transcode.retry-base-delay-seconds:60}") long retryBaseDelaySeconds,
+                                        @Value("${app.transcode.poll-interval-ms:5000}") long pollIntervalMs,
+                                        @Value("${app.transcode.timeout-seconds:3600}") long timeoutSeconds,
+                                        @Value("${app.transcode.work-dir:${java.io.tmpdir}/streamapp-transcode}") String workDir) {
+        this.transcodeJobRepository = transcodeJobRepository;
+        this.mediaRenditionRepository = mediaRenditionRepository;
+        this.mediaRepository = mediaRepository;
+        this.hlsPackagingService = hlsPackagingService;
+        this.waveformService = waveformService;
+        this.storageService = storageService;
+        this.mediaMetadataCacheService = mediaMetadataCacheService;
+        this.mediaProbeService = mediaProbeService;
+        this.segmentCacheService = segmentCacheService;
+        this.upstreamBulkhead = upstreamBulkhead;
+        this.enabled = enabled;
+        this.waveformEnabled = waveformEnabled;
+        this.ladder = parseLadder(ladder);
+        this.audioLadder = parseAudioLadder(audioLadder);
+        this.segmentSeconds = segmentSeconds;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseDelaySeconds = retryBaseDelaySeconds;
+        this.pollIntervalMs = pollIntervalMs;
+        this.timeoutSeconds = timeoutSeconds;
+        this.workDir = Paths.get(workDir).toAbsolutePath();
+        // 0 = một worker cho mỗi core; mỗi ffmpeg chạy một thread encode nên pool giới hạn đúng số core bị chiếm
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.freeWorkers = new Semaphore(this.workers);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.workerPool = new ThreadPoolExecutor(this.workers, this.workers, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "transcode-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY); // Không tranh CPU với các thread phục vụ request
+                    return thread;
+                });
+        this.workerPool.allowCoreThreadTimeOut(true);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transcode-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // "360:800,720:2800" -> [360p @ 800 kbps, 720p @ 2800 kbps], sắp theo chiều cao tăng dần
+    static List<Rung> parseLadder(String ladder) {
+        List<Rung> rungs = new ArrayList<>();
+        for (String entry : ladder.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            String[] parts = trimmed.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid transcode ladder entry '" + trimmed + "', expected <height>:<kbps>");
+            }
+            rungs.add(new Rung(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim())));
+        }
+        rungs.sort(Comparator.comparingInt(Rung::height));
+        return List.copyOf(rungs);
+    }
+
+    // "opus:64,aac:96" -> [opus-64k, aac-96k], sắp theo bitrate tăng dần
+    static List<AudioRung> parseAudioLadder(String ladder) {
+        List<AudioRung> rungs = new ArrayList<>();
+        for (String entry : ladder.split(",")) {
+            String trimmed = entry.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            String[] parts = trimmed.split(":");
+            String codec = parts.length == 2 ? parts[0].trim().toLowerCase(Locale.ROOT) : "";
+            if (!codec.equals("opus") && !codec.equals("aac")) {
+                throw new IllegalArgumentException("Invalid audio ladder entry '" + trimmed + "', expected opus|aac:<kbps>");
+            }
+            rungs.add(new AudioRung(codec, Integer.parseInt(parts[1].trim())));
+        }
+        rungs.sort(Comparator.comparingInt(AudioRung::kbps));
+        return List.copyOf(rungs);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        // Job RUNNING còn lại từ lần chạy trước (server bị tắt giữa chừng) được đưa lại vào hàng đợi
+        int recovered = transcodeJobRepository.transitionAll(STATUS_RUNNING, STATUS_QUEUED);
+        if (recovered > 0) {
+            logger.info("Re-queued {} transcoding jobs interrupted by the last shutdown.", recovered);
+        }
+        dispatcher.scheduleWithFixedDelay(this::dispatch, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Transcoding ladder {} and audio ladder {} enabled with {} workers.", ladder, audioLadder, workers);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        dispatcher.shutdownNow();
+        workerPool.shutdownNow();
+    }
+
+    @Override
+    @Transactional
+    public void scheduleLadder(Long mediaId, WorkCopy source, Integer sourceHeight) {
+        if (!enabled || ladder.isEmpty()) {
+            return;
+        }
+        // Độ phân giải đã được probe lúc upload: không chạy ffmpeg trong transaction lưu Media
+        if (sourceHeight == null || sourceHeight <= 0) {
+            logger.warn("Resolution of media {} is unknown, skipping the transcoding ladder.", mediaId);
+            return;
+        }
+
+        List<TranscodeJob> jobs = new ArrayList<>();
+        for (int i = 0; i < ladder.size(); i++) {
+            Rung rung = ladder.get(i);
+            if (rung.height() >= sourceHeight) {
+                continue; // Không upscale: bản gốc đã là rendition "source"
+            }
+            TranscodeJob job = new TranscodeJob();
+            job.setMediaId(mediaId);
+            job.setKind(KIND_VIDEO);
+            job.setRendition(rung.name());
+            job.setTargetHeight(rung.height());
+            job.setVideoBitrateKbps(rung.videoBitrateKbps());
+            job.setPriority(ladder.size() - i); // Bậc thấp trước: client di động có bản nhẹ sớm nhất
+            job.setStatus(STATUS_QUEUED);
+            job.setMaxAttempts(maxAttempts);
+            jobs.add(job);
+        }
+        if (jobs.isEmpty()) {
+            logger.debug("Media {} ({}p) is below every ladder rung, nothing to transcode.", mediaId, sourceHeight);
+            return;
+        }
+        transcodeJobRepository.saveAll(jobs);
+        logger.info("Queued {} transcoding jobs for media {} ({}p source): {}", jobs.size(), mediaId, sourceHeight,
+                jobs.stream().map(TranscodeJob::getRendition).collect(Collectors.joining(", ")));
+        // Đăng ký trước khi commit: job không thể được dispatch trước khi bản sao sẵn sàng
+        WorkCopy previous = localSources.put(mediaId, source.retain());
+        if (previous != null) {
+            previous.release();
+        }
+        WorkCopy.afterCommit(this::wakeUp, () -> {
+            if (localSources.remove(mediaId, source)) {
+                source.release();
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public void scheduleAudioRenditions(Long mediaId) {
+        if (!enabled || audioLadder.isEmpty()) {
+            return;
+        }
+        List<TranscodeJob> jobs = new ArrayList<>();
+        for (int i = 0; i < audioLadder.size(); i++) {
+            AudioRung rung = audioLadder.get(i);
+            TranscodeJob job = new TranscodeJob();
+            job.setMediaId(mediaId);
+            job.setKind(KIND_AUDIO);
+            job.setRendition(rung.name());
+            job.setAudioCodec(rung.codec());
+            job.setAudioBitrateKbps(rung.kbps());
+            job.setPriority(AUDIO_PRIORITY_BASE + audioLadder.size() - i); // Bản nhỏ nhất trước
+            job.setStatus(STATUS_QUEUED);
+            job.setMaxAttempts(maxAttempts);
+            jobs.add(job);
+        }
+        transcodeJobRepository.saveAll(jobs);
+        logger.info("Queued {} audio rendition jobs for media {}: {}", jobs.size(), mediaId,
+                jobs.stream().map(TranscodeJob::getRendition).collect(Collectors.joining(", ")));
+        wakeUpAfterCommit();
+    }
+
+    @Override
+    @Transactional
+    public void scheduleWaveform(Long mediaId) {
+        if (!enabled || !waveformEnabled) {
+            return;
+        }
+        TranscodeJob job = new TranscodeJob();
+        job.setMediaId(mediaId);
+        job.setKind(KIND_WAVEFORM);
+        job.setRendition(WAVEFORM_RENDITION);
+        job.setPriority(WAVEFORM_PRIORITY);
+        job.setStatus(STATUS_QUEUED);
+        job.setMaxAttempts(maxAttempts);
+        transcodeJobRepository.save(job);
+        logger.info("Queued waveform peaks job for media {}.", mediaId);
+        wakeUpAfterCommit();
+    }
+
+    private void wakeUpAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    wakeUp();
+                }
+            });
+        } else {
+            wakeUp();
+        }
+    }
+
+    // Không chờ tới lần poll kế tiếp khi vừa có job mới hoặc một worker vừa rảnh
+    private void wakeUp() {
+        if (!dispatcher.isShutdown()) {
+            dispatcher.execute(this::dispatch);
+        }
+    }
+
+    // Chỉ chạy trên thread dispatcher, nên không có hai lần dispatch song song
+    private void dispatch() {
+        try {
+            int free = freeWorkers.availablePermits();
+            if (free == 0) {
+                return;
+            }
+            List<TranscodeJob> due = transcodeJobRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByPriorityDescIdAsc(
+                    STATUS_QUEUED, LocalDateTime.now(), PageRequest.of(0, free));
+            for (TranscodeJob job : due) {
+                if (!freeWorkers.tryAcquire()) {
+                    return;
+                }
+                if (transcodeJobRepository.transitionStatus(job.getId(), STATUS_QUEUED, STATUS_RUNNING) != 1) {
+                    freeWorkers.release(); // Job đã bị xóa hoặc đổi trạng thái
+                    continue;
+                }
+                workerPool.execute(() -> {
+                    try {
+                        runJob(job);
+                    } finally {
+                        freeWorkers.release();
+                        wakeUp();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            // Không để exception hủy lịch poll của ScheduledExecutorService
+            logger.error("Transcoding dispatch failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void runJob(TranscodeJob job) {
+        Long mediaId = job.getMediaId();
+        long startNanos = System.nanoTime();
+        Path jobDir = null;
+        WorkCopy localSource = null;
+        try {
+            // Media gốc có thể đã bị xóa trong khi bản upload trùng nội dung vẫn dùng output của nó
+            Media media = mediaRepository.findFirstByIdOrOutputMediaIdOrderByIdAsc(mediaId, mediaId).orElse(null);
+            if (media == null) {
+                return; // Mọi Media dùng output này đã bị xóa, job cũng đã bị xóa cùng chúng
+            }
+            Files.createDirectories(workDir);
+            jobDir = Files.createTempDirectory(workDir, "media-" + mediaId + "-" + job.getRendition() + "-");
+            localSource = acquireSource(mediaId, media.getStorageIdentifier());
+            Path input = localSource.file();
+
+            ProbeResult info = sourceInfo(media, input);
+            Consumer<String> progress = progressReporter(job, info.durationMillis() != null ? info.durationMillis() / 1000.0 : 0);
+            String result = switch (job.getKind()) {
+                case KIND_AUDIO -> encodeAudio(job, media, info, input, jobDir, progress);
+                case KIND_WAVEFORM -> computeWaveform(job, info, input, jobDir, progress);
+                default -> encodeVideo(job, info, input, jobDir, progress);
+            };
+
+            job.setStatus(STATUS_DONE);
+            job.setProgressPercent(100);
+            job.setLastError(null);
+            saveIfStillExists(job);
+            logger.info("Transcoded media {} to {} in {} ms: {}.", mediaId, job.getRendition(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), result);
+        } catch (Exception e) {
+            job.setAttempts(job.getAttempts() + 1);
+            job.setLastError(truncate(e.getMessage()));
+            job.setProgressPercent(0);
+            if (job.getAttempts() >= job.getMaxAttempts()) {
+                job.setStatus(STATUS_FAILED);
+                logger.error("Transcoding media {} to {} failed permanently after {} attempts: {}",
+                        mediaId, job.getRendition(), job.getAttempts(), e.getMessage(), e);
+            } else {
+                // Backoff lũy thừa: lỗi tạm thời của Drive có thời gian hồi phục
+                long delaySeconds = retryBaseDelaySeconds << (job.getAttempts() - 1);
+                job.setStatus(STATUS_QUEUED);
+                job.setNextAttemptAt(LocalDateTime.now().plusSeconds(delaySeconds));
+                logger.warn("Transcoding media {} to {} failed (attempt {}/{}), retrying in {} s: {}",
+                        mediaId, job.getRendition(), job.getAttempts(), job.getMaxAttempts(), delaySeconds, e.getMessage());
+            }
+            saveIfStillExists(job);
+        } finally {
+            if (localSource != null) {
+                localSource.release();
+            }
+            releaseLocalSourceIfDone(mediaId);
+            if (jobDir != null) {
+                WorkCopy.deleteRecursively(jobDir);
+            }
+        }
+    }
+
+    /**
+     * @return Bản gốc cục bộ của media, bên gọi giữ một reference. Sau restart, hoặc với MUSIC, bản gốc chỉ còn trên storage:
+     * job đầu tiên tải về một lần, các job sau của cùng media dùng lại.
+     */
+    private WorkCopy acquireSource(Long mediaId, String storageIdentifier) throws IOException {
+        synchronized (sourceLocks.computeIfAbsent(mediaId, id -> new Object())) {
+            WorkCopy local = localSources.get(mediaId);
+            if (local != null && local.tryRetain()) {
+                return local;
+            }
+            WorkCopy downloaded = WorkCopy.create(workDir, "media-" + mediaId + "-source-", "source");
+            try {
+                downloadSource(storageIdentifier, downloaded.file());
+            } catch (IOException | RuntimeException e) {
+                downloaded.release();
+                throw e;
+            }
+            WorkCopy previous = localSources.put(mediaId, downloaded.retain()); // Reference của map, bên gọi giữ reference đầu
+            if (previous != null) {
+                previous.release();
+            }
+            return downloaded;
+        }
+    }
+
+    private void releaseLocalSourceIfDone(Long mediaId) {
+        if (localSources.containsKey(mediaId)
+                && !transcodeJobRepository.existsByMediaIdAndStatusIn(mediaId, List.of(STATUS_QUEUED, STATUS_RUNNING))) {
+            WorkCopy copy = localSources.remove(mediaId);
+            if (copy != null) {
+                copy.release();
+            }
+            sourceLocks.remove(mediaId);
+        }
+    }
+
+    // Kết quả probe lúc upload được lưu trên Media; chỉ Media tạo trước khi có probe mới phải probe lại (header trước, có cache)
+    private ProbeResult sourceInfo(Media media, Path input) {
+        if (media.getDurationMillis() != null) {
+            return new ProbeResult(media.getDurationMillis(), media.getVideoCodec(), media.getAudioCodec(),
+                    media.getWidth(), media.getHeight(), media.getBitrateKbps());
+        }
+        return mediaProbeService.probe(input, media.getContentSha256(), media.getTitle());
+    }
+
+    private Consumer<String> progressReporter(TranscodeJob job, double durationSeconds) {
+        AtomicInteger lastReported = new AtomicInteger();
+        return FfmpegRunner.progressListener(seconds -> {
+            if (durationSeconds <= 0) {
+                return;
+            }
+            int percent = (int) Math.min(99, seconds * 100 / durationSeconds);
+            if (percent >= lastReported.get() + 5) { // Mỗi 5% mới ghi DB một lần
+                lastReported.set(percent);
+                transcodeJobRepository.updateProgress(job.getId(), percent);
+            }
+        });
+    }
+
+    private String encodeVideo(TranscodeJob job, ProbeResult info, Path input, Path jobDir,
+                               Consumer<String> progress) throws IOException {
+        if (info.width() == null || info.height() == null || info.height() <= 0) {
+            throw new IOException("source has no video stream");
+        }
+        // Giữ tỉ lệ khung hình, chiều rộng phải chẵn cho yuv420p
+        int width = (int) Math.round(info.width() * (double) job.getTargetHeight() / info.height() / 2) * 2;
+
+        Path playlist = jobDir.resolve("index.m3u8");
+        FfmpegRunner.run(encodeArguments(job, input, jobDir, playlist), timeoutSeconds, progress);
+
+        int segmentCount = hlsPackagingService.storeRendition(job.getMediaId(), job.getRendition(), playlist);
+        MediaRendition rendition = new MediaRendition();
+        rendition.setMediaId(job.getMediaId());
+        rendition.setName(job.getRendition());
+        rendition.setWidth(width);
+        rendition.setHeight(job.getTargetHeight());
+        rendition.setVideoBitrateKbps(job.getVideoBitrateKbps());
+        mediaRenditionRepository.save(rendition);
+        return width + "x" + job.getTargetHeight() + ", " + segmentCount + " segments";
+    }
+
+    private String computeWaveform(TranscodeJob job, ProbeResult info, Path input, Path jobDir,
+                                   Consumer<String> progress) throws IOException {
+        if (info.audioCodec() == null) {
+            throw new IOException("source has no audio stream");
+        }
+        return waveformService.generate(job.getMediaId(), input, jobDir, progress) + " bytes of peaks";
+    }
+
+    private String encodeAudio(TranscodeJob job, Media media, ProbeResult info, Path input, Path jobDir,
+                               Consumer<String> progress) throws IOException {
+        if (info.audioCodec() == null) {
+            throw new IOException("source has no audio stream");
+        }
+        AudioRung rung = new AudioRung(job.getAudioCodec(), job.getAudioBitrateKbps());
+        // Bitrate trung bình của cả file (bit/ms = kbps): bản gốc đã nhỏ hơn đích thì rendition không giúp gì
+        long sourceKbps = info.bitrateKbps() != null ? info.bitrateKbps() : 0;
+        if (sourceKbps > 0 && sourceKbps <= rung.kbps()) {
+            return "skipped, source is only " + sourceKbps + " kbps";
+        }
+
+        Path output = jobDir.resolve("rendition" + rung.extension());
+        List<String> arguments = new ArrayList<>(List.of(
+                "-i", input.toString(),
+                "-map", "0:a:0", "-vn", "-sn",
+                // Tag lấy từ bản ghi Media (đã được chuẩn hóa lúc upload), không phải từ tag gốc của file
+                "-map_metadata", "-1",
+                "-metadata", "title=" + nullToEmpty(media.getTitle()),
+                "-metadata", "artist=" + nullToEmpty(media.getArtist()),
+                "-metadata", "album=" + nullToEmpty(media.getAlbum())));
+        if (rung.codec().equals("opus")) {
+            arguments.addAll(List.of("-c:a", "libopus", "-b:a", rung.kbps() + "k", "-vbr", "on", "-f", "ogg"));
+        } else {
+            arguments.addAll(List.of("-c:a", "aac", "-b:a", rung.kbps() + "k", "-movflags", "+faststart", "-f", "mp4"));
+        }
+        arguments.addAll(List.of("-threads", "1", "-y", output.toString()));
+        FfmpegRunner.run(arguments, timeoutSeconds, progress);
+
+        String storageId = storageService.uploadMediaFile(output, "MUSIC",
+                "rendition-" + job.getMediaId() + "-" + rung.name() + rung.extension());
+        if (!mediaRepository.existsByIdOrOutputMediaId(job.getMediaId(), job.getMediaId())) {
+            storageService.deleteMediaFile(storageId);
+            throw new IOException("media was deleted while it was being transcoded");
+        }
+        MediaRendition rendition = new MediaRendition();
+        rendition.setMediaId(job.getMediaId());
+        rendition.setName(rung.name());
+        rendition.setAudioBitrateKbps(rung.kbps());
+        rendition.setStorageIdentifier(storageId);
+        rendition.setMimeType(rung.mimeType());
+        rendition.setSizeBytes(Files.size(output));
+        mediaRenditionRepository.save(rendition);
+        return rendition.getSizeBytes() + " bytes (" + sourceKbps + " -> " + rung.kbps() + " kbps)";
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+
+    // Media (và job) có thể đã bị xóa trong lúc encode: không tạo lại bản ghi job
+    private void saveIfStillExists(TranscodeJob job) {
+        if (transcodeJobRepository.existsById(job.getId())) {
+            transcodeJobRepository.save(job);
+        }
+    }
+
+    private void downloadSource(String storageIdentifier, Path target) throws IOException {
+        com.google.api.services.drive.model.File metadata = mediaMetadataCacheService.getFileMetadata(storageIdentifier);
+        if (metadata == null || metadata.getSize() == null) {
+            throw new IOException("Source file " + storageIdentifier + " not found in storage");
+        }
+        // Tải nền: dùng chung giới hạn kết nối tới storage với người xem nhưng không chen trước họ
+        try (UpstreamBulkhead.Permit ignored = upstreamBulkhead.acquireBackground();
+             InputStream in = storageService.downloadMediaRange(storageIdentifier, 0, metadata.getSize() - 1)) {
+            Files.copy(in, target);
+        }
+    }
+
+    private List<String> encodeArguments(TranscodeJob job, Path input, Path jobDir, Path playlist) {
+        int kbps = job.getVideoBitrateKbps();
+        return List.of(
+                "-i", input.toString(),
+                "-map", "0:v:0", "-map", "0:a:0?",
+                "-vf", "scale=-2:" + job.getTargetHeight(),
+                "-c:v", "libx264", "-preset", "veryfast", "-profile:v", "main",
+                "-b:v", kbps + "k", "-maxrate", (kbps * 107 / 100) + "k", "-bufsize", (kbps * 3 / 2) + "k",
+                // Keyframe đúng ở mỗi ranh giới segment để mọi rendition cắt cùng chỗ, player chuyển bitrate liền mạch
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-c:a", "aac", "-b:a", "96k", "-ac", "2",
+                "-threads", "1",
+                "-f", "hls",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_playlist_type", "vod",
+                "-hls_segment_filename", jobDir.resolve("seg_%05d.ts").toString(),
+                "-y", playlist.toString());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<MediaRendition> getRenditions(Long mediaId) {
+        return mediaRenditionRepository.findAllByMediaIdOrderByHeightAsc(mediaId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<TranscodeJobResponse> getJobs(Long mediaId) {
+        DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+        return transcodeJobRepository.findAllByMediaIdOrderByPriorityDesc(mediaId).stream()
+                .map(job -> new TranscodeJobResponse(job.getRendition(), job.getStatus(), job.getPriority(),
+                        job.getAttempts(), job.getMaxAttempts(), job.getProgressPercent(), job.getLastError(),
+                        job.getUpdatedAt() != null ? job.getUpdatedAt().format(formatter) : null))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public MediaRendition selectAudioRendition(String storageIdentifier, Long mediaId, String requested, boolean saveData, String accept) {
+        if (requested == null && !saveData) {
+            return null; // Không có yêu cầu hay tín hiệu nào: khỏi truy vấn DB
+        }
+        // Chọn đúng Media của URL: file có thể dùng chung với Media tạo trước khi có dedup output, vốn có rendition riêng
+        Media media = mediaId != null
+                ? mediaRepository.findById(mediaId).filter(found -> storageIdentifier.equals(found.getStorageIdentifier())).orElse(null)
+                : mediaRepository.findFirstByStorageIdentifierAndTypeOrderByIdAsc(storageIdentifier, "MUSIC").orElse(null);
+        if (media == null || !"MUSIC".equals(media.getType())) {
+            return null;
+        }
+        return chooseAudioRendition(mediaRenditionRepository.findAllByMediaIdOrderByHeightAsc(media.getOutputsId()), requested, saveData, accept);
+    }
+
+    /**
+     * @param requested {@code null}/"auto": chỉ dùng Save-Data; "original": luôn bản gốc; "low": bản nhỏ nhất client phát được;
+     *                  tên rendition cụ thể (ví dụ "opus-64k"): đúng rendition đó.
+     * @param accept Header Accept: Opus (Ogg) chỉ được chọn khi client nói rõ là hỗ trợ, AAC/MP4 thì mọi client đều phát được.
+     * @return Rendition cần phục vụ, hoặc {@code null} để phục vụ bản gốc.
+     */
+    static MediaRendition chooseAudioRendition(List<MediaRendition> renditions, String requested, boolean saveData, String accept) {
+        List<MediaRendition> audio = renditions.stream()
+                .filter(rendition -> rendition.getStorageIdentifier() != null && rendition.getAudioBitrateKbps() > 0)
+                .toList();
+        if (audio.isEmpty() || "original".equalsIgnoreCase(requested)) {
+            return null;
+        }
+        if (requested != null && !requested.equalsIgnoreCase("auto") && !requested.equalsIgnoreCase("low")) {
+            return audio.stream().filter(rendition -> rendition.getName().equalsIgnoreCase(requested)).findFirst().orElse(null);
+        }
+        if (!"low".equalsIgnoreCase(requested) && !saveData) {
+            return null;
+        }
+        String acceptLower = accept != null ? accept.toLowerCase(Locale.ROOT) : "";
+        boolean opusSupported = acceptLower.contains("audio/ogg") || acceptLower.contains("audio/webm") || acceptLower.contains("opus");
+        return audio.stream()
+                .filter(rendition -> opusSupported || !"audio/ogg".equals(rendition.getMimeType()))
+                .min(Comparator.comparingInt(MediaRendition::getAudioBitrateKbps))
+                .orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public void deleteTranscodes(Long mediaId) {
+        transcodeJobRepository.deleteAllByMediaId(mediaId);
+        WorkCopy localSource = localSources.remove(mediaId);
+        if (localSource != null) {
+            localSource.release(); // Job đang chạy vẫn giữ reference riêng đến khi xong
+        }
+        sourceLocks.remove(mediaId);
+        for (MediaRendition rendition : mediaRenditionRepository.findAllByMediaIdOrderByHeightAsc(mediaId)) {
+            if (rendition.getStorageIdentifier() != null) { // Rendition HLS: segment được xóa bởi HlsPackagingService
+                storageService.deleteMediaFile(rendition.getStorageIdentifier());
+                mediaMetadataCacheService.invalidate(rendition.getStorageIdentifier());
+                segmentCacheService.evictFile(rendition.getStorageIdentifier());
+            }
+        }
+        mediaRenditionRepository.deleteAllByMediaId(mediaId);
+    }
+
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
+    }
+}
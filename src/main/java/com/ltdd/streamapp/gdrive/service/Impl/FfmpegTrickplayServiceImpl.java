@@ -0,0 +1,249 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/FfmpegTrickplayServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.Media;
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.repository.TrickplaySheetRepository;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.service.TrickplayService;
+import com.ltdd.streamapp.gdrive.util.FfmpegRunner;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class FfmpegTrickplayServiceImpl implements TrickplayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegTrickplayServiceImpl.class);
+
+    static final String STATUS_PENDING = "PENDING";
+    static final String STATUS_PROCESSING = "PROCESSING";
+    static final String STATUS_READY = "READY";
+    static final String STATUS_FAILED = "FAILED";
+
+    private final MediaRepository mediaRepository;
+    private final TrickplaySheetRepository trickplaySheetRepository;
+    private final StorageService storageService;
+    private final SegmentCacheService segmentCacheService;
+    private final boolean enabled;
+    private final int intervalSeconds;
+    private final int tileWidth;
+    private final int columns;
+    private final int rows;
+    private final long timeoutSeconds;
+    private final Path workDir;
+    private final ThreadPoolExecutor trickplayExecutor;
+
+    public FfmpegTrickplayServiceImpl(MediaRepository mediaRepository,
+                                      TrickplaySheetRepository trickplaySheetRepository,
+                                      @Qualifier("googleDriveStorageService") StorageService storageService,
+                                      SegmentCacheService segmentCacheService,
+                                      @Value("${app.trickplay.enabled:true}") boolean enabled,
+                                      @Value("${app.trickplay.interval-seconds:10}") int intervalSeconds,
+                                      @Value("${app.trickplay.tile-width:160}") int tileWidth,
+                                      @Value("${app.trickplay.columns:10}") int columns,
+                                      @Value("${app.trickplay.rows:10}") int rows,
+                                      @Value("${app.trickplay.timeout-seconds:900}") long timeoutSeconds,
+                                      @Value("${app.trickplay.work-dir:${java.io.tmpdir}/streamapp-trickplay}") String workDir,
+                                      @Value("${app.trickplay.queue-capacity:16}") int queueCapacity) {
+        this.mediaRepository = mediaRepository;
+        this.trickplaySheetRepository = trickplaySheetRepository;
+        this.storageService = storageService;
+        this.segmentCacheService = segmentCacheService;
+        this.enabled = enabled;
+        this.intervalSeconds = Math.max(1, intervalSeconds);
+        this.tileWidth = tileWidth / 2 * 2; // Kích thước chẵn cho encoder JPEG/yuv420p
+        this.columns = Math.max(1, columns);
+        this.rows = Math.max(1, rows);
+        this.timeoutSeconds = timeoutSeconds;
+        this.workDir = Paths.get(workDir).toAbsolutePath();
+        AtomicInteger threadCount = new AtomicInteger();
+        // Chỉ decode thưa (1 frame mỗi interval) nên một worker là đủ; hàng đợi có giới hạn
+        this.trickplayExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "trickplay-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.trickplayExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        trickplayExecutor.shutdownNow();
+    }
+
+    @Override
+    public void scheduleGeneration(Long mediaId, WorkCopy source) {
+        if (!enabled) {
+            return;
+        }
+        mediaRepository.updateTrickplayStatus(mediaId, STATUS_PENDING);
+        source.retain();
+        // Chỉ chạy khi bản ghi Media đã thực sự được commit
+        WorkCopy.afterCommit(() -> {
+            try {
+                trickplayExecutor.execute(() -> runGeneration(mediaId, source));
+            } catch (RejectedExecutionException e) {
+                logger.warn("Trickplay queue is full, media {} will have no scrubbing previews.", mediaId);
+                mediaRepository.updateTrickplayStatus(mediaId, STATUS_FAILED);
+                source.release();
+            }
+        }, source::release);
+    }
+
+    private void runGeneration(Long mediaId, WorkCopy source) {
+        List<String> uploadedIds = new ArrayList<>();
+        long startNanos = System.nanoTime();
+        Path jobDir = null;
+        try {
+            mediaRepository.updateTrickplayStatus(mediaId, STATUS_PROCESSING);
+            Files.createDirectories(workDir);
+            jobDir = Files.createTempDirectory(workDir, "media-" + mediaId + "-");
+            Path input = source.file();
+            // Độ phân giải và thời lượng đã được probe lúc upload và lưu trên Media (hoặc bản upload trùng nội dung của nó)
+            Media media = mediaRepository.findFirstByIdOrOutputMediaIdOrderByIdAsc(mediaId, mediaId)
+                    .orElseThrow(() -> new IOException("media was deleted before its previews were generated"));
+            if (media.getWidth() == null || media.getHeight() == null || media.getWidth() <= 0 || media.getDurationMillis() == null) {
+                throw new IOException("source has no video stream or could not be probed");
+            }
+            // Giữ tỉ lệ khung hình của video; mọi ô cùng kích thước để tọa độ #xywh tính được từ chỉ số
+            int tileHeight = Math.max(2, (int) Math.round((double) tileWidth * media.getHeight() / media.getWidth() / 2) * 2);
+            int thumbnailCount = (int) Math.max(1, (media.getDurationMillis() + intervalSeconds * 1000L - 1) / (intervalSeconds * 1000L));
+
+            FfmpegRunner.run(List.of(
+                    "-i", input.toString(),
+                    "-map", "0:v:0", "-an", "-sn",
+                    "-vf", "fps=1/" + intervalSeconds + ",scale=" + tileWidth + ":" + tileHeight + ",tile=" + columns + "x" + rows,
+                    "-q:v", "5",
+                    "-f", "image2",
+                    "-y", jobDir.resolve("sheet_%04d.jpg").toString()), timeoutSeconds);
+
+            int perSheet = columns * rows;
+            int sheetCount = (thumbnailCount + perSheet - 1) / perSheet;
+            List<TrickplaySheet> sheets = new ArrayList<>(sheetCount);
+            for (int i = 0; i < sheetCount; i++) {
+                Path sheetFile = jobDir.resolve(String.format(Locale.ROOT, "sheet_%04d.jpg", i + 1));
+                if (!Files.exists(sheetFile)) {
+                    break; // Video ngắn hơn thời lượng báo trong header
+                }
+                String storageId = storageService.uploadMediaFile(sheetFile, "IMAGE", "trickplay-" + mediaId + "-" + i + ".jpg");
+                uploadedIds.add(storageId);
+
+                TrickplaySheet sheet = new TrickplaySheet();
+                sheet.setMediaId(mediaId);
+                sheet.setSheetIndex(i);
+                sheet.setStorageIdentifier(storageId);
+                sheet.setSizeBytes(Files.size(sheetFile));
+                sheet.setIntervalSeconds(intervalSeconds);
+                sheet.setTileWidth(tileWidth);
+                sheet.setTileHeight(tileHeight);
+                sheet.setColumns(columns);
+                sheet.setThumbnailCount(Math.min(perSheet, thumbnailCount - i * perSheet));
+                sheets.add(sheet);
+            }
+            if (sheets.isEmpty()) {
+                throw new IOException("ffmpeg produced no sprite sheets");
+            }
+
+            if (!mediaRepository.existsByIdOrOutputMediaId(mediaId, mediaId)) {
+                throw new IOException("media was deleted while its previews were being generated");
+            }
+            trickplaySheetRepository.saveAll(sheets);
+            mediaRepository.updateTrickplayStatus(mediaId, STATUS_READY);
+            logger.info("Trickplay for media {} generated in {} ms: {} thumbnails in {} sheets.", mediaId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), thumbnailCount, sheets.size());
+        } catch (Exception e) {
+            logger.error("Trickplay generation for media {} failed: {}", mediaId, e.getMessage(), e);
+            for (String storageId : uploadedIds) {
+                storageService.deleteMediaFile(storageId);
+            }
+            mediaRepository.updateTrickplayStatus(mediaId, STATUS_FAILED);
+        } finally {
+            source.release();
+            if (jobDir != null) {
+                WorkCopy.deleteRecursively(jobDir);
+            }
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public String buildWebVtt(Long mediaId, String uriQuery) {
+        List<TrickplaySheet> sheets = trickplaySheetRepository.findAllByMediaIdOrderBySheetIndexAsc(mediaId);
+        return sheets.isEmpty() ? null : renderWebVtt(sheets, uriQuery);
+    }
+
+    /**
+     * Mỗi thumbnail là một cue kéo dài một interval, trỏ tới ô của nó trong sheet: {@code 0.jpg#xywh=x,y,w,h}.
+     */
+    static String renderWebVtt(List<TrickplaySheet> sheets) {
+        return renderWebVtt(sheets, null);
+    }
+
+    // Query (chữ ký của media riêng tư) đứng trước fragment #xywh
+    static String renderWebVtt(List<TrickplaySheet> sheets, String uriQuery) {
+        String sheetQuery = uriQuery != null ? "?" + uriQuery : "";
+        StringBuilder vtt = new StringBuilder("WEBVTT\n");
+        long thumbnail = 0;
+        for (TrickplaySheet sheet : sheets) {
+            for (int i = 0; i < sheet.getThumbnailCount(); i++, thumbnail++) {
+                long startMillis = thumbnail * sheet.getIntervalSeconds() * 1000L;
+                int x = (i % sheet.getColumns()) * sheet.getTileWidth();
+                int y = (i / sheet.getColumns()) * sheet.getTileHeight();
+                vtt.append('\n')
+                        .append(formatTimestamp(startMillis)).append(" --> ")
+                        .append(formatTimestamp(startMillis + sheet.getIntervalSeconds() * 1000L)).append('\n')
+                        .append(sheet.getSheetIndex()).append(".jpg").append(sheetQuery).append("#xywh=")
+                        .append(x).append(',').append(y).append(',')
+                        .append(sheet.getTileWidth()).append(',').append(sheet.getTileHeight()).append('\n');
+            }
+        }
+        return vtt.toString();
+    }
+
+    private static String formatTimestamp(long millis) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.%03d",
+                millis / 3_600_000, (millis / 60_000) % 60, (millis / 1000) % 60, millis % 1000);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public TrickplaySheet getSheet(Long mediaId, int sheetIndex) {
+        return trickplaySheetRepository.findByMediaIdAndSheetIndex(mediaId, sheetIndex).orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public void deleteTrickplay(Long mediaId) {
+        List<TrickplaySheet> sheets = trickplaySheetRepository.findAllByMediaIdOrderBySheetIndexAsc(mediaId);
+        for (TrickplaySheet sheet : sheets) {
+            storageService.deleteMediaFile(sheet.getStorageIdentifier());
+            segmentCacheService.evictFile(sheet.getStorageIdentifier());
+        }
+        trickplaySheetRepository.deleteAllByMediaId(mediaId);
+        if (!sheets.isEmpty()) {
+            logger.info("Deleted {} trickplay sheets of media {}.", sheets.size(), mediaId);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/FfmpegWaveformServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.MediaWaveform;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.repository.MediaWaveformRepository;
+import com.ltdd.streamapp.gdrive.service.WaveformService;
+import com.ltdd.streamapp.gdrive.util.FfmpegRunner;
+import com.ltdd.streamapp.gdrive.util.WaveformPeaks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Service
+public class FfmpegWaveformServiceImpl implements WaveformService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FfmpegWaveformServiceImpl.class);
+
+    private final MediaWaveformRepository mediaWaveformRepository;
+    private final MediaRepository mediaRepository;
+    private final int sampleRate;
+    private final int[] levels;
+    private final long timeoutSeconds;
+
+    public FfmpegWaveformServiceImpl(MediaWaveformRepository mediaWaveformRepository,
+                                     MediaRepository mediaRepository,
+                                     @Value("${app.waveform.sample-rate:11025}") int sampleRate,
+                                     @Value("${app.waveform.levels:256,1024,4096}") String levels,
+                                     @Value("${app.waveform.timeout-seconds:600}") long timeoutSeconds) {
+        this.mediaWaveformRepository = mediaWaveformRepository;
+        this.mediaRepository = mediaRepository;
+        this.sampleRate = sampleRate;
+        this.levels = parseLevels(levels);
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    static int[] parseLevels(String levels) {
+        int[] parsed = Arrays.stream(levels.split(","))
+                .map(String::trim)
+                .filter(s -> !s.isEmpty())
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        if (parsed.length == 0) {
+            throw new IllegalArgumentException("app.waveform.levels must list at least one samples-per-bucket value");
+        }
+        return parsed;
+    }
+
+    @Override
+    public int generate(Long mediaId, Path source, Path workDir, Consumer<String> ffmpegOutput) throws IOException {
+        // PCM 16-bit mono ở sample rate thấp: đủ cho hiển thị, 5 phút nhạc chỉ khoảng 6-7 MB tạm trên đĩa
+        Path pcm = workDir.resolve("waveform.pcm");
+        FfmpegRunner.run(List.of(
+                "-i", source.toString(),
+                "-map", "0:a:0", "-vn", "-sn",
+                "-ac", "1", "-ar", String.valueOf(sampleRate),
+                "-f", "s16le", "-acodec", "pcm_s16le",
+                "-threads", "1", "-y", pcm.toString()), timeoutSeconds, ffmpegOutput);
+
+        WaveformPeaks peaks;
+        try (InputStream in = Files.newInputStream(pcm)) {
+            peaks = WaveformPeaks.compute(in, sampleRate, levels);
+        }
+        if (peaks.levels().get(0).bucketCount() == 0) {
+            throw new IOException("decoded audio is empty");
+        }
+        byte[] data = peaks.encode();
+        if (!mediaRepository.existsByIdOrOutputMediaId(mediaId, mediaId)) {
+            throw new IOException("media was deleted while its waveform was being computed");
+        }
+        MediaWaveform waveform = new MediaWaveform();
+        waveform.setMediaId(mediaId);
+        waveform.setSampleRate(sampleRate);
+        waveform.setData(data);
+        mediaWaveformRepository.save(waveform);
+        logger.debug("Stored {} bytes of waveform peaks for media {}.", data.length, mediaId);
+        return data.length;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public byte[] getWaveform(Long mediaId, Integer level) {
+        MediaWaveform waveform = mediaWaveformRepository.findById(mediaId).orElse(null);
+        if (waveform == null) {
+            return null;
+        }
+        if (level == null) {
+            return waveform.getData();
+        }
+        WaveformPeaks peaks = WaveformPeaks.decode(waveform.getData());
+        if (level < 0 || level >= peaks.levels().size()) {
+            return null;
+        }
+        return peaks.encodeLevel(level);
+    }
+
+    @Override
+    public boolean hasWaveform(Long mediaId) {
+        return mediaWaveformRepository.existsById(mediaId);
+    }
+
+    @Override
+    @Transactional
+    public void deleteWaveform(Long mediaId) {
+        if (mediaWaveformRepository.existsById(mediaId)) {
+            mediaWaveformRepository.deleteById(mediaId);
+        }
+    }
+}
@@ -1,19 +1,34 @@
 // File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/GoogleDriveStorageServiceImpl.java
 package com.ltdd.streamapp.gdrive.service.Impl;
 
+import com.google.api.client.googleapis.media.MediaHttpUploader;
+import com.google.api.client.http.EmptyContent;
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpResponse;
 import com.google.api.client.http.InputStreamContent;
+import com.google.api.client.http.json.JsonHttpContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.Permission;
+import com.google.common.io.ByteStreams;
 import com.ltdd.streamapp.gdrive.service.StorageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -24,6 +39,14 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
     private final Drive driveService;
     private final String parentFolderId; // Giá trị này được inject từ application.properties
 
+    // Bật để /api/media/stream trả 302 tới Drive thay vì proxy byte qua server (file đã được share "anyone/reader" khi upload)
+    @Value("${app.storage.google-drive.redirect-delivery:false}")
+    private boolean redirectDelivery;
+
+    // Kích thước chunk của resumable upload (bội số của 256 KB), cũng là buffer tối đa Drive client giữ trong heap cho mỗi upload
+    @Value("${app.storage.google-drive.upload-chunk-size-bytes:10485760}")
+    private int uploadChunkSizeBytes = MediaHttpUploader.DEFAULT_CHUNK_SIZE;
+
     // Giá trị placeholder bạn dùng để kiểm tra xem ID đã được cấu hình chưa
     private static final String PARENT_FOLDER_ID_PLACEHOLDER = "YOUR_GOOGLE_DRIVE_PARENT_FOLDER_ID_HERE";
 
@@ -43,36 +66,36 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
     @Override
     public String uploadMediaFile(MultipartFile multipartFile, String mediaType, String originalFilename) {
         logger.info("Attempting to upload media file: '{}', type: {}", originalFilename, mediaType);
-        return uploadFileToDrive(multipartFile, originalFilename, determineMimeType(originalFilename, mediaType), "media");
+        return uploadFileToDrive(multipartFile, multipartFile.getSize(), originalFilename, determineMimeType(originalFilename, mediaType), "media");
+    }
+
+    @Override
+    public String uploadMediaFile(Path file, String mediaType, String originalFilename) {
+        logger.info("Attempting to upload media file: '{}' from local file {}, type: {}", originalFilename, file, mediaType);
+        long length;
+        try {
+            length = Files.size(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read local media file before upload: " + e.getMessage(), e);
+        }
+        return uploadFileToDrive(new FileSystemResource(file), length, originalFilename, determineMimeType(originalFilename, mediaType), "media");
     }
 
     @Override
     public String uploadProfilePicture(MultipartFile multipartFile, String originalFilename) {
         logger.info("Attempting to upload profile picture: '{}'", originalFilename);
-        return uploadFileToDrive(multipartFile, originalFilename, multipartFile.getContentType(), "profile");
+        return uploadFileToDrive(multipartFile, multipartFile.getSize(), originalFilename, multipartFile.getContentType(), "profile");
     }
 
-    private String uploadFileToDrive(MultipartFile multipartFile, String originalFilename, String mimeType, String fileTypePrefix) {
+    private String uploadFileToDrive(InputStreamSource content, long contentLength, String originalFilename, String mimeType, String fileTypePrefix) {
         try {
-            String uniqueFileName = fileTypePrefix + "-" + UUID.randomUUID().toString().substring(0, 12) + "-" + sanitizeFilename(originalFilename);
-            File fileMetadata = new File();
-            fileMetadata.setName(uniqueFileName);
-
-            // --- SỬA ĐIỀU KIỆN KIỂM TRA Ở ĐÂY ---
-            if (this.parentFolderId != null &&
-                !this.parentFolderId.trim().isEmpty() &&
-                !PARENT_FOLDER_ID_PLACEHOLDER.equalsIgnoreCase(this.parentFolderId)) {
-                fileMetadata.setParents(Collections.singletonList(this.parentFolderId));
-                logger.info("Setting parent folder for '{}' to: {}", uniqueFileName, this.parentFolderId);
-            } else {
-                logger.warn("Parent folder ID ('{}') is either null, empty, or still the placeholder. File '{}' will be uploaded to the root of the Service Account's Drive.", this.parentFolderId, uniqueFileName);
-                // Không set parent, file sẽ vào root Drive của Service Account
-            }
-            // --- KẾT THÚC SỬA ĐỔI ---
-
+            File fileMetadata = newFileMetadata(originalFilename, fileTypePrefix);
+            String uniqueFileName = fileMetadata.getName();
 
-            InputStream inputStream = multipartFile.getInputStream();
+            // Drive client đọc stream theo từng chunk của resumable upload: heap mỗi upload tối đa một chunk, không phải cả file
+            InputStream inputStream = content.getInputStream();
             InputStreamContent mediaContent = new InputStreamContent(mimeType, inputStream);
+            mediaContent.setLength(contentLength); // Biết trước độ dài để Drive client không phải buffer/chunk mù
 
             logger.debug("Uploading file to Google Drive. FileName: '{}', MimeType: '{}', ParentFolderID (if set): '{}'",
                          uniqueFileName, mimeType, (fileMetadata.getParents() != null ? fileMetadata.getParents().get(0) : "Root"));
@@ -80,6 +103,7 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
 
             Drive.Files.Create insertRequest = driveService.files().create(fileMetadata, mediaContent)
                     .setFields("id, name, webViewLink, webContentLink, thumbnailLink");
+            insertRequest.getMediaHttpUploader().setChunkSize(uploadChunkSizeBytes);
 
             File uploadedFile = insertRequest.execute();
             if (uploadedFile == null || uploadedFile.getId() == null) {
@@ -90,9 +114,7 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
             logger.info("File successfully uploaded to Google Drive. Name: '{}', ID: '{}'",
                     uploadedFile.getName(), uploadedFile.getId());
 
-            Permission permission = new Permission().setType("anyone").setRole("reader");
-            driveService.permissions().create(uploadedFile.getId(), permission).execute();
-            logger.info("Public read permission set for file ID: {}", uploadedFile.getId());
+            grantPublicRead(uploadedFile.getId());
 
             return uploadedFile.getId();
 
@@ -113,6 +135,31 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
         }
     }
 
+    private File newFileMetadata(String originalFilename, String fileTypePrefix) {
+        String uniqueFileName = fileTypePrefix + "-" + UUID.randomUUID().toString().substring(0, 12) + "-" + sanitizeFilename(originalFilename);
+        File fileMetadata = new File();
+        fileMetadata.setName(uniqueFileName);
+
+        // --- SỬA ĐIỀU KIỆN KIỂM TRA Ở ĐÂY ---
+        if (this.parentFolderId != null &&
+            !this.parentFolderId.trim().isEmpty() &&
+            !PARENT_FOLDER_ID_PLACEHOLDER.equalsIgnoreCase(this.parentFolderId)) {
+            fileMetadata.setParents(Collections.singletonList(this.parentFolderId));
+            logger.info("Setting parent folder for '{}' to: {}", uniqueFileName, this.parentFolderId);
+        } else {
+            logger.warn("Parent folder ID ('{}') is either null, empty, or still the placeholder. File '{}' will be uploaded to the root of the Service Account's Drive.", this.parentFolderId, uniqueFileName);
+            // Không set parent, file sẽ vào root Drive của Service Account
+        }
+        // --- KẾT THÚC SỬA ĐỔI ---
+        return fileMetadata;
+    }
+
+    private void grantPublicRead(String fileId) throws IOException {
+        Permission permission = new Permission().setType("anyone").setRole("reader");
+        driveService.permissions().create(fileId, permission).execute();
+        logger.info("Public read permission set for file ID: {}", fileId);
+    }
+
     @Override
     public void deleteMediaFile(String fileId) {
         if (fileId == null || fileId.isEmpty()) {
@@ -135,6 +182,138 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
         }
     }
 
+    @Override
+    public InputStream downloadMediaRange(String fileId, long start, long end) throws IOException {
+        Drive.Files.Get getRequest = driveService.files().get(fileId);
+        // Drive tôn trọng header Range chuẩn HTTP khi tải với alt=media, nên chỉ những byte cần thiết được truyền về
+        getRequest.getRequestHeaders().setRange("bytes=" + start + "-" + end);
+        HttpResponse httpResponse = getRequest.executeMedia();
+        InputStream content = httpResponse.getContent();
+
+        if (httpResponse.getStatusCode() != HttpStatus.PARTIAL_CONTENT.value() && start > 0) {
+            // Phòng trường hợp upstream bỏ qua Range và trả về toàn bộ file (200)
+            logger.warn("Drive ignored Range header for file ID {} (status {}), skipping {} bytes locally.",
+                    fileId, httpResponse.getStatusCode(), start);
+            try {
+                content.skipNBytes(start);
+            } catch (IOException e) {
+                // Kết nối bị reset hoặc body ngắn hơn start: đóng response để trả kết nối HTTP, rồi báo lỗi như cũ
+                try {
+                    content.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+                throw e;
+            }
+        }
+        logger.debug("Opened Drive media range bytes={}-{} for file ID: {}", start, end, fileId);
+        return content;
+    }
+
+    @Override
+    public String resolveDirectDownloadUrl(String fileId) {
+        if (!redirectDelivery) {
+            return null;
+        }
+        // Drive không có signed URL; file đã public nên dùng link tải trực tiếp. confirm=t bỏ qua trang cảnh báo virus-scan với file lớn
+        return "https://drive.usercontent.google.com/download?id=" + URLEncoder.encode(fileId, StandardCharsets.UTF_8)
+                + "&export=download&confirm=t";
+    }
+
+    @Override
+    public String startResumableUpload(String mediaType, String originalFilename, long contentLength) throws IOException {
+        String mimeType = determineMimeType(originalFilename, mediaType);
+        GenericUrl url = new GenericUrl(driveService.getRootUrl() + "upload/" + driveService.getServicePath() + "files");
+        url.put("uploadType", "resumable");
+        url.put("fields", "id");
+        HttpRequest request = driveService.getRequestFactory().buildPostRequest(url,
+                new JsonHttpContent(driveService.getJsonFactory(), newFileMetadata(originalFilename, "media")));
+        request.getHeaders().set("X-Upload-Content-Type", mimeType);
+        request.getHeaders().set("X-Upload-Content-Length", contentLength);
+        HttpResponse response = request.execute();
+        try {
+            String sessionUri = response.getHeaders().getLocation();
+            if (sessionUri == null) {
+                throw new IOException("Google Drive did not return a resumable session URI for '" + originalFilename + "'");
+            }
+            logger.info("Opened Drive resumable upload session for '{}' ({} bytes, {}).", originalFilename, contentLength, mimeType);
+            return sessionUri;
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @Override
+    public ResumableUploadProgress uploadResumableChunk(String sessionUri, InputStream chunk, long offset, long length,
+                                                        long totalLength) throws IOException {
+        // setLength chỉ đặt Content-Length, writeTo vẫn chép đến EOF: giới hạn stream như MediaHttpUploader
+        // để caller truyền được stream của cả file spool mà không gửi quá phần Content-Range khai báo
+        InputStreamContent content = new InputStreamContent(null, ByteStreams.limit(chunk, length));
+        content.setLength(length);
+        content.setCloseInputStream(false); // Stream thuộc về caller
+        HttpRequest request = driveService.getRequestFactory().buildPutRequest(new GenericUrl(sessionUri), content);
+        request.getHeaders().setContentRange("bytes " + offset + "-" + (offset + length - 1) + "/" + totalLength);
+        return executeResumableRequest(request, sessionUri);
+    }
+
+    @Override
+    public ResumableUploadProgress queryResumableUpload(String sessionUri, long totalLength) throws IOException {
+        HttpRequest request = driveService.getRequestFactory().buildPutRequest(new GenericUrl(sessionUri), new EmptyContent());
+        request.getHeaders().setContentRange("bytes */" + totalLength);
+        return executeResumableRequest(request, sessionUri);
+    }
+
+    // 308 (Resume Incomplete) kèm Range = phần Drive đã nhận; 200/201 = file đã hoàn tất
+    private ResumableUploadProgress executeResumableRequest(HttpRequest request, String sessionUri) throws IOException {
+        request.setFollowRedirects(false); // 308 ở đây không phải redirect
+        request.setParser(driveService.getObjectParser()); // Request dựng tay không có sẵn parser JSON như request của Drive client
+        request.setThrowExceptionOnExecuteError(false);
+        HttpResponse response = request.execute();
+        try {
+            int status = response.getStatusCode();
+            if (status == 308) {
+                String range = response.getHeaders().getRange();
+                long committed = range == null ? 0 : Long.parseLong(range.substring(range.indexOf('-') + 1)) + 1;
+                return new ResumableUploadProgress(committed, null);
+            }
+            if (status == 200 || status == 201) {
+                File uploadedFile = response.parseAs(File.class);
+                if (uploadedFile == null || uploadedFile.getId() == null) {
+                    throw new IOException("Google Drive did not return a file ID when completing a resumable upload");
+                }
+                grantPublicRead(uploadedFile.getId());
+                logger.info("Drive resumable upload completed, file ID: {}", uploadedFile.getId());
+                return new ResumableUploadProgress(Long.MAX_VALUE, uploadedFile.getId());
+            }
+            throw new IOException("Google Drive resumable session " + abbreviate(sessionUri) + " answered " + status
+                    + " " + response.getStatusMessage());
+        } finally {
+            response.disconnect();
+        }
+    }
+
+    @Override
+    public void cancelResumableUpload(String sessionUri) {
+        try {
+            HttpRequest request = driveService.getRequestFactory().buildDeleteRequest(new GenericUrl(sessionUri));
+            request.setThrowExceptionOnExecuteError(false); // Drive trả 499 khi hủy thành công
+            request.execute().disconnect();
+        } catch (IOException e) {
+            logger.warn("Could not cancel Drive resumable session {}: {}", abbreviate(sessionUri), e.getMessage());
+        }
+    }
+
+    @Override
+    public int resumableChunkGranularity() {
+        return MediaHttpUploader.MINIMUM_CHUNK_SIZE; // 256 KB theo yêu cầu của Drive
+    }
+
+    // URI session chứa upload_id (đủ để ghi vào session): không log nguyên văn
+    private String abbreviate(String sessionUri) {
+        int idStart = sessionUri.indexOf("upload_id=");
+        return idStart < 0 ? "<session>" : sessionUri.substring(0, idStart) + "upload_id=...";
+    }
+
     private String determineMimeType(String filename, String mediaType) {
         if (filename == null) filename = "";
         filename = filename.toLowerCase();
@@ -152,6 +331,7 @@ public class GoogleDriveStorageServiceImpl implements StorageService {
         if (filename.endsWith(".webm")) return "video/webm";
         if (filename.endsWith(".mkv")) return "video/x-matroska";
         if (filename.endsWith(".flv")) return "video/x-flv";
+        if (filename.endsWith(".ts")) return "video/mp2t"; // Segment HLS
         if (filename.endsWith(".wmv")) return "video/x-ms-wmv";
 
 
@@ -0,0 +1,199 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/HeaderMediaProbeServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.Media;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.service.MediaProbeService;
+import com.ltdd.streamapp.gdrive.util.Mp4Probe;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ws.schild.jave.MultimediaObject;
+import ws.schild.jave.info.MultimediaInfo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Probe theo thứ tự rẻ nhất trước:
+ * <ol>
+ *     <li>Cache theo SHA-256 của nội dung: LRU trong bộ nhớ, rồi cột probe của Media đã lưu với cùng nội dung.</li>
+ *     <li>MP4/MOV/M4A: đọc moov trực tiếp ({@link Mp4Probe}), vài KB I/O và không chạy process nào.</li>
+ *     <li>Định dạng khác (MP3, WebM, MKV...): {@code ffmpeg -i} qua JAVE, chỉ đọc phần đầu file,
+ *     trên một pool giới hạn số process chạy cùng lúc và có timeout.</li>
+ * </ol>
+ */
+@Service
+public class HeaderMediaProbeServiceImpl implements MediaProbeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeaderMediaProbeServiceImpl.class);
+
+    private final MediaRepository mediaRepository;
+    private final StreamingMetrics streamingMetrics;
+    private final long timeoutSeconds;
+    private final ExecutorService ffmpegProbeExecutor;
+
+    // accessOrder = true + removeEldestEntry => LRU có giới hạn số phần tử
+    private final Map<String, ProbeResult> cache;
+
+    public HeaderMediaProbeServiceImpl(MediaRepository mediaRepository,
+                                       StreamingMetrics streamingMetrics,
+                                       @Value("${app.probe.workers:2}") int workers,
+                                       @Value("${app.probe.timeout-seconds:30}") long timeoutSeconds,
+                                       @Value("${app.probe.cache.max-entries:10000}") int maxEntries) {
+        this.mediaRepository = mediaRepository;
+        this.streamingMetrics = streamingMetrics;
+        this.timeoutSeconds = timeoutSeconds;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.ffmpegProbeExecutor = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "media-probe-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.cache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProbeResult> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ffmpegProbeExecutor.shutdownNow();
+    }
+
+    @Override
+    public ProbeResult probe(Path file, String contentSha256, String originalFilename) {
+        long startNanos = System.nanoTime();
+        ProbeResult cached = contentSha256 != null ? cachedResult(contentSha256) : null;
+        if (cached != null) {
+            streamingMetrics.recordProbe("cache", true, startNanos);
+            logger.debug("Probe cache hit for '{}' ({}).", originalFilename, contentSha256);
+            return cached;
+        }
+
+        ProbeResult result = probeHeaders(file, originalFilename);
+        String source = "header";
+        if (result == null) {
+            source = "ffmpeg";
+            startNanos = System.nanoTime();
+            result = probeWithFfmpeg(file, originalFilename);
+        }
+        boolean success = result != null;
+        streamingMetrics.recordProbe(source, success, startNanos);
+        if (!success) {
+            return ProbeResult.UNKNOWN;
+        }
+        logger.info("Probed '{}' via {} in {} ms: {}", originalFilename, source,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), result);
+        if (contentSha256 != null) {
+            synchronized (cache) {
+                cache.put(contentSha256, result);
+            }
+        }
+        return result;
+    }
+
+    private ProbeResult cachedResult(String contentSha256) {
+        synchronized (cache) {
+            ProbeResult cached = cache.get(contentSha256);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Cùng nội dung đã được upload trước đó (kể cả trước khi restart): dùng lại kết quả đã lưu trên Media
+        Media existing = mediaRepository.findFirstByContentSha256AndDurationMillisIsNotNull(contentSha256).orElse(null);
+        if (existing == null) {
+            return null;
+        }
+        ProbeResult stored = new ProbeResult(existing.getDurationMillis(), existing.getVideoCodec(), existing.getAudioCodec(),
+                existing.getWidth(), existing.getHeight(), existing.getBitrateKbps());
+        synchronized (cache) {
+            cache.put(contentSha256, stored);
+        }
+        return stored;
+    }
+
+    private ProbeResult probeHeaders(Path file, String originalFilename) {
+        try {
+            Mp4Probe mp4 = Mp4Probe.read(file);
+            if (mp4 == null) {
+                return null;
+            }
+            return new ProbeResult(mp4.durationMillis(), mp4.videoCodec(), mp4.audioCodec(),
+                    mp4.videoCodec() != null && mp4.width() > 0 ? mp4.width() : null,
+                    mp4.videoCodec() != null && mp4.height() > 0 ? mp4.height() : null,
+                    mp4.bitrateKbps());
+        } catch (Exception e) {
+            // moov hỏng hoặc lạ: để ffmpeg thử
+            logger.warn("Could not read MP4 headers of '{}', falling back to ffmpeg: {}", originalFilename, e.getMessage());
+            return null;
+        }
+    }
+
+    private ProbeResult probeWithFfmpeg(Path file, String originalFilename) {
+        Future<MultimediaInfo> future;
+        try {
+            future = ffmpegProbeExecutor.submit(() -> new MultimediaObject(file.toFile()).getInfo());
+        } catch (Exception e) {
+            logger.error("Could not schedule ffmpeg probe for '{}': {}", originalFilename, e.getMessage());
+            return null;
+        }
+        try {
+            MultimediaInfo info = future.get(timeoutSeconds, TimeUnit.SECONDS);
+            if (info == null || info.getDuration() <= 0) {
+                logger.warn("ffmpeg could not determine the duration of '{}'.", originalFilename);
+                return null;
+            }
+            long durationMillis = info.getDuration();
+            Integer width = null;
+            Integer height = null;
+            String videoCodec = null;
+            if (info.getVideo() != null) {
+                videoCodec = codecName(info.getVideo().getDecoder());
+                if (info.getVideo().getSize() != null) {
+                    width = info.getVideo().getSize().getWidth();
+                    height = info.getVideo().getSize().getHeight();
+                }
+            }
+            String audioCodec = info.getAudio() != null ? codecName(info.getAudio().getDecoder()) : null;
+            return new ProbeResult(durationMillis, videoCodec, audioCodec, width, height, Files.size(file) * 8 / durationMillis);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            logger.error("ffmpeg probe of '{}' timed out after {} s.", originalFilename, timeoutSeconds);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            logger.error("ffmpeg probe failed for '{}': {}. Ensure the ffmpeg binary for this OS is available.",
+                    originalFilename, cause != null ? cause.getMessage() : e.getMessage(), cause);
+        } catch (Exception e) {
+            logger.error("Unexpected error probing '{}': {}", originalFilename, e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // "h264 (High) (avc1 / 0x31637661)" -> "h264"
+    private String codecName(String decoder) {
+        if (decoder == null || decoder.isBlank()) {
+            return null;
+        }
+        String name = decoder.trim().split("[\\s(,]", 2)[0].toLowerCase(Locale.ROOT);
+        return name.length() <= 32 ? name : name.substring(0, 32);
+    }
+}
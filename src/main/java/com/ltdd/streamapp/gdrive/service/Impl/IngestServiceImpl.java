@@ -0,0 +1,293 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/IngestServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.exception.UpstreamBusyException;
+import com.ltdd.streamapp.gdrive.model.IngestJob;
+import com.ltdd.streamapp.gdrive.payload.IngestJobResponse;
+import com.ltdd.streamapp.gdrive.payload.MediaResponse;
+import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
+import com.ltdd.streamapp.gdrive.repository.IngestJobRepository;
+import com.ltdd.streamapp.gdrive.service.IngestService;
+import com.ltdd.streamapp.gdrive.service.MediaService;
+import com.ltdd.streamapp.gdrive.util.UploadSpool;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+@Service
+public class IngestServiceImpl implements IngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestServiceImpl.class);
+
+    static final String STATUS_QUEUED = "QUEUED";
+    static final String STATUS_PROCESSING = "PROCESSING";
+    static final String STATUS_DONE = "DONE";
+    static final String STATUS_FAILED = "FAILED";
+
+    // Thử lại khi hàng đợi ingest đầy
+    private static final long BUSY_RETRY_AFTER_SECONDS = 30;
+
+    private final IngestJobRepository ingestJobRepository;
+    private final MediaService mediaService;
+    private final Path spoolDir;
+    private final long retentionHours;
+    private final String backendBaseUrl;
+    private final ThreadPoolExecutor ingestExecutor;
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ingest-job-janitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Consumer<IngestJobResponse>>> listeners = new ConcurrentHashMap<>();
+
+    public IngestServiceImpl(IngestJobRepository ingestJobRepository,
+                             MediaService mediaService,
+                             @Value("${app.ingest.dir:${java.io.tmpdir}/streamapp-ingest}") String spoolDir,
+                             @Value("${app.ingest.workers:2}") int workers,
+                             @Value("${app.ingest.queue-capacity:32}") int queueCapacity,
+                             @Value("${app.ingest.retention-hours:24}") long retentionHours,
+                             @Value("${app.backend.base-url:http://localhost:9999}") String backendBaseUrl) {
+        this.ingestJobRepository = ingestJobRepository;
+        this.mediaService = mediaService;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath();
+        this.retentionHours = retentionHours;
+        this.backendBaseUrl = backendBaseUrl;
+        AtomicInteger threadCount = new AtomicInteger();
+        // Pool và hàng đợi có giới hạn: khi đầy, upload mới bị từ chối (503) thay vì chiếm disk và bộ nhớ không giới hạn
+        this.ingestExecutor = new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "ingest-worker-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        // Job chưa xong từ lần chạy trước: chạy lại nếu file spool còn, nếu không thì đánh dấu lỗi
+        for (IngestJob job : ingestJobRepository.findAllByStatusInOrderByCreatedAtAsc(List.of(STATUS_QUEUED, STATUS_PROCESSING))) {
+            if (job.getMediaId() != null) {
+                // Media đã được commit trước khi server dừng: chạy lại sẽ tạo Media và reference nội dung thứ hai
+                job.setStatus(STATUS_DONE);
+                job.setLastError(null);
+                ingestJobRepository.save(job);
+                deleteSpool(job);
+                logger.info("Ingest job {} had already created media {} before the last shutdown.", job.getId(), job.getMediaId());
+                continue;
+            }
+            if (Files.exists(Path.of(job.getSpoolPath()))) {
+                job.setStatus(STATUS_QUEUED);
+                ingestJobRepository.save(job);
+                try {
+                    ingestExecutor.execute(() -> process(job.getId()));
+                    logger.info("Re-queued ingest job {} interrupted by the last shutdown.", job.getId());
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    logger.warn("Ingest queue full while recovering job {}.", job.getId());
+                }
+            }
+            fail(job, "Upload was interrupted by a server restart, please upload again.");
+            deleteSpool(job);
+        }
+        janitor.scheduleWithFixedDelay(this::purgeFinishedJobs, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        janitor.shutdownNow();
+        ingestExecutor.shutdownNow();
+    }
+
+    @Override
+    public IngestJobResponse submit(String username, MultipartFile file, MediaUploadRequest uploadRequest) {
+        if (file.isEmpty()) {
+            throw new RuntimeException("Cannot upload empty media file.");
+        }
+        String type = uploadRequest.getType() != null ? uploadRequest.getType().toUpperCase(Locale.ROOT) : "";
+        if (!type.equals("MUSIC") && !type.equals("VIDEO")) {
+            throw new RuntimeException("Media type must be MUSIC or VIDEO.");
+        }
+        // Từ chối sớm, trước khi nhận cả file, khi hàng đợi đã đầy
+        if (ingestExecutor.getQueue().remainingCapacity() == 0) {
+            throw new UpstreamBusyException("Too many uploads are being processed, retry later.", BUSY_RETRY_AFTER_SECONDS);
+        }
+
+        IngestJob job = new IngestJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setOwnerUsername(username);
+        job.setOriginalFilename(file.getOriginalFilename() != null ? file.getOriginalFilename() : "unknownfile");
+        job.setTitle(uploadRequest.getTitle());
+        job.setDescription(uploadRequest.getDescription());
+        job.setType(type);
+        job.setPublic(uploadRequest.isPublic());
+        job.setArtist(uploadRequest.getArtist());
+        job.setAlbum(uploadRequest.getAlbum());
+        job.setStatus(STATUS_QUEUED);
+
+        Path spool = spoolDir.resolve(job.getId() + ".upload");
+        job.setSpoolPath(spool.toString());
+        try (InputStream in = file.getInputStream()) {
+            Files.createDirectories(spoolDir);
+            UploadSpool.Spooled spooled = UploadSpool.spool(in, spool);
+            job.setSizeBytes(spooled.size());
+            job.setContentSha256(spooled.sha256());
+        } catch (IOException e) {
+            deleteSpool(job);
+            throw new RuntimeException("Failed to buffer uploaded media file: " + e.getMessage(), e);
+        }
+        ingestJobRepository.save(job);
+
+        try {
+            ingestExecutor.execute(() -> process(job.getId()));
+        } catch (RejectedExecutionException e) {
+            ingestJobRepository.delete(job);
+            deleteSpool(job);
+            throw new UpstreamBusyException("Too many uploads are being processed, retry later.", BUSY_RETRY_AFTER_SECONDS);
+        }
+        logger.info("Ingest job {} queued for '{}' ({} bytes, {}) by '{}'.", job.getId(), job.getOriginalFilename(),
+                job.getSizeBytes(), type, username);
+        return toResponse(job, null);
+    }
+
+    private void process(String jobId) {
+        IngestJob job = ingestJobRepository.findById(jobId).orElse(null);
+        if (job == null || !STATUS_QUEUED.equals(job.getStatus())) {
+            return;
+        }
+        job.setStatus(STATUS_PROCESSING);
+        job = ingestJobRepository.save(job);
+        publish(job, null);
+
+        long startNanos = System.nanoTime();
+        try {
+            MediaResponse media = mediaService.createMediaFromLocalFile(job.getOwnerUsername(), Path.of(job.getSpoolPath()),
+                    job.getOriginalFilename(), job.getContentSha256(), null, toUploadRequest(job),
+                    mediaId -> ingestJobRepository.updateMediaId(jobId, mediaId));
+            job.setStatus(STATUS_DONE);
+            job.setMediaId(media.getId());
+            job.setLastError(null);
+            job = ingestJobRepository.save(job);
+            logger.info("Ingest job {} finished in {} ms as media {}.", jobId,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), media.getId());
+            publish(job, media);
+        } catch (Exception e) {
+            logger.error("Ingest job {} failed: {}", jobId, e.getMessage(), e);
+            // Không ghi đè mediaId đã được commit cùng Media (nếu lỗi xảy ra sau bước lưu)
+            job.setMediaId(ingestJobRepository.findById(jobId).map(IngestJob::getMediaId).orElse(null));
+            fail(job, e.getMessage());
+        } finally {
+            deleteSpool(job);
+        }
+    }
+
+    private void fail(IngestJob job, String message) {
+        job.setStatus(STATUS_FAILED);
+        job.setLastError(message == null ? null : message.length() <= 1000 ? message : message.substring(0, 1000));
+        publish(ingestJobRepository.save(job), null);
+    }
+
+    @Override
+    public IngestJobResponse getJob(String username, String jobId) {
+        IngestJob job = findJob(username, jobId);
+        MediaResponse media = STATUS_DONE.equals(job.getStatus()) ? mediaService.getMediaDetails(username, job.getMediaId()) : null;
+        return toResponse(job, media);
+    }
+
+    @Override
+    public Runnable subscribe(String username, String jobId, Consumer<IngestJobResponse> listener) {
+        findJob(username, jobId); // Kiểm tra quyền
+        listeners.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>()).add(listener);
+        return () -> listeners.computeIfPresent(jobId, (id, list) -> {
+            list.remove(listener);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private void publish(IngestJob job, MediaResponse media) {
+        List<Consumer<IngestJobResponse>> subscribers = listeners.get(job.getId());
+        boolean finished = STATUS_DONE.equals(job.getStatus()) || STATUS_FAILED.equals(job.getStatus());
+        if (finished) {
+            listeners.remove(job.getId());
+        }
+        if (subscribers == null) {
+            return;
+        }
+        IngestJobResponse response = toResponse(job, media);
+        for (Consumer<IngestJobResponse> subscriber : subscribers) {
+            try {
+                subscriber.accept(response);
+            } catch (Exception e) {
+                logger.debug("Ingest job listener failed for job {}: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        try {
+            List<IngestJob> expired = ingestJobRepository.findAllByStatusInAndUpdatedAtBefore(
+                    List.of(STATUS_DONE, STATUS_FAILED), LocalDateTime.now().minusHours(retentionHours));
+            ingestJobRepository.deleteAll(expired);
+        } catch (Exception e) {
+            logger.error("Purging finished ingest jobs failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private IngestJob findJob(String username, String jobId) {
+        return ingestJobRepository.findByIdAndOwnerUsername(jobId, username)
+                .orElseThrow(() -> new RuntimeException("Upload job not found: " + jobId));
+    }
+
+    private MediaUploadRequest toUploadRequest(IngestJob job) {
+        MediaUploadRequest request = new MediaUploadRequest();
+        request.setTitle(job.getTitle());
+        request.setDescription(job.getDescription());
+        request.setType(job.getType());
+        request.setPublic(job.isPublic());
+        request.setArtist(job.getArtist());
+        request.setAlbum(job.getAlbum());
+        return request;
+    }
+
+    private IngestJobResponse toResponse(IngestJob job, MediaResponse media) {
+        DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+        return new IngestJobResponse(job.getId(), job.getStatus(), backendBaseUrl + "/api/media/ingest-jobs/" + job.getId(),
+                job.getSizeBytes(), job.getMediaId(), media, job.getLastError(),
+                job.getCreatedAt() != null ? job.getCreatedAt().format(formatter) : null,
+                job.getUpdatedAt() != null ? job.getUpdatedAt().format(formatter) : null);
+    }
+
+    private void deleteSpool(IngestJob job) {
+        try {
+            Files.deleteIfExists(Path.of(job.getSpoolPath()));
+        } catch (IOException e) {
+            logger.warn("Could not delete ingest spool file: {}", job.getSpoolPath(), e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/KeyframeSeekIndexServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.MediaKeyframeIndex;
+import com.ltdd.streamapp.gdrive.repository.MediaKeyframeIndexRepository;
+import com.ltdd.streamapp.gdrive.service.SeekIndexService;
+import com.ltdd.streamapp.gdrive.util.FfmpegRunner;
+import com.ltdd.streamapp.gdrive.util.KeyframeIndex;
+import com.ltdd.streamapp.gdrive.util.Mp4Keyframes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+@Service
+public class KeyframeSeekIndexServiceImpl implements SeekIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyframeSeekIndexServiceImpl.class);
+
+    // Dòng log của filter showinfo: "... pts_time:12.345 ... pos: 123456 ..."
+    private static final Pattern SHOWINFO_KEYFRAME = Pattern.compile("pts_time:\\s*(-?[0-9.]+).*?\\bpos:\\s*(-?\\d+)");
+
+    private final MediaKeyframeIndexRepository keyframeIndexRepository;
+    private final boolean enabled;
+    private final long timeoutSeconds;
+
+    public KeyframeSeekIndexServiceImpl(MediaKeyframeIndexRepository keyframeIndexRepository,
+                                        @Value("${app.seek-index.enabled:true}") boolean enabled,
+                                        @Value("${app.seek-index.timeout-seconds:120}") long timeoutSeconds) {
+        this.keyframeIndexRepository = keyframeIndexRepository;
+        this.enabled = enabled;
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    @Override
+    @Transactional
+    public void buildIndex(String storageIdentifier, Path file) {
+        if (!enabled) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        try {
+            KeyframeIndex index = readMp4Keyframes(file);
+            String source = "mp4 sample table";
+            if (index == null) {
+                index = readWithFfmpeg(file);
+                source = "ffmpeg showinfo";
+            }
+            if (index.size() == 0) {
+                logger.warn("No keyframe positions found for file {}, time-based seeking disabled for it.", storageIdentifier);
+                return;
+            }
+            MediaKeyframeIndex entity = new MediaKeyframeIndex();
+            entity.setStorageIdentifier(storageIdentifier);
+            entity.setKeyframeCount(index.size());
+            entity.setData(index.encode());
+            keyframeIndexRepository.save(entity);
+            logger.info("Keyframe index for file {} built from {} in {} ms: {} keyframes, {} bytes.", storageIdentifier, source,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), index.size(), entity.getData().length);
+        } catch (Exception e) {
+            // Index chỉ là tối ưu: không làm hỏng upload
+            logger.error("Could not build keyframe index for file {}: {}", storageIdentifier, e.getMessage(), e);
+        }
+    }
+
+    private KeyframeIndex readMp4Keyframes(Path file) throws IOException {
+        try {
+            return Mp4Keyframes.read(file);
+        } catch (IndexOutOfBoundsException e) {
+            logger.warn("Malformed MP4 sample table in {}, falling back to ffmpeg: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    // Container khác MP4 (MKV, WebM, AVI...): chỉ decode keyframe và đọc vị trí packet từ log của showinfo
+    private KeyframeIndex readWithFfmpeg(Path file) throws IOException {
+        List<long[]> keyframes = new ArrayList<>();
+        FfmpegRunner.run(List.of(
+                "-skip_frame", "nokey",
+                "-i", file.toAbsolutePath().toString(),
+                "-map", "0:v:0", "-an", "-sn",
+                "-vf", "showinfo",
+                "-f", "null", "-"), timeoutSeconds, line -> {
+            Matcher matcher = SHOWINFO_KEYFRAME.matcher(line);
+            if (matcher.find()) {
+                long timeMillis = Math.round(Double.parseDouble(matcher.group(1)) * 1000);
+                long position = Long.parseLong(matcher.group(2));
+                if (timeMillis >= 0 && position >= 0) { // pos -1: container không báo vị trí
+                    keyframes.add(new long[]{timeMillis, position});
+                }
+            }
+        });
+        keyframes.sort((a, b) -> Long.compare(a[0], b[0]));
+        long[] times = new long[keyframes.size()];
+        long[] offsets = new long[keyframes.size()];
+        for (int i = 0; i < keyframes.size(); i++) {
+            times[i] = keyframes.get(i)[0];
+            offsets[i] = keyframes.get(i)[1];
+        }
+        return KeyframeIndex.of(times, offsets);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public KeyframeIndex.Entry resolve(String storageIdentifier, double timeSeconds) {
+        return keyframeIndexRepository.findById(storageIdentifier)
+                .map(entity -> KeyframeIndex.decode(entity.getData()).floor(Math.round(Math.max(0, timeSeconds) * 1000)))
+                .orElse(null);
+    }
+
+    @Override
+    @Transactional
+    public void deleteIndex(String storageIdentifier) {
+        keyframeIndexRepository.deleteById(storageIdentifier);
+    }
+}
@@ -4,38 +4,60 @@ package com.ltdd.streamapp.gdrive.service.Impl;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File; // Drive File model
 import com.ltdd.streamapp.gdrive.model.Media;
+import com.ltdd.streamapp.gdrive.model.MediaContent;
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
 import com.ltdd.streamapp.gdrive.model.User;
 import com.ltdd.streamapp.gdrive.payload.MediaResponse;
 import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
+import com.ltdd.streamapp.gdrive.payload.MediaVariantResponse;
+import com.ltdd.streamapp.gdrive.repository.MediaContentRepository;
 import com.ltdd.streamapp.gdrive.repository.MediaRepository;
 import com.ltdd.streamapp.gdrive.repository.UserRepository;
+import com.ltdd.streamapp.gdrive.service.HlsPackagingService;
+import com.ltdd.streamapp.gdrive.service.MediaMetadataCacheService;
+import com.ltdd.streamapp.gdrive.service.MediaProbeService;
+import com.ltdd.streamapp.gdrive.service.MediaRemuxService;
 import com.ltdd.streamapp.gdrive.service.MediaService;
+import com.ltdd.streamapp.gdrive.service.SeekIndexService;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
 import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.service.TranscodingService;
+import com.ltdd.streamapp.gdrive.service.TrickplayService;
+import com.ltdd.streamapp.gdrive.service.WaveformService;
+import com.ltdd.streamapp.gdrive.util.StreamUrlSigner;
+import com.ltdd.streamapp.gdrive.util.UploadSpool;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import ws.schild.jave.EncoderException;
-import ws.schild.jave.MultimediaObject;
-import ws.schild.jave.info.MultimediaInfo;
 // import ws.schild.jave.process.ffmpeg.FFMPEGProcess; // Bỏ comment nếu muốn set đường dẫn ffmpeg
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -47,10 +69,26 @@ public class MediaServiceImpl implements MediaService {
     private final UserRepository userRepository;
     private final StorageService storageService;
     private final Drive googleDriveService;
+    private final SegmentCacheService segmentCacheService;
+    private final MediaMetadataCacheService mediaMetadataCacheService;
+    private final MediaRemuxService mediaRemuxService;
+    private final HlsPackagingService hlsPackagingService;
+    private final TranscodingService transcodingService;
+    private final SeekIndexService seekIndexService;
+    private final TrickplayService trickplayService;
+    private final WaveformService waveformService;
+    private final MediaProbeService mediaProbeService;
+    private final MediaContentRepository mediaContentRepository;
+    private final StreamUrlSigner streamUrlSigner;
+    private final AsyncTaskExecutor mediaUploadExecutor;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${app.backend.base-url:http://localhost:9999}")
     private String backendBaseUrl;
 
+    @Value("${app.media.work-dir:${java.io.tmpdir}/streamapp-work}")
+    private String workDir;
+
     /*
     // Tùy chọn: Cấu hình đường dẫn FFMPEG nếu không nằm trong PATH hệ thống
     // Đường dẫn này cần được đặt trong một khối static hoặc một @Configuration bean
@@ -72,15 +110,41 @@ public class MediaServiceImpl implements MediaService {
     public MediaServiceImpl(MediaRepository mediaRepository,
                             UserRepository userRepository,
                             @Qualifier("googleDriveStorageService") StorageService storageService,
-                            Drive googleDriveService) {
+                            Drive googleDriveService,
+                            SegmentCacheService segmentCacheService,
+                            MediaMetadataCacheService mediaMetadataCacheService,
+                            MediaRemuxService mediaRemuxService,
+                            HlsPackagingService hlsPackagingService,
+                            TranscodingService transcodingService,
+                            SeekIndexService seekIndexService,
+                            TrickplayService trickplayService,
+                            WaveformService waveformService,
+                            MediaProbeService mediaProbeService,
+                            MediaContentRepository mediaContentRepository,
+                            StreamUrlSigner streamUrlSigner,
+                            @Qualifier("mediaUploadExecutor") AsyncTaskExecutor mediaUploadExecutor,
+                            PlatformTransactionManager transactionManager) {
         this.mediaRepository = mediaRepository;
         this.userRepository = userRepository;
         this.storageService = storageService;
         this.googleDriveService = googleDriveService;
+        this.segmentCacheService = segmentCacheService;
+        this.mediaMetadataCacheService = mediaMetadataCacheService;
+        this.mediaRemuxService = mediaRemuxService;
+        this.hlsPackagingService = hlsPackagingService;
+        this.transcodingService = transcodingService;
+        this.seekIndexService = seekIndexService;
+        this.trickplayService = trickplayService;
+        this.waveformService = waveformService;
+        this.mediaProbeService = mediaProbeService;
+        this.mediaContentRepository = mediaContentRepository;
+        this.streamUrlSigner = streamUrlSigner;
+        this.mediaUploadExecutor = mediaUploadExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    // Không @Transactional: upload lên storage và probe mất hàng phút, chỉ bước lưu Media mới cần transaction (xem ingestLocalFile)
     @Override
-    @Transactional
     public MediaResponse uploadMedia(String username, MultipartFile multipartFile, @Valid MediaUploadRequest uploadRequest) {
         if (multipartFile.isEmpty()) {
             throw new RuntimeException("Cannot upload empty media file.");
@@ -89,80 +153,286 @@ public class MediaServiceImpl implements MediaService {
                 .orElseThrow(() -> new RuntimeException("User not found for media upload: " + username));
 
         String originalFilename = multipartFile.getOriginalFilename() != null ? multipartFile.getOriginalFilename() : "unknownfile";
-        String fileId = storageService.uploadMediaFile(multipartFile, uploadRequest.getType(), originalFilename);
 
-        if (fileId == null || fileId.isEmpty()) {
-            throw new RuntimeException("Failed to upload media to storage, received null or empty fileId.");
+        // File được ghi ra disk một lần (kèm SHA-256 trong cùng lượt đọc), dùng chung cho remux faststart, JAVE và upload lên storage
+        Path tempFile = null;
+        UploadSpool.Spooled spooled;
+        try (InputStream in = multipartFile.getInputStream()) {
+            tempFile = Files.createTempFile("jave_", "_" + sanitizeFilenameForTemp(originalFilename));
+            spooled = UploadSpool.spool(in, tempFile);
+            logger.debug("Upload spooled to {}: {} bytes, sha256 {}", tempFile, spooled.size(), spooled.sha256());
+        } catch (IOException e) {
+            deleteTempFile(tempFile);
+            throw new RuntimeException("Failed to buffer uploaded media file: " + e.getMessage(), e);
         }
 
-        Media media = new Media();
-        media.setTitle(uploadRequest.getTitle());
-        media.setDescription(uploadRequest.getDescription());
-        media.setType(uploadRequest.getType().toUpperCase());
-        media.setStorageIdentifier(fileId);
-        media.setOwnerUsername(username);
-        media.setPublic(uploadRequest.isPublic());
-        // @PrePersist sẽ set uploadDate
-
-        String durationStr = "00:00";
-        Path tempFile = null;
         try {
-            tempFile = Files.createTempFile("jave_", "_" + sanitizeFilenameForTemp(originalFilename));
-            try (FileOutputStream fos = new FileOutputStream(tempFile.toFile())) {
-                fos.write(multipartFile.getBytes());
+            return ingestLocalFile(user, tempFile, spooled.sha256(), originalFilename, null, uploadRequest, null);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
+
+    @Override
+    public MediaResponse createMediaFromLocalFile(String username, Path file, String originalFilename, String sha256,
+                                                  String storedIdentifier, MediaUploadRequest uploadRequest,
+                                                  Consumer<Long> onMediaSaved) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found for media upload: " + username));
+        if (sha256 == null) {
+            try {
+                sha256 = UploadSpool.hash(file).sha256();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read uploaded media file: " + e.getMessage(), e);
             }
-            logger.debug("Temporary file created for JAVE: {}", tempFile.toString());
-
-            java.io.File a = tempFile.toFile();
-            if (a.exists() && a.canRead()) {
-                 MultimediaObject multimediaObject = new MultimediaObject(a);
-                 MultimediaInfo info = multimediaObject.getInfo();
-                 long durationMillis = info.getDuration();
-                 if (durationMillis > 0) {
-                    durationStr = formatDurationMillis(durationMillis);
-                 } else if (durationMillis == -1) {
-                    logger.warn("JAVE could not determine duration (returned -1) for file: {}. This might happen if ffmpeg is not found or the file is corrupted.", originalFilename);
-                 }
-                 logger.info("Extracted duration for file '{}': {} ms -> {}", originalFilename, durationMillis, durationStr);
+        }
+        return ingestLocalFile(user, file, sha256, originalFilename, storedIdentifier, uploadRequest, onMediaSaved);
+    }
+
+    /**
+     * Phần chung của upload thường và upload resumable: remux, probe, lưu lên storage (nếu chưa có), tạo Media và lên lịch xử lý nền.
+     * Nội dung đã có trên storage (cùng SHA-256 và loại media) thì dùng chung file đó và các output dẫn xuất của Media đã có
+     * (HLS, rendition, trickplay, waveform), chỉ tốn một dòng Media và một reference.
+     * @param storedIdentifier File đã có sẵn trên storage với đúng nội dung {@code file}, hoặc null để upload ở đây.
+     * @param onMediaSaved Xem {@link MediaService#createMediaFromLocalFile}.
+     */
+    private MediaResponse ingestLocalFile(User user, Path file, String sha256, String originalFilename,
+                                          String storedIdentifier, MediaUploadRequest uploadRequest,
+                                          Consumer<Long> onMediaSaved) {
+        String username = user.getUsername();
+        String type = uploadRequest.getType().toUpperCase(Locale.ROOT);
+        Path fileToStore = null;
+        WorkCopy workCopy = null;
+        try {
+            MediaContent knownContent = sha256 != null
+                    ? mediaContentRepository.findByContentSha256AndMediaType(sha256, type).orElse(null)
+                    : null;
+            final boolean duplicate = knownContent != null;
+            // Bản của resumable session trùng với file đã lưu: bỏ đi sau khi Media được lưu
+            String redundantIdentifier = null;
+            if (duplicate) {
+                // File đã lưu đã được remux và index keyframe từ lần upload đầu
+                fileToStore = file;
+                redundantIdentifier = storedIdentifier;
+                storedIdentifier = knownContent.getStorageIdentifier();
+                logger.info("Content of '{}' ({}) is already stored as {}, skipping storage upload.",
+                        originalFilename, sha256, storedIdentifier);
             } else {
-                logger.error("Temporary file for JAVE does not exist or is not readable: {}", tempFile.toString());
+                // Video MP4/MOV có moov ở cuối file: chuyển moov lên đầu (không encode lại) để player phát được ngay từ request đầu tiên
+                fileToStore = "VIDEO".equals(type)
+                        ? mediaRemuxService.ensureFaststart(file, originalFilename)
+                        : file;
+                if (storedIdentifier != null && !fileToStore.equals(file)) {
+                    // Bản trên storage là bản gốc chưa remux: thay bằng bản faststart
+                    storageService.deleteMediaFile(storedIdentifier);
+                    storedIdentifier = null;
+                }
             }
 
-        } catch (IOException e) {
-            logger.error("IOException during temporary file creation or JAVE processing for '{}': {}", originalFilename, e.getMessage());
-        } catch (EncoderException e) {
-            // SỬA LỖI 1: EncoderException không có getErrorCode()
-            // Thay vào đó, log toàn bộ message của nó, thường chứa thông tin lỗi từ ffmpeg.
-            logger.error("JAVE EncoderException for file '{}': Message={}. Output from ffmpeg might be included in this message. Ensure ffmpeg is installed and in PATH.",
-                         originalFilename, e.getMessage(), e); // Log cả stack trace
-        } catch (UnsatisfiedLinkError ule) {
-            logger.error("JAVE UnsatisfiedLinkError for file '{}': {}. This often means native FFmpeg libraries are missing or not found for your OS/architecture. Consider installing ffmpeg system-wide or ensure jave-nativebin dependencies are correct.", originalFilename, ule.getMessage(), ule);
-        }
-        catch (Exception e) {
-            logger.error("Unexpected error extracting duration for file '{}': {}", originalFilename, e.getMessage(), e);
-        } finally {
-            if (tempFile != null) {
-                try {
-                    Files.deleteIfExists(tempFile);
-                    logger.debug("Temporary file deleted: {}", tempFile.toString());
-                } catch (IOException e) {
-                    // SỬA LỖI 2: Path không có getAbsolutePath(), dùng toString() hoặc toAbsolutePath().toString()
-                    logger.warn("Could not delete temporary file: {}", tempFile.toAbsolutePath().toString(), e);
+            final boolean uploadedHere = storedIdentifier == null;
+            // Upload lên storage (nghẽn ở mạng) chạy song song với probe header, cả hai chỉ đọc file đã spool
+            final Path uploadSource = fileToStore;
+            CompletableFuture<String> upload = !uploadedHere
+                    ? CompletableFuture.completedFuture(storedIdentifier)
+                    : CompletableFuture.supplyAsync(
+                            () -> storageService.uploadMediaFile(uploadSource, uploadRequest.getType(), originalFilename), mediaUploadExecutor);
+            // Probe bản gốc: khớp với sha256 dùng làm cache key, remux faststart không đổi thời lượng hay codec
+            MediaProbeService.ProbeResult probe = mediaProbeService.probe(file, sha256, originalFilename);
+            String fileId;
+            try {
+                fileId = upload.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+
+            if (fileId == null || fileId.isEmpty()) {
+                throw new RuntimeException("Failed to upload media to storage, received null or empty fileId.");
+            }
+
+            if ("VIDEO".equals(type) && !duplicate) {
+                // Index keyframe trên đúng file đã upload, để ?t= của endpoint stream tra ra byte offset ngay
+                seekIndexService.buildIndex(fileId, fileToStore);
+            }
+
+            // Transaction chỉ bao bước lưu Media và lên lịch xử lý nền, không giữ connection DB trong lúc upload/probe
+            Media savedMedia;
+            try {
+                if ("VIDEO".equals(type) && !duplicate) {
+                    // Một bản sao cục bộ dùng chung cho HLS, trickplay và thang bitrate, copy trước khi mở transaction
+                    try {
+                        workCopy = WorkCopy.copyOf(fileToStore, Paths.get(workDir), "upload-", originalFilename);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Failed to prepare media for background processing: " + e.getMessage(), e);
+                    }
+                }
+                final WorkCopy jobSource = workCopy;
+                savedMedia = transactionTemplate.execute(status -> {
+                    Media media = new Media();
+                    media.setTitle(uploadRequest.getTitle());
+                    media.setDescription(uploadRequest.getDescription());
+                    media.setType(type);
+                    // Upload song song cùng nội dung có thể đã đăng ký trước: khi đó dùng file của nó
+                    String storageIdentifier = sha256 != null ? retainContent(sha256, type, fileId, duplicate) : fileId;
+                    media.setStorageIdentifier(storageIdentifier);
+                    boolean sharedContent = duplicate || !fileId.equals(storageIdentifier);
+                    if (sharedContent) {
+                        // Output dẫn xuất chỉ phụ thuộc nội dung: dùng chung của Media đã có thay vì xử lý lại
+                        Media outputSource = mediaRepository.findFirstByStorageIdentifierAndTypeOrderByIdAsc(storageIdentifier, type).orElse(null);
+                        if (outputSource != null) {
+                            media.setOutputMediaId(outputSource.getOutputsId());
+                            media.setHlsStatus(outputSource.getHlsStatus());
+                            media.setTrickplayStatus(outputSource.getTrickplayStatus());
+                        } else {
+                            logger.warn("No media found for stored content {}, '{}' will have no derived outputs.",
+                                    storageIdentifier, originalFilename);
+                        }
+                    }
+                    media.setOwnerUsername(username);
+                    media.setPublic(uploadRequest.isPublic());
+                    // @PrePersist sẽ set uploadDate
+
+                    media.setContentSha256(sha256);
+                    media.setDurationMillis(probe.durationMillis());
+                    media.setVideoCodec(probe.videoCodec());
+                    media.setAudioCodec(probe.audioCodec());
+                    media.setWidth(probe.width());
+                    media.setHeight(probe.height());
+                    media.setBitrateKbps(probe.bitrateKbps());
+
+                    if ("MUSIC".equalsIgnoreCase(media.getType())) {
+                        media.setArtist(uploadRequest.getArtist() != null ? uploadRequest.getArtist() : "Unknown Artist");
+                        media.setAlbum(uploadRequest.getAlbum() != null ? uploadRequest.getAlbum() : "Unknown Album");
+                    }
+
+                    Media saved = mediaRepository.save(media);
+                    logger.info("Media entity saved: ID = {}, Title = '{}', StorageID = '{}', Duration = {} ms by User '{}'",
+                            saved.getId(), saved.getTitle(), saved.getStorageIdentifier(), saved.getDurationMillis(), username);
+                    if (onMediaSaved != null) {
+                        onMediaSaved.accept(saved.getId());
+                    }
+
+                    if (sharedContent) {
+                        return saved;
+                    }
+                    if ("VIDEO".equals(saved.getType())) {
+                        // Cắt thành segment HLS ở background, sau khi transaction này commit
+                        hlsPackagingService.schedulePackaging(saved.getId(), jobSource);
+                        // Thang bitrate thấp hơn cho client băng thông yếu, encode bởi worker pool riêng
+                        transcodingService.scheduleLadder(saved.getId(), jobSource, probe.height());
+                        trickplayService.scheduleGeneration(saved.getId(), jobSource);
+                    } else if ("MUSIC".equals(saved.getType())) {
+                        // Bản Opus/AAC nhỏ cho người nghe trên mạng di động; worker tải bản gốc từ storage nên không cần file tạm
+                        transcodingService.scheduleWaveform(saved.getId());
+                        transcodingService.scheduleAudioRenditions(saved.getId());
+                    }
+                    return saved;
+                });
+            } catch (RuntimeException e) {
+                // File vừa upload nằm trên storage nhưng không có Media nào trỏ tới: dọn để không mồ côi
+                // (file của resumable session thì giữ lại, session còn dùng khi client gọi /complete lần nữa)
+                if (!duplicate) {
+                    seekIndexService.deleteIndex(fileId);
+                }
+                if (uploadedHere) {
+                    storageService.deleteMediaFile(fileId);
                 }
+                throw e;
+            }
+            if (savedMedia.getOutputMediaId() != null) {
+                syncOutputStatuses(savedMedia);
+            }
+            if (!fileId.equals(savedMedia.getStorageIdentifier())) {
+                // Thua race với một upload khác cùng nội dung: bản vừa lưu không còn ai dùng
+                logger.info("Content {} was registered concurrently as {}, deleting duplicate copy {}.",
+                        sha256, savedMedia.getStorageIdentifier(), fileId);
+                seekIndexService.deleteIndex(fileId);
+                storageService.deleteMediaFile(fileId);
+            }
+            if (redundantIdentifier != null) {
+                storageService.deleteMediaFile(redundantIdentifier);
+            }
+            return mapToMediaResponse(savedMedia, user);
+        } finally {
+            if (workCopy != null) {
+                workCopy.release(); // Các job đã giữ reference riêng
+            }
+            if (fileToStore != null && !fileToStore.equals(file)) {
+                deleteTempFile(fileToStore);
             }
         }
-        media.setDuration(durationStr);
+    }
+
+    /**
+     * Job của Media gốc cập nhật trạng thái trên mọi Media dùng chung output, nhưng không thấy Media chưa commit:
+     * lần cập nhật rơi vào giữa lúc đọc trạng thái và lúc commit sẽ bị mất, nên đọc lại một lần sau khi commit.
+     */
+    private void syncOutputStatuses(Media media) {
+        Long outputsId = media.getOutputsId();
+        mediaRepository.findFirstByIdOrOutputMediaIdOrderByIdAsc(outputsId, outputsId)
+                .filter(source -> !source.getId().equals(media.getId()))
+                .filter(source -> !Objects.equals(source.getHlsStatus(), media.getHlsStatus())
+                        || !Objects.equals(source.getTrickplayStatus(), media.getTrickplayStatus()))
+                .ifPresent(source -> {
+                    mediaRepository.updateOutputStatuses(media.getId(), source.getHlsStatus(), source.getTrickplayStatus());
+                    media.setHlsStatus(source.getHlsStatus());
+                    media.setTrickplayStatus(source.getTrickplayStatus());
+                });
+    }
 
-        if ("MUSIC".equalsIgnoreCase(media.getType())) {
-            media.setArtist(uploadRequest.getArtist() != null ? uploadRequest.getArtist() : "Unknown Artist");
-            media.setAlbum(uploadRequest.getAlbum() != null ? uploadRequest.getAlbum() : "Unknown Album");
+    /**
+     * Thêm một reference tới nội dung {@code sha256}, đăng ký nội dung mới nếu chưa có. Gọi trong transaction lưu Media.
+     * @return storageIdentifier mà Media phải trỏ tới (có thể khác {@code fileId} nếu upload khác đăng ký trước).
+     */
+    private String retainContent(String sha256, String type, String fileId, boolean duplicate) {
+        MediaContent content = mediaContentRepository.findWithLockByContentSha256AndMediaType(sha256, type).orElse(null);
+        if (content == null) {
+            if (duplicate) {
+                // Reference cuối vừa bị xóa cùng lúc, file dùng chung không còn trên storage
+                throw new RuntimeException("Stored content was deleted while uploading, please upload the file again.");
+            }
+            content = new MediaContent();
+            content.setContentSha256(sha256);
+            content.setMediaType(type);
+            content.setStorageIdentifier(fileId);
         }
+        content.setReferenceCount(content.getReferenceCount() + 1);
+        return mediaContentRepository.saveAndFlush(content).getStorageIdentifier();
+    }
 
-        Media savedMedia = mediaRepository.save(media);
-        logger.info("Media entity saved: ID = {}, Title = '{}', StorageID = '{}', Duration = '{}' by User '{}'",
-                savedMedia.getId(), savedMedia.getTitle(), savedMedia.getStorageIdentifier(), savedMedia.getDuration(), username);
+    /**
+     * Bỏ reference của {@code media} tới file trên storage. Gọi trong transaction xóa Media.
+     * @return {@code true} nếu không còn Media nào dùng file đó (được phép xóa khỏi storage).
+     */
+    private boolean releaseContent(Media media) {
+        MediaContent content = media.getContentSha256() != null
+                ? mediaContentRepository.findWithLockByContentSha256AndMediaType(media.getContentSha256(), media.getType()).orElse(null)
+                : null;
+        if (content != null && content.getStorageIdentifier().equals(media.getStorageIdentifier())) {
+            int remaining = content.getReferenceCount() - 1;
+            if (remaining > 0) {
+                content.setReferenceCount(remaining);
+                mediaContentRepository.save(content);
+                return false;
+            }
+            mediaContentRepository.delete(content);
+            return true;
+        }
+        // Media tạo trước khi có content index: chỉ xóa khi không còn Media nào khác trỏ tới cùng file
+        return mediaRepository.findAllByStorageIdentifier(media.getStorageIdentifier()).stream()
+                .allMatch(other -> other.getId().equals(media.getId()));
+    }
 
-        return mapToMediaResponse(savedMedia, user);
+    private void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+            logger.debug("Temporary file deleted: {}", tempFile.toString());
+        } catch (IOException e) {
+            // SỬA LỖI 2: Path không có getAbsolutePath(), dùng toString() hoặc toAbsolutePath().toString()
+            logger.warn("Could not delete temporary file: {}", tempFile.toAbsolutePath().toString(), e);
+        }
     }
 
     private String formatDurationMillis(long millis) {
@@ -239,9 +509,28 @@ public class MediaServiceImpl implements MediaService {
                 .orElseThrow(() -> new RuntimeException(
                         "Media not found with ID: " + mediaId + " or user '" + username + "' does not have permission to delete."));
 
-        if (media.getStorageIdentifier() != null && !media.getStorageIdentifier().isEmpty()) {
+        boolean stored = media.getStorageIdentifier() != null && !media.getStorageIdentifier().isEmpty();
+        if (stored && !releaseContent(media)) {
+            // File dùng chung (upload trùng nội dung): chỉ bỏ reference, cache và keyframe index vẫn còn giá trị
+            logger.info("Storage ID {} is still shared by other media, keeping the file. Media ID: {}",
+                    media.getStorageIdentifier(), media.getId());
+        } else if (stored) {
             logger.info("Deleting media file from storage. Media ID: {}, Storage ID: {}", media.getId(), media.getStorageIdentifier());
             storageService.deleteMediaFile(media.getStorageIdentifier());
+            mediaMetadataCacheService.invalidate(media.getStorageIdentifier());
+            segmentCacheService.evictFile(media.getStorageIdentifier());
+            seekIndexService.deleteIndex(media.getStorageIdentifier());
+        }
+        // Sau releaseContent (đã khóa content): upload trùng nội dung đang chạy song song đã commit Media của nó, nếu có
+        Long outputsId = media.getOutputsId();
+        if (mediaRepository.countByIdOrOutputMediaId(outputsId, outputsId) > 1) {
+            logger.info("Derived outputs stored under media {} are still used by other media, keeping them. Media ID: {}",
+                    outputsId, media.getId());
+        } else {
+            transcodingService.deleteTranscodes(outputsId);
+            hlsPackagingService.deletePackaging(outputsId);
+            trickplayService.deleteTrickplay(outputsId);
+            waveformService.deleteWaveform(outputsId);
         }
         if (media.getThumbnailStorageIdentifier() != null && !media.getThumbnailStorageIdentifier().isEmpty()) {
             logger.info("Deleting thumbnail file from storage. Media ID: {}, Thumbnail Storage ID: {}", media.getId(), media.getThumbnailStorageIdentifier());
@@ -251,6 +540,73 @@ public class MediaServiceImpl implements MediaService {
         logger.info("Media record (ID: {}) deleted from database by user: {}", media.getId(), username);
     }
 
+    @Override
+    public String resolveDirectStreamUrl(String storageIdentifier) {
+        return storageService.resolveDirectDownloadUrl(storageIdentifier);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean canAccessMedia(Long mediaId, String username) {
+        return mediaRepository.findById(mediaId)
+                .map(media -> media.isPublic() || media.getOwnerUsername().equals(username))
+                .orElse(false);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean canAccessMedia(Long mediaId, String username, Long expires, String signature) {
+        // Chữ ký được kiểm tra trước vì không cần DB
+        return streamUrlSigner.verify(StreamUrlSigner.mediaResource(mediaId), expires, signature) || canAccessMedia(mediaId, username);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public boolean canAccessStoredFile(String storageIdentifier, String username) {
+        return mediaRepository.findAllByStorageIdentifier(storageIdentifier).stream()
+                .anyMatch(media -> media.isPublic() || media.getOwnerUsername().equals(username));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Long resolveOutputsId(Long mediaId) {
+        return mediaRepository.findOutputsIdById(mediaId).orElse(mediaId);
+    }
+
+    private void mapVariants(Media media, MediaResponse dto, String mediaQuery) {
+        String hlsBaseUrl = backendBaseUrl + "/api/media/stream/hls/" + media.getId() + "/";
+        List<MediaVariantResponse> variants = new ArrayList<>();
+        for (MediaRendition rendition : transcodingService.getRenditions(media.getOutputsId())) {
+            variants.add(new MediaVariantResponse(rendition.getName(), rendition.getWidth(), rendition.getHeight(),
+                    rendition.getVideoBitrateKbps(), null, null, withQuery(hlsBaseUrl + rendition.getName() + "/playlist.m3u8", mediaQuery)));
+        }
+        if ("READY".equals(media.getHlsStatus())) {
+            String sourcePlaylist = withQuery(hlsBaseUrl + HlsPackagingService.SOURCE_RENDITION + "/playlist.m3u8", mediaQuery);
+            dto.setHlsUrl(sourcePlaylist);
+            variants.add(new MediaVariantResponse(HlsPackagingService.SOURCE_RENDITION, null, null, null, null, null, sourcePlaylist));
+        }
+        dto.setVariants(variants);
+        if (!variants.isEmpty()) {
+            dto.setHlsMasterUrl(withQuery(hlsBaseUrl + "master.m3u8", mediaQuery));
+        }
+    }
+
+    private static String withQuery(String url, String query) {
+        return query == null ? url : url + (url.contains("?") ? "&" : "?") + query;
+    }
+
+    // Rendition audio được phát qua chính URL stream của bản gốc, chọn bằng ?rendition=
+    private void mapAudioVariants(Media media, MediaResponse dto) {
+        List<MediaVariantResponse> variants = new ArrayList<>();
+        for (MediaRendition rendition : transcodingService.getRenditions(media.getOutputsId())) {
+            if (rendition.getStorageIdentifier() != null) {
+                variants.add(new MediaVariantResponse(rendition.getName(), null, null, null, rendition.getAudioBitrateKbps(),
+                        rendition.getMimeType(), dto.getUrl() + (dto.getUrl().contains("?") ? "&" : "?") + "rendition=" + rendition.getName()));
+            }
+        }
+        dto.setVariants(variants);
+    }
+
     private MediaResponse mapToMediaResponse(Media media, User owner) {
         if (media == null) return null;
 
@@ -261,15 +617,42 @@ public class MediaServiceImpl implements MediaService {
         dto.setType(media.getType());
         dto.setOwnerUsername(media.getOwnerUsername());
         dto.setPublic(media.isPublic());
-        dto.setDuration(media.getDuration());
+        dto.setDuration(media.getDurationMillis() != null ? formatDurationMillis(media.getDurationMillis()) : "00:00");
+        dto.setDurationMillis(media.getDurationMillis());
+        dto.setVideoCodec(media.getVideoCodec());
+        dto.setAudioCodec(media.getAudioCodec());
+        dto.setWidth(media.getWidth());
+        dto.setHeight(media.getHeight());
+        dto.setBitrateKbps(media.getBitrateKbps());
         dto.setArtist(media.getArtist());
         dto.setAlbum(media.getAlbum());
         dto.setViewCount(media.getViewCount());
 
         if (media.getStorageIdentifier() != null) {
             String streamUrl = backendBaseUrl + "/api/media/stream/" + media.getStorageIdentifier();
+            if (!media.isPublic()) {
+                // Player không gửi được header Authorization: quyền xem nằm trong URL có chữ ký và hạn dùng
+                streamUrl += "?" + streamUrlSigner.signQuery(media.getStorageIdentifier());
+            }
+            if ("MUSIC".equals(media.getType())) {
+                // File có thể dùng chung giữa nhiều Media (dedup): rendition audio chọn theo Media của URL
+                streamUrl += (streamUrl.contains("?") ? "&" : "?") + "media=" + media.getId();
+            }
             dto.setUrl(streamUrl);
             logger.debug("Mapped stream URL for media {}: {}", media.getId(), streamUrl);
+            // HLS/trickplay/waveform cũng được mở bởi player: ký theo media, playlist chuyển query này sang các URI con
+            String mediaQuery = media.isPublic() ? null : streamUrlSigner.signQuery(StreamUrlSigner.mediaResource(media.getId()));
+            if ("VIDEO".equals(media.getType())) {
+                mapVariants(media, dto, mediaQuery);
+                if ("READY".equals(media.getTrickplayStatus())) {
+                    dto.setTrickplayUrl(withQuery(backendBaseUrl + "/api/media/stream/trickplay/" + media.getId() + "/thumbnails.vtt", mediaQuery));
+                }
+            } else if ("MUSIC".equals(media.getType())) {
+                mapAudioVariants(media, dto);
+                if (waveformService.hasWaveform(media.getOutputsId())) {
+                    dto.setWaveformUrl(withQuery(backendBaseUrl + "/api/media/stream/waveform/" + media.getId(), mediaQuery));
+                }
+            }
 
             if (media.getThumbnailStorageIdentifier() != null) {
                 dto.setThumbnailUrl("https://drive.google.com/thumbnail?id=" + media.getThumbnailStorageIdentifier() + "&sz=w320-h180");
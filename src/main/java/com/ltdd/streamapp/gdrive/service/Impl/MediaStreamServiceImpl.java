@@ -0,0 +1,86 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/MediaStreamServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.service.BandwidthShaperService;
+import com.ltdd.streamapp.gdrive.service.BandwidthShaperService.ShapedStream;
+import com.ltdd.streamapp.gdrive.service.MediaStreamService;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.SegmentPrefetchService;
+import com.ltdd.streamapp.gdrive.util.StreamBufferPool;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+@Service
+public class MediaStreamServiceImpl implements MediaStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaStreamServiceImpl.class);
+
+    private final SegmentCacheService segmentCacheService;
+    private final SegmentPrefetchService segmentPrefetchService;
+    private final StreamBufferPool streamBufferPool;
+    private final BandwidthShaperService bandwidthShaperService;
+
+    public MediaStreamServiceImpl(SegmentCacheService segmentCacheService,
+                                  SegmentPrefetchService segmentPrefetchService,
+                                  StreamBufferPool streamBufferPool,
+                                  BandwidthShaperService bandwidthShaperService) {
+        this.segmentCacheService = segmentCacheService;
+        this.segmentPrefetchService = segmentPrefetchService;
+        this.streamBufferPool = streamBufferPool;
+        this.bandwidthShaperService = bandwidthShaperService;
+    }
+
+    @Override
+    public long transferRange(String fileIdentifier, String fileVersion, String clientKey, long fileSize, long start, long end, OutputStream out,
+                              StreamCancellation cancellation) throws IOException {
+        long segmentSize = segmentCacheService.getSegmentSize();
+        byte[] buffer = streamBufferPool.acquire();
+        ByteBuffer bufferView = ByteBuffer.wrap(buffer);
+        long totalBytesTransferred = 0;
+        long position = start;
+
+        try (ShapedStream shaper = bandwidthShaperService.openStream(clientKey, fileIdentifier)) {
+            while (position <= end) {
+                long segmentIndex = position / segmentSize;
+                long segmentStart = segmentIndex * segmentSize;
+                long segmentLast = Math.min(segmentStart + segmentSize, fileSize) - 1;
+                long lastInThisSegment = Math.min(end, segmentLast);
+                long remaining = lastInThisSegment - position + 1;
+
+                try (FileChannel segment = segmentCacheService.openSegment(fileIdentifier, fileVersion, segmentIndex, fileSize, cancellation)) {
+                    segmentPrefetchService.onSegmentServed(clientKey, fileIdentifier, fileVersion, fileSize, segmentIndex);
+                    long segmentOffset = position - segmentStart;
+                    while (remaining > 0) {
+                        bufferView.clear().limit((int) Math.min(buffer.length, remaining));
+                        // Positional read: không cần seek, và không có InputStream/buffer trung gian nào được cấp phát
+                        int bytesRead = segment.read(bufferView, segmentOffset);
+                        if (bytesRead == -1) {
+                            throw new IOException("Cached segment " + segmentIndex + " of file " + fileIdentifier + " is shorter than expected.");
+                        }
+                        shaper.acquire(bytesRead);
+                        out.write(buffer, 0, bytesRead);
+                        remaining -= bytesRead;
+                        segmentOffset += bytesRead;
+                        totalBytesTransferred += bytesRead;
+                    }
+                }
+                position = lastInThisSegment + 1;
+            }
+        } catch (IOException e) {
+            // Client ngắt kết nối hoặc upstream lỗi: không cần đọc trước cho stream này nữa
+            segmentPrefetchService.cancel(clientKey, fileIdentifier);
+            throw e;
+        } finally {
+            streamBufferPool.release(buffer);
+        }
+        logger.debug("Transferred bytes {}-{} of file {} ({} bytes).", start, end, fileIdentifier, totalBytesTransferred);
+        return totalBytesTransferred;
+    }
+}
@@ -0,0 +1,425 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/ResumableUploadServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.exception.UploadOffsetConflictException;
+import com.ltdd.streamapp.gdrive.model.UploadSession;
+import com.ltdd.streamapp.gdrive.payload.MediaResponse;
+import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
+import com.ltdd.streamapp.gdrive.payload.UploadSessionRequest;
+import com.ltdd.streamapp.gdrive.payload.UploadSessionResponse;
+import com.ltdd.streamapp.gdrive.repository.UploadSessionRepository;
+import com.ltdd.streamapp.gdrive.service.MediaService;
+import com.ltdd.streamapp.gdrive.service.ResumableUploadService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.service.StorageService.ResumableUploadProgress;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+public class ResumableUploadServiceImpl implements ResumableUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResumableUploadServiceImpl.class);
+
+    static final String STATUS_ACTIVE = "ACTIVE";
+    static final String STATUS_COMPLETED = "COMPLETED";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final StorageService storageService;
+    private final MediaService mediaService;
+    private final Path spoolDir;
+    private final long maxSizeBytes;
+    private final long forwardRequestBytes;
+    private final long expiryHours;
+    private final String backendBaseUrl;
+
+    // Mỗi session chỉ có một PATCH/complete chạy tại một thời điểm trên node này
+    private final ConcurrentHashMap<String, ReentrantLock> sessionLocks = new ConcurrentHashMap<>();
+    // Đẩy lên storage chạy ở worker riêng, khóa riêng để PATCH tiếp theo không phải chờ Drive
+    private final ConcurrentHashMap<String, ReentrantLock> forwardLocks = new ConcurrentHashMap<>();
+    // Session đã có một lượt đẩy đang chờ worker: PATCH dồn dập chỉ sinh thêm tối đa một lượt
+    private final Set<String> forwardQueued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService forwardExecutor;
+    private final ScheduledExecutorService janitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upload-session-janitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ResumableUploadServiceImpl(UploadSessionRepository uploadSessionRepository,
+                                      @Qualifier("googleDriveStorageService") StorageService storageService,
+                                      MediaService mediaService,
+                                      @Value("${app.upload.resumable.dir:${java.io.tmpdir}/streamapp-uploads}") String spoolDir,
+                                      @Value("${app.upload.resumable.max-size-bytes:10737418240}") long maxSizeBytes,
+                                      @Value("${app.upload.resumable.forward-request-bytes:8388608}") long forwardRequestBytes,
+                                      @Value("${app.upload.resumable.forward-workers:4}") int forwardWorkers,
+                                      @Value("${app.upload.resumable.expiry-hours:24}") long expiryHours,
+                                      @Value("${app.backend.base-url:http://localhost:9999}") String backendBaseUrl) {
+        this.uploadSessionRepository = uploadSessionRepository;
+        this.storageService = storageService;
+        this.mediaService = mediaService;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath();
+        this.maxSizeBytes = maxSizeBytes;
+        this.forwardRequestBytes = forwardRequestBytes;
+        this.expiryHours = expiryHours;
+        this.backendBaseUrl = backendBaseUrl;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.forwardExecutor = Executors.newFixedThreadPool(Math.max(1, forwardWorkers), runnable -> {
+            Thread thread = new Thread(runnable, "upload-forward-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        janitor.scheduleWithFixedDelay(this::expireSessions, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        janitor.shutdownNow();
+        forwardExecutor.shutdownNow();
+    }
+
+    @Override
+    public UploadSessionResponse createSession(String username, UploadSessionRequest request) {
+        String type = request.getType() != null ? request.getType().toUpperCase(Locale.ROOT) : "";
+        if (!type.equals("MUSIC") && !type.equals("VIDEO")) {
+            throw new RuntimeException("Media type must be MUSIC or VIDEO.");
+        }
+        if (request.getTitle() == null || request.getTitle().isBlank()) {
+            throw new RuntimeException("Media title is required.");
+        }
+        if (request.getSize() <= 0 || request.getSize() > maxSizeBytes) {
+            throw new RuntimeException("Upload size must be between 1 and " + maxSizeBytes + " bytes.");
+        }
+        String filename = request.getFilename() != null && !request.getFilename().isBlank() ? request.getFilename() : "unknownfile";
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setOwnerUsername(username);
+        session.setOriginalFilename(filename);
+        session.setTitle(request.getTitle());
+        session.setDescription(request.getDescription());
+        session.setType(type);
+        session.setPublic(request.isPublic());
+        session.setArtist(request.getArtist());
+        session.setAlbum(request.getAlbum());
+        session.setTotalBytes(request.getSize());
+        session.setStatus(STATUS_ACTIVE);
+        try {
+            Files.createDirectories(spoolDir);
+            Path spool = spoolDir.resolve(session.getId() + ".part");
+            Files.createFile(spool);
+            session.setSpoolPath(spool.toString());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create upload spool file: " + e.getMessage(), e);
+        }
+        try {
+            session.setStorageSessionUri(storageService.startResumableUpload(type, filename, request.getSize()));
+        } catch (Exception e) {
+            // Vẫn nhận upload được: file sẽ được upload một lần lúc hoàn tất
+            logger.warn("Could not open a storage resumable session for '{}', it will be uploaded on completion: {}",
+                    filename, e.getMessage());
+        }
+        uploadSessionRepository.save(session);
+        logger.info("Upload session {} created by '{}' for '{}' ({} bytes, {}).", session.getId(), username, filename,
+                request.getSize(), type);
+        return toResponse(session, null);
+    }
+
+    @Override
+    public UploadSessionResponse getSession(String username, String sessionId) {
+        UploadSession session = findSession(username, sessionId);
+        MediaResponse media = STATUS_COMPLETED.equals(session.getStatus())
+                ? mediaService.getMediaDetails(username, session.getMediaId())
+                : null;
+        return toResponse(session, media);
+    }
+
+    @Override
+    public long appendChunk(String username, String sessionId, long offset, InputStream body) {
+        ReentrantLock lock = sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            UploadSession current = findSession(username, sessionId);
+            throw new UploadOffsetConflictException("Another chunk of upload " + sessionId + " is being written.",
+                    current.getReceivedBytes());
+        }
+        try {
+            UploadSession session = findSession(username, sessionId);
+            if (!STATUS_ACTIVE.equals(session.getStatus())) {
+                throw new RuntimeException("Upload " + sessionId + " is already completed.");
+            }
+            if (offset != session.getReceivedBytes()) {
+                throw new UploadOffsetConflictException("Upload " + sessionId + " is at offset " + session.getReceivedBytes()
+                        + ", not " + offset + ".", session.getReceivedBytes());
+            }
+
+            long remaining = session.getTotalBytes() - session.getReceivedBytes();
+            long written = 0;
+            IOException interrupted = null;
+            try (FileChannel channel = FileChannel.open(Path.of(session.getSpoolPath()), StandardOpenOption.WRITE)) {
+                // Byte sau offset đã lưu là phần ghi dở của một PATCH trước khi node bị tắt: bỏ đi
+                channel.truncate(session.getReceivedBytes());
+                channel.position(session.getReceivedBytes());
+                ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+                try {
+                    int read;
+                    while ((read = body.read(buffer.array(), 0, (int) Math.min(buffer.capacity(), remaining - written + 1))) != -1) {
+                        if (written + read > remaining) {
+                            throw new RuntimeException("Chunk exceeds the declared upload size of " + session.getTotalBytes() + " bytes.");
+                        }
+                        buffer.clear().limit(read);
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        written += read;
+                    }
+                } catch (IOException e) {
+                    interrupted = e; // Client mất kết nối: giữ những byte đã nhận
+                }
+                channel.force(false); // Offset chỉ được lưu sau khi byte đã nằm bền vững trên disk
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write upload chunk: " + e.getMessage(), e);
+            }
+
+            session.setReceivedBytes(session.getReceivedBytes() + written);
+            uploadSessionRepository.updateReceivedBytes(sessionId, session.getReceivedBytes());
+            logger.debug("Upload {}: received {} bytes, now at {}/{}.", sessionId, written, session.getReceivedBytes(),
+                    session.getTotalBytes());
+            if (interrupted != null) {
+                throw new RuntimeException("Upload " + sessionId + " interrupted at offset " + session.getReceivedBytes()
+                        + ": " + interrupted.getMessage(), interrupted);
+            }
+            // Client nhận ack ngay khi byte đã nằm trên disk, không chờ round-trip tới Drive
+            scheduleForward(sessionId);
+            return session.getReceivedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleForward(String sessionId) {
+        if (!forwardQueued.add(sessionId)) {
+            return; // Lượt đang chờ sẽ đọc tiến độ mới nhất từ DB
+        }
+        try {
+            forwardExecutor.execute(() -> {
+                forwardQueued.remove(sessionId);
+                ReentrantLock forwardLock = forwardLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+                forwardLock.lock();
+                try {
+                    uploadSessionRepository.findById(sessionId)
+                            .filter(session -> STATUS_ACTIVE.equals(session.getStatus()))
+                            .ifPresent(this::forwardToStorage);
+                } catch (Exception e) {
+                    logger.warn("Forwarding upload {} to storage failed: {}", sessionId, e.getMessage());
+                } finally {
+                    forwardLock.unlock();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            forwardQueued.remove(sessionId); // Đang tắt: phần còn lại được đẩy lúc /complete
+        }
+    }
+
+    /**
+     * Đẩy phần đã nhận lên storage session, gọi khi đang giữ forward lock của session. Lỗi ở đây không làm hỏng upload:
+     * byte vẫn nằm trong file spool và sẽ được gửi lại ở chunk sau hoặc lúc hoàn tất.
+     */
+    private void forwardToStorage(UploadSession session) {
+        if (session.getStorageSessionUri() == null || session.getStorageIdentifier() != null) {
+            return;
+        }
+        int granularity = storageService.resumableChunkGranularity();
+        boolean fullyReceived = session.getReceivedBytes() == session.getTotalBytes();
+        // Mọi request trừ request cuối phải là bội số của granularity
+        long limit = fullyReceived ? session.getTotalBytes() : session.getReceivedBytes() / granularity * granularity;
+        long step = Math.max(granularity, forwardRequestBytes / granularity * granularity);
+        try (FileChannel channel = FileChannel.open(Path.of(session.getSpoolPath()), StandardOpenOption.READ)) {
+            while (session.getStoredBytes() < limit) {
+                long start = session.getStoredBytes();
+                long length = Math.min(step, limit - start);
+                channel.position(start);
+                ResumableUploadProgress progress = storageService.uploadResumableChunk(session.getStorageSessionUri(),
+                        Channels.newInputStream(channel), start, length, session.getTotalBytes());
+                if (!applyProgress(session, progress) && session.getStoredBytes() <= start) {
+                    break; // Storage không nhận thêm byte nào, thử lại lần sau
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Forwarding upload {} to storage failed at {} bytes, will resume later: {}",
+                    session.getId(), session.getStoredBytes(), e.getMessage());
+            resyncStoredBytes(session);
+        }
+        uploadSessionRepository.updateStorageProgress(session.getId(), session.getStoredBytes(), session.getStorageIdentifier());
+    }
+
+    // @return true nếu storage đã nhận đủ file
+    private boolean applyProgress(UploadSession session, ResumableUploadProgress progress) {
+        if (progress.isComplete()) {
+            session.setStorageIdentifier(progress.fileIdentifier());
+            session.setStoredBytes(session.getTotalBytes());
+            return true;
+        }
+        session.setStoredBytes(progress.committedBytes());
+        return false;
+    }
+
+    private void resyncStoredBytes(UploadSession session) {
+        try {
+            applyProgress(session, storageService.queryResumableUpload(session.getStorageSessionUri(), session.getTotalBytes()));
+        } catch (Exception e) {
+            logger.warn("Could not query storage progress of upload {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    @Override
+    public UploadSessionResponse complete(String username, String sessionId) {
+        ReentrantLock lock = sessionLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+        lock.lock();
+        // Chờ lượt đẩy đang chạy xong rồi đọc lại session, để không gửi trùng byte lên storage
+        ReentrantLock forwardLock = forwardLocks.computeIfAbsent(sessionId, id -> new ReentrantLock());
+        forwardLock.lock();
+        try {
+            UploadSession session = findSession(username, sessionId);
+            if (STATUS_COMPLETED.equals(session.getStatus())) {
+                return toResponse(session, mediaService.getMediaDetails(username, session.getMediaId()));
+            }
+            if (session.getReceivedBytes() != session.getTotalBytes()) {
+                throw new UploadOffsetConflictException("Upload " + sessionId + " has received " + session.getReceivedBytes()
+                        + " of " + session.getTotalBytes() + " bytes.", session.getReceivedBytes());
+            }
+
+            if (session.getStorageSessionUri() != null && session.getStorageIdentifier() == null) {
+                resyncStoredBytes(session); // Sau restart hoặc lỗi mạng, storage có thể đã nhận nhiều hơn số đã lưu
+                forwardToStorage(session);
+                if (session.getStorageIdentifier() == null) {
+                    logger.warn("Storage session of upload {} did not complete, uploading the spooled file instead.", sessionId);
+                    storageService.cancelResumableUpload(session.getStorageSessionUri());
+                    session.setStorageSessionUri(null);
+                }
+            }
+
+            MediaResponse media = mediaService.createMediaFromLocalFile(username, Path.of(session.getSpoolPath()),
+                    session.getOriginalFilename(), null, session.getStorageIdentifier(), toUploadRequest(session), null);
+            session.setStatus(STATUS_COMPLETED);
+            session.setMediaId(media.getId());
+            uploadSessionRepository.save(session);
+            deleteSpool(session);
+            logger.info("Upload session {} completed as media {}.", sessionId, media.getId());
+            return toResponse(session, media);
+        } finally {
+            forwardLock.unlock();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void cancel(String username, String sessionId) {
+        UploadSession session = findSession(username, sessionId);
+        discard(session);
+        logger.info("Upload session {} cancelled by '{}'.", sessionId, username);
+    }
+
+    private void discard(UploadSession session) {
+        // Chờ lượt đẩy đang chạy: nếu nó vừa hoàn tất file trên storage thì file đó cũng phải được xóa
+        ReentrantLock forwardLock = forwardLocks.computeIfAbsent(session.getId(), id -> new ReentrantLock());
+        forwardLock.lock();
+        try {
+            session = uploadSessionRepository.findById(session.getId()).orElse(session);
+            discardLocked(session);
+        } finally {
+            forwardLock.unlock();
+            forwardLocks.remove(session.getId());
+        }
+    }
+
+    private void discardLocked(UploadSession session) {
+        if (STATUS_ACTIVE.equals(session.getStatus())) {
+            if (session.getStorageIdentifier() != null) {
+                storageService.deleteMediaFile(session.getStorageIdentifier());
+            } else if (session.getStorageSessionUri() != null) {
+                storageService.cancelResumableUpload(session.getStorageSessionUri());
+            }
+            deleteSpool(session);
+        }
+        uploadSessionRepository.delete(session);
+        sessionLocks.remove(session.getId());
+    }
+
+    // Session bị bỏ dở quá hạn (và session đã hoàn tất, chỉ giữ để /complete idempotent) được dọn định kỳ
+    private void expireSessions() {
+        try {
+            for (UploadSession session : uploadSessionRepository.findAllByUpdatedAtBefore(LocalDateTime.now().minusHours(expiryHours))) {
+                if (sessionLocks.containsKey(session.getId())) {
+                    continue; // Đang có chunk được ghi
+                }
+                discard(session);
+                logger.info("Expired upload session {} ({}, {}/{} bytes).", session.getId(), session.getStatus(),
+                        session.getReceivedBytes(), session.getTotalBytes());
+            }
+        } catch (Exception e) {
+            logger.error("Expiring upload sessions failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private UploadSession findSession(String username, String sessionId) {
+        return uploadSessionRepository.findByIdAndOwnerUsername(sessionId, username)
+                .orElseThrow(() -> new RuntimeException("Upload session not found: " + sessionId));
+    }
+
+    private MediaUploadRequest toUploadRequest(UploadSession session) {
+        MediaUploadRequest request = new MediaUploadRequest();
+        request.setTitle(session.getTitle());
+        request.setDescription(session.getDescription());
+        request.setType(session.getType());
+        request.setPublic(session.isPublic());
+        request.setArtist(session.getArtist());
+        request.setAlbum(session.getAlbum());
+        return request;
+    }
+
+    private UploadSessionResponse toResponse(UploadSession session, MediaResponse media) {
+        return new UploadSessionResponse(session.getId(), backendBaseUrl + "/api/media/uploads/" + session.getId(),
+                session.getReceivedBytes(), session.getTotalBytes(), session.getStatus(), media);
+    }
+
+    private void deleteSpool(UploadSession session) {
+        try {
+            Files.deleteIfExists(Path.of(session.getSpoolPath()));
+        } catch (IOException e) {
+            logger.warn("Could not delete upload spool file: {}", session.getSpoolPath(), e);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/SegmentPrefetchServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.SegmentPrefetchService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Service
+public class SegmentPrefetchServiceImpl implements SegmentPrefetchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentPrefetchServiceImpl.class);
+    private static final long IDLE_STREAM_TIMEOUT_MILLIS = 60_000;
+    private static final int SEQUENTIAL_STEPS_BEFORE_PREFETCH = 2;
+
+    private final SegmentCacheService segmentCacheService;
+    private final boolean enabled;
+    private final int segmentsAhead;
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    // Trạng thái đọc của từng cặp (client, file)
+    private final ConcurrentHashMap<String, StreamState> streams = new ConcurrentHashMap<>();
+
+    private static class StreamState {
+        long lastSegment = -1;
+        int sequentialSteps = 0;
+        long lastAccessMillis;
+        final Map<Long, Future<?>> pending = new HashMap<>();
+    }
+
+    public SegmentPrefetchServiceImpl(SegmentCacheService segmentCacheService,
+                                      @Value("${app.stream.prefetch.enabled:true}") boolean enabled,
+                                      @Value("${app.stream.prefetch.segments-ahead:3}") int segmentsAhead,
+                                      @Value("${app.stream.prefetch.max-concurrency:4}") int maxConcurrency,
+                                      @Value("${app.stream.prefetch.queue-capacity:64}") int queueCapacity) {
+        this.segmentCacheService = segmentCacheService;
+        this.enabled = enabled && segmentsAhead > 0;
+        this.segmentsAhead = segmentsAhead;
+        AtomicInteger threadCount = new AtomicInteger();
+        // Hàng đợi có giới hạn: khi đầy thì bỏ qua read-ahead thay vì làm chậm request đang stream
+        this.prefetchExecutor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "segment-prefetch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void onSegmentServed(String clientKey, String fileIdentifier, String fileVersion, long fileSize, long segmentIndex) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        StreamState state = streams.computeIfAbsent(streamKey(clientKey, fileIdentifier), k -> new StreamState());
+        synchronized (state) {
+            state.lastAccessMillis = now;
+            if (segmentIndex == state.lastSegment) {
+                return; // Vẫn đang đọc trong cùng segment
+            }
+            if (segmentIndex == state.lastSegment + 1) {
+                state.sequentialSteps++;
+            } else {
+                if (state.lastSegment >= 0) {
+                    logger.debug("Seek detected for client {} on file {}: segment {} -> {}. Cancelling read-ahead.",
+                            clientKey, fileIdentifier, state.lastSegment, segmentIndex);
+                }
+                cancelPending(state);
+                state.sequentialSteps = 0;
+            }
+            state.lastSegment = segmentIndex;
+            state.pending.entrySet().removeIf(entry -> entry.getKey() <= segmentIndex || entry.getValue().isDone());
+
+            if (state.sequentialSteps >= SEQUENTIAL_STEPS_BEFORE_PREFETCH) {
+                schedulePrefetch(state, fileIdentifier, fileVersion, fileSize, segmentIndex);
+            }
+        }
+        if (streams.size() > 1024) {
+            expireIdleStreams(now);
+        }
+    }
+
+    private void schedulePrefetch(StreamState state, String fileIdentifier, String fileVersion, long fileSize, long segmentIndex) {
+        long lastSegmentOfFile = (fileSize - 1) / segmentCacheService.getSegmentSize();
+        long lastToPrefetch = Math.min(segmentIndex + segmentsAhead, lastSegmentOfFile);
+        for (long next = segmentIndex + 1; next <= lastToPrefetch; next++) {
+            if (state.pending.containsKey(next)) {
+                continue;
+            }
+            final long segmentToFetch = next;
+            try {
+                Future<?> future = prefetchExecutor.submit(() -> {
+                    try {
+                        segmentCacheService.prefetchSegment(fileIdentifier, fileVersion, segmentToFetch, fileSize);
+                    } catch (IOException e) {
+                        logger.debug("Read-ahead of segment {} for file {} failed: {}", segmentToFetch, fileIdentifier, e.getMessage());
+                    }
+                });
+                state.pending.put(segmentToFetch, future);
+            } catch (RejectedExecutionException e) {
+                logger.debug("Read-ahead queue is full, skipping segment {} of file {}.", segmentToFetch, fileIdentifier);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void cancel(String clientKey, String fileIdentifier) {
+        StreamState state = streams.remove(streamKey(clientKey, fileIdentifier));
+        if (state != null) {
+            synchronized (state) {
+                cancelPending(state);
+            }
+        }
+    }
+
+    private void cancelPending(StreamState state) {
+        // Segment đang tải dở vẫn được hoàn tất và vào cache; chỉ các segment còn trong hàng đợi bị hủy
+        state.pending.values().forEach(future -> future.cancel(false));
+        state.pending.clear();
+        prefetchExecutor.purge();
+    }
+
+    private void expireIdleStreams(long now) {
+        Iterator<Map.Entry<String, StreamState>> it = streams.entrySet().iterator();
+        while (it.hasNext()) {
+            StreamState state = it.next().getValue();
+            synchronized (state) {
+                if (now - state.lastAccessMillis > IDLE_STREAM_TIMEOUT_MILLIS) {
+                    cancelPending(state);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private String streamKey(String clientKey, String fileIdentifier) {
+        return clientKey + "|" + fileIdentifier;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+}
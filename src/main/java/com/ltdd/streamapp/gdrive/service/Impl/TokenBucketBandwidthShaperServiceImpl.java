@@ -0,0 +1,146 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/Impl/TokenBucketBandwidthShaperServiceImpl.java
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.payload.BandwidthLimits;
+import com.ltdd.streamapp.gdrive.service.BandwidthShaperService;
+import com.ltdd.streamapp.gdrive.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+@Service
+public class TokenBucketBandwidthShaperServiceImpl implements BandwidthShaperService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenBucketBandwidthShaperServiceImpl.class);
+
+    /** Chờ một số nano giây; test thay bằng bản chỉ tua đồng hồ giả. */
+    interface Sleeper {
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    private final LongSupplier nanoClock;
+    private final Sleeper sleeper;
+    private volatile BandwidthLimits limits;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    // Bucket dùng chung theo client / theo file, tự xóa khi không còn stream nào tham chiếu
+    private final ConcurrentHashMap<String, SharedBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SharedBucket> fileBuckets = new ConcurrentHashMap<>();
+
+    private static class SharedBucket {
+        final TokenBucket bucket;
+        int references; // Chỉ thay đổi bên trong ConcurrentHashMap.compute()
+
+        SharedBucket(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    @Autowired
+    public TokenBucketBandwidthShaperServiceImpl(@Value("${app.stream.bandwidth.per-client-bytes-per-second:0}") long perClient,
+                                                 @Value("${app.stream.bandwidth.per-file-bytes-per-second:0}") long perFile,
+                                                 @Value("${app.stream.bandwidth.global-bytes-per-second:0}") long global) {
+        this(perClient, perFile, global, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    TokenBucketBandwidthShaperServiceImpl(long perClient, long perFile, long global, LongSupplier nanoClock, Sleeper sleeper) {
+        this.limits = new BandwidthLimits(perClient, perFile, global);
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public ShapedStream openStream(String clientKey, String fileIdentifier) {
+        BandwidthLimits current = limits;
+        SharedBucket clientBucket = retain(clientBuckets, clientKey, current.getPerClientBytesPerSecond());
+        SharedBucket fileBucket = retain(fileBuckets, fileIdentifier, current.getPerFileBytesPerSecond());
+        activeStreams.incrementAndGet();
+        return new TokenBucketStream(clientKey, fileIdentifier, clientBucket.bucket, fileBucket.bucket);
+    }
+
+    private class TokenBucketStream implements ShapedStream {
+        private final String clientKey;
+        private final String fileIdentifier;
+        private final TokenBucket clientBucket;
+        private final TokenBucket fileBucket;
+        private final TokenBucket fairShareBucket = new TokenBucket(0, nanoClock);
+        private boolean closed;
+
+        TokenBucketStream(String clientKey, String fileIdentifier, TokenBucket clientBucket, TokenBucket fileBucket) {
+            this.clientKey = clientKey;
+            this.fileIdentifier = fileIdentifier;
+            this.clientBucket = clientBucket;
+            this.fileBucket = fileBucket;
+        }
+
+        @Override
+        public void acquire(int bytes) throws InterruptedIOException {
+            // Đọc lại limits mỗi lần để thay đổi lúc runtime có hiệu lực ngay với các stream đang chạy
+            BandwidthLimits current = limits;
+            clientBucket.setBytesPerSecond(current.getPerClientBytesPerSecond());
+            fileBucket.setBytesPerSecond(current.getPerFileBytesPerSecond());
+            long global = current.getGlobalBytesPerSecond();
+            fairShareBucket.setBytesPerSecond(global > 0 ? Math.max(1, global / Math.max(1, activeStreams.get())) : 0);
+
+            // Đặt trước ở cả ba bucket rồi chờ theo bucket chậm nhất (không cộng dồn thời gian chờ)
+            long waitNanos = Math.max(clientBucket.reserve(bytes),
+                    Math.max(fileBucket.reserve(bytes), fairShareBucket.reserve(bytes)));
+            if (waitNanos > 0) {
+                try {
+                    sleeper.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for bandwidth on file " + fileIdentifier);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            activeStreams.decrementAndGet();
+            release(clientBuckets, clientKey);
+            release(fileBuckets, fileIdentifier);
+        }
+    }
+
+    private SharedBucket retain(ConcurrentHashMap<String, SharedBucket> buckets, String key, long bytesPerSecond) {
+        return buckets.compute(key, (k, shared) -> {
+            if (shared == null) {
+                shared = new SharedBucket(new TokenBucket(bytesPerSecond, nanoClock));
+            }
+            shared.references++;
+            return shared;
+        });
+    }
+
+    private void release(ConcurrentHashMap<String, SharedBucket> buckets, String key) {
+        buckets.computeIfPresent(key, (k, shared) -> --shared.references <= 0 ? null : shared);
+    }
+
+    @Override
+    public BandwidthLimits getLimits() {
+        BandwidthLimits current = limits;
+        return new BandwidthLimits(current.getPerClientBytesPerSecond(), current.getPerFileBytesPerSecond(), current.getGlobalBytesPerSecond());
+    }
+
+    @Override
+    public void updateLimits(BandwidthLimits newLimits) {
+        this.limits = new BandwidthLimits(newLimits.getPerClientBytesPerSecond(), newLimits.getPerFileBytesPerSecond(),
+                newLimits.getGlobalBytesPerSecond());
+        logger.info("Streaming bandwidth limits updated: perClient={} B/s, perFile={} B/s, global={} B/s ({} active streams)",
+                newLimits.getPerClientBytesPerSecond(), newLimits.getPerFileBytesPerSecond(), newLimits.getGlobalBytesPerSecond(),
+                activeStreams.get());
+    }
+}
@@ -0,0 +1,29 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/IngestService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.payload.IngestJobResponse;
+import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous uploads: the request only spools the bytes to disk and returns a job; storage upload, probing and
+ * persistence run on a bounded background executor. Jobs are persisted so queued work survives a restart.
+ */
+public interface IngestService {
+
+    /**
+     * Spools the upload and queues its processing.
+     * @throws com.ltdd.streamapp.gdrive.exception.UpstreamBusyException If the ingest queue is full.
+     */
+    IngestJobResponse submit(String username, MultipartFile file, MediaUploadRequest uploadRequest);
+
+    IngestJobResponse getJob(String username, String jobId);
+
+    /**
+     * Registers a listener called with the job state after every status change, until the job is DONE or FAILED.
+     * @return A handle that removes the listener.
+     */
+    Runnable subscribe(String username, String jobId, Consumer<IngestJobResponse> listener);
+}
@@ -0,0 +1,25 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/MediaMetadataCacheService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.google.api.services.drive.model.File;
+
+import java.io.IOException;
+
+/**
+ * In-process cache of the Drive file metadata needed by the streaming endpoint
+ * (bounded size, TTL per entry, short-lived negative entries for files that do not exist).
+ */
+public interface MediaMetadataCacheService {
+    /**
+     * @param fileId The Google Drive File ID.
+     * @return The cached or freshly fetched metadata, or {@code null} if Drive reported the file as not found.
+     * @throws IOException If Drive could not be reached or returned an error other than 404.
+     */
+    File getFileMetadata(String fileId) throws IOException;
+
+    /**
+     * Drops the cached entry (positive or negative) of a file, e.g. after it was deleted or replaced.
+     * @param fileId The Google Drive File ID.
+     */
+    void invalidate(String fileId);
+}
@@ -0,0 +1,26 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/MediaProbeService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import java.nio.file.Path;
+
+/**
+ * Reads duration, codecs, resolution and bitrate of an uploaded file from its container headers,
+ * caching the result by content hash so the same bytes are never probed twice.
+ */
+public interface MediaProbeService {
+
+    /**
+     * Probe result; every field is {@code null} when unknown (e.g. no video track, or the file could not be probed).
+     */
+    record ProbeResult(Long durationMillis, String videoCodec, String audioCodec, Integer width, Integer height, Long bitrateKbps) {
+        public static final ProbeResult UNKNOWN = new ProbeResult(null, null, null, null, null, null);
+    }
+
+    /**
+     * Failures are logged, never thrown: a file that cannot be probed is still stored, just without metadata.
+     * @param file The local file to probe.
+     * @param contentSha256 SHA-256 (hex) of the file content used as cache key, or {@code null} to skip the cache.
+     * @param originalFilename Used for logging and to pick the parser.
+     */
+    ProbeResult probe(Path file, String contentSha256, String originalFilename);
+}
@@ -0,0 +1,16 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/MediaRemuxService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import java.nio.file.Path;
+
+public interface MediaRemuxService {
+    /**
+     * Moves the {@code moov} atom of an MP4/MOV file in front of the media data (stream copy, no re-encoding),
+     * so that players can start playback from the first range request.
+     * @param source The uploaded file on local disk.
+     * @param originalFilename The client file name, used to pick the container format.
+     * @return The file to store: a new temporary file if it was remuxed (the caller must delete it),
+     *         otherwise {@code source} itself (not MP4/MOV, already faststart, disabled, or ffmpeg failed).
+     */
+    Path ensureFaststart(Path source, String originalFilename);
+}
@@ -4,13 +4,56 @@ package com.ltdd.streamapp.gdrive.service;
 import com.ltdd.streamapp.gdrive.payload.MediaResponse;
 import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
 import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface MediaService {
     MediaResponse uploadMedia(String username, MultipartFile file, MediaUploadRequest uploadRequest);
+
+    /**
+     * Tạo media từ một file đã nhận đủ trên disk (upload resumable, ingest job nền). File không bị xóa, caller tự dọn.
+     * @param sha256 SHA-256 của file nếu caller đã tính lúc spool, null để tính ở đây.
+     * @param storedIdentifier File đã có trên storage với cùng nội dung (Drive resumable session), hoặc null để upload ở đây.
+     * @param onMediaSaved Nhận id của Media mới, gọi bên trong transaction lưu Media nên những gì nó ghi vào DB được commit
+     *                     hoặc rollback cùng Media; null nếu không cần.
+     */
+    MediaResponse createMediaFromLocalFile(String username, Path file, String originalFilename, String sha256,
+                                           String storedIdentifier, MediaUploadRequest uploadRequest, Consumer<Long> onMediaSaved);
     List<MediaResponse> getUserMedia(String username);
     MediaResponse getMediaDetails(String username, Long mediaId);
     void deleteMedia(String username, Long mediaId);
     List<MediaResponse> getAllPublicMediaByType(String mediaType); // mediaType có thể là null
     List<MediaResponse> getAllPublicMedia();
+
+    /**
+     * @return URL để client tải file trực tiếp từ storage (redirect), hoặc null nếu backend lưu trữ phải proxy byte.
+     * URL này không hết hạn, nên chỉ được dùng cho file public.
+     */
+    String resolveDirectStreamUrl(String storageIdentifier);
+
+    /**
+     * @param username Người dùng hiện tại, null nếu chưa đăng nhập.
+     * @return true nếu file thuộc một media public hoặc media của chính người dùng.
+     */
+    boolean canAccessStoredFile(String storageIdentifier, String username);
+
+    /**
+     * Kiểm tra quyền xem media mà không dựng MediaResponse (không gọi Drive), dùng cho các request nhỏ như segment HLS.
+     * @return true nếu media tồn tại và là public hoặc thuộc về người dùng.
+     */
+    boolean canAccessMedia(Long mediaId, String username);
+
+    /**
+     * Như {@link #canAccessMedia(Long, String)}, nhưng cũng chấp nhận chữ ký {@code expires}/{@code sig} của media
+     * (các URL HLS/trickplay/waveform trong MediaResponse), cho player không gửi được header Authorization.
+     */
+    boolean canAccessMedia(Long mediaId, String username, Long expires, String signature);
+
+    /**
+     * Upload trùng nội dung dùng chung HLS, rendition, trickplay và waveform của Media đã có.
+     * @return ID mà các output đó của {@code mediaId} được lưu theo (chính {@code mediaId} nếu không dùng chung).
+     */
+    Long resolveOutputsId(Long mediaId);
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/MediaStreamService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface MediaStreamService {
+    /**
+     * Writes the bytes {@code [start, end]} (inclusive) of a stored media file to the given output.
+     * @param fileIdentifier The storage file ID (e.g., Google Drive File ID).
+     * @param fileVersion Identifies the content of the file, so that a file replaced in storage is not served from stale cached segments.
+     * @param clientKey Identifies the requesting client, used to detect sequential playback for read-ahead.
+     * @param fileSize The total size of the file.
+     * @param start First byte to write.
+     * @param end Last byte to write (inclusive).
+     * @param out The destination, usually the servlet response output stream.
+     * @param cancellation Cancelled when the client disconnects, to abort waits and storage downloads immediately.
+     * @return The number of bytes actually written.
+     */
+    long transferRange(String fileIdentifier, String fileVersion, String clientKey, long fileSize, long start, long end, OutputStream out,
+                       StreamCancellation cancellation) throws IOException;
+}
@@ -0,0 +1,40 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/ResumableUploadService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.payload.UploadSessionRequest;
+import com.ltdd.streamapp.gdrive.payload.UploadSessionResponse;
+
+import java.io.InputStream;
+
+/**
+ * Chunked, resumable uploads (tus-style): create a session, append chunks at the offset the server reports,
+ * query the offset after a network failure, then complete. Received bytes are spooled to disk and forwarded to
+ * a storage resumable session as they arrive; session state lives in the database, so uploads survive a restart.
+ */
+public interface ResumableUploadService {
+
+    UploadSessionResponse createSession(String username, UploadSessionRequest request);
+
+    /**
+     * @return The session with its current offset, the value a client resumes from.
+     */
+    UploadSessionResponse getSession(String username, String sessionId);
+
+    /**
+     * Appends the bytes of {@code body} at {@code offset}. Bytes received before a broken connection are kept.
+     * @throws com.ltdd.streamapp.gdrive.exception.UploadOffsetConflictException If {@code offset} is not the
+     *         current offset, or another chunk of the same session is being written.
+     * @return The new offset.
+     */
+    long appendChunk(String username, String sessionId, long offset, InputStream body);
+
+    /**
+     * Turns a fully received session into a media item. Calling it again returns the same media.
+     */
+    UploadSessionResponse complete(String username, String sessionId);
+
+    /**
+     * Abandons a session and every byte stored for it.
+     */
+    void cancel(String username, String sessionId);
+}
@@ -0,0 +1,28 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/SeekIndexService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.util.KeyframeIndex;
+
+import java.nio.file.Path;
+
+/**
+ * Keyframe index of stored videos, so that a time-based seek ({@code ?t=}) resolves to a byte offset in a single request
+ * instead of the player probing and guessing offsets.
+ */
+public interface SeekIndexService {
+
+    /**
+     * Extracts the keyframes of a local file and persists the index. Failures are logged, never thrown:
+     * without an index the stream simply ignores {@code ?t=}.
+     * @param storageIdentifier The identifier the file was stored under.
+     * @param file The exact bytes that were stored, so offsets match what the stream endpoint serves.
+     */
+    void buildIndex(String storageIdentifier, Path file);
+
+    /**
+     * @return The last keyframe at or before {@code timeSeconds}, or {@code null} if the file has no index.
+     */
+    KeyframeIndex.Entry resolve(String storageIdentifier, double timeSeconds);
+
+    void deleteIndex(String storageIdentifier);
+}
@@ -0,0 +1,56 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/SegmentCacheService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.payload.SegmentCacheStatsResponse;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Local disk cache of fixed-size media segments, keyed by storage file ID, file version and segment index.
+ * Segment {@code n} covers bytes {@code [n * segmentSize, (n + 1) * segmentSize - 1]} of the file
+ * (the last segment of a file may be shorter). Segments of an older version of a file are never served
+ * once callers pass the new version; they are reclaimed by LRU eviction.
+ */
+public interface SegmentCacheService {
+
+    /**
+     * Version of storage files that are never overwritten once stored (HLS segments, trickplay sheets):
+     * a new output always gets a new file ID.
+     */
+    String IMMUTABLE_VERSION = "immutable";
+
+    /**
+     * @return The size in bytes of every segment (except possibly the last one of a file).
+     */
+    long getSegmentSize();
+
+    /**
+     * Opens a cached segment for reading, filling it from storage first on a cache miss.
+     * @param fileIdentifier The storage file ID (e.g., Google Drive File ID).
+     * @param fileVersion Identifies the content of the file (e.g., its md5 checksum); a file replaced in storage gets new segments.
+     * @param segmentIndex The zero-based segment index.
+     * @param fileSize The total size of the file, used to compute the length of the last segment.
+     * @param cancellation Cancelled when the client disconnects; aborts the storage download if this call is doing it.
+     * @return A read-only channel positioned at the start of the segment. The caller must close it.
+     * @throws com.ltdd.streamapp.gdrive.exception.UpstreamBusyException if no storage download slot is available in time.
+     */
+    FileChannel openSegment(String fileIdentifier, String fileVersion, long segmentIndex, long fileSize, StreamCancellation cancellation) throws IOException;
+
+    /**
+     * Makes sure a segment is on disk without opening it (used by read-ahead). Does not count as a hit or miss.
+     * Never waits: skipped if the segment is already being fetched or no storage download slot is free.
+     * @return {@code true} if the segment was fetched from storage by this call.
+     */
+    boolean prefetchSegment(String fileIdentifier, String fileVersion, long segmentIndex, long fileSize) throws IOException;
+
+    /**
+     * Drops every cached segment of a file, all versions (e.g., after the file was deleted from storage).
+     * Segments of the file still being fetched when this is called are discarded instead of being cached.
+     * @param fileIdentifier The storage file ID.
+     */
+    void evictFile(String fileIdentifier);
+
+    SegmentCacheStatsResponse getStats();
+}
@@ -0,0 +1,25 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/SegmentPrefetchService.java
+package com.ltdd.streamapp.gdrive.service;
+
+/**
+ * Read-ahead for sequential playback: watches which segments each client reads from each file
+ * and, once the access pattern is sequential, fetches the next segments into the cache in the background.
+ */
+public interface SegmentPrefetchService {
+    /**
+     * Records that a segment was just served to a client. A forward step of one segment keeps the
+     * stream sequential and schedules read-ahead; any other jump is treated as a seek and cancels
+     * the pending read-ahead of that stream.
+     * @param clientKey Identifies the client (e.g., remote address + user agent).
+     * @param fileIdentifier The storage file ID.
+     * @param fileVersion The version of the file being read, see {@link SegmentCacheService#openSegment}.
+     * @param fileSize The total size of the file.
+     * @param segmentIndex The segment that was served.
+     */
+    void onSegmentServed(String clientKey, String fileIdentifier, String fileVersion, long fileSize, long segmentIndex);
+
+    /**
+     * Cancels the pending read-ahead of a client for a file (e.g., the client disconnected).
+     */
+    void cancel(String clientKey, String fileIdentifier);
+}
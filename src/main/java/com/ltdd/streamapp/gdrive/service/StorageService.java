@@ -3,7 +3,23 @@ package com.ltdd.streamapp.gdrive.service;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
 public interface StorageService {
+
+    /**
+     * Progress of a resumable upload session.
+     * @param committedBytes Bytes the storage backend has durably received, counted from the start of the file.
+     * @param fileIdentifier The identifier of the stored file once every byte is committed, otherwise {@code null}.
+     */
+    record ResumableUploadProgress(long committedBytes, String fileIdentifier) {
+        public boolean isComplete() {
+            return fileIdentifier != null;
+        }
+    }
+
     /**
      * Uploads a media file (music or video).
      * @param file The multipart file to upload.
@@ -13,6 +29,15 @@ public interface StorageService {
      */
     String uploadMediaFile(MultipartFile file, String mediaType, String originalFilename);
 
+    /**
+     * Uploads a media file that has already been written (and possibly processed) on local disk.
+     * @param file The local file to upload.
+     * @param mediaType Type of media ("MUSIC" or "VIDEO").
+     * @param originalFilename The original name of the file, used for context or naming.
+     * @return A unique identifier for the stored file (e.g., Google Drive File ID).
+     */
+    String uploadMediaFile(Path file, String mediaType, String originalFilename);
+
     /**
      * Uploads a profile picture.
      * @param file The multipart file to upload.
@@ -26,4 +51,51 @@ public interface StorageService {
      * @param fileIdentifier The unique identifier of the file to delete (e.g., Google Drive File ID).
      */
     void deleteMediaFile(String fileIdentifier);
-}
\ No newline at end of file
+
+    /**
+     * Opens a byte range of a stored media file for reading. Only the requested bytes are fetched from storage.
+     * @param fileIdentifier The unique identifier of the stored file (e.g., Google Drive File ID).
+     * @param start First byte of the range.
+     * @param end Last byte of the range (inclusive).
+     * @return An InputStream positioned at {@code start}. The caller must close it.
+     */
+    InputStream downloadMediaRange(String fileIdentifier, long start, long end) throws IOException;
+
+    /**
+     * Resolves a URL from which clients can download a stored file directly, without the bytes passing through this server.
+     * @param fileIdentifier The unique identifier of the stored file (e.g., Google Drive File ID).
+     * @return The direct download URL, or {@code null} if this backend does not support (or has disabled) redirect delivery,
+     *         in which case the file must be proxied.
+     */
+    String resolveDirectDownloadUrl(String fileIdentifier);
+
+    /**
+     * Opens a resumable upload session for a media file whose bytes will be sent in several requests.
+     * @param contentLength The total size of the file.
+     * @return The session URI, to be persisted by the caller and passed to the other resumable methods.
+     */
+    String startResumableUpload(String mediaType, String originalFilename, long contentLength) throws IOException;
+
+    /**
+     * Sends bytes {@code [offset, offset + length)} of the file to a resumable session. Every chunk except the last one
+     * must be a multiple of {@link #resumableChunkGranularity()} bytes.
+     * @return The progress reported by the backend, which may have committed fewer bytes than were sent.
+     */
+    ResumableUploadProgress uploadResumableChunk(String sessionUri, InputStream chunk, long offset, long length,
+                                                 long totalLength) throws IOException;
+
+    /**
+     * Asks the backend how many bytes of a resumable session it has committed (after a crash or a failed chunk).
+     */
+    ResumableUploadProgress queryResumableUpload(String sessionUri, long totalLength) throws IOException;
+
+    /**
+     * Abandons a resumable session and the bytes uploaded to it. Never throws.
+     */
+    void cancelResumableUpload(String sessionUri);
+
+    /**
+     * @return The size that every non-final resumable chunk must be a multiple of.
+     */
+    int resumableChunkGranularity();
+}
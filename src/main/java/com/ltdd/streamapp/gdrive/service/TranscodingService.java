@@ -0,0 +1,67 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/TranscodingService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import com.ltdd.streamapp.gdrive.payload.TranscodeJobResponse;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+
+import java.util.List;
+
+/**
+ * Adaptive-bitrate ladder: every uploaded video is re-encoded in the background into lower renditions
+ * (e.g. 360p, 720p, 1080p), each stored as an HLS rendition next to the packaged source. Music items get
+ * compact Opus/AAC renditions that the stream endpoint can serve instead of the original upload.
+ * Jobs are persisted, so they survive restarts, and run on a bounded worker pool, never on a request thread.
+ */
+public interface TranscodingService {
+
+    /**
+     * Queues one job per ladder rung below the source resolution. Jobs become visible to workers once the
+     * current transaction commits.
+     * @param source The local copy of the upload. The ladder keeps its own reference and encodes every rung from it,
+     *               falling back to the stored file only if the copy is gone (e.g. after a restart).
+     * @param sourceHeight Height of the source as probed at upload (see {@link MediaProbeService}); {@code null} if
+     *                     unknown, in which case no ladder is queued.
+     */
+    void scheduleLadder(Long mediaId, WorkCopy source, Integer sourceHeight);
+
+    /**
+     * Queues compact audio renditions (Opus/AAC, see {@code app.transcode.audio-ladder}) of a MUSIC item,
+     * tagged with the title/artist/album of the media record. Jobs become visible to workers once the current transaction commits.
+     */
+    void scheduleAudioRenditions(Long mediaId);
+
+    /**
+     * Queues the computation of waveform peaks (see {@link WaveformService}) of a MUSIC item, ahead of its
+     * audio renditions. The job becomes visible to workers once the current transaction commits.
+     */
+    void scheduleWaveform(Long mediaId);
+
+    /**
+     * Picks the audio rendition to serve for a stream request of a MUSIC file.
+     * @param storageIdentifier The stored file the client asked for (the original upload).
+     * @param mediaId The media the stream URL was issued for ({@code ?media=}). Several media can share one stored file
+     *                after deduplication; {@code null} (older URLs) picks the oldest MUSIC media stored under that file.
+     * @param requested The {@code rendition} query parameter: {@code null}/"auto", "original", "low" or a rendition name.
+     * @param saveData Whether the client sent {@code Save-Data: on}.
+     * @param accept The Accept header, used to tell whether the client plays Opus.
+     * @return The rendition to serve instead of the original, or {@code null} to serve the original.
+     */
+    MediaRendition selectAudioRendition(String storageIdentifier, Long mediaId, String requested, boolean saveData, String accept);
+
+    /**
+     * @return The renditions that finished encoding, lowest resolution first.
+     */
+    List<MediaRendition> getRenditions(Long mediaId);
+
+    /**
+     * @return Status and progress of every transcoding job of a media, highest priority first.
+     */
+    List<TranscodeJobResponse> getJobs(Long mediaId);
+
+    /**
+     * Removes the jobs and renditions of a media, including stored audio rendition files.
+     * HLS segments are removed by {@link HlsPackagingService#deletePackaging(Long)}.
+     */
+    void deleteTranscodes(Long mediaId);
+}
@@ -0,0 +1,38 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/TrickplayService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+
+/**
+ * Scrubbing previews ("trickplay"): thumbnails taken at a fixed interval are tiled into a few JPEG sprite sheets,
+ * stored through {@link StorageService}, and indexed by a WebVTT file whose cues point at {@code sheet.jpg#xywh=...}.
+ * One small image request then replaces many media range reads while the user drags the seek bar.
+ */
+public interface TrickplayService {
+
+    /**
+     * Queues sprite sheet generation once the current transaction commits.
+     * @param source The local copy of the video. The job takes its own reference, so the caller releases its reference
+     *               as soon as every job has been scheduled.
+     */
+    void scheduleGeneration(Long mediaId, WorkCopy source);
+
+    /**
+     * @param uriQuery Query string (without {@code ?}) appended to every sheet URI, e.g. the URL signature of a
+     *                 private media, or {@code null}.
+     * @return The WebVTT thumbnail track, with sheet URIs relative to the track itself,
+     *         or {@code null} if no sheets exist (yet).
+     */
+    String buildWebVtt(Long mediaId, String uriQuery);
+
+    /**
+     * @return The stored sheet, or {@code null} if it does not exist.
+     */
+    TrickplaySheet getSheet(Long mediaId, int sheetIndex);
+
+    /**
+     * Deletes every stored sheet of a media (when the media itself is deleted).
+     */
+    void deleteTrickplay(Long mediaId);
+}
@@ -0,0 +1,32 @@
+// File: src/main/java/com/ltdd/streamapp/gdrive/service/WaveformService.java
+package com.ltdd.streamapp.gdrive.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Precomputed waveform peaks of MUSIC items (see {@link com.ltdd.streamapp.gdrive.util.WaveformPeaks}),
+ * so clients can draw a waveform from a few kilobytes instead of fetching and decoding the whole file.
+ * Generation runs as a job of {@link TranscodingService}'s background queue.
+ */
+public interface WaveformService {
+
+    /**
+     * Decodes the audio of a local file, computes every level and stores the result.
+     * @param workDir A scratch directory owned by the caller.
+     * @param ffmpegOutput Receives ffmpeg's stderr lines (progress).
+     * @return The size in bytes of the stored peaks.
+     */
+    int generate(Long mediaId, Path source, Path workDir, Consumer<String> ffmpegOutput) throws IOException;
+
+    /**
+     * @param level {@code null} for every level, otherwise the index of a single level (0 = finest).
+     * @return The encoded peaks, or {@code null} if none were computed (yet) or the level does not exist.
+     */
+    byte[] getWaveform(Long mediaId, Integer level);
+
+    boolean hasWaveform(Long mediaId);
+
+    void deleteWaveform(Long mediaId);
+}
@@ -0,0 +1,120 @@
+// com.ltdd.streamapp.gdrive.util.FfmpegRunner.java
+package com.ltdd.streamapp.gdrive.util;
+
+import ws.schild.jave.process.ProcessWrapper;
+import ws.schild.jave.process.ffmpeg.DefaultFFMPEGLocator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Chạy binary ffmpeg do JAVE cung cấp với tham số tùy ý (remux, đóng gói HLS...), có timeout.
+ */
+public final class FfmpegRunner {
+
+    private FfmpegRunner() {
+    }
+
+    /**
+     * @param arguments Tham số dòng lệnh, không gồm tên binary.
+     * @param timeoutSeconds Quá thời gian này thì process bị hủy và lời gọi thất bại.
+     * @throws IOException nếu ffmpeg không chạy được hoặc trả về exit code khác 0 (kèm phần cuối của stderr).
+     */
+    public static void run(List<String> arguments, long timeoutSeconds) throws IOException {
+        run(arguments, timeoutSeconds, null);
+    }
+
+    /**
+     * Như {@link #run(List, long)}, đồng thời chuyển từng dòng stderr của ffmpeg cho {@code stderrLines}
+     * (log của filter như showinfo, tiến độ encode...).
+     * @param stderrLines Nhận từng dòng, không gồm ký tự xuống dòng; có thể {@code null}.
+     */
+    public static void run(List<String> arguments, long timeoutSeconds, Consumer<String> stderrLines) throws IOException {
+        ProcessWrapper ffmpeg = new DefaultFFMPEGLocator().createExecutor();
+        arguments.forEach(ffmpeg::addArgument);
+        try (ffmpeg) {
+            ffmpeg.execute();
+            CompletableFuture<Void> watchdog = CompletableFuture.runAsync(ffmpeg::destroy,
+                    CompletableFuture.delayedExecutor(timeoutSeconds, TimeUnit.SECONDS));
+            String stderrTail;
+            try {
+                stderrTail = drain(ffmpeg.getErrorStream(), stderrLines); // Phải đọc hết stderr, nếu không ffmpeg bị chặn khi pipe đầy
+            } finally {
+                watchdog.cancel(false);
+            }
+            int exitCode = ffmpeg.getProcessExitCode();
+            if (exitCode != 0) {
+                throw new IOException("ffmpeg exited with code " + exitCode + ": " + stderrTail);
+            }
+        }
+    }
+
+    // Đọc hết stream, chỉ giữ lại ~2KB cuối để đưa vào thông báo lỗi
+    private static String drain(InputStream in, Consumer<String> stderrLines) throws IOException {
+        byte[] buffer = new byte[8192];
+        byte[] tail = new byte[2048];
+        int tailLength = 0;
+        StringBuilder line = new StringBuilder();
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (stderrLines != null) {
+                // Dòng tiến độ của ffmpeg kết thúc bằng '\r' (ghi đè cùng một dòng trên terminal)
+                for (int i = 0; i < read; i++) {
+                    char c = (char) (buffer[i] & 0xFF);
+                    if (c == '\r' || c == '\n') {
+                        if (!line.isEmpty()) {
+                            stderrLines.accept(line.toString());
+                        }
+                        line.setLength(0);
+                    } else if (line.length() < 1024) {
+                        line.append(c);
+                    }
+                }
+            }
+            if (read >= tail.length) {
+                System.arraycopy(buffer, read - tail.length, tail, 0, tail.length);
+                tailLength = tail.length;
+            } else {
+                int keep = Math.min(tailLength, tail.length - read);
+                System.arraycopy(tail, tailLength - keep, tail, 0, keep);
+                System.arraycopy(buffer, 0, tail, keep, read);
+                tailLength = keep + read;
+            }
+        }
+        if (stderrLines != null && !line.isEmpty()) {
+            stderrLines.accept(line.toString());
+        }
+        return new String(tail, 0, tailLength, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Listener cho {@link #run(List, long, Consumer)} đọc tiến độ từ các dòng {@code time=HH:MM:SS.xx}.
+     * @param progressSeconds Nhận vị trí (giây) của output đã encode xong.
+     */
+    public static Consumer<String> progressListener(DoubleConsumer progressSeconds) {
+        return line -> reportProgress(line, progressSeconds);
+    }
+
+    private static void reportProgress(String text, DoubleConsumer progressSeconds) {
+        int index = text.indexOf("time=");
+        if (index < 0) {
+            return;
+        }
+        int end = text.indexOf(' ', index);
+        String[] parts = text.substring(index + 5, end < 0 ? text.length() : end).split(":");
+        if (parts.length != 3) {
+            return; // "time=N/A" khi chưa có frame nào
+        }
+        try {
+            progressSeconds.accept(Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Double.parseDouble(parts[2]));
+        } catch (NumberFormatException ignored) {
+            // Dòng không đúng định dạng: bỏ qua, lần báo sau sẽ cập nhật
+        }
+    }
+}
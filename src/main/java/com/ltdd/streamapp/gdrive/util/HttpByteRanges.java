@@ -0,0 +1,120 @@
+// com.ltdd.streamapp.gdrive.util.HttpByteRanges.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parsing và gộp header Range dạng byte theo RFC 7233 (bytes=a-b, bytes=a-, bytes=-n, nhiều spec cách nhau bởi dấu phẩy).
+ */
+public final class HttpByteRanges {
+
+    /** Số byte-range-spec tối đa chấp nhận trong một header; nhiều hơn thì từ chối (416) để tránh lạm dụng. */
+    public static final int MAX_RANGE_SPECS = 32;
+
+    /**
+     * Khoảng trống tối đa giữa hai range để gộp chúng lại: nhỏ hơn chi phí header của một part multipart,
+     * nên gửi luôn phần byte ở giữa còn rẻ hơn tách thành hai part.
+     */
+    public static final long COALESCE_GAP_BYTES = 128;
+
+    private HttpByteRanges() {
+    }
+
+    /** Một đoạn byte [start, end], cả hai đầu đều bao gồm. */
+    public record ByteRange(long start, long end) {
+        public long length() {
+            return end - start + 1;
+        }
+
+        public String toContentRange(long fileSize) {
+            return "bytes " + start + "-" + end + "/" + fileSize;
+        }
+    }
+
+    /**
+     * @param rangeHeader Giá trị header Range (có thể null).
+     * @param fileSize Kích thước file.
+     * @return {@code null} nếu không có header hoặc header sai cú pháp (RFC: bỏ qua và trả về toàn bộ file);
+     *         danh sách rỗng nếu không range nào thỏa mãn được (416); ngược lại là các range đã được cắt theo kích thước file,
+     *         theo đúng thứ tự trong header.
+     */
+    public static List<ByteRange> parse(String rangeHeader, long fileSize) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        String header = rangeHeader.trim();
+        if (!header.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null; // Đơn vị khác "bytes" -> bỏ qua header
+        }
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGE_SPECS) {
+            return List.of();
+        }
+
+        List<ByteRange> satisfiable = new ArrayList<>();
+        boolean sawSpec = false;
+        for (String rawSpec : specs) {
+            String spec = rawSpec.trim();
+            if (spec.isEmpty()) {
+                continue; // RFC cho phép phần tử rỗng trong danh sách (ví dụ "bytes=0-1,,5-6")
+            }
+            sawSpec = true;
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            try {
+                if (first.isEmpty()) {
+                    // suffix-byte-range-spec: "-n" = n byte cuối
+                    if (last.isEmpty()) {
+                        return null;
+                    }
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength > 0 && fileSize > 0) {
+                        satisfiable.add(new ByteRange(Math.max(0, fileSize - suffixLength), fileSize - 1));
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (end < start) {
+                        return null; // last-byte-pos < first-byte-pos -> spec không hợp lệ
+                    }
+                    if (start < fileSize) {
+                        satisfiable.add(new ByteRange(start, Math.min(end, fileSize - 1)));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return sawSpec ? satisfiable : null;
+    }
+
+    /**
+     * Gộp các range chồng lên nhau hoặc cách nhau ít hơn {@link #COALESCE_GAP_BYTES}, sắp xếp theo vị trí bắt đầu.
+     */
+    public static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() <= 1) {
+            return ranges;
+        }
+        List<ByteRange> sorted = new ArrayList<>(ranges);
+        sorted.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = sorted.get(0);
+        for (int i = 1; i < sorted.size(); i++) {
+            ByteRange next = sorted.get(i);
+            if (next.start() <= current.end() + 1 + COALESCE_GAP_BYTES) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
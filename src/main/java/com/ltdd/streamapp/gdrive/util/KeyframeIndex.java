@@ -0,0 +1,128 @@
+// com.ltdd.streamapp.gdrive.util.KeyframeIndex.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bảng keyframe của một file video: thời điểm (ms) -> vị trí byte trong file đã lưu trên storage.
+ * Được mã hóa gọn bằng delta + varint (thường 3-5 byte mỗi keyframe), nên cả video dài vẫn chỉ vài KB.
+ */
+public final class KeyframeIndex {
+
+    /** Một keyframe: thời điểm trình chiếu và byte đầu tiên của packet chứa nó. */
+    public record Entry(long timeMillis, long byteOffset) {
+        public double timeSeconds() {
+            return timeMillis / 1000.0;
+        }
+    }
+
+    private final long[] timesMillis;
+    private final long[] byteOffsets;
+
+    private KeyframeIndex(long[] timesMillis, long[] byteOffsets) {
+        this.timesMillis = timesMillis;
+        this.byteOffsets = byteOffsets;
+    }
+
+    /**
+     * @param timesMillis Thời điểm các keyframe, tăng dần.
+     * @param byteOffsets Vị trí byte tương ứng.
+     */
+    public static KeyframeIndex of(long[] timesMillis, long[] byteOffsets) {
+        if (timesMillis.length != byteOffsets.length) {
+            throw new IllegalArgumentException("Keyframe times and offsets must have the same length");
+        }
+        for (int i = 1; i < timesMillis.length; i++) {
+            if (timesMillis[i] < timesMillis[i - 1]) {
+                throw new IllegalArgumentException("Keyframe times must be sorted");
+            }
+        }
+        return new KeyframeIndex(timesMillis.clone(), byteOffsets.clone());
+    }
+
+    public int size() {
+        return timesMillis.length;
+    }
+
+    /**
+     * @return Keyframe cuối cùng tại hoặc trước {@code timeMillis} (điểm bắt đầu decode để tới được thời điểm đó),
+     *         keyframe đầu tiên nếu {@code timeMillis} nằm trước nó, hoặc {@code null} nếu index rỗng.
+     */
+    public Entry floor(long timeMillis) {
+        if (timesMillis.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(timesMillis, timeMillis);
+        if (index < 0) {
+            index = Math.max(0, -index - 2); // Phần tử lớn nhất < timeMillis
+        } else {
+            while (index + 1 < timesMillis.length && timesMillis[index + 1] == timeMillis) {
+                index++; // Nhiều keyframe cùng thời điểm: lấy cái sau cùng
+            }
+        }
+        return new Entry(timesMillis[index], byteOffsets[index]);
+    }
+
+    /**
+     * Định dạng: varint số keyframe, sau đó từng cặp (delta thời gian, delta byte offset) dạng zigzag varint.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4 + timesMillis.length * 5);
+        writeVarint(out, timesMillis.length);
+        long previousTime = 0;
+        long previousOffset = 0;
+        for (int i = 0; i < timesMillis.length; i++) {
+            writeVarint(out, zigzag(timesMillis[i] - previousTime));
+            writeVarint(out, zigzag(byteOffsets[i] - previousOffset)); // Offset có thể lùi (MKV/TS đan xen track)
+            previousTime = timesMillis[i];
+            previousOffset = byteOffsets[i];
+        }
+        return out.toByteArray();
+    }
+
+    public static KeyframeIndex decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int count = (int) readVarint(in);
+        long[] times = new long[count];
+        long[] offsets = new long[count];
+        long time = 0;
+        long offset = 0;
+        for (int i = 0; i < count; i++) {
+            time += unzigzag(readVarint(in));
+            offset += unzigzag(readVarint(in));
+            times[i] = time;
+            offsets[i] = offset;
+        }
+        return new KeyframeIndex(times, offsets);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in keyframe index");
+    }
+}
@@ -0,0 +1,184 @@
+// com.ltdd.streamapp.gdrive.util.Mp4Keyframes.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Đọc keyframe của track video đầu tiên trong file MP4/MOV trực tiếp từ sample table của moov
+ * (stss, stts, stsz, stsc, stco/co64): không decode, chỉ đọc moov nên nhanh với mọi độ dài video.
+ */
+public final class Mp4Keyframes {
+
+    /** moov lớn hơn mức này thì không đọc vào bộ nhớ (file bất thường). */
+    static final long MAX_MOOV_BYTES = 64L * 1024 * 1024;
+
+    private Mp4Keyframes() {
+    }
+
+    /**
+     * @return Keyframe index của file, hoặc {@code null} nếu file không phải MP4/MOV hoặc không có track video.
+     * @throws IndexOutOfBoundsException nếu sample table bị hỏng.
+     */
+    public static KeyframeIndex read(Path file) throws IOException {
+        ByteBuffer moovBody = readMoov(file);
+        if (moovBody == null) {
+            return null;
+        }
+        for (ByteBuffer trak : children(moovBody, "trak")) {
+            ByteBuffer mdia = first(trak, "mdia");
+            ByteBuffer hdlr = mdia != null ? first(mdia, "hdlr") : null;
+            if (hdlr == null || hdlr.remaining() < 12
+                    || !"vide".equals(new String(bytes(hdlr, 8, 4), StandardCharsets.ISO_8859_1))) {
+                continue;
+            }
+            ByteBuffer mdhd = first(mdia, "mdhd");
+            ByteBuffer minf = first(mdia, "minf");
+            ByteBuffer stbl = minf != null ? first(minf, "stbl") : null;
+            if (mdhd == null || stbl == null) {
+                continue;
+            }
+            long timescale = mdhd.get(0) == 1 ? Integer.toUnsignedLong(mdhd.getInt(20)) : Integer.toUnsignedLong(mdhd.getInt(12));
+            return readSampleTable(stbl, timescale);
+        }
+        return null;
+    }
+
+    /**
+     * Đọc riêng box moov (không đọc mdat) vào bộ nhớ.
+     * @return Nội dung của moov (sau header), hoặc {@code null} nếu file không phải MP4/MOV hoặc moov quá lớn.
+     */
+    static ByteBuffer readMoov(Path file) throws IOException {
+        Mp4Layout layout = Mp4Layout.scan(file);
+        if (layout == null || layout.moovSize() > MAX_MOOV_BYTES) {
+            return null;
+        }
+        ByteBuffer moov = ByteBuffer.allocate((int) layout.moovSize());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (moov.hasRemaining()) {
+                if (channel.read(moov, layout.moovOffset() + moov.position()) < 0) {
+                    throw new IOException("Unexpected end of file while reading moov");
+                }
+            }
+        }
+        moov.flip();
+        return childBody(moov, 0);
+    }
+
+    private static KeyframeIndex readSampleTable(ByteBuffer stbl, long timescale) {
+        ByteBuffer stts = first(stbl, "stts");
+        ByteBuffer stsz = first(stbl, "stsz");
+        ByteBuffer stsc = first(stbl, "stsc");
+        ByteBuffer stco = first(stbl, "stco");
+        ByteBuffer co64 = first(stbl, "co64");
+        ByteBuffer stss = first(stbl, "stss"); // Không có stss = mọi sample đều là keyframe
+        if (stts == null || stsz == null || stsc == null || (stco == null && co64 == null) || timescale <= 0) {
+            return null;
+        }
+
+        int fixedSampleSize = stsz.getInt(4);
+        int sampleCount = stsz.getInt(8);
+        int chunkCount = (stco != null ? stco : co64).getInt(4);
+        int stscEntries = stsc.getInt(4);
+        int sttsEntries = stts.getInt(4);
+        int syncCount = stss != null ? stss.getInt(4) : sampleCount;
+
+        long[] times = new long[syncCount];
+        long[] offsets = new long[syncCount];
+        int found = 0;
+        int syncIndex = 0;
+
+        int stscIndex = 0;
+        int chunk = 1;               // Chunk hiện tại (đánh số từ 1)
+        int samplesLeftInChunk = -1;
+        long offset = 0;
+        int sttsIndex = 0;
+        long sttsLeft = sttsEntries > 0 ? Integer.toUnsignedLong(stts.getInt(8)) : 0;
+        long decodeTime = 0;
+
+        for (int sample = 1; sample <= sampleCount && found < syncCount; sample++) {
+            if (samplesLeftInChunk <= 0) {
+                if (samplesLeftInChunk == 0) {
+                    chunk++;
+                }
+                if (chunk > chunkCount) {
+                    break;
+                }
+                while (stscIndex + 1 < stscEntries && stsc.getInt(8 + (stscIndex + 1) * 12) <= chunk) {
+                    stscIndex++;
+                }
+                samplesLeftInChunk = stsc.getInt(8 + stscIndex * 12 + 4);
+                offset = stco != null ? Integer.toUnsignedLong(stco.getInt(8 + (chunk - 1) * 4)) : co64.getLong(8 + (chunk - 1) * 8);
+            }
+            boolean isSync = stss == null || (syncIndex < syncCount && stss.getInt(8 + syncIndex * 4) == sample);
+            if (isSync) {
+                times[found] = decodeTime * 1000 / timescale;
+                offsets[found] = offset;
+                found++;
+                syncIndex++;
+            }
+
+            offset += fixedSampleSize != 0 ? fixedSampleSize : Integer.toUnsignedLong(stsz.getInt(12 + (sample - 1) * 4));
+            samplesLeftInChunk--;
+            while (sttsLeft == 0 && sttsIndex + 1 < sttsEntries) {
+                sttsIndex++;
+                sttsLeft = Integer.toUnsignedLong(stts.getInt(8 + sttsIndex * 8));
+            }
+            decodeTime += sttsIndex < sttsEntries ? Integer.toUnsignedLong(stts.getInt(8 + sttsIndex * 8 + 4)) : 0;
+            sttsLeft--;
+        }
+        return KeyframeIndex.of(Arrays.copyOf(times, found), Arrays.copyOf(offsets, found));
+    }
+
+    // Nội dung (sau header) của box bắt đầu tại vị trí position trong buffer
+    static ByteBuffer childBody(ByteBuffer parent, int position) {
+        long size = Integer.toUnsignedLong(parent.getInt(position));
+        int headerSize = 8;
+        if (size == 1) {
+            size = parent.getLong(position + 8);
+            headerSize = 16;
+        } else if (size == 0) {
+            size = parent.limit() - position;
+        }
+        return parent.duplicate().position(position + headerSize).limit((int) (position + size)).slice();
+    }
+
+    static List<ByteBuffer> children(ByteBuffer parent, String type) {
+        List<ByteBuffer> result = new ArrayList<>();
+        int position = 0;
+        while (position + 8 <= parent.limit()) {
+            long size = Integer.toUnsignedLong(parent.getInt(position));
+            if (size == 1 && position + 16 <= parent.limit()) {
+                size = parent.getLong(position + 8);
+            } else if (size == 0) {
+                size = parent.limit() - position;
+            }
+            if (size < 8 || position + size > parent.limit()) {
+                break; // Box hỏng: dừng, không đọc lung tung
+            }
+            if (type.equals(new String(bytes(parent, position + 4, 4), StandardCharsets.ISO_8859_1))) {
+                result.add(childBody(parent, position));
+            }
+            position += (int) size;
+        }
+        return result;
+    }
+
+    static ByteBuffer first(ByteBuffer parent, String type) {
+        List<ByteBuffer> found = children(parent, type);
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    static byte[] bytes(ByteBuffer buffer, int position, int length) {
+        byte[] result = new byte[length];
+        buffer.get(position, result);
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+// com.ltdd.streamapp.gdrive.util.Mp4Layout.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Vị trí của các box top-level {@code moov} và {@code mdat} trong file MP4/MOV (ISO BMFF),
+ * chỉ đọc header của từng box nên không phụ thuộc vào kích thước file.
+ */
+public record Mp4Layout(long fileSize, long moovOffset, long moovSize, long mdatOffset, long mdatHeaderSize) {
+
+    /** Ước lượng chi phí để player có được frame đầu tiên: số request Range và số byte phải tải từ storage. */
+    public record StartupCost(int requests, long upstreamBytes) {
+    }
+
+    /**
+     * @return Layout của file, hoặc {@code null} nếu file không phải MP4/MOV hợp lệ (không có moov hoặc mdat top-level).
+     */
+    public static Mp4Layout scan(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(16);
+            long offset = 0;
+            long moovOffset = -1, moovSize = 0, mdatOffset = -1, mdatHeaderSize = 0;
+            while (offset + 8 <= fileSize) {
+                header.clear().limit(8);
+                readFully(channel, header, offset);
+                long size = Integer.toUnsignedLong(header.getInt(0));
+                String type = new String(header.array(), 4, 4, StandardCharsets.ISO_8859_1);
+                int headerSize = 8;
+                if (size == 1) { // largesize 64-bit ngay sau type
+                    if (offset + 16 > fileSize) {
+                        return null;
+                    }
+                    header.clear().limit(16);
+                    readFully(channel, header, offset);
+                    size = header.getLong(8);
+                    headerSize = 16;
+                } else if (size == 0) { // box kéo dài đến hết file
+                    size = fileSize - offset;
+                }
+                if (size < headerSize || offset + size > fileSize) {
+                    return null; // File hỏng hoặc không phải ISO BMFF
+                }
+                if (offset == 0 && !type.equals("ftyp")) {
+                    return null;
+                }
+                if (type.equals("moov") && moovOffset < 0) {
+                    moovOffset = offset;
+                    moovSize = size;
+                } else if (type.equals("mdat") && mdatOffset < 0) {
+                    mdatOffset = offset;
+                    mdatHeaderSize = headerSize;
+                }
+                offset += size;
+            }
+            if (moovOffset < 0 || mdatOffset < 0) {
+                return null;
+            }
+            return new Mp4Layout(fileSize, moovOffset, moovSize, mdatOffset, mdatHeaderSize);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file while reading MP4 box header at offset " + position);
+            }
+        }
+    }
+
+    /** moov đứng trước mdat: player có đủ index ngay từ request đầu tiên. */
+    public boolean isFaststart() {
+        return moovOffset < mdatOffset;
+    }
+
+    /**
+     * Ước lượng theo cách phục vụ thực tế: mỗi byte được lấy từ storage theo segment {@code segmentSize} của segment cache.
+     * <ul>
+     *     <li>faststart: 1 request đọc liền từ đầu file đến hết header của mdat.</li>
+     *     <li>moov ở cuối: request đầu đọc đến mdat rồi dừng, request thứ hai lấy moov ở cuối file,
+     *     request thứ ba quay lại đầu mdat để lấy frame đầu tiên.</li>
+     * </ul>
+     */
+    public StartupCost estimateStartupCost(long segmentSize) {
+        long firstSampleOffset = mdatOffset + mdatHeaderSize;
+        long headSegments = firstSampleOffset / segmentSize + 1; // Segment 0 .. segment chứa byte đầu tiên của mdat
+        if (isFaststart()) {
+            return new StartupCost(1, segmentBytes(0, headSegments, segmentSize));
+        }
+        long moovFirstSegment = moovOffset / segmentSize;
+        long moovLastSegment = (moovOffset + moovSize - 1) / segmentSize;
+        long tailFrom = Math.max(moovFirstSegment, headSegments); // Không tính hai lần segment đã có trong phần đầu
+        long bytes = segmentBytes(0, headSegments, segmentSize)
+                + (tailFrom <= moovLastSegment ? segmentBytes(tailFrom, moovLastSegment + 1, segmentSize) : 0);
+        return new StartupCost(3, bytes);
+    }
+
+    // Tổng độ dài thực của các segment [from, to), segment cuối của file có thể ngắn hơn
+    private long segmentBytes(long fromSegment, long toSegment, long segmentSize) {
+        long start = Math.min(fileSize, fromSegment * segmentSize);
+        long end = Math.min(fileSize, toSegment * segmentSize);
+        return end - start;
+    }
+}
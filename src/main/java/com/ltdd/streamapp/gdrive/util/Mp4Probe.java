@@ -0,0 +1,91 @@
+// com.ltdd.streamapp.gdrive.util.Mp4Probe.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Thông tin cơ bản của file MP4/MOV/M4A đọc thẳng từ moov (mvhd, hdlr, stsd): thời lượng, codec, độ phân giải.
+ * Chỉ đọc header của các box top-level và nội dung moov, không chạy ffmpeg và không đọc mdat.
+ * @param videoCodec {@code null} nếu không có track video.
+ * @param audioCodec {@code null} nếu không có track audio.
+ * @param width 0 nếu không có track video.
+ * @param bitrateKbps Bitrate trung bình của cả file (mọi track + container).
+ */
+public record Mp4Probe(long durationMillis, String videoCodec, String audioCodec, int width, int height, long bitrateKbps) {
+
+    // Sample entry type (fourcc) -> tên codec theo cách gọi của ffmpeg
+    private static final Map<String, String> CODEC_NAMES = Map.ofEntries(
+            Map.entry("avc1", "h264"), Map.entry("avc3", "h264"),
+            Map.entry("hvc1", "hevc"), Map.entry("hev1", "hevc"),
+            Map.entry("av01", "av1"), Map.entry("vp09", "vp9"), Map.entry("vp08", "vp8"),
+            Map.entry("mp4v", "mpeg4"), Map.entry("mp4a", "aac"), Map.entry("Opus", "opus"),
+            Map.entry("fLaC", "flac"), Map.entry("alac", "alac"), Map.entry("ac-3", "ac3"),
+            Map.entry("ec-3", "eac3"), Map.entry(".mp3", "mp3"));
+
+    /**
+     * @return Thông tin của file, hoặc {@code null} nếu file không phải MP4/MOV hoặc moov không có thời lượng
+     * (ví dụ MP4 fragmented, thời lượng nằm rải trong các moof).
+     * @throws IndexOutOfBoundsException nếu moov bị hỏng.
+     */
+    public static Mp4Probe read(Path file) throws IOException {
+        ByteBuffer moov = Mp4Keyframes.readMoov(file);
+        if (moov == null) {
+            return null;
+        }
+        ByteBuffer mvhd = Mp4Keyframes.first(moov, "mvhd");
+        if (mvhd == null) {
+            return null;
+        }
+        boolean version1 = mvhd.get(0) == 1;
+        long timescale = Integer.toUnsignedLong(mvhd.getInt(version1 ? 20 : 12));
+        long duration = version1 ? mvhd.getLong(24) : Integer.toUnsignedLong(mvhd.getInt(16));
+        if (timescale <= 0 || duration <= 0) {
+            return null;
+        }
+        long durationMillis = duration * 1000 / timescale;
+        if (durationMillis <= 0) {
+            return null;
+        }
+
+        String videoCodec = null;
+        String audioCodec = null;
+        int width = 0;
+        int height = 0;
+        for (ByteBuffer trak : Mp4Keyframes.children(moov, "trak")) {
+            ByteBuffer mdia = Mp4Keyframes.first(trak, "mdia");
+            ByteBuffer hdlr = mdia != null ? Mp4Keyframes.first(mdia, "hdlr") : null;
+            ByteBuffer minf = mdia != null ? Mp4Keyframes.first(mdia, "minf") : null;
+            ByteBuffer stbl = minf != null ? Mp4Keyframes.first(minf, "stbl") : null;
+            ByteBuffer stsd = stbl != null ? Mp4Keyframes.first(stbl, "stsd") : null;
+            // stsd: version/flags (4) + entry_count (4), rồi sample entry đầu tiên (size + type + ...)
+            if (hdlr == null || hdlr.remaining() < 12 || stsd == null || stsd.remaining() < 16 || stsd.getInt(4) < 1) {
+                continue;
+            }
+            String handler = new String(Mp4Keyframes.bytes(hdlr, 8, 4), StandardCharsets.ISO_8859_1);
+            String codec = codecName(new String(Mp4Keyframes.bytes(stsd, 12, 4), StandardCharsets.ISO_8859_1));
+            if (handler.equals("vide") && videoCodec == null) {
+                videoCodec = codec;
+                // VisualSampleEntry: header 8 + reserved/data_reference_index 8 + pre_defined/reserved 16, rồi width, height (16 bit)
+                if (stsd.remaining() >= 8 + 36) {
+                    width = Short.toUnsignedInt(stsd.getShort(8 + 32));
+                    height = Short.toUnsignedInt(stsd.getShort(8 + 34));
+                }
+            } else if (handler.equals("soun") && audioCodec == null) {
+                audioCodec = codec;
+            }
+        }
+        long bitrateKbps = Files.size(file) * 8 / durationMillis; // bit / ms = kbit / s
+        return new Mp4Probe(durationMillis, videoCodec, audioCodec, width, height, bitrateKbps);
+    }
+
+    private static String codecName(String fourcc) {
+        String name = CODEC_NAMES.get(fourcc);
+        return name != null ? name : fourcc.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,74 @@
+// com.ltdd.streamapp.gdrive.util.StreamBufferPool.java
+package com.ltdd.streamapp.gdrive.util;
+
+import com.ltdd.streamapp.gdrive.payload.StreamBufferPoolStatsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of fixed-size copy buffers shared by every streaming copy loop, so that hundreds of concurrent
+ * streams reuse a bounded set of buffers instead of allocating a new one per request.
+ * <p>
+ * Buffers are heap arrays on purpose: both ends of every copy loop are stream APIs
+ * (servlet OutputStream, Drive InputStream) that only accept {@code byte[]}, so a direct buffer
+ * would add one more copy instead of saving one.
+ */
+@Component
+public class StreamBufferPool {
+
+    private final int bufferSize;
+    private final int maxPooledBuffers;
+    private final ConcurrentLinkedQueue<byte[]> freeBuffers = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong allocations = new AtomicLong();
+
+    public StreamBufferPool(@Value("${app.stream.buffer.size-bytes:65536}") int bufferSize,
+                            @Value("${app.stream.buffer.max-pooled:512}") int maxPooledBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * @return A buffer of {@link #getBufferSize()} bytes. Must be given back with {@link #release(byte[])}.
+     */
+    public byte[] acquire() {
+        acquisitions.incrementAndGet();
+        byte[] buffer = freeBuffers.poll();
+        if (buffer != null) {
+            freeCount.decrementAndGet();
+            return buffer;
+        }
+        allocations.incrementAndGet();
+        return new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            return;
+        }
+        // Giữ tối đa maxPooledBuffers buffer rảnh; phần dư để GC thu hồi
+        if (freeCount.incrementAndGet() <= maxPooledBuffers) {
+            freeBuffers.offer(buffer);
+        } else {
+            freeCount.decrementAndGet();
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public StreamBufferPoolStatsResponse getStats() {
+        long acquired = acquisitions.get();
+        long allocated = allocations.get();
+        long reused = Math.max(0, acquired - allocated);
+        return new StreamBufferPoolStatsResponse(bufferSize, acquired, allocated, reused,
+                reused * bufferSize, freeCount.get(), maxPooledBuffers);
+    }
+}
@@ -0,0 +1,64 @@
+// com.ltdd.streamapp.gdrive.util.StreamCancellation.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tín hiệu hủy cho một stream: khi client ngắt kết nối, mọi action đã đăng ký (đóng stream từ Drive,
+ * interrupt thread đang chờ) được chạy ngay, thay vì đợi lần ghi kế tiếp thất bại.
+ */
+public class StreamCancellation {
+
+    /** Dùng cho các lần tải không gắn với client nào (ví dụ read-ahead); không bao giờ bị hủy. */
+    public static final StreamCancellation NONE = new StreamCancellation();
+
+    /** Hủy đăng ký action khi thao tác tương ứng đã xong. */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final List<Runnable> actions = new ArrayList<>();
+    private boolean cancelled;
+
+    /**
+     * Đăng ký action chạy khi stream bị hủy; nếu stream đã bị hủy thì action chạy ngay.
+     */
+    public Registration onCancel(Runnable action) {
+        if (this == NONE) {
+            return () -> { };
+        }
+        synchronized (this) {
+            if (!cancelled) {
+                actions.add(action);
+                return () -> {
+                    synchronized (this) {
+                        actions.remove(action);
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+
+    public void cancel() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (cancelled || this == NONE) {
+                return;
+            }
+            cancelled = true;
+            toRun = new ArrayList<>(actions);
+            actions.clear();
+        }
+        for (Runnable action : toRun) {
+            action.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
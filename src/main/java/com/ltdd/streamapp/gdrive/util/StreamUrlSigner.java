@@ -0,0 +1,78 @@
+// com.ltdd.streamapp.gdrive.util.StreamUrlSigner.java
+package com.ltdd.streamapp.gdrive.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.Base64;
+
+/**
+ * Quyền xem mang theo trong URL stream của media không public: {@code ?expires=<epoch giây>&sig=<HMAC-SHA256(resource:expires)>}.
+ * Thẻ video/audio của trình duyệt không gửi được header Authorization; link bị lộ chỉ mở được đúng resource đó và chỉ đến khi hết hạn.
+ * Resource là file ID với stream progressive, hoặc {@link #mediaResource(Long)} cho mọi URL phụ của một media
+ * (playlist/segment HLS, trickplay, waveform): player nối URL tương đối, nên cùng một query phải dùng được cho cả cây URL.
+ */
+@Component
+public class StreamUrlSigner {
+
+    static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final Clock clock;
+
+    @Autowired
+    public StreamUrlSigner(@Value("${app.stream.url-signing-secret:${jwt.secret}}") String secret,
+                           @Value("${app.stream.signed-url-ttl-seconds:21600}") long ttlSeconds) {
+        this(secret, ttlSeconds, Clock.systemUTC());
+    }
+
+    StreamUrlSigner(String secret, long ttlSeconds, Clock clock) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttlSeconds = ttlSeconds;
+        this.clock = clock;
+    }
+
+    /** Resource được ký cho các URL phụ của một media; không trùng được với file ID vì có dấu {@code /}. */
+    public static String mediaResource(Long mediaId) {
+        return "media/" + mediaId;
+    }
+
+    /**
+     * @return Query string (không có dấu {@code ?}) cho phép xem {@code fileId} trong ttl giây kể từ bây giờ.
+     */
+    public String signQuery(String fileId) {
+        long expires = clock.instant().getEpochSecond() + ttlSeconds;
+        return "expires=" + expires + "&sig=" + signature(fileId, expires);
+    }
+
+    /**
+     * @return {@code true} nếu chữ ký đúng với {@code fileId} và {@code expires}, và chưa hết hạn.
+     */
+    public boolean verify(String fileId, Long expires, String signature) {
+        if (fileId == null || expires == null || signature == null || expires < clock.instant().getEpochSecond()) {
+            return false;
+        }
+        // So sánh thời gian hằng: không lộ số byte đúng qua thời gian phản hồi
+        return MessageDigest.isEqual(signature(fileId, expires).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    String signature(String fileId, long expires) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM); // Mac không thread-safe: mỗi lần ký một instance
+            mac.init(key);
+            byte[] digest = mac.doFinal((fileId + ":" + expires).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available in this JVM", e); // Bắt buộc có theo đặc tả Java SE
+        }
+    }
+}
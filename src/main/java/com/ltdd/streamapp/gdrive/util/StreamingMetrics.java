@@ -0,0 +1,183 @@
+// com.ltdd.streamapp.gdrive.util.StreamingMetrics.java
+package com.ltdd.streamapp.gdrive.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metric cho đường streaming, export qua Actuator (/actuator/prometheus). Các metric phía client được tag
+ * theo loại media ({@code video}, {@code audio}, {@code image}, {@code other}) để giữ số lượng time series nhỏ.
+ * <ul>
+ *     <li>{@code streamapp.stream.ttfb}: từ lúc nhận request đến lúc byte body đầu tiên được ghi ra.</li>
+ *     <li>{@code streamapp.stream.throughput}: byte/giây của từng stream, tính trên thời gian ghi body.</li>
+ *     <li>{@code streamapp.stream.bytes.served}, {@code streamapp.stream.aborted}, {@code streamapp.stream.range.unsatisfiable},
+ *     {@code streamapp.stream.redirects}.</li>
+ *     <li>{@code streamapp.drive.request}: độ trễ của lời gọi Drive, tag {@code operation} = metadata | media.</li>
+ *     <li>{@code streamapp.upload.startup.*}: chi phí ước lượng trước frame đầu tiên của MP4, trước/sau remux faststart.</li>
+ *     <li>{@code streamapp.upload.probe}: thời gian probe file upload, tag {@code source} = cache | header | ffmpeg.</li>
+ * </ul>
+ */
+@Component
+public class StreamingMetrics {
+
+    private final MeterRegistry registry;
+
+    public StreamingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Rút gọn MIME type thành tag có số giá trị cố định. */
+    public static String mediaTypeTag(String mimeType) {
+        if (mimeType != null) {
+            if (mimeType.startsWith("video/")) return "video";
+            if (mimeType.startsWith("audio/")) return "audio";
+            if (mimeType.startsWith("image/")) return "image";
+        }
+        return "other";
+    }
+
+    public void recordDriveRequest(String operation, boolean success, long startNanos) {
+        Timer.builder("streamapp.drive.request")
+                .description("Latency of Google Drive API calls made while streaming")
+                .tag("operation", operation)
+                .tag("outcome", success ? "success" : "error")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRedirect() {
+        Counter.builder("streamapp.stream.redirects")
+                .description("Stream requests answered with a redirect to the storage backend instead of proxied bytes")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Chi phí trước frame đầu tiên của một video trước và sau khi remux faststart lúc upload.
+     */
+    public void recordFaststartRemux(Mp4Layout.StartupCost before, Mp4Layout.StartupCost after) {
+        recordStartupCost("original", before);
+        recordStartupCost("faststart", after);
+    }
+
+    private void recordStartupCost(String layout, Mp4Layout.StartupCost cost) {
+        DistributionSummary.builder("streamapp.upload.startup.requests")
+                .description("Estimated range requests needed before the first frame of an uploaded MP4")
+                .tag("layout", layout)
+                .register(registry)
+                .record(cost.requests());
+        DistributionSummary.builder("streamapp.upload.startup.upstream.bytes")
+                .baseUnit("bytes")
+                .description("Estimated bytes fetched from storage before the first frame of an uploaded MP4")
+                .tag("layout", layout)
+                .register(registry)
+                .record(cost.upstreamBytes());
+    }
+
+    public void recordProbe(String source, boolean success, long startNanos) {
+        Timer.builder("streamapp.upload.probe")
+                .description("Time spent reading duration/codec metadata of uploaded files")
+                .tag("source", source)
+                .tag("outcome", success ? "success" : "error")
+                .register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRangeNotSatisfiable(String mimeType) {
+        Counter.builder("streamapp.stream.range.unsatisfiable")
+                .description("Stream requests answered with 416 Range Not Satisfiable")
+                .tag("media_type", mediaTypeTag(mimeType))
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Bọc output stream của response để đo TTFB, số byte và throughput của một stream.
+     * Gọi {@link StreamRecorder#finish(boolean)} đúng một lần khi stream kết thúc.
+     * @param requestStartNanos {@link System#nanoTime()} lúc request tới controller.
+     */
+    public StreamRecorder startStream(String mimeType, long requestStartNanos, OutputStream out) {
+        return new StreamRecorder(mediaTypeTag(mimeType), requestStartNanos, out);
+    }
+
+    public class StreamRecorder extends FilterOutputStream {
+        private final String mediaType;
+        private final long requestStartNanos;
+        private long firstByteNanos = -1;
+        private long bytesWritten;
+
+        private StreamRecorder(String mediaType, long requestStartNanos, OutputStream out) {
+            super(out);
+            this.mediaType = mediaType;
+            this.requestStartNanos = requestStartNanos;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            beforeWrite(1);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            beforeWrite(len);
+            out.write(b, off, len); // FilterOutputStream mặc định ghi từng byte một
+        }
+
+        private void beforeWrite(int len) {
+            if (len <= 0) {
+                return;
+            }
+            if (firstByteNanos < 0) {
+                firstByteNanos = System.nanoTime();
+                Timer.builder("streamapp.stream.ttfb")
+                        .description("Time from receiving a stream request to writing the first body byte")
+                        .tag("media_type", mediaType)
+                        .publishPercentileHistogram()
+                        .register(registry)
+                        .record(firstByteNanos - requestStartNanos, TimeUnit.NANOSECONDS);
+            }
+            bytesWritten += len;
+        }
+
+        /**
+         * @param aborted {@code true} nếu stream dừng trước khi gửi hết body (client ngắt, Drive lỗi, quá tải...).
+         */
+        public void finish(boolean aborted) {
+            Counter.builder("streamapp.stream.bytes.served")
+                    .baseUnit("bytes")
+                    .description("Media body bytes written to clients")
+                    .tag("media_type", mediaType)
+                    .register(registry)
+                    .increment(bytesWritten);
+            if (aborted) {
+                Counter.builder("streamapp.stream.aborted")
+                        .description("Streams that ended before the full body was sent")
+                        .tag("media_type", mediaType)
+                        .register(registry)
+                        .increment();
+            }
+            if (firstByteNanos >= 0) {
+                long elapsedNanos = System.nanoTime() - firstByteNanos;
+                if (elapsedNanos > 0 && bytesWritten > 0) {
+                    DistributionSummary.builder("streamapp.stream.throughput")
+                            .baseUnit("bytes_per_second")
+                            .description("Per-stream throughput while the body is being written")
+                            .tag("media_type", mediaType)
+                            .publishPercentileHistogram()
+                            .register(registry)
+                            .record(bytesWritten * 1_000_000_000.0 / elapsedNanos);
+                }
+            }
+        }
+    }
+}
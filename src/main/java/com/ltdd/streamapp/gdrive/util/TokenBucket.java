@@ -0,0 +1,80 @@
+// com.ltdd.streamapp.gdrive.util.TokenBucket.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket tính theo byte/giây, có thể đổi tốc độ lúc đang chạy.
+ * Người gọi "đặt trước" token (cho phép số dư âm) rồi ngủ đúng khoảng thời gian cần để trả nợ,
+ * nên nhiều thread dùng chung một bucket được phục vụ lần lượt theo thứ tự đặt trước.
+ */
+public class TokenBucket {
+
+    private final LongSupplier nanoClock;
+    private long bytesPerSecond; // <= 0 nghĩa là không giới hạn
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(long bytesPerSecond) {
+        this(bytesPerSecond, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock Nguồn thời gian kiểu {@link System#nanoTime()}; test truyền đồng hồ giả.
+     */
+    public TokenBucket(long bytesPerSecond, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.bytesPerSecond = bytesPerSecond;
+        this.tokens = Math.max(0, bytesPerSecond);
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Chờ cho đến khi được phép gửi {@code bytes} byte.
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        long waitNanos = reserve(bytes);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * @return Số nano giây người gọi phải chờ trước khi gửi {@code bytes} byte (0 nếu gửi được ngay).
+     */
+    public synchronized long reserve(long bytes) {
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        refill();
+        tokens -= bytes;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens / bytesPerSecond * 1_000_000_000L);
+    }
+
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        if (this.bytesPerSecond == bytesPerSecond) {
+            return;
+        }
+        refill();
+        this.bytesPerSecond = bytesPerSecond;
+        // Burst tối đa một giây theo tốc độ mới; bỏ nợ cũ nếu chuyển sang không giới hạn
+        this.tokens = bytesPerSecond <= 0 ? 0 : Math.min(tokens, bytesPerSecond);
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        if (bytesPerSecond > 0) {
+            double refilled = (now - lastRefillNanos) / 1_000_000_000.0 * bytesPerSecond;
+            tokens = Math.min(bytesPerSecond, tokens + refilled); // Burst tối đa bằng lượng của một giây
+        }
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,71 @@
+// com.ltdd.streamapp.gdrive.util.UploadSpool.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Ghi byte upload ra disk trong đúng một lượt đọc, đồng thời tính SHA-256 của nội dung.
+ * Chỉ dùng một buffer cố định nên heap không phụ thuộc kích thước file; mọi bước sau (remux, probe, upload lên storage)
+ * đọc lại file trên disk thay vì giữ byte trong bộ nhớ.
+ */
+public final class UploadSpool {
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Kết quả spool: số byte đã ghi và SHA-256 (hex chữ thường) của nội dung. */
+    public record Spooled(long size, String sha256) {
+    }
+
+    private UploadSpool() {
+    }
+
+    /**
+     * Đọc hết {@code in} vào {@code target} (ghi đè nếu đã tồn tại). Không đóng {@code in}.
+     */
+    public static Spooled spool(InputStream in, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new Spooled(size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * SHA-256 của một file đã nằm trên disk (ví dụ file ghép từ các chunk của upload resumable).
+     */
+    public static Spooled hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        return new Spooled(size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available in this JVM", e); // Bắt buộc có theo đặc tả Java SE
+        }
+    }
+}
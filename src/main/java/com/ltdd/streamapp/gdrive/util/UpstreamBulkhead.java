@@ -0,0 +1,113 @@
+// com.ltdd.streamapp.gdrive.util.UpstreamBulkhead.java
+package com.ltdd.streamapp.gdrive.util;
+
+import com.ltdd.streamapp.gdrive.exception.UpstreamBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Giới hạn số lần tải đồng thời từ storage (Google Drive) trên một node, với hàng chờ có giới hạn.
+ * Khi hàng chờ đầy hoặc chờ quá lâu, request bị từ chối ngay bằng {@link UpstreamBusyException} (503)
+ * thay vì chiếm thêm socket và quota Drive.
+ */
+@Component
+public class UpstreamBulkhead {
+
+    /** Trả slot khi lần tải kết thúc. */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    // Việc nền kiểm tra lại slot theo chu kỳ này
+    private static final long BACKGROUND_POLL_MS = 500;
+
+    private final Semaphore slots;
+    private final int maxConcurrent;
+    private final int maxWaiting;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public UpstreamBulkhead(@Value("${app.stream.upstream.max-concurrent:16}") int maxConcurrent,
+                            @Value("${app.stream.upstream.max-waiting:32}") int maxWaiting,
+                            @Value("${app.stream.upstream.max-wait-ms:2000}") long maxWaitMs,
+                            @Value("${app.stream.upstream.retry-after-seconds:2}") long retryAfterSeconds) {
+        this.slots = new Semaphore(maxConcurrent, true); // fair: ai chờ trước được phục vụ trước
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaiting = maxWaiting;
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Chờ (tối đa max-wait-ms) để lấy một slot tải.
+     * @throws UpstreamBusyException nếu hàng chờ đã đầy hoặc hết thời gian chờ.
+     * @throws InterruptedIOException nếu thread bị interrupt trong lúc chờ (ví dụ client ngắt kết nối).
+     */
+    public Permit acquire() throws InterruptedIOException {
+        if (slots.tryAcquire()) {
+            return slots::release;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            throw new UpstreamBusyException("Too many concurrent storage downloads (" + maxConcurrent
+                    + " active, " + maxWaiting + " waiting).", retryAfterSeconds);
+        }
+        try {
+            if (!slots.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new UpstreamBusyException("Timed out after " + maxWaitMs + " ms waiting for a storage download slot.",
+                        retryAfterSeconds);
+            }
+            return slots::release;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a storage download slot.");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Lấy slot nếu còn trống, không chờ. Dùng cho read-ahead: không đáng để xếp hàng cùng request thật.
+     * @return {@code null} nếu không còn slot.
+     */
+    public Permit tryAcquire() {
+        return slots.tryAcquire() ? slots::release : null;
+    }
+
+    /**
+     * Cho việc nền (ví dụ tải bản gốc để transcode): chờ không giới hạn, nhưng chỉ lấy slot khi không có request nào
+     * đang xếp hàng trong {@link #acquire()}, nên không bao giờ chen trước người xem và không chiếm chỗ trong hàng chờ.
+     * @throws InterruptedIOException nếu thread bị interrupt trong lúc chờ (ví dụ lúc shutdown).
+     */
+    public Permit acquireBackground() throws InterruptedIOException {
+        while (true) {
+            if (waiting.get() == 0 && !slots.hasQueuedThreads()) {
+                Permit permit = tryAcquire();
+                if (permit != null) {
+                    return permit;
+                }
+            }
+            try {
+                Thread.sleep(BACKGROUND_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a background storage download slot.");
+            }
+        }
+    }
+
+    public int getActiveCount() {
+        return maxConcurrent - slots.availablePermits();
+    }
+
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+}
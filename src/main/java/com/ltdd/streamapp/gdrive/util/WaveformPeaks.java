@@ -0,0 +1,181 @@
+// com.ltdd.streamapp.gdrive.util.WaveformPeaks.java
+package com.ltdd.streamapp.gdrive.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Peak (min/max mỗi bucket) của waveform ở nhiều độ phân giải, để client vẽ waveform mà không phải tải và decode cả file.
+ * <p>Định dạng nhị phân (big-endian):
+ * <pre>
+ * "WFPK" | version (u8 = 1) | sampleRate (i32) | levelCount (u8)
+ * mỗi level: samplesPerBucket (i32) | bucketCount (i32) | bucketCount x (min i8, max i8)
+ * </pre>
+ * Biên độ được lượng tử hóa về 8 bit (như tùy chọn 8-bit của audiowaveform): đủ cho hiển thị, nhỏ một nửa so với 16 bit.
+ */
+public final class WaveformPeaks {
+
+    private static final byte[] MAGIC = "WFPK".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+
+    /** Một độ phân giải: mỗi bucket gộp {@code samplesPerBucket} sample, lưu xen kẽ min, max. */
+    public record Level(int samplesPerBucket, byte[] minMax) {
+        public int bucketCount() {
+            return minMax.length / 2;
+        }
+    }
+
+    private final int sampleRate;
+    private final List<Level> levels;
+
+    private WaveformPeaks(int sampleRate, List<Level> levels) {
+        this.sampleRate = sampleRate;
+        this.levels = levels;
+    }
+
+    public int sampleRate() {
+        return sampleRate;
+    }
+
+    public List<Level> levels() {
+        return levels;
+    }
+
+    /**
+     * Tính peak từ PCM 16-bit little-endian mono, đọc tuần tự nên bộ nhớ chỉ tỉ lệ với số bucket.
+     * @param samplesPerBucket Độ phân giải các level, tăng dần; mỗi level phải là bội của level đầu tiên.
+     */
+    public static WaveformPeaks compute(InputStream pcm, int sampleRate, int... samplesPerBucket) throws IOException {
+        if (samplesPerBucket.length == 0 || samplesPerBucket.length > 255) {
+            throw new IllegalArgumentException("Between 1 and 255 levels are required");
+        }
+        int base = samplesPerBucket[0];
+        for (int spb : samplesPerBucket) {
+            if (spb <= 0 || spb % base != 0) {
+                throw new IllegalArgumentException("Every level must be a positive multiple of " + base + ", got " + spb);
+            }
+        }
+
+        // Level gốc: đọc từng sample
+        ByteArrayBuilder baseLevel = new ByteArrayBuilder();
+        InputStream in = pcm instanceof BufferedInputStream ? pcm : new BufferedInputStream(pcm, 64 * 1024);
+        int min = Byte.MAX_VALUE;
+        int max = Byte.MIN_VALUE;
+        int inBucket = 0;
+        int low;
+        while ((low = in.read()) != -1) {
+            int high = in.read();
+            if (high == -1) {
+                break; // Byte lẻ cuối stream
+            }
+            int sample = (short) ((high << 8) | low) >> 8; // 16 bit -> 8 bit
+            min = Math.min(min, sample);
+            max = Math.max(max, sample);
+            if (++inBucket == base) {
+                baseLevel.add((byte) min, (byte) max);
+                min = Byte.MAX_VALUE;
+                max = Byte.MIN_VALUE;
+                inBucket = 0;
+            }
+        }
+        if (inBucket > 0) {
+            baseLevel.add((byte) min, (byte) max);
+        }
+
+        // Các level thô hơn gộp từ level gốc, không đọc lại PCM
+        byte[] baseMinMax = baseLevel.toArray();
+        List<Level> levels = new ArrayList<>(samplesPerBucket.length);
+        for (int spb : samplesPerBucket) {
+            levels.add(new Level(spb, spb == base ? baseMinMax : merge(baseMinMax, spb / base)));
+        }
+        return new WaveformPeaks(sampleRate, List.copyOf(levels));
+    }
+
+    private static byte[] merge(byte[] minMax, int factor) {
+        int buckets = minMax.length / 2;
+        int merged = (buckets + factor - 1) / factor;
+        byte[] result = new byte[merged * 2];
+        for (int i = 0; i < merged; i++) {
+            byte min = Byte.MAX_VALUE;
+            byte max = Byte.MIN_VALUE;
+            for (int j = i * factor; j < Math.min(buckets, (i + 1) * factor); j++) {
+                min = (byte) Math.min(min, minMax[j * 2]);
+                max = (byte) Math.max(max, minMax[j * 2 + 1]);
+            }
+            result[i * 2] = min;
+            result[i * 2 + 1] = max;
+        }
+        return result;
+    }
+
+    public byte[] encode() {
+        return encode(levels);
+    }
+
+    /**
+     * @return File chỉ chứa một level (cùng định dạng), cho client chỉ cần một độ phân giải.
+     * @throws IndexOutOfBoundsException nếu level không tồn tại.
+     */
+    public byte[] encodeLevel(int level) {
+        return encode(List.of(levels.get(level)));
+    }
+
+    private byte[] encode(List<Level> selected) {
+        int size = MAGIC.length + 1 + 4 + 1;
+        for (Level level : selected) {
+            size += 8 + level.minMax().length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put((byte) VERSION)
+                .putInt(sampleRate)
+                .put((byte) selected.size());
+        for (Level level : selected) {
+            out.putInt(level.samplesPerBucket()).putInt(level.bucketCount()).put(level.minMax());
+        }
+        return out.array();
+    }
+
+    public static WaveformPeaks decode(byte[] data) {
+        ByteBuffer in = ByteBuffer.wrap(data);
+        byte[] magic = new byte[MAGIC.length];
+        in.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.get() != VERSION) {
+            throw new IllegalArgumentException("Not a version " + VERSION + " waveform peaks file");
+        }
+        int sampleRate = in.getInt();
+        int levelCount = Byte.toUnsignedInt(in.get());
+        List<Level> levels = new ArrayList<>(levelCount);
+        for (int i = 0; i < levelCount; i++) {
+            int samplesPerBucket = in.getInt();
+            byte[] minMax = new byte[in.getInt() * 2];
+            in.get(minMax);
+            levels.add(new Level(samplesPerBucket, minMax));
+        }
+        return new WaveformPeaks(sampleRate, List.copyOf(levels));
+    }
+
+    // Mảng byte tự giãn, tránh boxing của List<Byte>
+    private static final class ByteArrayBuilder {
+        private byte[] data = new byte[4096];
+        private int size;
+
+        void add(byte min, byte max) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = min;
+            data[size++] = max;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+// com.ltdd.streamapp.gdrive.util.WorkCopy.java
+package com.ltdd.streamapp.gdrive.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Bản sao cục bộ của file nguồn, dùng chung cho mọi job nền của một media (đóng gói HLS, trickplay, thang bitrate).
+ * File upload tạm bị xóa ngay khi request xong, nên các job đọc bản sao này thay vì mỗi job tự copy một bản.
+ * Đếm reference: mỗi job giữ một reference ({@link #retain()}) và trả lại khi xong, thư mục bị xóa khi reference cuối được trả.
+ */
+public final class WorkCopy {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkCopy.class);
+
+    private final Path dir;
+    private final Path file;
+    private final AtomicInteger references = new AtomicInteger(1); // Reference của bên tạo
+
+    private WorkCopy(Path dir, Path file) {
+        this.dir = dir;
+        this.file = file;
+    }
+
+    /**
+     * Copy {@code source} vào một thư mục mới dưới {@code workRoot}, giữ phần mở rộng của {@code originalFilename}
+     * (ffmpeg đoán định dạng theo đó). Bên gọi giữ reference đầu tiên.
+     */
+    public static WorkCopy copyOf(Path source, Path workRoot, String prefix, String originalFilename) throws IOException {
+        WorkCopy copy = create(workRoot, prefix, "input" + extensionOf(originalFilename));
+        try {
+            Files.copy(source, copy.file);
+        } catch (IOException e) {
+            copy.release();
+            throw e;
+        }
+        return copy;
+    }
+
+    /**
+     * Tạo thư mục mới dưới {@code workRoot}; {@link #file()} chưa tồn tại, bên gọi tự ghi vào (ví dụ tải từ storage).
+     */
+    public static WorkCopy create(Path workRoot, String prefix, String fileName) throws IOException {
+        Files.createDirectories(workRoot);
+        Path dir = Files.createTempDirectory(workRoot, prefix);
+        return new WorkCopy(dir, dir.resolve(fileName));
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Thêm một reference.
+     * @throws IllegalStateException nếu reference cuối đã được trả (file đã bị xóa).
+     */
+    public WorkCopy retain() {
+        if (!tryRetain()) {
+            throw new IllegalStateException("Work copy " + dir + " was already released");
+        }
+        return this;
+    }
+
+    /**
+     * @return {@code false} nếu reference cuối đã được trả, khi đó không được dùng {@link #file()} nữa.
+     */
+    public boolean tryRetain() {
+        return references.getAndUpdate(count -> count > 0 ? count + 1 : count) > 0;
+    }
+
+    /** Trả một reference; reference cuối xóa cả thư mục. */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * Chạy {@code onCommit} sau khi transaction hiện tại commit (bản ghi Media mà job đọc đã thấy được),
+     * hoặc {@code onRollback} nếu nó rollback. Không có transaction thì chạy {@code onCommit} ngay.
+     */
+    public static void afterCommit(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            onCommit.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+
+    // ".MP4" giữ nguyên, ký tự lạ bị bỏ để tên file an toàn trên mọi hệ điều hành
+    static String extensionOf(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot).replaceAll("[^a-zA-Z0-9.]", "");
+    }
+
+    /** Xóa thư mục làm việc của một job, lỗi chỉ được log. */
+    public static void deleteRecursively(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    logger.warn("Could not delete work file {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Could not clean up work directory {}: {}", dir, e.getMessage());
+        }
+    }
+}
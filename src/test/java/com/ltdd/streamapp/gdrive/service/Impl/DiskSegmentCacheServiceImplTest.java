@@ -0,0 +1,347 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.exception.UpstreamBusyException;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.util.StreamBufferPool;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.ltdd.streamapp.gdrive.util.UpstreamBulkhead;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiskSegmentCacheServiceImplTest {
+
+    private static final long SEGMENT_SIZE = 64 * 1024;
+    private static final long FILE_SIZE = 4 * SEGMENT_SIZE;
+    private static final String VERSION = "md5a";
+
+    /** Storage giả: stream không bao giờ trả dữ liệu cho tới khi bị đóng (mô phỏng Drive bị treo). */
+    private static class StalledStorage extends SlowStorage {
+        final CountDownLatch downloadStarted = new CountDownLatch(1);
+        final CountDownLatch upstreamClosed = new CountDownLatch(1);
+
+        @Override
+        public InputStream downloadMediaRange(String fileIdentifier, long start, long end) {
+            downloads.incrementAndGet();
+            downloadStarted.countDown();
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        upstreamClosed.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IOException("Stream closed");
+                }
+
+                @Override
+                public void close() {
+                    upstreamClosed.countDown();
+                }
+            };
+        }
+    }
+
+    /** Storage giả: đếm số lần tải và giữ mỗi lần tải lại một chút để các request chồng lên nhau. */
+    private static class SlowStorage implements StorageService {
+        final AtomicInteger downloads = new AtomicInteger();
+
+        @Override
+        public InputStream downloadMediaRange(String fileIdentifier, long start, long end) throws IOException {
+            downloads.incrementAndGet();
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(new byte[(int) (end - start + 1)]);
+        }
+
+        @Override
+        public String uploadMediaFile(MultipartFile file, String mediaType, String originalFilename) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String uploadMediaFile(Path file, String mediaType, String originalFilename) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String uploadProfilePicture(MultipartFile file, String originalFilename) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteMediaFile(String fileIdentifier) {
+        }
+
+        @Override
+        public String resolveDirectDownloadUrl(String fileIdentifier) {
+            return null;
+        }
+
+        @Override
+        public String startResumableUpload(String mediaType, String originalFilename, long contentLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResumableUploadProgress uploadResumableChunk(String sessionUri, InputStream chunk, long offset, long length,
+                                                            long totalLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResumableUploadProgress queryResumableUpload(String sessionUri, long totalLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancelResumableUpload(String sessionUri) {
+        }
+
+        @Override
+        public int resumableChunkGranularity() {
+            return 256 * 1024;
+        }
+    }
+
+    /** Storage giả: mỗi lần tải chờ đến khi test mở cổng. */
+    private static class GatedStorage extends SlowStorage {
+        final CountDownLatch downloadStarted = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public InputStream downloadMediaRange(String fileIdentifier, long start, long end) throws IOException {
+            downloads.incrementAndGet();
+            downloadStarted.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+            return new ByteArrayInputStream(new byte[(int) (end - start + 1)]);
+        }
+    }
+
+    /** Storage giả: trả dữ liệu ngay, cho các test không cần request chồng lên nhau. */
+    private static class FastStorage extends SlowStorage {
+        @Override
+        public InputStream downloadMediaRange(String fileIdentifier, long start, long end) {
+            downloads.incrementAndGet();
+            return new ByteArrayInputStream(new byte[(int) (end - start + 1)]);
+        }
+    }
+
+    private static DiskSegmentCacheServiceImpl newCache(StorageService storage, Path cacheDir, long maxSizeBytes) throws IOException {
+        DiskSegmentCacheServiceImpl cache = new DiskSegmentCacheServiceImpl(storage, new StreamBufferPool(16 * 1024, 8),
+                new UpstreamBulkhead(16, 32, 2000, 2), new StreamingMetrics(new SimpleMeterRegistry()),
+                cacheDir.toString(), SEGMENT_SIZE, maxSizeBytes);
+        cache.loadExistingSegments();
+        return cache;
+    }
+
+    private static void read(DiskSegmentCacheServiceImpl cache, String file, long segment) throws IOException {
+        try (FileChannel ignored = cache.openSegment(file, VERSION, segment, FILE_SIZE, StreamCancellation.NONE)) {
+            // Chỉ cần mở được
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedSegmentsToStayWithinBudget(@TempDir Path cacheDir) throws Exception {
+        FastStorage storage = new FastStorage();
+        DiskSegmentCacheServiceImpl cache = newCache(storage, cacheDir, 3 * SEGMENT_SIZE);
+
+        read(cache, "file", 0);
+        read(cache, "file", 1);
+        read(cache, "file", 2);
+        read(cache, "file", 0); // Hit: segment 0 thành mới dùng nhất, segment 1 là LRU
+        read(cache, "file", 3); // Vượt ngân sách: evict segment 1
+
+        assertEquals(4, storage.downloads.get());
+        assertEquals(1, cache.getStats().getEvictions());
+        assertEquals(3, cache.getStats().getSegmentCount());
+        assertEquals(3 * SEGMENT_SIZE, cache.getStats().getSizeBytes());
+        assertFalse(Files.exists(cacheDir.resolve("file/md5a.1.seg")));
+
+        read(cache, "file", 0);
+        read(cache, "file", 2);
+        assertEquals(4, storage.downloads.get()); // Segment còn trong cache không tải lại
+        read(cache, "file", 1);
+        assertEquals(5, storage.downloads.get()); // Segment đã bị evict phải tải lại
+        assertTrue(cache.getStats().getSizeBytes() <= 3 * SEGMENT_SIZE);
+    }
+
+    @Test
+    void newVersionOfFileIsNotServedFromOldSegments(@TempDir Path cacheDir) throws Exception {
+        FastStorage storage = new FastStorage();
+        DiskSegmentCacheServiceImpl cache = newCache(storage, cacheDir, 4 * SEGMENT_SIZE);
+
+        cache.openSegment("file", "md5a", 0, FILE_SIZE, StreamCancellation.NONE).close();
+        cache.openSegment("file", "md5b", 0, FILE_SIZE, StreamCancellation.NONE).close(); // File bị thay trên storage
+        assertEquals(2, storage.downloads.get());
+        assertTrue(Files.exists(cacheDir.resolve("file/md5b.0.seg")));
+
+        cache.openSegment("file", "md5b", 0, FILE_SIZE, StreamCancellation.NONE).close();
+        assertEquals(2, storage.downloads.get());
+        assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    void segmentsWithoutVersionFromOlderRunsAreDroppedOnStartup(@TempDir Path cacheDir) throws Exception {
+        Files.createDirectories(cacheDir.resolve("file"));
+        Files.write(cacheDir.resolve("file/0.seg"), new byte[(int) SEGMENT_SIZE]);
+        Files.write(cacheDir.resolve("file/md5a.1.seg"), new byte[(int) SEGMENT_SIZE]);
+
+        DiskSegmentCacheServiceImpl cache = newCache(new FastStorage(), cacheDir, 4 * SEGMENT_SIZE);
+
+        assertEquals(1, cache.getStats().getSegmentCount());
+        assertFalse(Files.exists(cacheDir.resolve("file/0.seg")));
+    }
+
+    @Test
+    void evictFileDiscardsSegmentStillBeingFetched(@TempDir Path cacheDir) throws Exception {
+        GatedStorage storage = new GatedStorage();
+        DiskSegmentCacheServiceImpl cache = newCache(storage, cacheDir, 4 * SEGMENT_SIZE);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> reader = pool.submit(() -> cache.openSegment("deleted", VERSION, 0, FILE_SIZE, StreamCancellation.NONE));
+        assertTrue(storage.downloadStarted.await(5, TimeUnit.SECONDS));
+
+        cache.evictFile("deleted"); // File bị xóa khỏi storage trong lúc segment đang được tải
+        storage.gate.countDown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> reader.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IOException);
+        assertEquals(0, cache.getStats().getSegmentCount());
+        assertEquals(0, cache.getStats().getSizeBytes());
+        assertFalse(Files.exists(cacheDir.resolve("deleted/" + VERSION + ".0.seg")));
+        pool.shutdown();
+
+        // Lần tải sau evictFile không bị ảnh hưởng bởi dấu của lần tải trước
+        read(cache, "deleted", 0);
+        assertEquals(1, cache.getStats().getSegmentCount());
+    }
+
+    @Test
+    void segmentEvictedBeforeOpenIsRefetched(@TempDir Path cacheDir) throws Exception {
+        // Ngân sách chỉ một segment: mỗi lần tải evict segment của request khác, có thể ngay trước khi nó kịp mở
+        FastStorage storage = new FastStorage();
+        DiskSegmentCacheServiceImpl cache = newCache(storage, cacheDir, SEGMENT_SIZE);
+
+        int readers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            long segment = i % 4;
+            results.add(pool.submit(() -> {
+                start.await();
+                for (int round = 0; round < 50; round++) {
+                    read(cache, "contended", segment);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get(30, TimeUnit.SECONDS); // Không được ném NoSuchFileException
+        }
+        pool.shutdown();
+        assertTrue(cache.getStats().getSizeBytes() <= SEGMENT_SIZE);
+    }
+
+    @Test
+    void concurrentMissesOfSameSegmentShareOneUpstreamFetch(@TempDir Path cacheDir) throws Exception {
+        SlowStorage storage = new SlowStorage();
+        DiskSegmentCacheServiceImpl cache = new DiskSegmentCacheServiceImpl(storage, new StreamBufferPool(16 * 1024, 8), new UpstreamBulkhead(16, 32, 2000, 2), new StreamingMetrics(new SimpleMeterRegistry()), cacheDir.toString(), SEGMENT_SIZE, 16 * SEGMENT_SIZE);
+        cache.loadExistingSegments();
+
+        int readers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                try (FileChannel channel = cache.openSegment("sameFile", VERSION, 1, FILE_SIZE, StreamCancellation.NONE)) {
+                    return channel.size();
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Long> result : results) {
+            assertEquals(SEGMENT_SIZE, result.get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, storage.downloads.get());
+        assertEquals(readers, cache.getStats().getMisses() + cache.getStats().getHits());
+    }
+
+    @Test
+    void cancellingStreamAbortsStalledUpstreamDownload(@TempDir Path cacheDir) throws Exception {
+        StalledStorage storage = new StalledStorage();
+        DiskSegmentCacheServiceImpl cache = new DiskSegmentCacheServiceImpl(storage, new StreamBufferPool(16 * 1024, 8), new UpstreamBulkhead(16, 32, 2000, 2), new StreamingMetrics(new SimpleMeterRegistry()), cacheDir.toString(), SEGMENT_SIZE, 16 * SEGMENT_SIZE);
+        cache.loadExistingSegments();
+
+        StreamCancellation cancellation = new StreamCancellation();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        Future<?> reader = pool.submit(() -> cache.openSegment("stalledFile", VERSION, 0, FILE_SIZE, cancellation));
+        assertTrue(storage.downloadStarted.await(5, TimeUnit.SECONDS));
+
+        cancellation.cancel();
+
+        assertTrue(storage.upstreamClosed.await(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> reader.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof IOException);
+        pool.shutdown();
+    }
+
+    @Test
+    void rejectsImmediatelyWhenUpstreamSlotsAndQueueAreFull(@TempDir Path cacheDir) throws Exception {
+        StalledStorage storage = new StalledStorage();
+        // 1 slot, không cho chờ: request thứ hai phải bị từ chối ngay
+        DiskSegmentCacheServiceImpl cache = new DiskSegmentCacheServiceImpl(storage, new StreamBufferPool(16 * 1024, 8), new UpstreamBulkhead(1, 0, 2000, 3), new StreamingMetrics(new SimpleMeterRegistry()), cacheDir.toString(), SEGMENT_SIZE, 16 * SEGMENT_SIZE);
+        cache.loadExistingSegments();
+
+        StreamCancellation first = new StreamCancellation();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.submit(() -> cache.openSegment("busyFile", VERSION, 0, FILE_SIZE, first));
+        assertTrue(storage.downloadStarted.await(5, TimeUnit.SECONDS));
+
+        UpstreamBusyException busy = assertThrows(UpstreamBusyException.class,
+                () -> cache.openSegment("busyFile", VERSION, 1, FILE_SIZE, StreamCancellation.NONE));
+        assertEquals(3, busy.getRetryAfterSeconds());
+
+        first.cancel();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
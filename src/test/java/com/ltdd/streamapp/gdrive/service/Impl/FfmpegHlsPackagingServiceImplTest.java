@@ -0,0 +1,36 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FfmpegHlsPackagingServiceImplTest {
+
+    @Test
+    void parsesSegmentsFromFfmpegVodPlaylist() {
+        List<String> playlist = List.of(
+                "#EXTM3U",
+                "#EXT-X-VERSION:3",
+                "#EXT-X-TARGETDURATION:7",
+                "#EXT-X-MEDIA-SEQUENCE:0",
+                "#EXT-X-PLAYLIST-TYPE:VOD",
+                "#EXTINF:6.006000,",
+                "seg_00000.ts",
+                "#EXTINF:6.006000,",
+                "/tmp/streamapp-hls/media-1-123/seg_00001.ts",
+                "#EXTINF:2.502500,",
+                "seg_00002.ts",
+                "#EXT-X-ENDLIST");
+
+        List<FfmpegHlsPackagingServiceImpl.PlaylistEntry> entries = FfmpegHlsPackagingServiceImpl.parsePlaylist(playlist);
+
+        assertEquals(3, entries.size());
+        assertEquals(6.006, entries.get(0).durationSeconds(), 1e-9);
+        assertEquals("seg_00000.ts", entries.get(0).fileName());
+        // Đường dẫn tuyệt đối được rút về tên file trong thư mục job
+        assertEquals("seg_00001.ts", entries.get(1).fileName());
+        assertEquals(2.5025, entries.get(2).durationSeconds(), 1e-9);
+    }
+}
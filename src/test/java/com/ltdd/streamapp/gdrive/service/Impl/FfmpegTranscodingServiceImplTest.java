@@ -0,0 +1,59 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FfmpegTranscodingServiceImplTest {
+
+    @Test
+    void parsesLadderSortedByHeight() {
+        List<FfmpegTranscodingServiceImpl.Rung> ladder = FfmpegTranscodingServiceImpl.parseLadder(" 1080:5000, 360:800 ,720:2800,");
+
+        assertEquals(List.of(
+                new FfmpegTranscodingServiceImpl.Rung(360, 800),
+                new FfmpegTranscodingServiceImpl.Rung(720, 2800),
+                new FfmpegTranscodingServiceImpl.Rung(1080, 5000)), ladder);
+        assertEquals("720p", ladder.get(1).name());
+    }
+
+    @Test
+    void rejectsMalformedLadderEntry() {
+        assertThrows(IllegalArgumentException.class, () -> FfmpegTranscodingServiceImpl.parseLadder("360:800,720"));
+    }
+
+    private static MediaRendition audio(String name, int kbps, String mimeType) {
+        MediaRendition rendition = new MediaRendition();
+        rendition.setName(name);
+        rendition.setAudioBitrateKbps(kbps);
+        rendition.setMimeType(mimeType);
+        rendition.setStorageIdentifier("drive-" + name);
+        return rendition;
+    }
+
+    @Test
+    void negotiatesAudioRenditionFromSaveDataAndAccept() {
+        List<MediaRendition> renditions = List.of(audio("opus-64k", 64, "audio/ogg"), audio("aac-96k", 96, "audio/mp4"));
+
+        // Không có tín hiệu nào: bản gốc
+        assertNull(FfmpegTranscodingServiceImpl.chooseAudioRendition(renditions, null, false, "*/*"));
+        // Save-Data nhưng client không nói là phát được Ogg/Opus: AAC
+        assertEquals("aac-96k", FfmpegTranscodingServiceImpl.chooseAudioRendition(renditions, null, true, "*/*").getName());
+        assertEquals("opus-64k", FfmpegTranscodingServiceImpl.chooseAudioRendition(renditions, "low", false, "audio/ogg;codecs=opus, */*").getName());
+        // Tên cụ thể và "original" thắng Save-Data
+        assertEquals("opus-64k", FfmpegTranscodingServiceImpl.chooseAudioRendition(renditions, "opus-64k", false, null).getName());
+        assertNull(FfmpegTranscodingServiceImpl.chooseAudioRendition(renditions, "original", true, "audio/ogg"));
+    }
+
+    @Test
+    void parsesAudioLadder() {
+        assertEquals(List.of(new FfmpegTranscodingServiceImpl.AudioRung("opus", 64), new FfmpegTranscodingServiceImpl.AudioRung("aac", 96)),
+                FfmpegTranscodingServiceImpl.parseAudioLadder("aac:96, OPUS:64"));
+        assertThrows(IllegalArgumentException.class, () -> FfmpegTranscodingServiceImpl.parseAudioLadder("mp3:128"));
+    }
+}
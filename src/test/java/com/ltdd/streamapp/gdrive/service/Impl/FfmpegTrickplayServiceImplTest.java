@@ -0,0 +1,43 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FfmpegTrickplayServiceImplTest {
+
+    private static TrickplaySheet sheet(int index, int thumbnailCount) {
+        TrickplaySheet sheet = new TrickplaySheet();
+        sheet.setSheetIndex(index);
+        sheet.setIntervalSeconds(10);
+        sheet.setTileWidth(160);
+        sheet.setTileHeight(90);
+        sheet.setColumns(2);
+        sheet.setThumbnailCount(thumbnailCount);
+        return sheet;
+    }
+
+    @Test
+    void rendersOneCuePerThumbnailWithTileCoordinates() {
+        String vtt = FfmpegTrickplayServiceImpl.renderWebVtt(List.of(sheet(0, 4), sheet(1, 1)));
+
+        assertTrue(vtt.startsWith("WEBVTT\n"));
+        // Ô thứ 4 của sheet 0 (hàng 1, cột 1)
+        assertTrue(vtt.contains("00:00:30.000 --> 00:00:40.000\n0.jpg#xywh=160,90,160,90\n"), vtt);
+        // Thumbnail thứ 5 sang sheet 1, ô đầu tiên
+        assertTrue(vtt.contains("00:00:40.000 --> 00:00:50.000\n1.jpg#xywh=0,0,160,90\n"), vtt);
+        assertEquals(5, vtt.split("-->").length - 1);
+    }
+
+    @Test
+    void signedTrackCarriesTheQueryOnEverySheetUriBeforeTheFragment() {
+        String vtt = FfmpegTrickplayServiceImpl.renderWebVtt(List.of(sheet(0, 1), sheet(1, 1)), "expires=1&sig=abc");
+
+        assertTrue(vtt.contains("\n0.jpg?expires=1&sig=abc#xywh=0,0,160,90\n"), vtt);
+        assertTrue(vtt.contains("\n1.jpg?expires=1&sig=abc#xywh=0,0,160,90\n"), vtt);
+    }
+}
@@ -0,0 +1,232 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.drive.Drive;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.util.StreamBufferPool;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import com.ltdd.streamapp.gdrive.util.StreamingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import com.ltdd.streamapp.gdrive.util.UpstreamBulkhead;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the Drive client against a local fake Drive endpoint and checks that media downloads
+ * carry a Range header and that only the requested bytes cross the wire, and that resumable uploads
+ * follow Drive's session protocol.
+ */
+class GoogleDriveStorageServiceImplTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+    private static final String FILE_ID = "fakeFileId123";
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?:(\\d+)-(\\d+)|\\*)/(\\d+)");
+    private static final String UPLOAD_ID = "fakeUploadId";
+    private static final String UPLOADED_FILE_ID = "uploadedFileId456";
+
+    private final byte[] fileContent = new byte[5 * 1024 * 1024];
+    private final List<String> receivedRanges = new CopyOnWriteArrayList<>();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private volatile boolean honorRange = true;
+    private final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    private final AtomicInteger permissionsGranted = new AtomicInteger();
+
+    private HttpServer fakeDrive;
+    private GoogleDriveStorageServiceImpl storageService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < fileContent.length; i++) {
+            fileContent[i] = (byte) (i * 31 + 7);
+        }
+        fakeDrive = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        // Media download của Drive client đi qua đường dẫn /download/drive/v3/files/{id}?alt=media
+        fakeDrive.createContext("/download/drive/v3/files/" + FILE_ID, exchange -> {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            receivedRanges.add(String.valueOf(range));
+            Matcher matcher = range != null ? RANGE.matcher(range) : null;
+            int start = 0;
+            int end = fileContent.length - 1;
+            int status = 200;
+            if (honorRange && matcher != null && matcher.matches()) {
+                start = Integer.parseInt(matcher.group(1));
+                end = Math.min(Integer.parseInt(matcher.group(2)), fileContent.length - 1);
+                status = 206;
+                exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + fileContent.length);
+            }
+            int length = end - start + 1;
+            exchange.sendResponseHeaders(status, length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(fileContent, start, length);
+            }
+            bytesSent.addAndGet(length);
+        });
+        // Resumable upload: POST mở session, PUT từng chunk với Content-Range, 308 + Range cho phần đã nhận
+        fakeDrive.createContext("/upload/drive/v3/files", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Location",
+                    "http://127.0.0.1:" + fakeDrive.getAddress().getPort() + "/upload/session?upload_id=" + UPLOAD_ID);
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        fakeDrive.createContext("/upload/session", exchange -> {
+            Matcher matcher = CONTENT_RANGE.matcher(exchange.getRequestHeaders().getFirst("Content-Range"));
+            if (!matcher.matches()) {
+                exchange.sendResponseHeaders(400, -1);
+                exchange.close();
+                return;
+            }
+            byte[] chunk = exchange.getRequestBody().readAllBytes();
+            if (matcher.group(1) != null && Long.parseLong(matcher.group(1)) == uploaded.size()) {
+                uploaded.write(chunk);
+            }
+            long total = Long.parseLong(matcher.group(3));
+            if (uploaded.size() == total) {
+                byte[] json = ("{\"id\":\"" + UPLOADED_FILE_ID + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, json.length);
+                exchange.getResponseBody().write(json);
+            } else {
+                if (uploaded.size() > 0) {
+                    exchange.getResponseHeaders().add("Range", "bytes=0-" + (uploaded.size() - 1));
+                }
+                exchange.sendResponseHeaders(308, -1);
+            }
+            exchange.close();
+        });
+        fakeDrive.createContext("/drive/v3/files/" + UPLOADED_FILE_ID + "/permissions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            permissionsGranted.incrementAndGet();
+            byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+            exchange.close();
+        });
+        fakeDrive.start();
+
+        Drive drive = new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), null)
+                .setRootUrl("http://127.0.0.1:" + fakeDrive.getAddress().getPort() + "/")
+                .setApplicationName("streamapp-test")
+                .build();
+        storageService = new GoogleDriveStorageServiceImpl(drive, "test-folder");
+    }
+
+    @AfterEach
+    void tearDown() {
+        fakeDrive.stop(0);
+    }
+
+    @Test
+    void downloadMediaRangeTransfersOnlyRequestedBytes() throws IOException {
+        long start = 3_000_000;
+        long end = 3_065_535;
+
+        byte[] received;
+        try (InputStream in = storageService.downloadMediaRange(FILE_ID, start, end)) {
+            received = in.readAllBytes();
+        }
+
+        assertEquals(List.of("bytes=3000000-3065535"), receivedRanges);
+        assertEquals(end - start + 1, bytesSent.get());
+        assertArrayEquals(Arrays.copyOfRange(fileContent, (int) start, (int) end + 1), received);
+    }
+
+    @Test
+    void downloadMediaRangeSkipsLocallyWhenUpstreamIgnoresRange() throws IOException {
+        honorRange = false;
+
+        byte[] received;
+        try (InputStream in = storageService.downloadMediaRange(FILE_ID, 100, 199)) {
+            received = in.readNBytes(100);
+        }
+
+        assertArrayEquals(Arrays.copyOfRange(fileContent, 100, 200), received);
+    }
+
+    @Test
+    void segmentCacheMissFetchesOnlyThatSegment(@TempDir Path cacheDir) throws IOException {
+        long segmentSize = 1024 * 1024;
+        DiskSegmentCacheServiceImpl cache = new DiskSegmentCacheServiceImpl(storageService, new StreamBufferPool(16 * 1024, 8), new UpstreamBulkhead(16, 32, 2000, 2), new StreamingMetrics(new SimpleMeterRegistry()), cacheDir.toString(), segmentSize, 16L * segmentSize);
+        cache.loadExistingSegments();
+
+        ByteBuffer segment = ByteBuffer.allocate((int) segmentSize);
+        try (FileChannel channel = cache.openSegment(FILE_ID, "md5", 4, fileContent.length, StreamCancellation.NONE)) {
+            while (segment.hasRemaining() && channel.read(segment) != -1) {
+                // đọc hết segment
+            }
+        }
+
+        // Segment cuối chỉ dài (5MB - 4MB) = 1MB; không có byte nào trước offset 4MB được tải về
+        assertEquals(List.of("bytes=4194304-5242879"), receivedRanges);
+        assertEquals(segmentSize, bytesSent.get());
+        assertArrayEquals(Arrays.copyOfRange(fileContent, (int) (4 * segmentSize), fileContent.length), segment.array());
+    }
+
+    @Test
+    void resumableUploadSendsChunksAndResumesFromCommittedOffset() throws IOException {
+        int granularity = storageService.resumableChunkGranularity();
+        long total = fileContent.length;
+
+        String sessionUri = storageService.startResumableUpload("VIDEO", "clip.mp4", total);
+        StorageService.ResumableUploadProgress first = storageService.uploadResumableChunk(sessionUri,
+                new ByteArrayInputStream(fileContent, 0, granularity), 0, granularity, total);
+        assertEquals(new StorageService.ResumableUploadProgress(granularity, null), first);
+
+        // Sau khi mất kết nối: hỏi lại offset rồi chỉ gửi phần còn thiếu
+        StorageService.ResumableUploadProgress resumed = storageService.queryResumableUpload(sessionUri, total);
+        assertEquals(granularity, resumed.committedBytes());
+        StorageService.ResumableUploadProgress last = storageService.uploadResumableChunk(sessionUri,
+                new ByteArrayInputStream(fileContent, granularity, (int) total - granularity), granularity, total - granularity, total);
+
+        assertTrue(last.isComplete());
+        assertEquals(UPLOADED_FILE_ID, last.fileIdentifier());
+        assertArrayEquals(fileContent, uploaded.toByteArray());
+        assertEquals(1, permissionsGranted.get());
+    }
+
+    @Test
+    void resumableChunkSendsOnlyDeclaredLengthOfLongerStream() throws IOException {
+        int granularity = storageService.resumableChunkGranularity();
+        long total = fileContent.length;
+
+        // Giống forwardToStorage: stream trỏ vào cả file spool, dài hơn chunk được khai báo
+        String sessionUri = storageService.startResumableUpload("VIDEO", "clip.mp4", total);
+        ByteArrayInputStream wholeFile = new ByteArrayInputStream(fileContent);
+        StorageService.ResumableUploadProgress first = storageService.uploadResumableChunk(sessionUri, wholeFile, 0, granularity, total);
+        assertEquals(new StorageService.ResumableUploadProgress(granularity, null), first);
+        assertEquals(total - granularity, wholeFile.available()); // Không đọc quá chunk
+
+        StorageService.ResumableUploadProgress last = storageService.uploadResumableChunk(sessionUri, wholeFile,
+                granularity, total - granularity, total);
+
+        assertTrue(last.isComplete());
+        assertArrayEquals(fileContent, uploaded.toByteArray());
+    }
+}
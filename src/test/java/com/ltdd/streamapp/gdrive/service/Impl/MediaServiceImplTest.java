@@ -0,0 +1,437 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.json.Json;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.drive.Drive;
+import com.ltdd.streamapp.gdrive.model.HlsSegment;
+import com.ltdd.streamapp.gdrive.model.Media;
+import com.ltdd.streamapp.gdrive.model.MediaContent;
+import com.ltdd.streamapp.gdrive.model.MediaRendition;
+import com.ltdd.streamapp.gdrive.model.TrickplaySheet;
+import com.ltdd.streamapp.gdrive.model.User;
+import com.ltdd.streamapp.gdrive.payload.MediaResponse;
+import com.ltdd.streamapp.gdrive.payload.MediaUploadRequest;
+import com.ltdd.streamapp.gdrive.payload.SegmentCacheStatsResponse;
+import com.ltdd.streamapp.gdrive.payload.TranscodeJobResponse;
+import com.ltdd.streamapp.gdrive.repository.MediaContentRepository;
+import com.ltdd.streamapp.gdrive.repository.MediaRepository;
+import com.ltdd.streamapp.gdrive.repository.UserRepository;
+import com.ltdd.streamapp.gdrive.service.HlsPackagingService;
+import com.ltdd.streamapp.gdrive.service.MediaMetadataCacheService;
+import com.ltdd.streamapp.gdrive.service.MediaProbeService;
+import com.ltdd.streamapp.gdrive.service.SeekIndexService;
+import com.ltdd.streamapp.gdrive.service.SegmentCacheService;
+import com.ltdd.streamapp.gdrive.service.StorageService;
+import com.ltdd.streamapp.gdrive.service.StorageService.ResumableUploadProgress;
+import com.ltdd.streamapp.gdrive.service.TranscodingService;
+import com.ltdd.streamapp.gdrive.service.TrickplayService;
+import com.ltdd.streamapp.gdrive.service.WaveformService;
+import com.ltdd.streamapp.gdrive.util.KeyframeIndex;
+import com.ltdd.streamapp.gdrive.util.StreamCancellation;
+import com.ltdd.streamapp.gdrive.util.StreamUrlSigner;
+import com.ltdd.streamapp.gdrive.util.WorkCopy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dedup theo nội dung trên H2: reference count của {@link MediaContent} quyết định khi nào file trên storage và
+ * các output dẫn xuất (HLS, rendition, trickplay, waveform) được xóa. Storage và các job nền là fake ghi lại lời gọi.
+ */
+@DataJpaTest
+class MediaServiceImplTest {
+
+    private static final String SHA256 = "0f".repeat(32);
+
+    @Autowired
+    private MediaRepository mediaRepository;
+    @Autowired
+    private MediaContentRepository mediaContentRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @TempDir
+    Path tempDir;
+
+    private final FakeStorage storage = new FakeStorage();
+    private final RecordingOutputs outputs = new RecordingOutputs();
+    private MediaServiceImpl mediaService;
+    private Path upload;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        User user = new User();
+        user.setUsername("alice");
+        user.setEmail("alice@example.com");
+        user.setPassword("secret");
+        userRepository.save(user);
+
+        // Drive chỉ được gọi để lấy thumbnailLink khi dựng MediaResponse
+        MockHttpTransport driveTransport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url)
+                        .setResponse(new MockLowLevelHttpResponse().setContentType(Json.MEDIA_TYPE).setContent("{}"));
+            }
+        };
+        Drive drive = new Drive.Builder(driveTransport, GsonFactory.getDefaultInstance(), null).setApplicationName("test").build();
+        mediaService = new MediaServiceImpl(mediaRepository, userRepository, storage, drive, new NoopSegmentCache(),
+                new NoopMetadataCache(), (source, originalFilename) -> source, outputs, outputs, new NoopSeekIndex(),
+                outputs, outputs, (file, contentSha256, originalFilename) -> MediaProbeService.ProbeResult.UNKNOWN,
+                mediaContentRepository, new StreamUrlSigner("test-secret", 3600), new TaskExecutorAdapter(Runnable::run),
+                transactionManager);
+        ReflectionTestUtils.setField(mediaService, "workDir", tempDir.resolve("work").toString());
+
+        upload = Files.writeString(tempDir.resolve("song.mp3"), "same bytes");
+    }
+
+    private MediaResponse ingest(String type) {
+        MediaUploadRequest request = new MediaUploadRequest();
+        request.setTitle("Song");
+        request.setType(type);
+        return mediaService.createMediaFromLocalFile("alice", upload, "song.mp3", SHA256, null, request, null);
+    }
+
+    private MediaContent content(String type) {
+        return mediaContentRepository.findByContentSha256AndMediaType(SHA256, type).orElse(null);
+    }
+
+    @Test
+    void secondUploadOfSameContentAddsReferenceWithoutUploading() {
+        MediaResponse first = ingest("MUSIC");
+        MediaResponse second = ingest("MUSIC");
+
+        assertEquals(List.of("file-1"), storage.uploaded);
+        assertEquals(2, content("MUSIC").getReferenceCount());
+        Media duplicate = mediaRepository.findById(second.getId()).orElseThrow();
+        assertEquals("file-1", duplicate.getStorageIdentifier());
+        assertEquals(first.getId(), duplicate.getOutputsId());
+        // Waveform và rendition audio chỉ được tạo một lần, cho Media đầu tiên
+        assertEquals(List.of("scheduleWaveform:" + first.getId(), "scheduleAudioRenditions:" + first.getId()), outputs.calls);
+    }
+
+    @Test
+    void duplicateVideoReusesDerivedOutputsInsteadOfProcessingAgain() {
+        MediaResponse first = ingest("VIDEO");
+        outputs.calls.clear();
+        MediaResponse second = ingest("VIDEO");
+
+        assertTrue(outputs.calls.isEmpty(), "nothing should be scheduled for a duplicate: " + outputs.calls);
+        assertEquals(first.getId(), mediaService.resolveOutputsId(second.getId()));
+        assertEquals(first.getId(), mediaService.resolveOutputsId(first.getId()));
+    }
+
+    @Test
+    void deletingOneOfTwoReferencesKeepsStoredFileAndOutputs() {
+        MediaResponse first = ingest("MUSIC");
+        MediaResponse second = ingest("MUSIC");
+        outputs.calls.clear();
+
+        mediaService.deleteMedia("alice", first.getId());
+
+        assertTrue(storage.deleted.isEmpty());
+        assertEquals(1, content("MUSIC").getReferenceCount());
+        assertTrue(outputs.calls.isEmpty(), "shared outputs must be kept: " + outputs.calls);
+        // Media còn lại vẫn đọc output lưu theo ID của Media đã xóa
+        assertEquals(first.getId(), mediaService.resolveOutputsId(second.getId()));
+    }
+
+    @Test
+    void deletingLastReferenceDeletesStoredFileAndOutputs() {
+        MediaResponse first = ingest("MUSIC");
+        MediaResponse second = ingest("MUSIC");
+        mediaService.deleteMedia("alice", first.getId());
+        outputs.calls.clear();
+
+        mediaService.deleteMedia("alice", second.getId());
+
+        assertEquals(List.of("file-1"), storage.deleted);
+        assertNull(content("MUSIC"));
+        assertEquals(List.of("deleteTranscodes:" + first.getId(), "deletePackaging:" + first.getId(),
+                "deleteTrickplay:" + first.getId(), "deleteWaveform:" + first.getId()), outputs.calls);
+    }
+
+    @Test
+    void losingRegistrationRaceDeletesRedundantCopy() {
+        // Một upload khác cùng nội dung đăng ký xong trong lúc file của upload này đang được lưu
+        storage.duringUpload = () -> {
+            Media winner = new Media();
+            winner.setTitle("Winner");
+            winner.setType("MUSIC");
+            winner.setStorageIdentifier("file-winner");
+            winner.setOwnerUsername("alice");
+            winner.setContentSha256(SHA256);
+            mediaRepository.save(winner);
+            MediaContent registered = new MediaContent();
+            registered.setContentSha256(SHA256);
+            registered.setMediaType("MUSIC");
+            registered.setStorageIdentifier("file-winner");
+            registered.setReferenceCount(1);
+            mediaContentRepository.save(registered);
+        };
+
+        MediaResponse response = ingest("MUSIC");
+
+        assertEquals(List.of("file-1"), storage.uploaded);
+        assertEquals(List.of("file-1"), storage.deleted);
+        assertEquals(2, content("MUSIC").getReferenceCount());
+        Media saved = mediaRepository.findById(response.getId()).orElseThrow();
+        assertEquals("file-winner", saved.getStorageIdentifier());
+        assertFalse(saved.getOutputsId().equals(saved.getId()));
+        assertTrue(outputs.calls.isEmpty(), "the winner already processes this content: " + outputs.calls);
+    }
+
+    private static class FakeStorage implements StorageService {
+        final List<String> uploaded = new ArrayList<>();
+        final List<String> deleted = new ArrayList<>();
+        Runnable duringUpload;
+
+        @Override
+        public String uploadMediaFile(MultipartFile file, String mediaType, String originalFilename) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String uploadMediaFile(Path file, String mediaType, String originalFilename) {
+            if (duringUpload != null) {
+                duringUpload.run();
+            }
+            String id = "file-" + (uploaded.size() + 1);
+            uploaded.add(id);
+            return id;
+        }
+
+        @Override
+        public String uploadProfilePicture(MultipartFile file, String originalFilename) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void deleteMediaFile(String fileIdentifier) {
+            deleted.add(fileIdentifier);
+        }
+
+        @Override
+        public InputStream downloadMediaRange(String fileIdentifier, long start, long end) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String resolveDirectDownloadUrl(String fileIdentifier) {
+            return null;
+        }
+
+        @Override
+        public String startResumableUpload(String mediaType, String originalFilename, long contentLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResumableUploadProgress uploadResumableChunk(String sessionUri, InputStream chunk, long offset, long length,
+                                                            long totalLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResumableUploadProgress queryResumableUpload(String sessionUri, long totalLength) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void cancelResumableUpload(String sessionUri) {
+        }
+
+        @Override
+        public int resumableChunkGranularity() {
+            return 256 * 1024;
+        }
+    }
+
+    /** Ghi lại việc lên lịch và xóa output dẫn xuất; không có output nào thực sự được tạo. */
+    private static class RecordingOutputs implements HlsPackagingService, TranscodingService, TrickplayService, WaveformService {
+        final List<String> calls = new ArrayList<>();
+
+        @Override
+        public void schedulePackaging(Long mediaId, WorkCopy source) {
+            calls.add("schedulePackaging:" + mediaId);
+        }
+
+        @Override
+        public int storeRendition(Long mediaId, String rendition, Path playlist) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String buildMasterPlaylist(Long mediaId, String uriQuery) {
+            return null;
+        }
+
+        @Override
+        public String buildMediaPlaylist(Long mediaId, String rendition, String uriQuery) {
+            return null;
+        }
+
+        @Override
+        public HlsSegment getSegment(Long mediaId, String rendition, int sequenceNumber) {
+            return null;
+        }
+
+        @Override
+        public void deletePackaging(Long mediaId) {
+            calls.add("deletePackaging:" + mediaId);
+        }
+
+        @Override
+        public void scheduleLadder(Long mediaId, WorkCopy source, Integer sourceHeight) {
+            calls.add("scheduleLadder:" + mediaId);
+        }
+
+        @Override
+        public void scheduleAudioRenditions(Long mediaId) {
+            calls.add("scheduleAudioRenditions:" + mediaId);
+        }
+
+        @Override
+        public void scheduleWaveform(Long mediaId) {
+            calls.add("scheduleWaveform:" + mediaId);
+        }
+
+        @Override
+        public MediaRendition selectAudioRendition(String storageIdentifier, Long mediaId, String requested, boolean saveData, String accept) {
+            return null;
+        }
+
+        @Override
+        public List<MediaRendition> getRenditions(Long mediaId) {
+            return List.of();
+        }
+
+        @Override
+        public List<TranscodeJobResponse> getJobs(Long mediaId) {
+            return List.of();
+        }
+
+        @Override
+        public void deleteTranscodes(Long mediaId) {
+            calls.add("deleteTranscodes:" + mediaId);
+        }
+
+        @Override
+        public void scheduleGeneration(Long mediaId, WorkCopy source) {
+            calls.add("scheduleGeneration:" + mediaId);
+        }
+
+        @Override
+        public String buildWebVtt(Long mediaId, String uriQuery) {
+            return null;
+        }
+
+        @Override
+        public TrickplaySheet getSheet(Long mediaId, int sheetIndex) {
+            return null;
+        }
+
+        @Override
+        public void deleteTrickplay(Long mediaId) {
+            calls.add("deleteTrickplay:" + mediaId);
+        }
+
+        @Override
+        public int generate(Long mediaId, Path source, Path workDir, Consumer<String> ffmpegOutput) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] getWaveform(Long mediaId, Integer level) {
+            return null;
+        }
+
+        @Override
+        public boolean hasWaveform(Long mediaId) {
+            return false;
+        }
+
+        @Override
+        public void deleteWaveform(Long mediaId) {
+            calls.add("deleteWaveform:" + mediaId);
+        }
+    }
+
+    private static class NoopSeekIndex implements SeekIndexService {
+        @Override
+        public void buildIndex(String storageIdentifier, Path file) {
+        }
+
+        @Override
+        public KeyframeIndex.Entry resolve(String storageIdentifier, double timeSeconds) {
+            return null;
+        }
+
+        @Override
+        public void deleteIndex(String storageIdentifier) {
+        }
+    }
+
+    private static class NoopSegmentCache implements SegmentCacheService {
+        @Override
+        public long getSegmentSize() {
+            return 1024 * 1024;
+        }
+
+        @Override
+        public FileChannel openSegment(String fileIdentifier, String fileVersion, long segmentIndex, long fileSize,
+                                       StreamCancellation cancellation) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean prefetchSegment(String fileIdentifier, String fileVersion, long segmentIndex, long fileSize) {
+            return false;
+        }
+
+        @Override
+        public void evictFile(String fileIdentifier) {
+        }
+
+        @Override
+        public SegmentCacheStatsResponse getStats() {
+            return null;
+        }
+    }
+
+    private static class NoopMetadataCache implements MediaMetadataCacheService {
+        @Override
+        public com.google.api.services.drive.model.File getFileMetadata(String fileId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void invalidate(String fileId) {
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ltdd.streamapp.gdrive.service.Impl;
+
+import com.ltdd.streamapp.gdrive.payload.BandwidthLimits;
+import com.ltdd.streamapp.gdrive.service.BandwidthShaperService.ShapedStream;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketBandwidthShaperServiceImplTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<Long> sleeps = new ArrayList<>();
+
+    /** Shaper với đồng hồ đứng yên: mỗi lần "ngủ" chỉ được ghi lại, nên thời gian chờ chỉ phụ thuộc lượng byte đã đặt trước. */
+    private TokenBucketBandwidthShaperServiceImpl shaper(long perClient, long perFile, long global) {
+        return new TokenBucketBandwidthShaperServiceImpl(perClient, perFile, global, clock::get, sleeps::add);
+    }
+
+    private long waitFor(ShapedStream stream, int bytes) throws Exception {
+        int before = sleeps.size();
+        stream.acquire(bytes);
+        return sleeps.size() == before ? 0 : sleeps.get(sleeps.size() - 1);
+    }
+
+    @Test
+    void globalRateIsSplitFairlyBetweenActiveStreams() throws Exception {
+        TokenBucketBandwidthShaperServiceImpl shaper = shaper(0, 0, 1000);
+        ShapedStream first = shaper.openStream("client-a", "file-1");
+        ShapedStream second = shaper.openStream("client-b", "file-2");
+
+        assertEquals(SECOND, waitFor(first, 500)); // 500 B/s mỗi stream
+        assertEquals(SECOND, waitFor(second, 500));
+
+        second.close();
+        // Stream còn lại được cả 1000 B/s: nợ 500 byte cũ + 500 byte mới chờ 1 giây, thay vì 2 giây ở 500 B/s
+        assertEquals(SECOND, waitFor(first, 500));
+        first.close();
+    }
+
+    @Test
+    void perClientLimitIsSharedByEveryStreamOfThatClient() throws Exception {
+        TokenBucketBandwidthShaperServiceImpl shaper = shaper(1000, 0, 0);
+        ShapedStream first = shaper.openStream("client-a", "file-1");
+        ShapedStream second = shaper.openStream("client-a", "file-2");
+        ShapedStream other = shaper.openStream("client-b", "file-1");
+
+        assertEquals(0, waitFor(first, 1000)); // Dùng hết burst của client-a
+        assertEquals(SECOND, waitFor(second, 1000)); // Cùng bucket nên phải chờ
+        assertEquals(0, waitFor(other, 1000)); // Client khác có bucket riêng
+
+        first.close();
+        second.close();
+        other.close();
+    }
+
+    @Test
+    void perFileLimitIsSharedByEveryClientOfThatFile() throws Exception {
+        TokenBucketBandwidthShaperServiceImpl shaper = shaper(0, 2000, 0);
+        ShapedStream first = shaper.openStream("client-a", "file-1");
+        ShapedStream second = shaper.openStream("client-b", "file-1");
+
+        assertEquals(0, waitFor(first, 2000));
+        assertEquals(SECOND / 2, waitFor(second, 1000));
+
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void updatedLimitsApplyToRunningStreams() throws Exception {
+        TokenBucketBandwidthShaperServiceImpl shaper = shaper(0, 0, 0);
+        ShapedStream stream = shaper.openStream("client-a", "file-1");
+        assertEquals(0, waitFor(stream, 1_000_000)); // Không giới hạn
+
+        shaper.updateLimits(new BandwidthLimits(0, 0, 100));
+        assertEquals(SECOND, waitFor(stream, 100));
+        stream.close();
+    }
+}
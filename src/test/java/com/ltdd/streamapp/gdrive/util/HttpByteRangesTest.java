@@ -0,0 +1,59 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import com.ltdd.streamapp.gdrive.util.HttpByteRanges.ByteRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpByteRangesTest {
+
+    private static final long FILE_SIZE = 10_000;
+
+    @Test
+    void parsesMultipleSpecsIncludingOpenAndSuffixRanges() {
+        List<ByteRange> ranges = HttpByteRanges.parse("bytes=0-99, 9000-, -500", FILE_SIZE);
+
+        assertEquals(List.of(new ByteRange(0, 99), new ByteRange(9000, 9999), new ByteRange(9500, 9999)), ranges);
+    }
+
+    @Test
+    void dropsUnsatisfiableSpecsAndClampsEnd() {
+        assertEquals(List.of(new ByteRange(9990, 9999)), HttpByteRanges.parse("bytes=20000-30000,9990-20000", FILE_SIZE));
+        assertTrue(HttpByteRanges.parse("bytes=10000-", FILE_SIZE).isEmpty());
+        assertTrue(HttpByteRanges.parse("bytes=-0", FILE_SIZE).isEmpty());
+    }
+
+    @Test
+    void ignoresSyntacticallyInvalidHeaders() {
+        assertNull(HttpByteRanges.parse(null, FILE_SIZE));
+        assertNull(HttpByteRanges.parse("items=0-1", FILE_SIZE));
+        assertNull(HttpByteRanges.parse("bytes=5-1", FILE_SIZE));
+        assertNull(HttpByteRanges.parse("bytes=abc-1", FILE_SIZE));
+        assertNull(HttpByteRanges.parse("bytes=-", FILE_SIZE));
+    }
+
+    @Test
+    void rejectsTooManySpecs() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= HttpByteRanges.MAX_RANGE_SPECS; i++) {
+            header.append(',').append(i * 10).append('-').append(i * 10);
+        }
+        assertTrue(HttpByteRanges.parse(header.toString(), FILE_SIZE).isEmpty());
+    }
+
+    @Test
+    void coalescesOverlappingAndNearbyRangesInOffsetOrder() {
+        List<ByteRange> coalesced = HttpByteRanges.coalesce(List.of(
+                new ByteRange(9000, 9999),
+                new ByteRange(0, 99),
+                new ByteRange(50, 199),
+                new ByteRange(250, 300),   // cách range trước 50 byte -> gộp
+                new ByteRange(5000, 5010)));
+
+        assertEquals(List.of(new ByteRange(0, 300), new ByteRange(5000, 5010), new ByteRange(9000, 9999)), coalesced);
+    }
+}
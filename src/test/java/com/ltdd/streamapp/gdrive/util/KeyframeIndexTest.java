@@ -0,0 +1,39 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyframeIndexTest {
+
+    @Test
+    void encodesCompactlyAndRoundTrips() {
+        int count = 1000; // ~33 phút với keyframe mỗi 2 giây
+        long[] times = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = i * 2002L;
+            offsets[i] = 48 + i * 1_250_000L + (i % 7) * 113;
+        }
+        KeyframeIndex index = KeyframeIndex.of(times, offsets);
+
+        byte[] encoded = index.encode();
+        assertTrue(encoded.length < count * 8, "expected delta+varint encoding, got " + encoded.length + " bytes");
+
+        KeyframeIndex decoded = KeyframeIndex.decode(encoded);
+        assertEquals(count, decoded.size());
+        assertEquals(new KeyframeIndex.Entry(999 * 2002L, offsets[999]), decoded.floor(Long.MAX_VALUE));
+    }
+
+    @Test
+    void floorReturnsLastKeyframeAtOrBeforeTime() {
+        KeyframeIndex index = KeyframeIndex.of(new long[]{0, 2000, 4000}, new long[]{48, 5000, 9000});
+
+        assertEquals(new KeyframeIndex.Entry(2000, 5000), index.floor(3999));
+        assertEquals(new KeyframeIndex.Entry(4000, 9000), index.floor(4000));
+        assertEquals(new KeyframeIndex.Entry(0, 48), index.floor(-5));
+        assertNull(KeyframeIndex.of(new long[0], new long[0]).floor(1000));
+    }
+}
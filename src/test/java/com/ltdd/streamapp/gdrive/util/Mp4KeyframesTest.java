@@ -0,0 +1,89 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class Mp4KeyframesTest {
+
+    private static byte[] box(String type, byte[]... children) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            body.writeBytes(child);
+        }
+        return ByteBuffer.allocate(8 + body.size())
+                .putInt(8 + body.size())
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(body.toByteArray())
+                .array();
+    }
+
+    // Full box: version/flags (0) rồi các số nguyên 32 bit
+    private static byte[] fullBox(String type, int... values) {
+        ByteBuffer body = ByteBuffer.allocate(4 + values.length * 4).putInt(0);
+        for (int value : values) {
+            body.putInt(value);
+        }
+        return box(type, body.array());
+    }
+
+    private static byte[] hdlr(String handler) {
+        return box("hdlr", ByteBuffer.allocate(12).putInt(0).putInt(0)
+                .put(handler.getBytes(StandardCharsets.ISO_8859_1)).array());
+    }
+
+    private static byte[] track(String handler, byte[] stbl) {
+        byte[] mdhd = fullBox("mdhd", 0, 0, 1000, 3000); // ctime, mtime, timescale = 1000, duration
+        return box("trak", box("mdia", mdhd, hdlr(handler), box("minf", stbl)));
+    }
+
+    @Test
+    void readsKeyframeTimesAndOffsetsOfVideoTrack(@TempDir Path dir) throws Exception {
+        // 6 sample, mỗi sample 500 ms, keyframe ở sample 1 và 4, 3 sample mỗi chunk
+        byte[] stbl = box("stbl",
+                fullBox("stts", 1, 6, 500),
+                fullBox("stss", 2, 1, 4),
+                fullBox("stsz", 0, 6, 100, 10, 10, 100, 10, 10),
+                fullBox("stsc", 1, 1, 3, 1),
+                fullBox("stco", 2, 1000, 5000));
+        byte[] audioStbl = box("stbl",
+                fullBox("stts", 1, 1, 1024),
+                fullBox("stsz", 0, 1, 50),
+                fullBox("stsc", 1, 1, 1, 1),
+                fullBox("stco", 1, 40));
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.writeBytes(box("ftyp", new byte[8]));
+        file.writeBytes(box("moov", track("soun", audioStbl), track("vide", stbl)));
+        file.writeBytes(box("mdat", new byte[64]));
+        Path mp4 = Files.write(dir.resolve("video.mp4"), file.toByteArray());
+
+        KeyframeIndex index = Mp4Keyframes.read(mp4);
+
+        assertEquals(2, index.size());
+        assertEquals(new KeyframeIndex.Entry(0, 1000), index.floor(1499));
+        assertEquals(new KeyframeIndex.Entry(1500, 5000), index.floor(2600));
+    }
+
+    @Test
+    void returnsNullWithoutVideoTrack(@TempDir Path dir) throws Exception {
+        byte[] audioStbl = box("stbl",
+                fullBox("stts", 1, 1, 1024),
+                fullBox("stsz", 0, 1, 50),
+                fullBox("stsc", 1, 1, 1, 1),
+                fullBox("stco", 1, 40));
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.writeBytes(box("ftyp", new byte[8]));
+        file.writeBytes(box("moov", track("soun", audioStbl)));
+        file.writeBytes(box("mdat", new byte[64]));
+
+        assertNull(Mp4Keyframes.read(Files.write(dir.resolve("audio.m4a"), file.toByteArray())));
+    }
+}
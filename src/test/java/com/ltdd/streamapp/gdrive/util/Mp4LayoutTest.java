@@ -0,0 +1,67 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4LayoutTest {
+
+    private static final long SEGMENT_SIZE = 1024;
+
+    private static byte[] box(String type, int payloadSize) {
+        return ByteBuffer.allocate(8 + payloadSize)
+                .putInt(8 + payloadSize)
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .array();
+    }
+
+    private static Path write(Path dir, String name, byte[]... boxes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] box : boxes) {
+            out.write(box);
+        }
+        return Files.write(dir.resolve(name), out.toByteArray());
+    }
+
+    @Test
+    void detectsMoovAtEndAndEstimatesExtraRequests(@TempDir Path dir) throws Exception {
+        // ftyp (24) + mdat (8 + 10000) + moov (8 + 500) -> moov nằm trong segment 9
+        Path file = write(dir, "tail.mp4", box("ftyp", 16), box("mdat", 10_000), box("moov", 500));
+
+        Mp4Layout layout = Mp4Layout.scan(file);
+
+        assertFalse(layout.isFaststart());
+        assertEquals(10_032, layout.moovOffset());
+        assertEquals(508, layout.moovSize());
+        Mp4Layout.StartupCost cost = layout.estimateStartupCost(SEGMENT_SIZE);
+        assertEquals(3, cost.requests());
+        assertEquals(1024 + (10_540 - 9 * 1024), cost.upstreamBytes()); // segment 0 + segment 9..10 (segment cuối ngắn hơn)
+    }
+
+    @Test
+    void faststartLayoutNeedsSingleRequest(@TempDir Path dir) throws Exception {
+        Path file = write(dir, "fast.mp4", box("ftyp", 16), box("moov", 500), box("mdat", 10_000));
+
+        Mp4Layout layout = Mp4Layout.scan(file);
+
+        assertTrue(layout.isFaststart());
+        assertEquals(new Mp4Layout.StartupCost(1, 1024), layout.estimateStartupCost(SEGMENT_SIZE));
+    }
+
+    @Test
+    void rejectsFilesThatAreNotIsoBmff(@TempDir Path dir) throws Exception {
+        assertNull(Mp4Layout.scan(write(dir, "noftyp.mp4", box("mdat", 100), box("moov", 10))));
+        assertNull(Mp4Layout.scan(write(dir, "nomoov.mp4", box("ftyp", 16), box("mdat", 100))));
+        assertNull(Mp4Layout.scan(Files.write(dir.resolve("text.mp4"), "definitely not a video".getBytes(StandardCharsets.UTF_8))));
+    }
+}
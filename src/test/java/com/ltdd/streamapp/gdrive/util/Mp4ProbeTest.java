@@ -0,0 +1,94 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class Mp4ProbeTest {
+
+    private static byte[] box(String type, byte[]... children) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] child : children) {
+            body.writeBytes(child);
+        }
+        return ByteBuffer.allocate(8 + body.size())
+                .putInt(8 + body.size())
+                .put(type.getBytes(StandardCharsets.ISO_8859_1))
+                .put(body.toByteArray())
+                .array();
+    }
+
+    // mvhd version 0: version/flags, ctime, mtime, timescale, duration
+    private static byte[] mvhd(int timescale, int duration) {
+        return box("mvhd", ByteBuffer.allocate(20).putInt(0).putInt(0).putInt(0).putInt(timescale).putInt(duration).array());
+    }
+
+    private static byte[] hdlr(String handler) {
+        return box("hdlr", ByteBuffer.allocate(12).putInt(0).putInt(0)
+                .put(handler.getBytes(StandardCharsets.ISO_8859_1)).array());
+    }
+
+    // stsd với một sample entry; entry video mang width/height ở offset 32 của entry
+    private static byte[] stsd(String fourcc, int width, int height) {
+        ByteBuffer entry = ByteBuffer.allocate(8 + 70).putInt(8 + 70).put(fourcc.getBytes(StandardCharsets.ISO_8859_1));
+        entry.position(32).putShort((short) width).putShort((short) height);
+        return box("stsd", ByteBuffer.allocate(8 + entry.capacity()).putInt(0).putInt(1).put(entry.array()).array());
+    }
+
+    private static byte[] track(String handler, byte[] stsd) {
+        return box("trak", box("mdia", hdlr(handler), box("minf", box("stbl", stsd))));
+    }
+
+    @Test
+    void readsDurationCodecsAndResolutionFromMoov(@TempDir Path dir) throws Exception {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.writeBytes(box("ftyp", new byte[8]));
+        file.writeBytes(box("mdat", new byte[4000])); // moov ở cuối file vẫn đọc được
+        file.writeBytes(box("moov", mvhd(600, 1200),
+                track("vide", stsd("avc1", 1920, 1080)),
+                track("soun", stsd("mp4a", 0, 0))));
+        Path mp4 = Files.write(dir.resolve("video.mp4"), file.toByteArray());
+
+        Mp4Probe probe = Mp4Probe.read(mp4);
+
+        assertEquals(2000, probe.durationMillis());
+        assertEquals("h264", probe.videoCodec());
+        assertEquals("aac", probe.audioCodec());
+        assertEquals(1920, probe.width());
+        assertEquals(1080, probe.height());
+        assertEquals(Files.size(mp4) * 8 / 2000, probe.bitrateKbps());
+    }
+
+    @Test
+    void audioOnlyFileHasNoVideoCodec(@TempDir Path dir) throws Exception {
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.writeBytes(box("ftyp", new byte[8]));
+        file.writeBytes(box("moov", mvhd(44100, 441000), track("soun", stsd("Opus", 0, 0))));
+        file.writeBytes(box("mdat", new byte[64]));
+
+        Mp4Probe probe = Mp4Probe.read(Files.write(dir.resolve("song.m4a"), file.toByteArray()));
+
+        assertEquals(10_000, probe.durationMillis());
+        assertNull(probe.videoCodec());
+        assertEquals("opus", probe.audioCodec());
+    }
+
+    @Test
+    void returnsNullForNonMp4AndFragmentedFiles(@TempDir Path dir) throws Exception {
+        assertNull(Mp4Probe.read(Files.write(dir.resolve("song.mp3"), new byte[]{'I', 'D', '3', 4, 0, 0, 0, 0, 0, 0})));
+
+        ByteArrayOutputStream fragmented = new ByteArrayOutputStream();
+        fragmented.writeBytes(box("ftyp", new byte[8]));
+        fragmented.writeBytes(box("moov", mvhd(1000, 0), track("vide", stsd("avc1", 640, 360))));
+        fragmented.writeBytes(box("mdat", new byte[64]));
+        assertNull(Mp4Probe.read(Files.write(dir.resolve("fragmented.mp4"), fragmented.toByteArray())));
+    }
+}
@@ -0,0 +1,56 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamUrlSignerTest {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    private static StreamUrlSigner signerAt(Instant now) {
+        return new StreamUrlSigner("test-secret", 3600, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void signedQueryVerifiesForTheSameFileUntilItExpires() {
+        String query = signerAt(NOW).signQuery("file-1");
+        long expires = Long.parseLong(query.substring("expires=".length(), query.indexOf('&')));
+        String sig = query.substring(query.indexOf("&sig=") + "&sig=".length());
+
+        assertEquals(NOW.getEpochSecond() + 3600, expires);
+        assertTrue(signerAt(NOW).verify("file-1", expires, sig));
+        assertTrue(signerAt(NOW.plusSeconds(3600)).verify("file-1", expires, sig));
+        assertFalse(signerAt(NOW.plusSeconds(3601)).verify("file-1", expires, sig)); // Hết hạn
+    }
+
+    @Test
+    void rejectsOtherFilesTamperedExpiryAndMissingParameters() {
+        StreamUrlSigner signer = signerAt(NOW);
+        long expires = NOW.getEpochSecond() + 60;
+        String sig = signer.signature("file-1", expires);
+
+        assertFalse(signer.verify("file-2", expires, sig));
+        assertFalse(signer.verify("file-1", expires + 86_400, sig)); // Kéo dài hạn dùng
+        assertFalse(new StreamUrlSigner("other-secret", 3600, Clock.fixed(NOW, ZoneOffset.UTC)).verify("file-1", expires, sig));
+        assertFalse(signer.verify("file-1", null, sig));
+        assertFalse(signer.verify("file-1", expires, null));
+    }
+
+    @Test
+    void mediaSignatureCoversOnlyThatMedia() {
+        StreamUrlSigner signer = signerAt(NOW);
+        long expires = NOW.getEpochSecond() + 60;
+        String sig = signer.signature(StreamUrlSigner.mediaResource(7L), expires);
+
+        assertTrue(signer.verify(StreamUrlSigner.mediaResource(7L), expires, sig));
+        assertFalse(signer.verify(StreamUrlSigner.mediaResource(8L), expires, sig));
+        assertFalse(signer.verify("7", expires, sig)); // Không mở được file có ID trùng số
+    }
+}
@@ -0,0 +1,58 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(42 * SECOND);
+
+    @Test
+    void startsWithOneSecondOfBurstThenChargesTheDebtAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1000, clock::get);
+
+        assertEquals(0, bucket.reserve(1000)); // Burst ban đầu
+        assertEquals(SECOND / 2, bucket.reserve(500)); // Nợ 500 byte ở 1000 B/s
+        assertEquals(SECOND / 2 + SECOND / 4, bucket.reserve(250)); // Người đặt sau chờ sau người trước
+    }
+
+    @Test
+    void refillsAtTheConfiguredRate() {
+        TokenBucket bucket = new TokenBucket(1000, clock::get);
+        bucket.reserve(1000);
+
+        clock.addAndGet(SECOND / 4);
+        assertEquals(0, bucket.reserve(250));
+        assertEquals(SECOND / 10, bucket.reserve(100));
+
+        clock.addAndGet(SECOND / 10 + SECOND / 2); // Trả hết nợ rồi tích thêm 500 byte
+        assertEquals(0, bucket.reserve(500));
+        assertEquals(SECOND / 1000, bucket.reserve(1));
+    }
+
+    @Test
+    void burstIsCappedAtOneSecondOfTraffic() {
+        TokenBucket bucket = new TokenBucket(1000, clock::get);
+
+        clock.addAndGet(60 * SECOND); // Rảnh một phút không tích quá 1000 byte
+        assertEquals(0, bucket.reserve(1000));
+        assertEquals(SECOND, bucket.reserve(1000));
+    }
+
+    @Test
+    void rateChangesApplyImmediatelyAndZeroMeansUnlimited() {
+        TokenBucket bucket = new TokenBucket(1000, clock::get);
+
+        bucket.setBytesPerSecond(100); // Burst giảm theo tốc độ mới
+        assertEquals(0, bucket.reserve(100));
+        assertEquals(SECOND, bucket.reserve(100));
+
+        bucket.setBytesPerSecond(0);
+        assertEquals(0, bucket.reserve(1_000_000));
+    }
+}
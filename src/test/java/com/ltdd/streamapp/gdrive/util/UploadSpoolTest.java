@@ -0,0 +1,92 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UploadSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    /** Sinh byte theo công thức, không giữ nội dung trong bộ nhớ, và tự tính SHA-256 để đối chiếu. */
+    private static final class GeneratedStream extends InputStream {
+        private final long length;
+        private final MessageDigest digest;
+        private long position;
+
+        GeneratedStream(long length) throws NoSuchAlgorithmException {
+            this.length = length;
+            this.digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - position);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) ((position + i) * 31 + 7);
+            }
+            digest.update(b, off, n);
+            position += n;
+            return n;
+        }
+
+        String sha256() {
+            return HexFormat.of().formatHex(digest.digest());
+        }
+    }
+
+    @Test
+    void spoolsLargeUploadWithConstantHeap() throws Exception {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean, "per-thread allocation counter not available");
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        long threadId = Thread.currentThread().threadId();
+
+        long size = 128L * 1024 * 1024;
+        GeneratedStream in = new GeneratedStream(size);
+        Path target = tempDir.resolve("upload.bin");
+
+        long allocatedBefore = allocations.getThreadAllocatedBytes(threadId);
+        UploadSpool.Spooled spooled = UploadSpool.spool(in, target);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(size, spooled.size());
+        assertEquals(size, Files.size(target));
+        assertEquals(in.sha256(), spooled.sha256());
+        // Một buffer cố định: phân bổ heap phải nhỏ hơn kích thước file rất nhiều (ở đây < 1/32)
+        assertTrue(allocated < 4L * 1024 * 1024, "spooling " + size + " bytes allocated " + allocated + " bytes of heap");
+    }
+
+    @Test
+    void hashesKnownContent() throws IOException {
+        UploadSpool.Spooled spooled = UploadSpool.spool(
+                new ByteArrayInputStream("abc".getBytes(StandardCharsets.US_ASCII)), tempDir.resolve("abc.txt"));
+
+        assertEquals(3, spooled.size());
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", spooled.sha256());
+    }
+}
@@ -0,0 +1,64 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WaveformPeaksTest {
+
+    // PCM 16-bit little-endian mono
+    private static byte[] pcm(short... samples) {
+        byte[] data = new byte[samples.length * 2];
+        for (int i = 0; i < samples.length; i++) {
+            data[i * 2] = (byte) samples[i];
+            data[i * 2 + 1] = (byte) (samples[i] >> 8);
+        }
+        return data;
+    }
+
+    @Test
+    void computesMinMaxPerBucketAtEveryLevel() throws IOException {
+        byte[] data = pcm((short) 256, (short) -512, (short) 32767, (short) -32768, (short) 0, (short) 1024);
+        WaveformPeaks peaks = WaveformPeaks.compute(new ByteArrayInputStream(data), 8000, 2, 4);
+
+        assertEquals(2, peaks.levels().size());
+        // Bucket cuối chưa đủ sample vẫn được giữ
+        assertArrayEquals(new byte[]{-2, 1, -128, 127, 0, 4}, peaks.levels().get(0).minMax());
+        assertArrayEquals(new byte[]{-128, 127, 0, 4}, peaks.levels().get(1).minMax());
+    }
+
+    @Test
+    void encodesCompactlyAndRoundTrips() throws IOException {
+        int seconds = 300;
+        int sampleRate = 11025;
+        short[] samples = new short[seconds * sampleRate];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (Math.sin(i / 20.0) * 20000);
+        }
+        WaveformPeaks peaks = WaveformPeaks.compute(new ByteArrayInputStream(pcm(samples)), sampleRate, 256, 1024, 4096);
+
+        byte[] encoded = peaks.encode();
+        assertTrue(encoded.length < samples.length / 50, "expected a few KB of peaks, got " + encoded.length + " bytes");
+        byte[] coarsest = peaks.encodeLevel(2);
+        assertTrue(coarsest.length < 2048, "coarsest level alone should be tiny, got " + coarsest.length + " bytes");
+
+        WaveformPeaks decoded = WaveformPeaks.decode(encoded);
+        assertEquals(sampleRate, decoded.sampleRate());
+        assertEquals(3, decoded.levels().size());
+        assertEquals(4096, decoded.levels().get(2).samplesPerBucket());
+        assertArrayEquals(peaks.levels().get(1).minMax(), decoded.levels().get(1).minMax());
+        assertArrayEquals(peaks.levels().get(2).minMax(), WaveformPeaks.decode(coarsest).levels().get(0).minMax());
+    }
+
+    @Test
+    void rejectsLevelsThatAreNotMultiplesOfTheFinest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> WaveformPeaks.compute(new ByteArrayInputStream(new byte[0]), 8000, 256, 1000));
+    }
+}
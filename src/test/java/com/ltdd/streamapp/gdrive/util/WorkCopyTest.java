@@ -0,0 +1,49 @@
+package com.ltdd.streamapp.gdrive.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkCopyTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void copyIsSharedUntilTheLastReferenceIsReleased() throws Exception {
+        Path upload = Files.writeString(tempDir.resolve("upload.tmp"), "video bytes", StandardCharsets.UTF_8);
+
+        WorkCopy copy = WorkCopy.copyOf(upload, tempDir.resolve("work"), "upload-", "My Clip (1).MP4");
+        Files.delete(upload); // Request xong thì file upload tạm bị xóa, bản sao vẫn còn
+
+        assertTrue(copy.file().getFileName().toString().endsWith(".MP4"));
+        assertEquals("video bytes", Files.readString(copy.file(), StandardCharsets.UTF_8));
+
+        copy.retain(); // HLS
+        assertTrue(copy.tryRetain()); // Trickplay
+        copy.release(); // Bên tạo đã lên lịch xong các job
+        copy.release(); // HLS xong
+        assertTrue(Files.exists(copy.file()));
+
+        copy.release(); // Trickplay xong: reference cuối
+        assertFalse(Files.exists(copy.file()));
+        assertFalse(Files.exists(copy.file().getParent()));
+        assertFalse(copy.tryRetain());
+        assertThrows(IllegalStateException.class, copy::retain);
+    }
+
+    @Test
+    void extensionKeepsOnlySafeCharacters() {
+        assertEquals(".mkv", WorkCopy.extensionOf("a.b/c.m$k v"));
+        assertEquals("", WorkCopy.extensionOf("noextension"));
+        assertEquals("", WorkCopy.extensionOf(null));
+    }
+}